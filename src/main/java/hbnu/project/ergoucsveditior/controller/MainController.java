@@ -3,17 +3,32 @@ package hbnu.project.ergoucsveditior.controller;
 import hbnu.project.ergoucsveditior.manager.AutoMarkManager;
 import hbnu.project.ergoucsveditior.manager.HighlightManager;
 import hbnu.project.ergoucsveditior.manager.HistoryManager;
-import hbnu.project.ergoucsveditior.model.CSVCell;
 import hbnu.project.ergoucsveditior.model.CSVData;
+import hbnu.project.ergoucsveditior.model.CSVRow;
+import hbnu.project.ergoucsveditior.model.ColumnAggregates;
+import hbnu.project.ergoucsveditior.model.ColumnStatistics;
 import hbnu.project.ergoucsveditior.model.HighlightInfo;
+import hbnu.project.ergoucsveditior.model.SearchHits;
 import hbnu.project.ergoucsveditior.rule.AutoMarkRule;
+import hbnu.project.ergoucsveditior.service.CSVExporter;
 import hbnu.project.ergoucsveditior.service.CSVService;
+import hbnu.project.ergoucsveditior.service.CSVStreamReader;
+import hbnu.project.ergoucsveditior.service.ExcelExportService;
+import hbnu.project.ergoucsveditior.service.ExportService;
+import hbnu.project.ergoucsveditior.service.Exporter;
+import hbnu.project.ergoucsveditior.service.FuzzyIndex;
+import hbnu.project.ergoucsveditior.service.HTMLExporter;
+import hbnu.project.ergoucsveditior.service.MarkdownExporter;
+import hbnu.project.ergoucsveditior.service.PDFExportService;
+import hbnu.project.ergoucsveditior.service.SearchService;
+import hbnu.project.ergoucsveditior.service.StatisticsService;
+import hbnu.project.ergoucsveditior.service.TextExporter;
+import hbnu.project.ergoucsveditior.service.TrigramIndex;
 import hbnu.project.ergoucsveditior.settings.AutoMarkSettings;
 import hbnu.project.ergoucsveditior.settings.ExportSettings;
 import hbnu.project.ergoucsveditior.settings.Settings;
 import hbnu.project.ergoucsveditior.settings.ToolbarConfig;
 import javafx.beans.property.SimpleStringProperty;
-import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.FileChooser;
@@ -33,7 +48,7 @@ public class MainController {
     private javafx.scene.layout.BorderPane rootPane;
     
     @FXML
-    private TableView<ObservableList<CSVCell>> tableView;
+    private TableView<CSVRow> tableView;
     
     @FXML
     private Label statusLabel;
@@ -41,9 +56,15 @@ public class MainController {
     @FXML
     private Label positionLabel;
     
+    @FXML
+    private Label columnStatsLabel;
+    
     @FXML
     private Button undoButton;
     
+    @FXML
+    private Button cancelLoadButton;
+    
     @FXML
     private ToolBar toolbar;
     
@@ -53,6 +74,15 @@ public class MainController {
     
     private CSVData csvData;
     private CSVService csvService;
+    private SearchService searchService;
+    private StatisticsService statisticsService;
+    private ExportService exportService;
+    private static final int APPROXIMATE_STATISTICS_ROWS = 5_000_000; // 超过该行数时列统计默认使用近似模式
+    private static final int BACKGROUND_AGGREGATE_ROWS = 200_000;     // 超过该行数时在后台扫描列汇总
+    private static final long APPROXIMATE_PROFILE_CELLS = 20_000_000L; // 超过该单元格数时整表概况默认使用近似模式
+    private ColumnAggregates columnAggregates;
+    private javafx.concurrent.Task<ColumnAggregates.Column> aggregateTask;
+    private int aggregateTaskColumn = -1;
     private File currentFile;
     private HistoryManager historyManager;
     private Settings settings;
@@ -61,8 +91,27 @@ public class MainController {
     private ExportSettings exportSettings;
     private boolean dataModified = false; // 标记数据是否被修改
     
+    // 后台保存相关
+    private javafx.concurrent.Task<Long> saveTask;
+    private boolean exitAfterSave = false; // 保存完成后退出
+    
+    // 渐进式打开相关
+    private static final long PROGRESSIVE_OPEN_THRESHOLD = 4L << 20; // 超过4MB的文件边加载边显示
+    private static final int FIRST_BATCH_ROWS = 200;                  // 首批行数，保证尽快显示第一屏
+    private static final int LOAD_BATCH_ROWS = 20000;                 // 后续每批行数
+    private javafx.concurrent.Task<Void> loadTask;
+    private javafx.concurrent.Task<hbnu.project.ergoucsveditior.model.SparseCellMap<String>> autoMarkTask;
+    
     // 搜索相关
-    private java.util.List<SearchResult> searchResults;
+    private SearchHits searchHits;
+    private javafx.concurrent.Task<Boolean> searchTask;
+    private Label searchResultLabel; // 正在进行的搜索所在对话框的结果标签
+    private int searchedRows;        // 正在进行的搜索的快照行数
+    private static final long SEARCH_INDEX_MIN_CELLS = 200_000; // 单元格数超过该值时建立搜索索引
+    private TrigramIndex searchIndex;
+    private javafx.concurrent.Task<Boolean> indexTask;
+    private FuzzyIndex fuzzyIndex; // 容错搜索的列字典，第一次容错搜索时建立
+    private static final int MAX_LISTED_MATCHES = 200; // 容错搜索最多列出的相近值数
     private int currentSearchIndex = -1;
     private String lastSearchText = "";
     private boolean lastSearchCaseSensitive = false;
@@ -84,14 +133,26 @@ public class MainController {
     public void initialize() {
         csvData = new CSVData();
         csvService = new CSVService();
+        searchService = new SearchService();
+        statisticsService = new StatisticsService();
+        exportService = new ExportService();
+        exportService.register(new CSVExporter(csvService));
+        exportService.register(new TextExporter());
+        exportService.register(new HTMLExporter());
+        exportService.register(new ExcelExportService());
+        exportService.register(new PDFExportService());
+        exportService.register(new MarkdownExporter());
         settings = new Settings();
-        historyManager = new HistoryManager(settings.getMaxHistorySize());
+        historyManager = new HistoryManager(settings.getHistoryMemoryLimit() * 1024L * 1024L);
+        historyManager.setOnHistoryChanged(this::updateUndoButton);
         keyBindings = new hbnu.project.ergoucsveditior.model.KeyBindings();
         highlightManager = new HighlightManager();
         autoMarkManager = new AutoMarkManager();
+        autoMarkManager.setOnFullReevaluation(this::applyAutoMarkRules);
         autoMarkSettings = new AutoMarkSettings();
         toolbarConfig = new ToolbarConfig();
         exportSettings = new ExportSettings();
+        attachDataListeners();
         
         // 从设置中加载高亮冲突策略
         String strategyName = settings.getHighlightConflictStrategy();
@@ -334,6 +395,9 @@ public class MainController {
                     } else if (matchesBinding(event, hbnu.project.ergoucsveditior.model.KeyBindings.ACTION_UNDO)) {
                         handleUndo();
                         event.consume();
+                    } else if (matchesBinding(event, hbnu.project.ergoucsveditior.model.KeyBindings.ACTION_REDO)) {
+                        handleRedo();
+                        event.consume();
                     } else if (matchesBinding(event, hbnu.project.ergoucsveditior.model.KeyBindings.ACTION_ADD_ROW)) {
                         handleAddRow();
                         event.consume();
@@ -445,6 +509,7 @@ public class MainController {
         Optional<int[]> result = dialog.showAndWait();
         result.ifPresent(size -> {
             csvData = new CSVData(size[0], size[1]);
+            attachDataListeners();
             currentFile = null;
             historyManager.clear();
             saveHistory();
@@ -461,6 +526,23 @@ public class MainController {
      */
     @FXML
     public void handleOpen() {
+        openFile(false);
+    }
+    
+    /**
+     * 以内存映射方式打开CSV文件（适合超大文件）
+     */
+    @FXML
+    public void handleOpenMapped() {
+        openFile(true);
+    }
+    
+    /**
+     * 选择并打开CSV文件
+     * 文件超过最大堆内存的 1/5 时自动使用内存映射方式，避免整体解析到堆中
+     * @param forceMapped 是否强制使用内存映射方式
+     */
+    private void openFile(boolean forceMapped) {
         // 如果当前有未保存的数据，提示用户
         if (csvData.getRows() > 0 && !confirmDiscardChanges()) {
             return;
@@ -476,10 +558,17 @@ public class MainController {
         File file = fileChooser.showOpenDialog(getStage());
         if (file != null) {
             try {
+                cancelLoading();
                 csvService.setLineEnding(settings.getLineEndingString());
                 csvService.setAutoDetectDelimiter(settings.isAutoDetectDelimiter());
                 csvService.setEscapeMode(settings.getEscapeMode());
-                csvData = csvService.loadFromFile(file);
+                boolean mapped = forceMapped || file.length() > Runtime.getRuntime().maxMemory() / 5;
+                if (!mapped && settings.isProgressiveOpen() && file.length() >= PROGRESSIVE_OPEN_THRESHOLD) {
+                    openProgressively(file);
+                    return;
+                }
+                csvData = mapped ? csvService.openMapped(file) : csvService.loadFromFile(file);
+                attachDataListeners();
                 currentFile = file;
                 historyManager.clear();
                 saveHistory();
@@ -488,7 +577,8 @@ public class MainController {
                 // 应用背景图片
                 javafx.application.Platform.runLater(() -> applyBackgroundImage());
                 updateStatus("已打开文件: " + file.getName() + " (" + 
-                           csvData.getRows() + "行 x " + csvData.getColumns() + "列)");
+                           csvData.getRows() + "行 x " + csvData.getColumns() + "列" +
+                           (mapped ? "，内存映射" : "") + ")");
             } catch (IOException e) {
                 showError("打开文件失败", 
                          "无法读取文件，请检查文件是否为有效的CSV格式。\n\n错误信息: " + e.getMessage());
@@ -499,6 +589,258 @@ public class MainController {
         }
     }
     
+    /**
+     * 渐进式打开大文件
+     * 首批少量行立即显示，其余记录由后台线程分批解析后追加到表格末尾，
+     * 状态栏显示加载速度、已读字节数和预计剩余时间；加载期间可以编辑已加载的行
+     */
+    private void openProgressively(File file) throws IOException {
+        CSVStreamReader reader = csvService.openStream(file);
+        CSVData target = new CSVData();
+        csvData = target;
+        attachDataListeners();
+        currentFile = file;
+        historyManager.clear();
+        dataModified = false;
+        refreshTable();
+        
+        // 有界队列：界面追加跟不上解析速度时后台线程阻塞等待
+        java.util.concurrent.BlockingQueue<java.util.List<String[]>> batches =
+            new java.util.concurrent.ArrayBlockingQueue<>(4);
+        long startTime = System.nanoTime();
+        
+        javafx.concurrent.Task<Void> task = new javafx.concurrent.Task<>() {
+            @Override
+            protected Void call() throws Exception {
+                // 读完、取消或失败都关闭文件，之后可以直接覆盖保存
+                try (reader) {
+                    int batchRows = FIRST_BATCH_ROWS;
+                    while (reader.hasMore() && !isCancelled()) {
+                        batches.put(reader.readBatch(batchRows));
+                        javafx.application.Platform.runLater(() -> 
+                            appendLoadedRows(target, batches, reader, file, startTime));
+                        batchRows = LOAD_BATCH_ROWS;
+                    }
+                }
+                return null;
+            }
+        };
+        
+        task.setOnSucceeded(event -> {
+            finishLoading(task, target, batches);
+            if (csvData != target) {
+                return;
+            }
+            updateStatus("已打开文件: " + file.getName() + " (" + 
+                       target.getRows() + "行 x " + target.getColumns() + "列，用时 " +
+                       String.format("%.1f", (System.nanoTime() - startTime) / 1e9) + " 秒)");
+        });
+        task.setOnCancelled(event -> {
+            finishLoading(task, target, batches);
+            if (csvData == target) {
+                // 只加载了部分数据，不能直接保存回原文件
+                currentFile = null;
+                updateStatus("已取消加载: " + file.getName() + "，已加载 " + target.getRows() + " 行（保存时需另存为）");
+            }
+        });
+        task.setOnFailed(event -> {
+            finishLoading(task, target, batches);
+            if (csvData == target) {
+                currentFile = null;
+            }
+            Throwable error = task.getException();
+            showError("打开文件失败", 
+                     "处理CSV文件时发生错误。\n\n错误信息: " + (error != null ? error.getMessage() : "未知错误"));
+        });
+        
+        loadTask = task;
+        cancelLoadButton.setText("取消加载");
+        setCancelLoadVisible(true);
+        updateStatus("正在加载: " + file.getName() + "...");
+        
+        Thread thread = new Thread(task, "csv-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * 把后台解析好的批次追加到表格（在 FX 线程执行）
+     */
+    private void appendLoadedRows(CSVData target, java.util.concurrent.BlockingQueue<java.util.List<String[]>> batches,
+                                  CSVStreamReader reader, File file, long startTime) {
+        if (!drainLoadedRows(target, batches) || loadTask == null) {
+            return;
+        }
+        
+        double seconds = Math.max((System.nanoTime() - startTime) / 1e9, 0.001);
+        long bytesRead = reader.getBytesRead();
+        long totalBytes = reader.getTotalBytes();
+        double bytesPerSecond = bytesRead / seconds;
+        long remainingSeconds = bytesPerSecond > 0 ? (long) ((totalBytes - bytesRead) / bytesPerSecond) : 0;
+        updateStatus(String.format("正在加载 %s: %,d 行 | %.1f / %.1f MB | %,.0f 行/秒 | 剩余约 %d 秒",
+            file.getName(), target.getRows(), bytesRead / 1048576.0, totalBytes / 1048576.0,
+            target.getRows() / seconds, remainingSeconds));
+    }
+    
+    /**
+     * 取出队列中已解析的全部批次并追加到表格
+     * @return 目标数据是否仍是当前表格
+     */
+    private boolean drainLoadedRows(CSVData target, java.util.concurrent.BlockingQueue<java.util.List<String[]>> batches) {
+        if (csvData != target) {
+            batches.clear();
+            return false;
+        }
+        int oldColumns = target.getColumns();
+        java.util.List<String[]> batch;
+        while ((batch = batches.poll()) != null) {
+            target.appendRows(batch);
+        }
+        // 出现更多列时需要重建表格列
+        if (target.getColumns() != oldColumns) {
+            refreshTable();
+        }
+        return true;
+    }
+    
+    /**
+     * 加载结束（完成、取消或失败）后的收尾工作
+     */
+    private void finishLoading(javafx.concurrent.Task<Void> task, CSVData target,
+                               java.util.concurrent.BlockingQueue<java.util.List<String[]>> batches) {
+        if (loadTask != task) {
+            return;
+        }
+        drainLoadedRows(target, batches);
+        loadTask = null;
+        setCancelLoadVisible(false);
+        // 加载期间不记录历史，加载结束后以完整数据作为撤销起点
+        historyManager.clear();
+        saveHistory();
+        if (csvData == target) {
+            rebuildSearchIndex();
+            updateColumnStatsLabel();
+        }
+    }
+    
+    /**
+     * 取消正在进行的渐进式加载或自动标记计算
+     */
+    @FXML
+    public void handleCancelLoad() {
+        if (loadTask != null) {
+            loadTask.cancel();
+        } else if (autoMarkTask != null) {
+            autoMarkTask.cancel();
+        }
+    }
+    
+    /**
+     * 在后台线程中应用自动标记规则
+     * 规则编译后在 ForkJoin 线程池中按行分块并行计算，状态栏显示进度并可取消；
+     * 计算读取的是开始时的数据快照，不与界面线程的编辑同时访问存储；
+     * 计算完成后一次性发布结果并刷新表格，计算期间数据被修改时自动重新计算
+     */
+    private void applyAutoMarkRules() {
+        if (autoMarkTask != null) {
+            autoMarkTask.cancel();
+        }
+        
+        CSVData data = csvData;
+        CSVData snapshot = data.snapshot();
+        java.util.List<hbnu.project.ergoucsveditior.rule.CompiledRule> compiled = autoMarkManager.compileRules();
+        int version = autoMarkManager.getDataVersion();
+        int totalRows = snapshot.getRows();
+        long startTime = System.nanoTime();
+        
+        javafx.concurrent.Task<hbnu.project.ergoucsveditior.model.SparseCellMap<String>> task = new javafx.concurrent.Task<>() {
+            @Override
+            protected hbnu.project.ergoucsveditior.model.SparseCellMap<String> call() {
+                return autoMarkManager.evaluate(snapshot, compiled, java.util.concurrent.ForkJoinPool.commonPool(),
+                    done -> updateProgress(done, totalRows), this::isCancelled);
+            }
+        };
+        
+        task.progressProperty().addListener((obs, oldValue, newValue) -> {
+            if (autoMarkTask == task && newValue.doubleValue() >= 0) {
+                updateStatus(String.format("正在应用自动标记: %.0f%%", newValue.doubleValue() * 100));
+            }
+        });
+        task.setOnSucceeded(event -> {
+            if (!finishAutoMark(task, data)) {
+                return;
+            }
+            if (autoMarkManager.getDataVersion() != version) {
+                // 计算期间数据被修改，快照的结果已过期
+                applyAutoMarkRules();
+                return;
+            }
+            autoMarkManager.publish(task.getValue());
+            tableView.refresh();
+            updateStatus(String.format("已应用 %d 条自动标记规则（用时 %.1f 秒）",
+                compiled.size(), (System.nanoTime() - startTime) / 1e9));
+        });
+        task.setOnCancelled(event -> {
+            if (finishAutoMark(task, data)) {
+                updateStatus("已取消应用自动标记");
+            }
+        });
+        task.setOnFailed(event -> {
+            if (!finishAutoMark(task, data)) {
+                return;
+            }
+            Throwable error = task.getException();
+            showError("自动标记失败", "应用自动标记规则时发生错误: " + (error != null ? error.getMessage() : "未知错误"));
+        });
+        
+        autoMarkTask = task;
+        if (loadTask == null) {
+            cancelLoadButton.setText("取消标记");
+            setCancelLoadVisible(true);
+        }
+        updateStatus("正在应用自动标记...");
+        
+        Thread thread = new Thread(task, "auto-mark");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * 自动标记计算结束后的收尾工作
+     * @return 该任务是否仍是当前任务且数据未被替换
+     */
+    private boolean finishAutoMark(javafx.concurrent.Task<?> task, CSVData data) {
+        if (autoMarkTask != task) {
+            return false;
+        }
+        autoMarkTask = null;
+        if (loadTask == null) {
+            setCancelLoadVisible(false);
+        }
+        return csvData == data;
+    }
+    
+    /**
+     * 取消加载并立即结束，用于切换到其他文件之前
+     */
+    private void cancelLoading() {
+        if (loadTask != null) {
+            javafx.concurrent.Task<Void> task = loadTask;
+            loadTask = null;
+            setCancelLoadVisible(false);
+            task.cancel();
+            // 当前表格只有部分数据，不能再保存回原文件
+            currentFile = null;
+        }
+    }
+    
+    private void setCancelLoadVisible(boolean visible) {
+        if (cancelLoadButton != null) {
+            cancelLoadButton.setVisible(visible);
+            cancelLoadButton.setManaged(visible);
+        }
+    }
+    
     /**
      * 保存CSV文件
      */
@@ -575,8 +917,8 @@ public class MainController {
         
         // 获取选中的列索引
         @SuppressWarnings("unchecked")
-        TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-            (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+        TablePosition<CSVRow, ?> focusedCell = 
+            (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
         
         if (focusedCell != null && focusedCell.getColumn() > 0) {
             // 减1是因为第一列是行号列
@@ -615,8 +957,8 @@ public class MainController {
     @FXML
     public void handleDeleteColumn() {
         @SuppressWarnings("unchecked")
-        TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-            (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+        TablePosition<CSVRow, ?> focusedCell = 
+            (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
         
         if (focusedCell != null && focusedCell.getColumn() > 0) {
             saveHistory();
@@ -636,9 +978,11 @@ public class MainController {
      */
     @FXML
     public void handleUndo() {
-        CSVData previousState = historyManager.undo();
-        if (previousState != null) {
-            csvData = previousState;
+        if (loadTask != null) {
+            showInfo("提示", "文件仍在加载中，加载完成后才能撤销");
+            return;
+        }
+        if (historyManager.undo()) {
             dataModified = true;
             refreshTable();
             updateStatus("已撤销");
@@ -647,6 +991,24 @@ public class MainController {
         }
     }
     
+    /**
+     * 重做操作
+     */
+    @FXML
+    public void handleRedo() {
+        if (loadTask != null) {
+            showInfo("提示", "文件仍在加载中，加载完成后才能重做");
+            return;
+        }
+        if (historyManager.redo()) {
+            dataModified = true;
+            refreshTable();
+            updateStatus("已重做");
+        } else {
+            showInfo("提示", "无法重做");
+        }
+    }
+    
     /**
      * 打开设置对话框
      */
@@ -713,6 +1075,24 @@ public class MainController {
         showColumnStatisticsDialog();
     }
     
+    /**
+     * 打开整表概况对话框（同时统计所有列）
+     */
+    @FXML
+    public void handleProfileTable() {
+        if (csvData.getRows() == 0) {
+            showInfo("提示", "没有数据可以进行统计计算");
+            return;
+        }
+        
+        if (csvData.getColumns() == 0) {
+            showInfo("提示", "没有列可以进行统计计算");
+            return;
+        }
+        
+        showProfileDialog();
+    }
+    
     /**
      * 打开数据库持久化对话框
      */
@@ -780,7 +1160,7 @@ public class MainController {
         
         File file = fileChooser.showSaveDialog(getStage());
         if (file != null) {
-            exportToTXT(file);
+            exportWithProgress(file, "TXT");
         }
     }
     
@@ -807,7 +1187,7 @@ public class MainController {
         
         File file = fileChooser.showSaveDialog(getStage());
         if (file != null) {
-            exportToHTML(file);
+            exportWithProgress(file, "HTML");
         }
     }
     
@@ -834,7 +1214,7 @@ public class MainController {
         
         File file = fileChooser.showSaveDialog(getStage());
         if (file != null) {
-            exportToExcel(file);
+            exportWithProgress(file, "Excel");
         }
     }
     
@@ -892,6 +1272,19 @@ public class MainController {
         }
     }
     
+    /**
+     * 同时导出为多种格式（只读取一次数据）
+     */
+    @FXML
+    public void handleMultiExport() {
+        if (csvData.getRows() == 0) {
+            showInfo("提示", "没有数据可以导出");
+            return;
+        }
+        
+        showMultiExportDialog();
+    }
+    
     /**
      * 打开导出设置对话框
      */
@@ -915,8 +1308,8 @@ public class MainController {
     public void handleHighlightCell() {
         int selectedRow = tableView.getSelectionModel().getSelectedIndex();
         @SuppressWarnings("unchecked")
-        TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-            (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+        TablePosition<CSVRow, ?> focusedCell = 
+            (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
         
         if (selectedRow >= 0 && focusedCell != null && focusedCell.getColumn() > 0) {
             int selectedColumn = focusedCell.getColumn() - 1;
@@ -933,8 +1326,8 @@ public class MainController {
     public void handleClearHighlight() {
         int selectedRow = tableView.getSelectionModel().getSelectedIndex();
         @SuppressWarnings("unchecked")
-        TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-            (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+        TablePosition<CSVRow, ?> focusedCell = 
+            (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
         
         if (selectedRow >= 0 && focusedCell != null && focusedCell.getColumn() > 0) {
             int selectedColumn = focusedCell.getColumn() - 1;
@@ -953,8 +1346,8 @@ public class MainController {
     public void handleCopy() {
         int selectedRow = tableView.getSelectionModel().getSelectedIndex();
         @SuppressWarnings("unchecked")
-        TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-            (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+        TablePosition<CSVRow, ?> focusedCell = 
+            (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
         
         if (selectedRow >= 0 && focusedCell != null && focusedCell.getColumn() > 0) {
             int selectedColumn = focusedCell.getColumn() - 1;
@@ -979,8 +1372,8 @@ public class MainController {
     public void handlePaste() {
         int selectedRow = tableView.getSelectionModel().getSelectedIndex();
         @SuppressWarnings("unchecked")
-        TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-            (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+        TablePosition<CSVRow, ?> focusedCell = 
+            (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
         
         if (selectedRow >= 0 && focusedCell != null && focusedCell.getColumn() > 0) {
             int selectedColumn = focusedCell.getColumn() - 1;
@@ -1009,8 +1402,8 @@ public class MainController {
     public void handleClearCell() {
         int selectedRow = tableView.getSelectionModel().getSelectedIndex();
         @SuppressWarnings("unchecked")
-        TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-            (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+        TablePosition<CSVRow, ?> focusedCell = 
+            (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
         
         if (selectedRow >= 0 && focusedCell != null && focusedCell.getColumn() > 0) {
             int selectedColumn = focusedCell.getColumn() - 1;
@@ -1029,6 +1422,13 @@ public class MainController {
      */
     @FXML
     public boolean handleExit() {
+        // 正在后台保存时等保存完成再退出，避免中断写入
+        if (saveTask != null) {
+            exitAfterSave = true;
+            updateStatus("正在保存文件，保存完成后退出...");
+            return false;
+        }
+        
         // 如果数据被修改，询问是否保存
         if (dataModified && csvData.getRows() > 0) {
             Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
@@ -1046,9 +1446,8 @@ public class MainController {
             if (result.isPresent()) {
                 if (result.get() == buttonTypeSave) {
                     // 保存数据
-                    if (currentFile != null) {
-                        saveToFile(currentFile);
-                    } else {
+                    File file = currentFile;
+                    if (file == null) {
                         // 如果没有文件路径，执行另存为
                         FileChooser fileChooser = new FileChooser();
                         fileChooser.setTitle("保存CSV文件");
@@ -1056,13 +1455,15 @@ public class MainController {
                             new FileChooser.ExtensionFilter("CSV文件", "*.csv")
                         );
                         
-                        File file = fileChooser.showSaveDialog(getStage());
-                        if (file != null) {
-                            saveToFile(file);
-                        } else {
+                        file = fileChooser.showSaveDialog(getStage());
+                        if (file == null) {
                             return false; // 取消保存
                         }
                     }
+                    // 后台保存，成功后再次执行退出
+                    saveToFile(file);
+                    exitAfterSave = saveTask != null;
+                    return false;
                 } else if (result.get() == buttonTypeCancel) {
                     return false; // 取消退出
                 }
@@ -1072,6 +1473,9 @@ public class MainController {
             }
         }
         
+        // 停止导出线程，未写完的导出文件会被删除
+        exportService.shutdown();
+        
         // 关闭窗口
         Stage stage = getStage();
         if (stage != null) {
@@ -1109,9 +1513,9 @@ public class MainController {
         
         // 添加行号列（如果启用）
         if (settings.isShowLineNumbers()) {
-            TableColumn<ObservableList<CSVCell>, String> rowNumberColumn = new TableColumn<>("#");
+            TableColumn<CSVRow, String> rowNumberColumn = new TableColumn<>("#");
             rowNumberColumn.setCellValueFactory(param -> {
-                int rowIndex = tableView.getItems().indexOf(param.getValue());
+                int rowIndex = param.getValue().getIndex();
                 return new SimpleStringProperty(String.valueOf(rowIndex + 1));
             });
             rowNumberColumn.setEditable(false);
@@ -1127,13 +1531,13 @@ public class MainController {
         // 创建数据列
         for (int i = 0; i < columnCount; i++) {
             final int columnIndex = i;
-            TableColumn<ObservableList<CSVCell>, String> column = new TableColumn<>("列 " + (i + 1));
+            TableColumn<CSVRow, String> column = new TableColumn<>("列 " + (i + 1));
             
-            // 设置单元格值工厂
+            // 设置单元格值工厂（单元格属性按需创建，不常驻内存）
             column.setCellValueFactory(param -> {
-                ObservableList<CSVCell> row = param.getValue();
+                CSVRow row = param.getValue();
                 if (columnIndex < row.size()) {
-                    return row.get(columnIndex).valueProperty();
+                    return row.getCell(columnIndex).valueProperty();
                 }
                 return new SimpleStringProperty("");
             });
@@ -1144,11 +1548,9 @@ public class MainController {
                 saveHistory();
                 dataModified = true;
                 int row = event.getTablePosition().getRow();
+                // 自动标记会随单元格修改增量更新
                 csvData.setCellValue(row, columnIndex, event.getNewValue());
                 
-                // 单元格编辑后，重新检查该单元格的自动标记规则
-                reapplyAutoMarkForCell(row, columnIndex);
-                
                 updatePositionLabel();
                 // 刷新该单元格的显示
                 tableView.refresh();
@@ -1168,9 +1570,9 @@ public class MainController {
         
         // 设置行工厂，用于优化无效行的显示样式、右键菜单和拖动功能
         tableView.setRowFactory(tv -> {
-            TableRow<ObservableList<CSVCell>> row = new TableRow<>() {
+            TableRow<CSVRow> row = new TableRow<>() {
                 @Override
-                protected void updateItem(ObservableList<CSVCell> item, boolean empty) {
+                protected void updateItem(CSVRow item, boolean empty) {
                     super.updateItem(item, empty);
                     
                     if (empty || item == null) {
@@ -1229,7 +1631,7 @@ public class MainController {
     /**
      * 更新行的样式（包括选中状态和高亮）
      */
-    private void updateRowStyle(TableRow<ObservableList<CSVCell>> row, int rowIndex) {
+    private void updateRowStyle(TableRow<CSVRow> row, int rowIndex) {
         // 检查是否为标题行（首行且启用了首行为标题选项）
         boolean shouldBeHeader = settings.isFirstRowAsHeader() && rowIndex == 0;
         boolean hasHeaderClass = row.getStyleClass().contains("header-row");
@@ -1312,22 +1714,79 @@ public class MainController {
     
     /**
      * 保存到文件
+     * 在界面线程取一份快照，由后台线程写入同一目录下的临时文件、刷新到磁盘后原子替换目标文件，
+     * 保存期间可以继续编辑，状态栏显示保存进度和写入速度
      */
     private void saveToFile(File file) {
-        try {
-            csvService.setLineEnding(settings.getLineEndingString());
-            csvService.saveToFile(csvData, file);
-            dataModified = false;
-            updateStatus("已保存文件: " + file.getName() + " (" + 
-                       csvData.getRows() + "行 x " + csvData.getColumns() + "列)");
-            showInfo("保存成功", "文件已成功保存到: " + file.getAbsolutePath());
-        } catch (IOException e) {
-            showError("保存文件失败", 
-                     "无法写入文件，请检查文件路径和权限。\n\n错误信息: " + e.getMessage());
-        } catch (Exception e) {
-            showError("保存文件失败", 
-                     "保存CSV文件时发生错误。\n\n错误信息: " + e.getMessage());
+        if (loadTask != null) {
+            showInfo("提示", "文件仍在加载中，请等待加载完成或取消加载后再保存");
+            return;
+        }
+        if (saveTask != null) {
+            showInfo("提示", "正在保存文件，请等待保存完成");
+            return;
+        }
+        if (ExportService.replacesMappedSource(csvData, file)) {
+            showError("无法覆盖原文件", "文件 " + file.getName() + " 正以内存映射方式打开，"
+                + "Windows 不允许覆盖仍被映射的文件。\n\n请使用“另存为”保存到其他文件。");
+            return;
         }
+        
+        csvService.setLineEnding(settings.getLineEndingString());
+        CSVData snapshot = csvData.snapshot();
+        int rows = snapshot.getRows();
+        int columns = snapshot.getColumns();
+        long startTime = System.nanoTime();
+        
+        javafx.concurrent.Task<Long> task = new javafx.concurrent.Task<>() {
+            @Override
+            protected Long call() throws Exception {
+                return csvService.saveToFile(snapshot, file, (done, total, bytesWritten) -> {
+                    double megabytes = bytesWritten / (1024.0 * 1024.0);
+                    double seconds = (System.nanoTime() - startTime) / 1e9;
+                    updateMessage(String.format("正在保存 %s: %,d / %,d 行 | %.1f MB | %.1f MB/秒",
+                        file.getName(), done, total, megabytes, seconds > 0 ? megabytes / seconds : 0));
+                });
+            }
+        };
+        task.messageProperty().addListener((obs, oldMessage, newMessage) -> {
+            if (saveTask == task && newMessage != null && !newMessage.isEmpty()) {
+                updateStatus(newMessage);
+            }
+        });
+        
+        task.setOnSucceeded(event -> {
+            saveTask = null;
+            double megabytes = task.getValue() / (1024.0 * 1024.0);
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            updateStatus(String.format("已保存文件: %s (%d行 x %d列，%.1f MB，用时 %.2f 秒，%.1f MB/秒)",
+                file.getName(), rows, columns, megabytes, seconds, seconds > 0 ? megabytes / seconds : 0));
+            if (exitAfterSave) {
+                exitAfterSave = false;
+                handleExit();
+            }
+        });
+        
+        task.setOnFailed(event -> {
+            saveTask = null;
+            exitAfterSave = false;
+            dataModified = true; // 快照中的修改没有保存下来
+            updateStatus("保存失败: " + file.getName());
+            Throwable exception = task.getException();
+            if (exception instanceof IOException) {
+                showError("保存文件失败", 
+                         "无法写入文件，请检查文件路径和权限。原文件未被修改。\n\n错误信息: " + exception.getMessage());
+            } else {
+                showError("保存文件失败", 
+                         "保存CSV文件时发生错误。原文件未被修改。\n\n错误信息: " + exception.getMessage());
+            }
+        });
+        
+        // 快照之后的编辑会重新标记为已修改
+        dataModified = false;
+        saveTask = task;
+        updateStatus("正在保存 " + file.getName() + "...");
+        exportService.getExecutor().execute(task);
     }
     
     /**
@@ -1436,8 +1895,8 @@ public class MainController {
         
         int selectedRow = tableView.getSelectionModel().getSelectedIndex();
         @SuppressWarnings("unchecked")
-        TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-            (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+        TablePosition<CSVRow, ?> focusedCell = 
+            (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
         
         if (selectedRow >= 0 && focusedCell != null && focusedCell.getColumn() > 0) {
             // 减1是因为第一列是行号列
@@ -1448,12 +1907,217 @@ public class MainController {
         } else {
             positionLabel.setText("未选中");
         }
+        updateColumnStatsLabel();
+    }
+    
+    /**
+     * 在状态栏显示焦点所在列的实时汇总
+     * 汇总随编辑增量更新；还没有建立时先扫描该列（大表格在后台扫描）；
+     * 只有最值过期时其余汇总照常显示，最值在后台重新扫描
+     */
+    private void updateColumnStatsLabel() {
+        if (columnStatsLabel == null || columnAggregates == null) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        TablePosition<CSVRow, ?> focusedCell = 
+            (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
+        if (focusedCell == null || focusedCell.getColumn() <= 0 || focusedCell.getColumn() > csvData.getColumns()) {
+            columnStatsLabel.setText("—");
+            return;
+        }
+        int column = focusedCell.getColumn() - 1;
+        ColumnAggregates.Column aggregate = columnAggregates.get(column);
+        if (aggregate == null) {
+            if (loadTask != null) {
+                columnStatsLabel.setText("—");
+            } else if (csvData.getRows() < BACKGROUND_AGGREGATE_ROWS) {
+                // 在界面线程中同步扫描，直接读取数据
+                columnAggregates.install(column, ColumnAggregates.scan(csvData, column, null),
+                    columnAggregates.getModCount());
+            } else {
+                scanColumnAggregate(column);
+            }
+            return;
+        }
+        boolean extremaValid = aggregate.isExtremaValid();
+        if (!extremaValid && loadTask == null) {
+            scanColumnAggregate(column);
+        }
+        if (aggregate.getNumericCount() > 0) {
+            columnStatsLabel.setText(String.format("数值 %,d | 求和 %s | 平均 %s | 标准差 %s | 最小 %s | 最大 %s",
+                aggregate.getNumericCount(), formatStatValue(aggregate.getSum()), formatStatValue(aggregate.getMean()),
+                formatStatValue(Math.sqrt(aggregate.getVariance())),
+                extremaValid ? formatStatValue(aggregate.getMin()) : "...",
+                extremaValid ? formatStatValue(aggregate.getMax()) : "..."));
+        } else {
+            columnStatsLabel.setText(String.format("非空 %,d | 空 %,d | 平均长度 %.1f",
+                aggregate.getNonEmptyCount(), aggregate.getEmptyCount(), aggregate.getAverageLength()));
+        }
+    }
+    
+    private static String formatStatValue(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.format("%,d", (long) value);
+        }
+        return String.format("%,.4f", value);
+    }
+    
+    /**
+     * 在后台扫描一列的汇总（首次建立或最值过期时），扫描数据快照，扫描期间数据被修改时重新扫描
+     */
+    private void scanColumnAggregate(int column) {
+        if (aggregateTask != null) {
+            if (aggregateTaskColumn == column) {
+                return;
+            }
+            aggregateTask.cancel();
+        }
+        if (columnAggregates.get(column) == null) {
+            columnStatsLabel.setText("统计中...");
+        }
+        ColumnAggregates aggregates = columnAggregates;
+        // 扫描只读取快照，修改计数决定扫描结果能否安装
+        CSVData snapshot = csvData.snapshot();
+        long modCount = aggregates.getModCount();
+        javafx.concurrent.Task<ColumnAggregates.Column> task =
+            new javafx.concurrent.Task<>() {
+                @Override
+                protected ColumnAggregates.Column call() {
+                    return ColumnAggregates.scan(snapshot, column, this::isCancelled);
+                }
+            };
+        task.setOnSucceeded(event -> {
+            if (aggregateTask != task) {
+                return;
+            }
+            aggregateTask = null;
+            aggregateTaskColumn = -1;
+            if (aggregates != columnAggregates || task.getValue() == null) {
+                return;
+            }
+            if (!aggregates.install(column, task.getValue(), modCount)) {
+                // 扫描期间数据被修改
+                updateColumnStatsLabel();
+            }
+        });
+        task.setOnFailed(event -> {
+            if (aggregateTask == task) {
+                aggregateTask = null;
+                aggregateTaskColumn = -1;
+                Throwable error = task.getException();
+                columnStatsLabel.setText("—");
+                updateStatus("统计列汇总失败: " + (error != null ? error.getMessage() : "未知错误"));
+            }
+        });
+        aggregateTask = task;
+        aggregateTaskColumn = column;
+        Thread thread = new Thread(task, "column-aggregate");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * 让高亮和自动标记跟随当前数据的行列变化
+     */
+    private void attachDataListeners() {
+        // 换了一份数据，旧数据上的搜索没有意义
+        searchDataChanged();
+        csvData.addDataListener(new SearchInvalidator());
+        csvData.addDataListener(highlightManager);
+        autoMarkManager.attach(csvData);
+        if (fuzzyIndex != null) {
+            fuzzyIndex.close();
+        }
+        fuzzyIndex = new FuzzyIndex(csvData);
+        csvData.addDataListener(fuzzyIndex);
+        if (columnAggregates != null) {
+            columnAggregates.close();
+        }
+        if (aggregateTask != null) {
+            aggregateTask.cancel();
+            aggregateTask = null;
+            aggregateTaskColumn = -1;
+        }
+        columnAggregates = new ColumnAggregates(csvData);
+        csvData.addDataListener(columnAggregates);
+        columnAggregates.setOnChanged(this::updateColumnStatsLabel);
+        rebuildSearchIndex();
+    }
+    
+    /**
+     * 在后台为当前表格建立搜索索引
+     * 小表格直接扫描已经足够快，不建立索引；渐进式加载结束后再建立；
+     * 索引从数据快照建立，建立期间表格被修改时重新建立
+     */
+    private void rebuildSearchIndex() {
+        if (indexTask != null) {
+            indexTask.cancel();
+            indexTask = null;
+        }
+        if (searchIndex != null) {
+            searchIndex.close();
+            searchIndex = null;
+        }
+        if (!settings.isSearchIndexEnabled() || loadTask != null
+                || (long) csvData.getRows() * csvData.getColumns() < SEARCH_INDEX_MIN_CELLS) {
+            return;
+        }
+        
+        TrigramIndex index = new TrigramIndex(csvData, settings.getSearchIndexMemoryLimit() * 1024L * 1024L);
+        csvData.addDataListener(index);
+        // 后台线程只读取快照；之后的修改由监听器标记本次构建作废
+        CSVData snapshot = csvData.snapshot();
+        long startTime = System.nanoTime();
+        
+        javafx.concurrent.Task<Boolean> task = new javafx.concurrent.Task<>() {
+            @Override
+            protected Boolean call() {
+                return index.build(snapshot, this::isCancelled);
+            }
+        };
+        task.setOnSucceeded(event -> {
+            if (indexTask != task) {
+                return;
+            }
+            indexTask = null;
+            if (!task.getValue()) {
+                // 建立期间表格被修改
+                rebuildSearchIndex();
+                return;
+            }
+            updateStatus(String.format("搜索索引已建立: %,d 个三元组（%,d 个因内存上限未索引），约 %.1f MB，用时 %.1f 秒",
+                index.getTrigramCount(), index.getSaturatedCount(), index.estimateMemoryBytes() / 1048576.0,
+                (System.nanoTime() - startTime) / 1e9));
+        });
+        task.setOnFailed(event -> {
+            if (indexTask != task) {
+                return;
+            }
+            indexTask = null;
+            index.close();
+            if (searchIndex == index) {
+                searchIndex = null;
+            }
+            System.err.println("建立搜索索引失败: " + task.getException());
+            updateStatus("建立搜索索引失败，搜索将逐行扫描");
+        });
+        
+        searchIndex = index;
+        indexTask = task;
+        Thread thread = new Thread(task, "search-index");
+        thread.setDaemon(true);
+        thread.start();
     }
     
     /**
      * 保存当前状态到历史记录
      */
     private void saveHistory() {
+        // 渐进式加载期间数据还不完整，不记录历史
+        if (loadTask != null) {
+            return;
+        }
         historyManager.saveState(csvData);
         updateUndoButton();
     }
@@ -1490,8 +2154,8 @@ public class MainController {
         encodingCombo.getItems().addAll("UTF-8", "GBK", "GB2312", "ISO-8859-1");
         encodingCombo.setValue(settings.getDefaultEncoding());
         
-        // 历史记录大小
-        TextField historyField = new TextField(String.valueOf(settings.getMaxHistorySize()));
+        // 历史记录内存上限（MB）
+        TextField historyField = new TextField(String.valueOf(settings.getHistoryMemoryLimit()));
         
         // 换行符类型
         ComboBox<String> lineEndingCombo = new ComboBox<>();
@@ -1513,7 +2177,7 @@ public class MainController {
         grid.add(new Label("默认编码:"), 0, row);
         grid.add(encodingCombo, 1, row++);
         
-        grid.add(new Label("撤销历史数:"), 0, row);
+        grid.add(new Label("撤销历史内存上限(MB):"), 0, row);
         grid.add(historyField, 1, row++);
         
         grid.add(new Label("换行符:"), 0, row);
@@ -1571,6 +2235,25 @@ public class MainController {
         grid.add(new Label("显示行号:"), 0, row);
         grid.add(showLineNumbersCheck, 1, row++);
         
+        // 大文件渐进式打开
+        CheckBox progressiveOpenCheck = new CheckBox();
+        progressiveOpenCheck.setSelected(settings.isProgressiveOpen());
+        
+        grid.add(new Label("大文件边加载边显示:"), 0, row);
+        grid.add(progressiveOpenCheck, 1, row++);
+        
+        // 搜索索引
+        CheckBox searchIndexCheck = new CheckBox();
+        searchIndexCheck.setSelected(settings.isSearchIndexEnabled());
+        
+        grid.add(new Label("为大表格建立搜索索引:"), 0, row);
+        grid.add(searchIndexCheck, 1, row++);
+        
+        TextField searchIndexMemoryField = new TextField(String.valueOf(settings.getSearchIndexMemoryLimit()));
+        
+        grid.add(new Label("搜索索引内存上限(MB):"), 0, row);
+        grid.add(searchIndexMemoryField, 1, row++);
+        
         // 添加分隔符
         grid.add(new Separator(), 0, row++, 2, 1);
         Label tableSizeLabel = new Label("表格尺寸设置：");
@@ -1648,7 +2331,7 @@ public class MainController {
             if (dialogButton == saveButtonType) {
                 try {
                     settings.setDefaultEncoding(encodingCombo.getValue());
-                    settings.setMaxHistorySize(Integer.parseInt(historyField.getText()));
+                    settings.setHistoryMemoryLimit(Integer.parseInt(historyField.getText()));
                     settings.setLineEnding(lineEndingCombo.getValue());
                     settings.setAutoSaveEnabled(autoSaveCheck.isSelected());
                     settings.setAutoSaveInterval(Integer.parseInt(autoSaveIntervalField.getText()));
@@ -1659,6 +2342,11 @@ public class MainController {
                     settings.setEscapeMode(escapeModeCombo.getValue());
                     settings.setFirstRowAsHeader(firstRowAsHeaderCheck.isSelected());
                     settings.setShowLineNumbers(showLineNumbersCheck.isSelected());
+                    settings.setProgressiveOpen(progressiveOpenCheck.isSelected());
+                    boolean searchIndexChanged = settings.isSearchIndexEnabled() != searchIndexCheck.isSelected()
+                        || settings.getSearchIndexMemoryLimit() != Integer.parseInt(searchIndexMemoryField.getText());
+                    settings.setSearchIndexEnabled(searchIndexCheck.isSelected());
+                    settings.setSearchIndexMemoryLimit(Integer.parseInt(searchIndexMemoryField.getText()));
                     
                     // 保存列宽和行高设置
                     settings.setColumnWidthMode(columnWidthModeCombo.getValue());
@@ -1672,9 +2360,13 @@ public class MainController {
                     
                     settings.save();
                     
-                    // 重新初始化历史管理器
-                    historyManager = new HistoryManager(
-                        settings.getMaxHistorySize());
+                    // 更新历史记录内存上限
+                    historyManager.setMaxBytes(settings.getHistoryMemoryLimit() * 1024L * 1024L);
+                    
+                    // 搜索索引设置变化时重新建立
+                    if (searchIndexChanged) {
+                        rebuildSearchIndex();
+                    }
                     
                     // 更新高亮冲突策略
                     if ("随机策略".equals(conflictStrategyCombo.getValue())) {
@@ -2406,9 +3098,7 @@ public class MainController {
                 for (AutoMarkRule rule : rulesList.getItems()) {
                     autoMarkManager.addRule(rule);
                 }
-                autoMarkManager.applyRules(csvData);
-                refreshTable();
-                updateStatus("已应用 " + rulesList.getItems().size() + " 条自动标记规则");
+                applyAutoMarkRules();
                 return true;
             } else if (dialogButton == clearAllButtonType) {
                 // 清除所有自动标记
@@ -2590,15 +3280,16 @@ public class MainController {
         calculateButton.setStyle("-fx-background-color: #2196F3; -fx-text-fill: white;");
         calculateButton.setDisable(true);
         
-        columnComboBox.setOnAction(e -> {
-            calculateButton.setDisable(columnComboBox.getValue() == null);
-        });
-        
         // 选项：是否包含表头
         javafx.scene.control.CheckBox includeHeaderCheckBox = new javafx.scene.control.CheckBox("第一行是表头（排除在统计之外）");
         includeHeaderCheckBox.setSelected(true);
         
-        leftPane.getChildren().addAll(selectLabel, columnComboBox, includeHeaderCheckBox, calculateButton);
+        // 选项：近似统计（大表格默认开启）
+        javafx.scene.control.CheckBox approximateCheckBox = new javafx.scene.control.CheckBox("近似统计（内存占用固定，适合超大列）");
+        approximateCheckBox.setWrapText(true);
+        approximateCheckBox.setSelected(csvData.getRows() > APPROXIMATE_STATISTICS_ROWS);
+        
+        leftPane.getChildren().addAll(selectLabel, columnComboBox, includeHeaderCheckBox, approximateCheckBox, calculateButton);
         
         // ========== 右侧统计结果显示 ==========
         javafx.scene.layout.VBox rightPane = new javafx.scene.layout.VBox(10);
@@ -2626,17 +3317,80 @@ public class MainController {
         
         rightPane.getChildren().addAll(resultLabel, resultArea, copyResultButton);
         
-        // 计算按钮事件
+        // 选择列时先显示增量维护的汇总，不需要扫描
+        columnComboBox.setOnAction(e -> {
+            calculateButton.setDisable(columnComboBox.getValue() == null);
+            showColumnAggregatePreview(columnComboBox.getSelectionModel().getSelectedIndex(), resultArea);
+        });
+        
+        // 计算按钮事件：在后台线程中统计，关闭对话框时取消
+        java.util.concurrent.atomic.AtomicReference<javafx.concurrent.Task<ColumnStatistics>> statisticsTask =
+            new java.util.concurrent.atomic.AtomicReference<>();
         calculateButton.setOnAction(e -> {
             String selected = columnComboBox.getValue();
-            if (selected != null) {
-                // 提取列索引
-                int columnIndex = columnComboBox.getSelectionModel().getSelectedIndex();
-                boolean excludeHeader = includeHeaderCheckBox.isSelected();
-                
-                // 计算统计信息
-                String statistics = calculateColumnStatistics(columnIndex, excludeHeader);
-                resultArea.setText(statistics);
+            if (selected == null) {
+                return;
+            }
+            int columnIndex = columnComboBox.getSelectionModel().getSelectedIndex();
+            int startRow = includeHeaderCheckBox.isSelected() ? 1 : 0;
+            boolean approximate = approximateCheckBox.isSelected();
+            CSVData data = csvData;
+            int totalRows = data.getRows() - startRow;
+            if (totalRows <= 0) {
+                resultArea.setText("没有足够的数据进行统计计算");
+                return;
+            }
+            if (statisticsTask.get() != null) {
+                statisticsTask.get().cancel();
+            }
+            
+            javafx.concurrent.Task<ColumnStatistics> task = new javafx.concurrent.Task<>() {
+                @Override
+                protected ColumnStatistics call() {
+                    return statisticsService.compute(data, columnIndex, startRow, approximate,
+                        java.util.concurrent.ForkJoinPool.commonPool(),
+                        done -> updateProgress(done, totalRows), this::isCancelled);
+                }
+            };
+            task.progressProperty().addListener((obs, oldValue, newValue) -> {
+                if (statisticsTask.get() == task && newValue.doubleValue() >= 0) {
+                    resultArea.setText(String.format("正在统计... %.0f%%", newValue.doubleValue() * 100));
+                }
+            });
+            long startTime = System.nanoTime();
+            task.setOnSucceeded(event -> {
+                if (statisticsTask.get() != task) {
+                    return;
+                }
+                statisticsTask.set(null);
+                calculateButton.setDisable(false);
+                if (task.getValue() != null) {
+                    resultArea.setText(formatColumnStatistics(task.getValue()));
+                    updateStatus(String.format("列统计完成（%,d 行，用时 %.2f 秒）", totalRows,
+                        (System.nanoTime() - startTime) / 1e9));
+                }
+            });
+            task.setOnFailed(event -> {
+                if (statisticsTask.get() != task) {
+                    return;
+                }
+                statisticsTask.set(null);
+                calculateButton.setDisable(false);
+                Throwable error = task.getException();
+                resultArea.setText("统计失败: " + (error != null ? error.getMessage() : "未知错误"));
+            });
+            
+            statisticsTask.set(task);
+            calculateButton.setDisable(true);
+            resultArea.setText("正在统计...");
+            Thread thread = new Thread(task, "column-statistics");
+            thread.setDaemon(true);
+            thread.start();
+        });
+        dialog.setOnHidden(e -> {
+            javafx.concurrent.Task<ColumnStatistics> running = statisticsTask.getAndSet(null);
+            if (running != null) {
+                running.cancel();
             }
         });
         
@@ -2648,99 +3402,213 @@ public class MainController {
     }
     
     /**
-     * 计算指定列的统计信息
+     * 显示整表概况对话框
+     * 每列一个磁贴，所有列在线程池中并行统计，每完成一列就刷新对应的磁贴
      */
-    private String calculateColumnStatistics(int columnIndex, boolean excludeHeader) {
-        StringBuilder result = new StringBuilder();
+    private void showProfileDialog() {
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("表格概况");
+        dialog.setHeaderText("并行统计所有列，完成一列显示一列");
         
-        int startRow = excludeHeader ? 1 : 0;
-        int totalRows = csvData.getRows();
+        ButtonType closeButtonType = new ButtonType("关闭", ButtonBar.ButtonData.CANCEL_CLOSE);
+        dialog.getDialogPane().getButtonTypes().add(closeButtonType);
         
-        if (startRow >= totalRows) {
-            return "没有足够的数据进行统计计算";
-        }
+        CSVData data = csvData;
+        int columns = data.getColumns();
         
-        // 收集列数据
-        java.util.List<String> allValues = new java.util.ArrayList<>();
-        java.util.List<Double> numericValues = new java.util.ArrayList<>();
-        int emptyCount = 0;
-        int nonEmptyCount = 0;
+        // ========== 顶部选项 ==========
+        javafx.scene.control.CheckBox includeHeaderCheckBox = new javafx.scene.control.CheckBox("第一行是表头（排除在统计之外）");
+        includeHeaderCheckBox.setSelected(true);
+        javafx.scene.control.CheckBox approximateCheckBox = new javafx.scene.control.CheckBox("近似统计（内存占用固定）");
+        approximateCheckBox.setSelected((long) data.getRows() * columns > APPROXIMATE_PROFILE_CELLS);
+        Button startButton = new Button("开始统计");
+        startButton.setStyle("-fx-background-color: #2196F3; -fx-text-fill: white;");
+        Label progressLabel = new Label(String.format("共 %d 列", columns));
+        
+        javafx.scene.layout.HBox optionsBox = new javafx.scene.layout.HBox(15,
+            includeHeaderCheckBox, approximateCheckBox, startButton, progressLabel);
+        optionsBox.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+        optionsBox.setPadding(new javafx.geometry.Insets(0, 0, 10, 0));
+        
+        // ========== 每列一个磁贴 ==========
+        eu.hansolo.tilesfx.Tile[] tiles = new eu.hansolo.tilesfx.Tile[columns];
+        javafx.scene.layout.FlowPane tilePane = new javafx.scene.layout.FlowPane(8, 8);
+        tilePane.setPadding(new javafx.geometry.Insets(8));
+        tilePane.setPrefWrapLength(900);
+        for (int col = 0; col < columns; col++) {
+            String header = data.getCellValue(0, col);
+            String title = header != null && !header.trim().isEmpty() ? "列 " + col + " (" + header + ")" : "列 " + col;
+            tiles[col] = eu.hansolo.tilesfx.TileBuilder.create()
+                .skinType(eu.hansolo.tilesfx.Tile.SkinType.TEXT)
+                .prefSize(210, 170)
+                .title(title)
+                .text("等待统计")
+                .description("")
+                .descriptionAlignment(javafx.geometry.Pos.TOP_LEFT)
+                .textVisible(true)
+                .build();
+            tilePane.getChildren().add(tiles[col]);
+        }
+        javafx.scene.control.ScrollPane scrollPane = new javafx.scene.control.ScrollPane(tilePane);
+        scrollPane.setFitToWidth(true);
+        scrollPane.setPrefSize(920, 560);
         
-        for (int i = startRow; i < totalRows; i++) {
-            String value = csvData.getCellValue(i, columnIndex);
-            allValues.add(value);
+        javafx.scene.layout.BorderPane mainPane = new javafx.scene.layout.BorderPane();
+        mainPane.setTop(optionsBox);
+        mainPane.setCenter(scrollPane);
+        
+        // 开始按钮事件：后台线程提交所有列，工作线程交付的结果由 FX 线程批量刷新磁贴
+        java.util.concurrent.atomic.AtomicReference<javafx.concurrent.Task<Boolean>> profileTask =
+            new java.util.concurrent.atomic.AtomicReference<>();
+        startButton.setOnAction(e -> {
+            int startRow = includeHeaderCheckBox.isSelected() ? 1 : 0;
+            boolean approximate = approximateCheckBox.isSelected();
+            if (data.getRows() - startRow <= 0) {
+                progressLabel.setText("没有足够的数据进行统计计算");
+                return;
+            }
+            for (eu.hansolo.tilesfx.Tile tile : tiles) {
+                tile.setText("计算中...");
+                tile.setDescription("");
+            }
             
-            if (value == null || value.trim().isEmpty()) {
-                emptyCount++;
-            } else {
-                nonEmptyCount++;
-                // 尝试解析为数字
-                try {
-                    double numValue = Double.parseDouble(value.trim());
-                    numericValues.add(numValue);
-                } catch (NumberFormatException e) {
-                    // 不是数字，忽略
+            java.util.concurrent.ConcurrentLinkedQueue<ColumnStatistics> pending = new java.util.concurrent.ConcurrentLinkedQueue<>();
+            java.util.concurrent.atomic.AtomicBoolean drainScheduled = new java.util.concurrent.atomic.AtomicBoolean();
+            int[] finished = {0};
+            Runnable drain = () -> {
+                ColumnStatistics stats;
+                while ((stats = pending.poll()) != null) {
+                    updateProfileTile(tiles[stats.getColumn()], stats);
+                    finished[0]++;
                 }
+                progressLabel.setText(String.format("已完成 %d / %d 列", finished[0], columns));
+            };
+            
+            javafx.concurrent.Task<Boolean> task = new javafx.concurrent.Task<>() {
+                @Override
+                protected Boolean call() {
+                    return statisticsService.profile(data, startRow, approximate,
+                        java.util.concurrent.ForkJoinPool.commonPool(), stats -> {
+                            pending.add(stats);
+                            if (drainScheduled.compareAndSet(false, true)) {
+                                javafx.application.Platform.runLater(() -> {
+                                    drainScheduled.set(false);
+                                    if (profileTask.get() == this) {
+                                        drain.run();
+                                    }
+                                });
+                            }
+                        }, this::isCancelled);
+                }
+            };
+            long startTime = System.nanoTime();
+            task.setOnSucceeded(event -> {
+                if (profileTask.get() != task) {
+                    return;
+                }
+                profileTask.set(null);
+                drain.run();
+                startButton.setDisable(false);
+                if (Boolean.TRUE.equals(task.getValue())) {
+                    double seconds = (System.nanoTime() - startTime) / 1e9;
+                    progressLabel.setText(String.format("已完成 %d 列，用时 %.2f 秒", columns, seconds));
+                    updateStatus(String.format("表格概况完成（%d 列 × %,d 行，用时 %.2f 秒）",
+                        columns, data.getRows() - startRow, seconds));
+                }
+            });
+            task.setOnFailed(event -> {
+                if (profileTask.get() != task) {
+                    return;
+                }
+                profileTask.set(null);
+                startButton.setDisable(false);
+                Throwable error = task.getException();
+                progressLabel.setText("统计失败: " + (error != null ? error.getMessage() : "未知错误"));
+            });
+            
+            profileTask.set(task);
+            startButton.setDisable(true);
+            progressLabel.setText(String.format("已完成 0 / %d 列", columns));
+            Thread thread = new Thread(task, "table-profile");
+            thread.setDaemon(true);
+            thread.start();
+        });
+        dialog.setOnHidden(e -> {
+            javafx.concurrent.Task<Boolean> running = profileTask.getAndSet(null);
+            if (running != null) {
+                running.cancel();
             }
+        });
+        
+        dialog.getDialogPane().setContent(mainPane);
+        dialog.setResizable(true);
+        dialog.showAndWait();
+    }
+    
+    /**
+     * 用一列的统计结果刷新磁贴
+     */
+    private void updateProfileTile(eu.hansolo.tilesfx.Tile tile, ColumnStatistics stats) {
+        StringBuilder description = new StringBuilder();
+        if (stats.getNumericCount() > 0) {
+            tile.setText(stats.getNumericCount() == stats.getNonEmptyCount() ? "数值列" : "混合列");
+            description.append(String.format("数值: %,d\n", stats.getNumericCount()));
+            description.append("平均值: ").append(formatStatValue(stats.getMean())).append("\n");
+            description.append("中位数: ").append(formatStatValue(stats.getMedian()))
+                .append(stats.isApproximate() ? " ≈\n" : "\n");
+            description.append("范围: ").append(formatStatValue(stats.getMin()))
+                .append(" ~ ").append(formatStatValue(stats.getMax())).append("\n");
+            description.append("标准差: ").append(formatStatValue(stats.getStandardDeviation())).append("\n");
+        } else if (stats.getNonEmptyCount() > 0) {
+            tile.setText("文本列");
+            description.append(String.format("非空: %,d\n", stats.getNonEmptyCount()));
+            description.append(String.format("唯一值: %,d%s\n", stats.getUniqueCount(), stats.isApproximate() ? " ≈" : ""));
+            description.append(String.format("平均长度: %.1f\n", stats.getAverageLength()));
+        } else {
+            tile.setText("空列");
         }
+        description.append(String.format("空值: %,d / %,d", stats.getEmptyCount(), stats.getTotalRows()));
+        tile.setDescription(description.toString());
+    }
+    
+    /**
+     * 生成列统计报告
+     */
+    private String formatColumnStatistics(ColumnStatistics stats) {
+        StringBuilder result = new StringBuilder();
         
         // 生成统计报告
         result.append("═══════════════════════════════════════\n");
-        result.append("            列统计报告\n");
+        result.append(stats.isApproximate() ? "          列统计报告（近似）\n" : "            列统计报告\n");
         result.append("═══════════════════════════════════════\n\n");
         
         // 基本信息
         result.append("【基本信息】\n");
-        result.append(String.format("  列索引: %d\n", columnIndex));
-        result.append(String.format("  总行数: %d\n", totalRows - startRow));
-        result.append(String.format("  非空行数: %d\n", nonEmptyCount));
-        result.append(String.format("  空行数: %d\n", emptyCount));
-        result.append(String.format("  数值行数: %d\n", numericValues.size()));
+        result.append(String.format("  列索引: %d\n", stats.getColumn()));
+        result.append(String.format("  总行数: %d\n", stats.getTotalRows()));
+        result.append(String.format("  非空行数: %d\n", stats.getNonEmptyCount()));
+        result.append(String.format("  空行数: %d\n", stats.getEmptyCount()));
+        result.append(String.format("  数值行数: %d\n", stats.getNumericCount()));
         result.append("\n");
         
-        // 如果有数值数据，计算数值统计
-        if (!numericValues.isEmpty()) {
+        // 如果有数值数据，输出数值统计
+        if (stats.getNumericCount() > 0) {
             result.append("【数值统计】\n");
-            
-            // 排序用于中位数和四分位数计算
-            java.util.List<Double> sortedValues = new java.util.ArrayList<>(numericValues);
-            java.util.Collections.sort(sortedValues);
-            
-            // 总和
-            double sum = numericValues.stream().mapToDouble(Double::doubleValue).sum();
-            result.append(String.format("  总和: %.4f\n", sum));
-            
-            // 平均值
-            double mean = sum / numericValues.size();
-            result.append(String.format("  平均值: %.4f\n", mean));
-            
-            // 中位数
-            double median = calculateMedian(sortedValues);
-            result.append(String.format("  中位数: %.4f\n", median));
-            
-            // 最大值和最小值
-            double max = sortedValues.get(sortedValues.size() - 1);
-            double min = sortedValues.get(0);
-            result.append(String.format("  最大值: %.4f\n", max));
-            result.append(String.format("  最小值: %.4f\n", min));
-            result.append(String.format("  范围: %.4f\n", max - min));
-            
-            // 四分位数
-            double q1 = calculatePercentile(sortedValues, 25);
-            double q3 = calculatePercentile(sortedValues, 75);
-            result.append(String.format("  第一四分位数 (Q1): %.4f\n", q1));
-            result.append(String.format("  第三四分位数 (Q3): %.4f\n", q3));
-            result.append(String.format("  四分位距 (IQR): %.4f\n", q3 - q1));
-            
-            // 标准差和方差
-            double variance = calculateVariance(numericValues, mean);
-            double stdDev = Math.sqrt(variance);
-            result.append(String.format("  方差: %.4f\n", variance));
-            result.append(String.format("  标准差: %.4f\n", stdDev));
+            result.append(String.format("  总和: %.4f\n", stats.getSum()));
+            result.append(String.format("  平均值: %.4f\n", stats.getMean()));
+            result.append(String.format("  中位数: %.4f%s\n", stats.getMedian(), rankErrorNote(stats, 2)));
+            result.append(String.format("  最大值: %.4f\n", stats.getMax()));
+            result.append(String.format("  最小值: %.4f\n", stats.getMin()));
+            result.append(String.format("  范围: %.4f\n", stats.getMax() - stats.getMin()));
+            result.append(String.format("  第一四分位数 (Q1): %.4f%s\n", stats.getQ1(), rankErrorNote(stats, 1)));
+            result.append(String.format("  第三四分位数 (Q3): %.4f%s\n", stats.getQ3(), rankErrorNote(stats, 3)));
+            result.append(String.format("  四分位距 (IQR): %.4f\n", stats.getQ3() - stats.getQ1()));
+            result.append(String.format("  方差: %.4f\n", stats.getVariance()));
+            result.append(String.format("  标准差: %.4f\n", stats.getStandardDeviation()));
             
             // 变异系数
-            if (mean != 0) {
-                double cv = (stdDev / Math.abs(mean)) * 100;
+            if (stats.getMean() != 0) {
+                double cv = (stats.getStandardDeviation() / Math.abs(stats.getMean())) * 100;
                 result.append(String.format("  变异系数: %.2f%%\n", cv));
             }
             
@@ -2752,45 +3620,44 @@ public class MainController {
         
         // 文本统计
         result.append("【文本统计】\n");
-        if (nonEmptyCount > 0) {
-            // 最长和最短的文本
-            String longest = "";
-            String shortest = null;
-            int totalLength = 0;
-            
-            for (String value : allValues) {
-                if (value != null && !value.trim().isEmpty()) {
-                    if (value.length() > longest.length()) {
-                        longest = value;
-                    }
-                    if (shortest == null || value.length() < shortest.length()) {
-                        shortest = value;
-                    }
-                    totalLength += value.length();
-                }
-            }
-            
-            result.append(String.format("  平均长度: %.2f 个字符\n", (double) totalLength / nonEmptyCount));
+        if (stats.getNonEmptyCount() > 0) {
+            String longest = stats.getLongest();
+            result.append(String.format("  平均长度: %.2f 个字符\n", stats.getAverageLength()));
             result.append(String.format("  最长文本长度: %d 个字符\n", longest.length()));
             if (longest.length() <= 50) {
                 result.append(String.format("  最长文本: \"%s\"\n", longest));
             } else {
                 result.append(String.format("  最长文本: \"%s...\"\n", longest.substring(0, 47) + "..."));
             }
-            result.append(String.format("  最短文本长度: %d 个字符\n", shortest != null ? shortest.length() : 0));
-            
-            // 唯一值统计
-            java.util.Set<String> uniqueValues = new java.util.HashSet<>();
-            for (String value : allValues) {
-                if (value != null && !value.trim().isEmpty()) {
-                    uniqueValues.add(value);
-                }
+            result.append(String.format("  最短文本长度: %d 个字符\n", stats.getShortestLength()));
+            if (stats.isApproximate()) {
+                result.append(String.format("  唯一值数量: ≈%d（相对误差约 ±%.1f%%）\n",
+                    stats.getUniqueCount(), stats.getUniqueError() * 100));
+            } else {
+                result.append(String.format("  唯一值数量: %d\n", stats.getUniqueCount()));
             }
-            result.append(String.format("  唯一值数量: %d\n", uniqueValues.size()));
             
             // 重复率
-            double duplicateRate = (1 - (double) uniqueValues.size() / nonEmptyCount) * 100;
-            result.append(String.format("  重复率: %.2f%%\n", duplicateRate));
+            double duplicateRate = Math.max(0, (1 - (double) stats.getUniqueCount() / stats.getNonEmptyCount()) * 100);
+            result.append(String.format("  重复率: %s%.2f%%\n", stats.isApproximate() ? "≈" : "", duplicateRate));
+            
+            // 高频值（近似模式）
+            if (!stats.getFrequentValues().isEmpty()) {
+                result.append("\n【高频值】\n");
+                for (hbnu.project.ergoucsveditior.model.SpaceSaving.Entry entry : stats.getFrequentValues()) {
+                    String value = entry.getValue();
+                    if (value.length() > 30) {
+                        value = value.substring(0, 27) + "...";
+                    }
+                    if (entry.getError() > 0) {
+                        result.append(String.format("  \"%s\": %d ~ %d 次\n", value,
+                            entry.getCount() - entry.getError(), entry.getCount()));
+                    } else {
+                        result.append(String.format("  \"%s\": %d 次\n", value, entry.getCount()));
+                    }
+                }
+                result.append(String.format("  （出现次数超过非空行数的 1/%d 的值一定会列出）\n", stats.getFrequentCapacity()));
+            }
             
         } else {
             result.append("  该列没有非空文本数据\n");
@@ -2802,53 +3669,44 @@ public class MainController {
     }
     
     /**
-     * 计算中位数
+     * 在统计对话框中显示列的实时汇总（已建立时），完整报告仍需点击"计算统计"
      */
-    private double calculateMedian(java.util.List<Double> sortedValues) {
-        int size = sortedValues.size();
-        if (size == 0) {
-            return 0.0;
-        }
-        if (size % 2 == 0) {
-            return (sortedValues.get(size / 2 - 1) + sortedValues.get(size / 2)) / 2.0;
-        } else {
-            return sortedValues.get(size / 2);
-        }
-    }
-    
-    /**
-     * 计算百分位数
-     */
-    private double calculatePercentile(java.util.List<Double> sortedValues, double percentile) {
-        if (sortedValues.isEmpty()) {
-            return 0.0;
+    private void showColumnAggregatePreview(int column, TextArea resultArea) {
+        ColumnAggregates.Column aggregate =
+            columnAggregates != null ? columnAggregates.get(column) : null;
+        if (aggregate == null) {
+            resultArea.clear();
+            return;
         }
-        int size = sortedValues.size();
-        double index = (percentile / 100.0) * (size - 1);
-        int lower = (int) Math.floor(index);
-        int upper = (int) Math.ceil(index);
-        
-        if (lower == upper) {
-            return sortedValues.get(lower);
+        StringBuilder text = new StringBuilder();
+        text.append("【实时汇总】（包含所有行）\n");
+        text.append(String.format("  总行数: %d\n", aggregate.getRows()));
+        text.append(String.format("  非空行数: %d\n", aggregate.getNonEmptyCount()));
+        text.append(String.format("  空行数: %d\n", aggregate.getEmptyCount()));
+        text.append(String.format("  数值行数: %d\n", aggregate.getNumericCount()));
+        if (aggregate.getNumericCount() > 0) {
+            text.append(String.format("  总和: %.4f\n", aggregate.getSum()));
+            text.append(String.format("  平均值: %.4f\n", aggregate.getMean()));
+            if (aggregate.isExtremaValid()) {
+                text.append(String.format("  最大值: %.4f\n", aggregate.getMax()));
+                text.append(String.format("  最小值: %.4f\n", aggregate.getMin()));
+            }
+            text.append(String.format("  标准差: %.4f\n", Math.sqrt(aggregate.getVariance())));
         }
-        
-        double weight = index - lower;
-        return sortedValues.get(lower) * (1 - weight) + sortedValues.get(upper) * weight;
+        text.append(String.format("  平均长度: %.2f 个字符\n", aggregate.getAverageLength()));
+        text.append("\n点击\"计算统计\"查看中位数、四分位数和唯一值等完整报告");
+        resultArea.setText(text.toString());
     }
     
     /**
-     * 计算方差
+     * 近似统计时分位数的误差说明
+     * @param quartile 1 = Q1，2 = 中位数，3 = Q3
      */
-    private double calculateVariance(java.util.List<Double> values, double mean) {
-        if (values.isEmpty()) {
-            return 0.0;
-        }
-        double sumSquaredDiff = 0.0;
-        for (double value : values) {
-            double diff = value - mean;
-            sumSquaredDiff += diff * diff;
+    private String rankErrorNote(ColumnStatistics stats, int quartile) {
+        if (!stats.isApproximate()) {
+            return "";
         }
-        return sumSquaredDiff / values.size();
+        return String.format("（近似，排名误差约 ±%.2f%%）", stats.getQuartileRankError(quartile) * 100);
     }
     
     /**
@@ -3319,66 +4177,6 @@ public class MainController {
         });
     }
     
-    /**
-     * 重新应用自动标记规则到指定单元格
-     * 当单元格内容被编辑后调用
-     */
-    private void reapplyAutoMarkForCell(int row, int col) {
-        if (autoMarkManager == null || autoMarkManager.getRules().isEmpty()) {
-            return;
-        }
-        
-        String cellValue = csvData.getCellValue(row, col);
-        
-        // 检查所有规则
-        boolean matched = false;
-        for (AutoMarkRule rule : autoMarkManager.getRules()) {
-            if (!rule.isEnabled()) {
-                continue;
-            }
-            
-            // 检查列是否在规则应用范围内
-            boolean inScope = false;
-            switch (rule.getScope()) {
-                case ALL_COLUMNS:
-                    inScope = true;
-                    break;
-                case SPECIFIED_COLUMNS:
-                    if (rule.getSpecifiedColumns() != null) {
-                        for (int specCol : rule.getSpecifiedColumns()) {
-                            if (specCol == col) {
-                                inScope = true;
-                                break;
-                            }
-                        }
-                    }
-                    break;
-                case SELECTED_COLUMN:
-                    // 选中列模式，这里简化为所有列
-                    inScope = true;
-                    break;
-            }
-            
-            if (!inScope) {
-                continue;
-            }
-            
-            // 检查是否匹配规则
-            if (autoMarkManager.matchesRule(rule, cellValue)) {
-                // 匹配，应用颜色
-                autoMarkManager.getAutoMarkColor(row, col); // 触发内部更新
-                matched = true;
-                break; // 只应用第一个匹配的规则
-            }
-        }
-        
-        // 如果不匹配任何规则，清除该单元格的自动标记
-        if (!matched) {
-            // 重新应用所有规则以更新autoMarkColors
-            autoMarkManager.applyRules(csvData);
-        }
-    }
-    
     /**
      * 显示快捷键设置对话框
      */
@@ -3656,6 +4454,72 @@ public class MainController {
         });
     }
     
+    /**
+     * 显示区域高亮对话框
+     * 以当前单元格为起点，输入区域的起止行列（从1开始，包含首尾）和颜色
+     */
+    private void showRangeHighlightDialog(int row, int col) {
+        Dialog<Boolean> dialog = new Dialog<>();
+        dialog.setTitle("标记区域颜色");
+        dialog.setHeaderText("为矩形区域选择高亮颜色");
+        
+        ButtonType applyButtonType = new ButtonType("应用", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(applyButtonType, ButtonType.CANCEL);
+        
+        javafx.scene.layout.GridPane grid = new javafx.scene.layout.GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new javafx.geometry.Insets(20));
+        
+        TextField firstRowField = new TextField(String.valueOf(row + 1));
+        TextField lastRowField = new TextField(String.valueOf(Math.max(row + 1, csvData.getRows())));
+        TextField firstColField = new TextField(String.valueOf(col + 1));
+        TextField lastColField = new TextField(String.valueOf(col + 1));
+        javafx.scene.control.ColorPicker colorPicker = 
+            new javafx.scene.control.ColorPicker(highlightManager.getDefaultCellHighlightColor());
+        
+        grid.add(new Label("起始行:"), 0, 0);
+        grid.add(firstRowField, 1, 0);
+        grid.add(new Label("结束行:"), 2, 0);
+        grid.add(lastRowField, 3, 0);
+        grid.add(new Label("起始列:"), 0, 1);
+        grid.add(firstColField, 1, 1);
+        grid.add(new Label("结束列:"), 2, 1);
+        grid.add(lastColField, 3, 1);
+        grid.add(new Label("高亮颜色:"), 0, 2);
+        grid.add(colorPicker, 1, 2, 3, 1);
+        dialog.getDialogPane().setContent(grid);
+        
+        dialog.setResultConverter(dialogButton -> {
+            if (dialogButton == applyButtonType) {
+                try {
+                    int firstRow = Integer.parseInt(firstRowField.getText().trim()) - 1;
+                    int lastRow = Integer.parseInt(lastRowField.getText().trim()) - 1;
+                    int firstCol = Integer.parseInt(firstColField.getText().trim()) - 1;
+                    int lastCol = Integer.parseInt(lastColField.getText().trim()) - 1;
+                    if (Math.min(firstRow, lastRow) < 0 || Math.min(firstCol, lastCol) < 0) {
+                        throw new NumberFormatException();
+                    }
+                    highlightManager.setRangeHighlight(firstRow, lastRow, firstCol, lastCol, colorPicker.getValue());
+                    updateStatus(String.format("已标记区域: 行 %d-%d, 列 %d-%d",
+                        Math.min(firstRow, lastRow) + 1, Math.max(firstRow, lastRow) + 1,
+                        Math.min(firstCol, lastCol) + 1, Math.max(firstCol, lastCol) + 1));
+                    return true;
+                } catch (NumberFormatException e) {
+                    javafx.application.Platform.runLater(() -> 
+                        showError("输入错误", "请输入有效的行号和列号")
+                    );
+                }
+            }
+            return false;
+        });
+        
+        Optional<Boolean> result = dialog.showAndWait();
+        if (result.isPresent() && result.get()) {
+            tableView.refresh();
+        }
+    }
+    
     /**
      * 显示搜索对话框
      */
@@ -3690,6 +4554,18 @@ public class MainController {
         CheckBox regexMatchCheck = new CheckBox("正则表达式");
         regexMatchCheck.setSelected(false);
         
+        // 容错匹配：按编辑距离查找拼写相近的单元格
+        javafx.scene.layout.HBox tolerantBox = new javafx.scene.layout.HBox(10);
+        tolerantBox.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+        CheckBox tolerantMatchCheck = new CheckBox("容错匹配（允许拼写错误）");
+        Label distanceLabel = new Label("最大编辑距离:");
+        Spinner<Integer> distanceSpinner = new Spinner<>(1, 3, 1);
+        distanceSpinner.setPrefWidth(70);
+        distanceSpinner.disableProperty().bind(tolerantMatchCheck.selectedProperty().not());
+        fuzzyMatchCheck.disableProperty().bind(tolerantMatchCheck.selectedProperty());
+        regexMatchCheck.disableProperty().bind(tolerantMatchCheck.selectedProperty());
+        tolerantBox.getChildren().addAll(tolerantMatchCheck, distanceLabel, distanceSpinner);
+        
         // 选项说明
         Label infoLabel = new Label("提示：支持多个值搜索（用逗号或分号分隔）");
         infoLabel.setStyle("-fx-text-fill: #888888; -fx-font-size: 11px;");
@@ -3698,6 +4574,13 @@ public class MainController {
         Label resultLabel = new Label("");
         resultLabel.setStyle("-fx-text-fill: #666666;");
         
+        // 多个搜索词时显示每个词的命中数
+        TextArea termStatsArea = new TextArea();
+        termStatsArea.setEditable(false);
+        termStatsArea.setPrefRowCount(6);
+        termStatsArea.setVisible(false);
+        termStatsArea.setManaged(false);
+        
         // 按钮
         javafx.scene.layout.HBox buttonBox = new javafx.scene.layout.HBox(10);
         Button searchButton = new Button("查找全部");
@@ -3711,7 +4594,7 @@ public class MainController {
         buttonBox.getChildren().addAll(searchButton, nextButton, prevButton, clearButton);
         
         vbox.getChildren().addAll(searchBox, caseSensitiveCheck, fuzzyMatchCheck, 
-                                   regexMatchCheck, infoLabel, resultLabel, buttonBox);
+                                   regexMatchCheck, tolerantBox, infoLabel, resultLabel, termStatsArea, buttonBox);
         dialog.getDialogPane().setContent(vbox);
         
         // 搜索按钮事件
@@ -3725,58 +4608,59 @@ public class MainController {
             lastSearchText = searchText;
             lastSearchCaseSensitive = caseSensitiveCheck.isSelected();
             
-            // 执行搜索
+            // 编译搜索条件（正则表达式错误在这里报告）
+            SearchService.Query query;
             try {
-                searchResults = performSearch(searchText, caseSensitiveCheck.isSelected(), 
-                                             fuzzyMatchCheck.isSelected(), 
-                                             regexMatchCheck.isSelected());
+                if (tolerantMatchCheck.isSelected()) {
+                    query = searchService.compileTolerant(searchText, caseSensitiveCheck.isSelected(),
+                                                          distanceSpinner.getValue());
+                } else {
+                    query = searchService.compile(searchText, caseSensitiveCheck.isSelected(), 
+                                                  fuzzyMatchCheck.isSelected(), 
+                                                  regexMatchCheck.isSelected());
+                }
             } catch (java.util.regex.PatternSyntaxException ex) {
                 resultLabel.setText("正则表达式语法错误: " + ex.getMessage());
                 return;
             }
             
-            if (searchResults.isEmpty()) {
-                resultLabel.setText("未找到匹配结果");
-                nextButton.setDisable(true);
-                prevButton.setDisable(true);
-                currentSearchIndex = -1;
-            } else {
-                resultLabel.setText("找到 " + searchResults.size() + " 个结果");
-                nextButton.setDisable(false);
-                prevButton.setDisable(false);
-                currentSearchIndex = 0;
-                // 跳转到第一个结果
-                jumpToSearchResult(searchResults.get(0));
-            }
+            // 在后台执行搜索，结果边找边显示
+            startSearch(query, resultLabel, termStatsArea, nextButton, prevButton);
         });
         
         // 下一个按钮事件
         nextButton.setOnAction(e -> {
-            if (searchResults != null && !searchResults.isEmpty()) {
-                currentSearchIndex = (currentSearchIndex + 1) % searchResults.size();
-                jumpToSearchResult(searchResults.get(currentSearchIndex));
-                resultLabel.setText("结果 " + (currentSearchIndex + 1) + " / " + searchResults.size());
+            if (searchHits != null && !searchHits.isEmpty()) {
+                // 从当前单元格向后查找，光标移动过时从新位置继续
+                int[] position = searchPosition();
+                currentSearchIndex = searchHits.nextIndex(position[0], position[1]);
+                jumpToSearchResult(currentSearchIndex);
+                resultLabel.setText("结果 " + (currentSearchIndex + 1) + " / " + searchHits.size());
             }
         });
         
         // 上一个按钮事件
         prevButton.setOnAction(e -> {
-            if (searchResults != null && !searchResults.isEmpty()) {
-                currentSearchIndex = (currentSearchIndex - 1 + searchResults.size()) % searchResults.size();
-                jumpToSearchResult(searchResults.get(currentSearchIndex));
-                resultLabel.setText("结果 " + (currentSearchIndex + 1) + " / " + searchResults.size());
+            if (searchHits != null && !searchHits.isEmpty()) {
+                int[] position = searchPosition();
+                currentSearchIndex = searchHits.previousIndex(position[0], position[1]);
+                jumpToSearchResult(currentSearchIndex);
+                resultLabel.setText("结果 " + (currentSearchIndex + 1) + " / " + searchHits.size());
             }
         });
         
         // 清除按钮事件
         clearButton.setOnAction(e -> {
             // 清除搜索结果
-            searchResults = null;
+            cancelSearch();
+            searchHits = null;
             currentSearchIndex = -1;
             lastSearchText = "";
             
             // 清空搜索框
             searchField.setText("");
+            termStatsArea.setVisible(false);
+            termStatsArea.setManaged(false);
             
             // 刷新表格以移除高亮
             tableView.refresh();
@@ -3794,7 +4678,8 @@ public class MainController {
         
         // 添加对话框关闭监听器，关闭时清除搜索高亮
         dialog.setOnCloseRequest(event -> {
-            searchResults = null;
+            cancelSearch();
+            searchHits = null;
             currentSearchIndex = -1;
             lastSearchText = "";
             tableView.refresh();
@@ -3805,114 +4690,299 @@ public class MainController {
     }
     
     /**
-     * 执行搜索
+     * 在后台线程中执行搜索
+     * 表格按行分块并行扫描，每块的结果按顺序合并到 searchHits 并刷新表格，
+     * 找到第一个结果时立即跳转；开始新的搜索会取消上一次搜索
+     * 扫描的是开始时的数据快照，搜索期间数据被修改时停止搜索
+     * 容错搜索在各列的不同值字典上查找，结果一次交付
      */
-    private java.util.List<SearchResult> performSearch(String searchText, boolean caseSensitive, 
-                                                       boolean fuzzy, boolean useRegex) {
-        java.util.List<SearchResult> results = new java.util.ArrayList<>();
+    private void startSearch(SearchService.Query query, Label resultLabel, TextArea termStatsArea,
+                             Button nextButton, Button prevButton) {
+        cancelSearch();
+        termStatsArea.setVisible(false);
+        termStatsArea.setManaged(false);
+        
+        SearchHits hits = new SearchHits();
+        searchHits = hits;
+        currentSearchIndex = -1;
+        nextButton.setDisable(true);
+        prevButton.setDisable(true);
+        resultLabel.setText("正在搜索...");
+        tableView.refresh();
         
-        if (useRegex) {
-            // 正则表达式搜索
-            try {
-                int flags = caseSensitive ? 0 : java.util.regex.Pattern.CASE_INSENSITIVE;
-                java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(searchText, flags);
-                
-                for (int row = 0; row < csvData.getRows(); row++) {
-                    for (int col = 0; col < csvData.getColumns(); col++) {
-                        String cellValue = csvData.getCellValue(row, col);
-                        if (cellValue == null) {
-                            continue;
-                        }
-                        
-                        java.util.regex.Matcher matcher = pattern.matcher(cellValue);
-                        if (matcher.find()) {
-                            results.add(new SearchResult(row, col, cellValue));
-                        }
-                    }
-                }
-            } catch (java.util.regex.PatternSyntaxException e) {
-                throw e; // 重新抛出异常，让调用方处理
+        // 后台线程只读取快照，搜索期间的编辑会停止本次搜索（见 SearchInvalidator）
+        CSVData data = csvData.snapshot();
+        searchResultLabel = resultLabel;
+        searchedRows = data.getRows();
+        long startTime = System.nanoTime();
+        int[] candidateRows = null;
+        if (searchIndex != null && !query.isTolerant()) {
+            if (searchIndex.isReady() && query.getTerms() != null) {
+                // 只扫描索引给出的候选行
+                candidateRows = searchIndex.candidateRows(query.getTerms());
+            } else if (!searchIndex.isReady() && indexTask == null) {
+                // 表格被整体替换后索引失效，重新建立，本次搜索先扫描全表
+                rebuildSearchIndex();
             }
-        } else {
-            // 普通搜索：支持多个搜索值，用逗号或分号分隔
-            String[] searchTerms = searchText.split("[,;，；]");
-            
-            for (int row = 0; row < csvData.getRows(); row++) {
-                for (int col = 0; col < csvData.getColumns(); col++) {
-                    String cellValue = csvData.getCellValue(row, col);
-                    if (cellValue == null) {
-                        continue;
-                    }
-                    
-                    // 检查是否匹配任一搜索词
-                    for (String term : searchTerms) {
-                        term = term.trim();
-                        if (term.isEmpty()) {
-                            continue;
-                        }
-                        
-                        boolean matches = false;
-                        if (fuzzy) {
-                            // 模糊匹配
-                            if (caseSensitive) {
-                                matches = cellValue.contains(term);
-                            } else {
-                                matches = cellValue.toLowerCase().contains(term.toLowerCase());
-                            }
-                        } else {
-                            // 精确匹配
-                            if (caseSensitive) {
-                                matches = cellValue.equals(term);
-                            } else {
-                                matches = cellValue.equalsIgnoreCase(term);
-                            }
-                        }
-                        
-                        if (matches) {
-                            results.add(new SearchResult(row, col, cellValue));
-                            break; // 同一单元格只记录一次
-                        }
+        }
+        int[] rows = candidateRows;
+        // 后台线程交付的结果先放入队列，由 FX 线程批量合并，避免每块都提交一次界面刷新
+        java.util.concurrent.ConcurrentLinkedQueue<SearchHits> pending = new java.util.concurrent.ConcurrentLinkedQueue<>();
+        java.util.concurrent.atomic.AtomicBoolean drainScheduled = new java.util.concurrent.atomic.AtomicBoolean();
+        FuzzyIndex tolerantIndex = fuzzyIndex;
+        int tolerantVersion = tolerantIndex.getVersion(); // 与快照在同一时刻取得
+        java.util.concurrent.atomic.AtomicReference<java.util.List<FuzzyIndex.Match>> tolerantMatches =
+            new java.util.concurrent.atomic.AtomicReference<>();
+        
+        javafx.concurrent.Task<Boolean> task = new javafx.concurrent.Task<>() {
+            @Override
+            protected Boolean call() {
+                if (query.isTolerant()) {
+                    FuzzyIndex.Result result = searchService.searchTolerant(tolerantIndex, data, tolerantVersion,
+                        query, java.util.concurrent.ForkJoinPool.commonPool(), this::isCancelled);
+                    if (result == null) {
+                        return false;
                     }
+                    pending.add(result.getHits());
+                    tolerantMatches.set(result.getMatches());
+                    return true;
                 }
+                return searchService.stream(data, query, rows, java.util.concurrent.ForkJoinPool.commonPool(), chunk -> {
+                    pending.add(chunk);
+                    if (drainScheduled.compareAndSet(false, true)) {
+                        javafx.application.Platform.runLater(() -> {
+                            drainScheduled.set(false);
+                            drainSearchHits(hits, pending, resultLabel, nextButton, prevButton);
+                        });
+                    }
+                }, this::isCancelled);
+            }
+        };
+        task.setOnSucceeded(event -> {
+            if (searchTask != task) {
+                return;
+            }
+            searchTask = null;
+            drainSearchHits(hits, pending, resultLabel, nextButton, prevButton);
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            if (hits.isEmpty()) {
+                resultLabel.setText("未找到匹配结果");
+            } else {
+                resultLabel.setText(String.format("找到 %d 个结果（用时 %.2f 秒）", hits.size(), seconds));
+            }
+            if (query.isTolerant()) {
+                showTolerantMatches(tolerantMatches.get(), termStatsArea);
+            } else {
+                showTermStats(query, hits, termStatsArea);
+            }
+        });
+        task.setOnFailed(event -> {
+            if (searchTask != task) {
+                return;
+            }
+            searchTask = null;
+            Throwable error = task.getException();
+            resultLabel.setText("搜索失败: " + (error != null ? error.getMessage() : "未知错误"));
+        });
+        
+        searchTask = task;
+        Thread thread = new Thread(task, "search");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * 多个搜索词时列出每个词命中的单元格数，未命中的词排在前面
+     */
+    private void showTermStats(SearchService.Query query, SearchHits hits, TextArea termStatsArea) {
+        java.util.List<String> terms = query.getTerms();
+        if (terms == null || terms.size() < 2) {
+            return;
+        }
+        StringBuilder missing = new StringBuilder();
+        StringBuilder found = new StringBuilder();
+        int missingCount = 0;
+        for (int t = 0; t < terms.size(); t++) {
+            int count = hits.getTermCount(t);
+            if (count == 0) {
+                missing.append(terms.get(t)).append('\n');
+                missingCount++;
+            } else {
+                found.append(terms.get(t)).append('\t').append(count).append('\n');
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        text.append("未找到 ").append(missingCount).append(" / ").append(terms.size()).append(" 个搜索词:\n");
+        text.append(missing);
+        if (found.length() > 0) {
+            text.append("\n已找到（命中单元格数）:\n").append(found);
+        }
+        termStatsArea.setText(text.toString());
+        termStatsArea.setVisible(true);
+        termStatsArea.setManaged(true);
+    }
+    
+    /**
+     * 容错搜索时列出找到的相近值，编辑距离小的在前
+     */
+    private void showTolerantMatches(java.util.List<FuzzyIndex.Match> matches, TextArea termStatsArea) {
+        if (matches == null || matches.isEmpty()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        text.append("找到 ").append(matches.size()).append(" 个相近的值（距离\t列\t值\t单元格数）:\n");
+        for (int i = 0; i < Math.min(matches.size(), MAX_LISTED_MATCHES); i++) {
+            FuzzyIndex.Match match = matches.get(i);
+            text.append(match.getDistance()).append('\t')
+                .append("列 ").append(match.getColumn() + 1).append('\t')
+                .append(match.getValue()).append('\t')
+                .append(match.getCells()).append('\n');
+        }
+        if (matches.size() > MAX_LISTED_MATCHES) {
+            text.append("... 另有 ").append(matches.size() - MAX_LISTED_MATCHES).append(" 个\n");
+        }
+        termStatsArea.setText(text.toString());
+        termStatsArea.setVisible(true);
+        termStatsArea.setManaged(true);
+    }
+    
+    /**
+     * 把后台交付的搜索结果合并到当前结果中（在 FX 线程调用）
+     */
+    private void drainSearchHits(SearchHits hits, java.util.Queue<SearchHits> pending,
+                                 Label resultLabel, Button nextButton, Button prevButton) {
+        if (searchHits != hits) {
+            // 已经开始了新的搜索或清除了搜索
+            pending.clear();
+            return;
+        }
+        boolean wasEmpty = hits.isEmpty();
+        SearchHits chunk;
+        while ((chunk = pending.poll()) != null) {
+            hits.addAll(chunk);
+        }
+        if (hits.isEmpty()) {
+            return;
+        }
+        if (wasEmpty) {
+            nextButton.setDisable(false);
+            prevButton.setDisable(false);
+            currentSearchIndex = 0;
+            // 跳转到第一个结果
+            jumpToSearchResult(0);
+        }
+        if (searchTask != null) {
+            resultLabel.setText("正在搜索... 已找到 " + hits.size() + " 个结果");
+        }
+        tableView.refresh();
+    }
+    
+    /**
+     * 取消正在进行的搜索
+     */
+    private void cancelSearch() {
+        if (searchTask != null) {
+            searchTask.cancel();
+            searchTask = null;
+        }
+    }
+    
+    /**
+     * 搜索期间数据被修改：快照上找到的行列可能已经对不上，停止搜索并提示重新搜索
+     */
+    private void searchDataChanged() {
+        if (searchTask == null) {
+            return;
+        }
+        cancelSearch();
+        if (searchResultLabel != null) {
+            searchResultLabel.setText("数据已修改，搜索已停止，请重新搜索");
+        }
+    }
+    
+    /**
+     * 数据的任何修改都停止正在进行的搜索；
+     * 只在快照末尾之后追加行（渐进式加载）时不影响已经在搜索的行
+     */
+    private final class SearchInvalidator implements hbnu.project.ergoucsveditior.model.CSVDataListener {
+        @Override
+        public void cellChanged(int row, int column, String oldValue, String newValue) {
+            searchDataChanged();
+        }
+        
+        @Override
+        public void rowsInserted(int row, int count) {
+            if (row < searchedRows) {
+                searchDataChanged();
             }
         }
         
-        return results;
+        @Override
+        public void rowRemoved(int row, String[] values) {
+            searchDataChanged();
+        }
+        
+        @Override
+        public void rowMoved(int from, int to) {
+            searchDataChanged();
+        }
+        
+        @Override
+        public void columnInserted(int column) {
+            searchDataChanged();
+        }
+        
+        @Override
+        public void columnRemoved(int column, String[] values) {
+            searchDataChanged();
+        }
+        
+        @Override
+        public void storeReplaced(hbnu.project.ergoucsveditior.model.CellStore oldStore,
+                                  hbnu.project.ergoucsveditior.model.CellStore newStore) {
+            searchDataChanged();
+        }
+    }
+    
+    /**
+     * 当前查找位置：焦点所在的单元格，没有焦点时使用上一次跳转的结果
+     * @return {行, 列}
+     */
+    private int[] searchPosition() {
+        @SuppressWarnings("unchecked")
+        TablePosition<CSVRow, ?> focused = 
+            (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
+        if (focused != null && focused.getRow() >= 0 && focused.getColumn() > 0) {
+            // 列索引-1是因为有行号列
+            return new int[]{focused.getRow(), focused.getColumn() - 1};
+        }
+        if (currentSearchIndex >= 0 && currentSearchIndex < searchHits.size()) {
+            return new int[]{searchHits.getRow(currentSearchIndex), searchHits.getColumn(currentSearchIndex)};
+        }
+        return new int[]{-1, -1};
     }
     
     /**
      * 跳转到搜索结果
      */
-    private void jumpToSearchResult(SearchResult result) {
+    private void jumpToSearchResult(int index) {
+        int row = searchHits.getRow(index);
+        int column = searchHits.getColumn(index);
+        
         // 选中对应的行
-        tableView.getSelectionModel().select(result.row);
+        tableView.getSelectionModel().select(row);
         
         // 滚动到该行
-        tableView.scrollTo(result.row);
+        tableView.scrollTo(row);
         
         // 设置焦点到对应的单元格（列索引+1是因为有行号列）
-        tableView.getFocusModel().focus(result.row, tableView.getColumns().get(result.column + 1));
+        tableView.getFocusModel().focus(row, tableView.getColumns().get(column + 1));
         
         // 高亮显示
         tableView.requestFocus();
         
-        updateStatus("跳转到: 行 " + (result.row + 1) + ", 列 " + (result.column + 1) + 
-                    " - " + result.value);
-    }
-    
-    /**
-     * 搜索结果类
-     */
-    private static class SearchResult {
-        int row;
-        int column;
-        String value;
-        
-        SearchResult(int row, int column, String value) {
-            this.row = row;
-            this.column = column;
-            this.value = value;
-        }
+        updateStatus("跳转到: 行 " + (row + 1) + ", 列 " + (column + 1) + 
+                    " - " + csvData.getCellValue(row, column));
     }
     
     /**
@@ -3937,8 +5007,8 @@ public class MainController {
         MenuItem highlightCellItem = new MenuItem("标记单元格颜色");
         highlightCellItem.setOnAction(e -> {
             @SuppressWarnings("unchecked")
-            TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-                (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+            TablePosition<CSVRow, ?> focusedCell = 
+                (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
             if (focusedCell != null && focusedCell.getColumn() > 0) {
                 showColorPickerDialog(rowIndex, focusedCell.getColumn() - 1, "cell");
             }
@@ -3947,8 +5017,8 @@ public class MainController {
         MenuItem highlightCellTextItem = new MenuItem("设置单元格文本颜色");
         highlightCellTextItem.setOnAction(e -> {
             @SuppressWarnings("unchecked")
-            TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-                (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+            TablePosition<CSVRow, ?> focusedCell = 
+                (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
             if (focusedCell != null && focusedCell.getColumn() > 0) {
                 showTextColorPickerDialog(rowIndex, focusedCell.getColumn() - 1, "cell");
             }
@@ -3962,20 +5032,29 @@ public class MainController {
         MenuItem highlightColumnItem = new MenuItem("标记整列颜色");
         highlightColumnItem.setOnAction(e -> {
             @SuppressWarnings("unchecked")
-            TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-                (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+            TablePosition<CSVRow, ?> focusedCell = 
+                (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
             if (focusedCell != null && focusedCell.getColumn() > 0) {
                 showColorPickerDialog(rowIndex, focusedCell.getColumn() - 1, "column");
             }
         });
         
+        MenuItem highlightRangeItem = new MenuItem("标记区域颜色...");
+        highlightRangeItem.setOnAction(e -> {
+            @SuppressWarnings("unchecked")
+            TablePosition<CSVRow, ?> focusedCell = 
+                (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
+            int colIndex = focusedCell != null && focusedCell.getColumn() > 0 ? focusedCell.getColumn() - 1 : 0;
+            showRangeHighlightDialog(rowIndex, colIndex);
+        });
+        
         SeparatorMenuItem separator2 = new SeparatorMenuItem();
         
         MenuItem clearCellHighlightItem = new MenuItem("清除单元格背景色");
         clearCellHighlightItem.setOnAction(e -> {
             @SuppressWarnings("unchecked")
-            TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-                (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+            TablePosition<CSVRow, ?> focusedCell = 
+                (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
             if (focusedCell != null && focusedCell.getColumn() > 0) {
                 int colIndex = focusedCell.getColumn() - 1;
                 highlightManager.clearCellHighlight(rowIndex, colIndex);
@@ -3988,8 +5067,8 @@ public class MainController {
         MenuItem clearCellTextColorItem = new MenuItem("清除单元格文本颜色");
         clearCellTextColorItem.setOnAction(e -> {
             @SuppressWarnings("unchecked")
-            TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-                (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+            TablePosition<CSVRow, ?> focusedCell = 
+                (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
             if (focusedCell != null && focusedCell.getColumn() > 0) {
                 int col = focusedCell.getColumn() - 1;
                 // 获取现有的背景色，保留背景色，只清除文本颜色
@@ -4002,6 +5081,18 @@ public class MainController {
             }
         });
         
+        MenuItem clearRangeHighlightItem = new MenuItem("清除区域高亮");
+        clearRangeHighlightItem.setOnAction(e -> {
+            @SuppressWarnings("unchecked")
+            TablePosition<CSVRow, ?> focusedCell = 
+                (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
+            if (focusedCell != null && focusedCell.getColumn() > 0) {
+                int removed = highlightManager.clearRangeHighlights(rowIndex, focusedCell.getColumn() - 1);
+                tableView.refresh();
+                updateStatus(removed > 0 ? "已清除 " + removed + " 个区域高亮" : "该单元格不在任何高亮区域内");
+            }
+        });
+        
         MenuItem clearRowHighlightItem = new MenuItem("清除行高亮");
         clearRowHighlightItem.setOnAction(e -> {
             highlightManager.clearRowHighlight(rowIndex);
@@ -4013,8 +5104,8 @@ public class MainController {
         MenuItem clearColumnHighlightItem = new MenuItem("清除列高亮");
         clearColumnHighlightItem.setOnAction(e -> {
             @SuppressWarnings("unchecked")
-            TablePosition<ObservableList<CSVCell>, ?> focusedCell = 
-                (TablePosition<ObservableList<CSVCell>, ?>) tableView.getFocusModel().getFocusedCell();
+            TablePosition<CSVRow, ?> focusedCell = 
+                (TablePosition<CSVRow, ?>) tableView.getFocusModel().getFocusedCell();
             if (focusedCell != null && focusedCell.getColumn() > 0) {
                 int colIndex = focusedCell.getColumn() - 1;
                 highlightManager.clearColumnHighlight(colIndex);
@@ -4033,9 +5124,11 @@ public class MainController {
             highlightCellTextItem,
             highlightRowItem,
             highlightColumnItem,
+            highlightRangeItem,
             separator2,
             clearCellHighlightItem,
             clearCellTextColorItem,
+            clearRangeHighlightItem,
             clearRowHighlightItem,
             clearColumnHighlightItem
         );
@@ -4046,7 +5139,7 @@ public class MainController {
     /**
      * 支持多行的表格单元格（支持高亮显示）
      */
-    private class MultiLineTableCell extends TableCell<ObservableList<CSVCell>, String> {
+    private class MultiLineTableCell extends TableCell<CSVRow, String> {
         private TextArea textArea;
         private javafx.scene.text.TextFlow textFlow;
         private int columnIndex;
@@ -4158,20 +5251,12 @@ public class MainController {
         private void displayTextWithHighlight(String text, int rowIndex, javafx.scene.paint.Color textColor) {
             textFlow.getChildren().clear();
             
-            // 检查是否需要高亮搜索结果
-            boolean hasSearchHighlight = false;
-            if (searchResults != null && !searchResults.isEmpty() && lastSearchText != null && !lastSearchText.isEmpty()) {
-                for (SearchResult result : searchResults) {
-                    if (result.row == rowIndex && result.column == columnIndex) {
-                        hasSearchHighlight = true;
-                        break;
-                    }
-                }
-            }
+            // 检查是否需要高亮搜索结果（哈希查找，与结果数量无关）
+            int hit = searchHits != null ? searchHits.indexOf(rowIndex, columnIndex) : -1;
             
-            if (hasSearchHighlight && lastSearchText != null) {
+            if (hit >= 0 && searchHits.getMatchCount(hit) > 0) {
                 // 高亮搜索匹配的文本
-                highlightSearchText(text, lastSearchText, textColor);
+                highlightSearchText(text, hit, textColor);
             } else {
                 // 普通显示
                 javafx.scene.text.Text textNode = new javafx.scene.text.Text(text);
@@ -4187,28 +5272,30 @@ public class MainController {
         
         /**
          * 高亮搜索文本
+         * 匹配区间在搜索时已经计算好，这里只按区间切分文本
          */
-        private void highlightSearchText(String fullText, String searchText, javafx.scene.paint.Color defaultTextColor) {
-            if (fullText == null || searchText == null || searchText.isEmpty()) {
-                javafx.scene.text.Text textNode = new javafx.scene.text.Text(fullText);
-                if (defaultTextColor != null) {
-                    textNode.setFill(defaultTextColor);
-                }
-                textFlow.getChildren().add(textNode);
-                return;
-            }
-            
-            String lowerFullText = fullText.toLowerCase();
-            String lowerSearchText = searchText.toLowerCase();
+        private void highlightSearchText(String fullText, int hit, javafx.scene.paint.Color defaultTextColor) {
+            // 使用背景高亮（从设置中获取搜索高亮颜色）
+            javafx.scene.paint.Color searchColor = javafx.scene.paint.Color.web(settings.getSearchHighlightColor());
+            String highlightStyle = String.format("-fx-background-color: rgba(%d, %d, %d, %.2f); -fx-padding: 1px;",
+                (int)(searchColor.getRed() * 255),
+                (int)(searchColor.getGreen() * 255),
+                (int)(searchColor.getBlue() * 255),
+                searchColor.getOpacity());
             
             int lastIndex = 0;
-            int index = lowerFullText.indexOf(lowerSearchText);
-            
-            while (index >= 0) {
+            for (int i = 0; i < searchHits.getMatchCount(hit); i++) {
+                // 单元格在搜索后被修改时，区间可能超出文本
+                int start = Math.min(searchHits.getMatchStart(hit, i), fullText.length());
+                int end = Math.min(searchHits.getMatchEnd(hit, i), fullText.length());
+                if (start < lastIndex || end <= start) {
+                    continue;
+                }
+                
                 // 添加匹配前的文本
-                if (index > lastIndex) {
+                if (start > lastIndex) {
                     javafx.scene.text.Text beforeText = new javafx.scene.text.Text(
-                        fullText.substring(lastIndex, index));
+                        fullText.substring(lastIndex, start));
                     if (defaultTextColor != null) {
                         beforeText.setFill(defaultTextColor);
                     }
@@ -4216,23 +5303,15 @@ public class MainController {
                 }
                 
                 // 添加匹配的文本（高亮）
-                javafx.scene.text.Text matchText = new javafx.scene.text.Text(
-                    fullText.substring(index, index + searchText.length()));
+                javafx.scene.text.Text matchText = new javafx.scene.text.Text(fullText.substring(start, end));
                 matchText.setStyle("-fx-fill: #000000; -fx-font-weight: bold;");
                 matchText.setFill(javafx.scene.paint.Color.BLACK);
                 
-                // 使用背景高亮（从设置中获取搜索高亮颜色）
-                javafx.scene.paint.Color searchColor = javafx.scene.paint.Color.web(settings.getSearchHighlightColor());
                 javafx.scene.layout.StackPane highlightPane = new javafx.scene.layout.StackPane(matchText);
-                highlightPane.setStyle(String.format("-fx-background-color: rgba(%d, %d, %d, %.2f); -fx-padding: 1px;",
-                    (int)(searchColor.getRed() * 255),
-                    (int)(searchColor.getGreen() * 255),
-                    (int)(searchColor.getBlue() * 255),
-                    searchColor.getOpacity()));
+                highlightPane.setStyle(highlightStyle);
                 textFlow.getChildren().add(highlightPane);
                 
-                lastIndex = index + searchText.length();
-                index = lowerFullText.indexOf(lowerSearchText, lastIndex);
+                lastIndex = end;
             }
             
             // 添加剩余文本
@@ -4498,6 +5577,11 @@ public class MainController {
         excelGrid.add(new Label("应用高亮颜色:"), 0, excelRow);
         excelGrid.add(excelHighlightCheck, 1, excelRow++);
         
+        CheckBox excelStreamingCheck = new CheckBox("内存占用固定，适合大表格");
+        excelStreamingCheck.setSelected(exportSettings.isExcelStreaming());
+        excelGrid.add(new Label("流式写入:"), 0, excelRow);
+        excelGrid.add(excelStreamingCheck, 1, excelRow++);
+        
         excelTab.setContent(excelGrid);
         
         // PDF导出选项卡
@@ -4539,6 +5623,11 @@ public class MainController {
         pdfGrid.add(new Label("应用高亮颜色:"), 0, pdfRow);
         pdfGrid.add(pdfHighlightCheck, 1, pdfRow++);
         
+        CheckBox pdfIncrementalCheck = new CheckBox("分块写入页面，内存占用固定");
+        pdfIncrementalCheck.setSelected(exportSettings.isPdfIncremental());
+        pdfGrid.add(new Label("增量导出:"), 0, pdfRow);
+        pdfGrid.add(pdfIncrementalCheck, 1, pdfRow++);
+        
         pdfTab.setContent(pdfGrid);
         
         tabPane.getTabs().addAll(excelTab, pdfTab);
@@ -4551,6 +5640,7 @@ public class MainController {
                 exportSettings.setExcelAutoSizeColumns(excelAutoSizeCheck.isSelected());
                 exportSettings.setExcelSheetName(excelSheetNameField.getText());
                 exportSettings.setExcelApplyHighlight(excelHighlightCheck.isSelected());
+                exportSettings.setExcelStreaming(excelStreamingCheck.isSelected());
                 
                 // 保存PDF设置
                 exportSettings.setPdfTitle(pdfTitleField.getText());
@@ -4559,6 +5649,7 @@ public class MainController {
                 exportSettings.setPdfFontSize(pdfFontSizeSpinner.getValue());
                 exportSettings.setPdfIncludeHeader(pdfHeaderCheck.isSelected());
                 exportSettings.setPdfApplyHighlight(pdfHighlightCheck.isSelected());
+                exportSettings.setPdfIncremental(pdfIncrementalCheck.isSelected());
                 
                 exportSettings.save();
                 return true;
@@ -4574,6 +5665,7 @@ public class MainController {
     
     /**
      * 带进度条的通用导出方法
+     * 导出在导出服务的线程池中基于数据和高亮的快照执行，大表格显示进度、速度和取消按钮，取消时删除未写完的文件
      */
     private void exportWithProgress(File file, String format) {
         // 检测文件是否被锁定
@@ -4582,93 +5674,246 @@ public class MainController {
             return;
         }
         
-        // 对于大文件显示进度条
-        boolean showProgress = csvData.getRows() >= 10000;
+        Exporter exporter = exportService.getExporter(format);
+        if (exporter == null) {
+            showError("导出失败", "不支持的格式: " + format);
+            return;
+        }
+        if ("CSV".equals(format)) {
+            csvService.setLineEnding(settings.getLineEndingString());
+        }
+        // 导出线程只读取快照，导出期间继续编辑不会影响正在写出的内容
+        Exporter.Context context = new Exporter.Context(csvData.snapshot(), exportSettings,
+            highlightManager.snapshot(), settings.isFirstRowAsHeader());
+        int totalRows = context.getData().getRows();
+        
+        javafx.concurrent.Task<Boolean> task = new javafx.concurrent.Task<>() {
+            @Override
+            protected Boolean call() throws Exception {
+                return exportService.export(exporter, context, file, (done, total, rowsPerSecond) -> {
+                    updateProgress(done, total);
+                    updateMessage(String.format("%,d / %,d 行（%.0f%%），%,.0f 行/秒",
+                        done, total, total > 0 ? done * 100.0 / total : 100.0, rowsPerSecond));
+                }, this::isCancelled);
+            }
+        };
         
-        if (showProgress) {
-            // 创建进度对话框
-            Dialog<Void> progressDialog = new Dialog<>();
-            progressDialog.setTitle("导出中");
-            progressDialog.setHeaderText("正在导出数据，请稍候...");
-            
-            javafx.scene.control.ProgressIndicator progressIndicator = 
-                new javafx.scene.control.ProgressIndicator();
-            progressIndicator.setProgress(-1); // 不确定进度模式
-            
-            javafx.scene.layout.VBox vbox = new javafx.scene.layout.VBox(10);
-            vbox.setPadding(new javafx.geometry.Insets(20));
-            vbox.setAlignment(javafx.geometry.Pos.CENTER);
-            vbox.getChildren().addAll(progressIndicator, new Label("正在导出 " + csvData.getRows() + " 行数据..."));
-            
-            progressDialog.getDialogPane().setContent(vbox);
-            progressDialog.getDialogPane().getButtonTypes().clear();
-            
-            // 在后台线程执行导出
-            javafx.concurrent.Task<Boolean> task = new javafx.concurrent.Task<>() {
-                @Override
-                protected Boolean call() throws Exception {
-                    return performExport(file, format);
-                }
-            };
-            
-            task.setOnSucceeded(event -> {
+        // 对于大文件显示进度对话框
+        Dialog<Void> progressDialog = totalRows >= 10000 ? createExportProgressDialog(task, totalRows) : null;
+        
+        long startTime = System.nanoTime();
+        task.setOnSucceeded(event -> {
+            if (progressDialog != null) {
                 progressDialog.close();
-                if (task.getValue()) {
-                    showExportSuccessDialog(file, format);
-                }
-            });
-            
-            task.setOnFailed(event -> {
+            }
+            if (task.getValue()) {
+                updateStatus(String.format("已导出为%s: %s（用时 %.2f 秒）", format, file.getName(),
+                    (System.nanoTime() - startTime) / 1e9));
+                showExportSuccessDialog(file, format);
+            } else {
+                updateStatus("导出已取消");
+            }
+        });
+        
+        task.setOnCancelled(event -> {
+            if (progressDialog != null) {
+                progressDialog.close();
+            }
+            updateStatus("导出已取消，未写完的文件已删除");
+        });
+        
+        task.setOnFailed(event -> {
+            if (progressDialog != null) {
                 progressDialog.close();
-                Throwable exception = task.getException();
-                showError("导出失败", "导出时发生错误：" + exception.getMessage());
-            });
-            
-            Thread thread = new Thread(task);
-            thread.setDaemon(true);
-            thread.start();
-            
-            progressDialog.show();
-        } else {
-            // 小文件直接导出
-            try {
-                if (performExport(file, format)) {
-                    showExportSuccessDialog(file, format);
-                }
-            } catch (Exception e) {
-                showError("导出失败", "导出时发生错误：" + e.getMessage());
             }
+            Throwable exception = task.getException();
+            showError("导出失败", "导出时发生错误：" + exception.getMessage());
+        });
+        
+        exportService.getExecutor().execute(task);
+        if (progressDialog != null) {
+            progressDialog.show();
         }
     }
     
     /**
-     * 执行实际的导出操作
+     * 显示多格式导出对话框：选择格式、目录和文件名后在后台同时导出
      */
-    private boolean performExport(File file, String format) throws Exception {
-        switch (format) {
-            case "CSV":
-                csvService.setLineEnding(settings.getLineEndingString());
-                csvService.saveToFile(csvData, file);
-                javafx.application.Platform.runLater(() -> updateStatus("已导出为CSV: " + file.getName()));
-                return true;
-            case "TXT":
-                exportToTXT(file);
-                return true;
-            case "HTML":
-                exportToHTML(file);
-                return true;
-            case "Excel":
-                exportToExcel(file);
-                return true;
-            case "PDF":
-                exportToPDF(file);
-                return true;
-            case "Markdown":
-                exportToMarkdown(file);
-                return true;
-            default:
-                throw new Exception("不支持的格式: " + format);
+    private void showMultiExportDialog() {
+        Dialog<Boolean> dialog = new Dialog<>();
+        dialog.setTitle("多格式导出");
+        dialog.setHeaderText("只读取一次数据，同时写出所选的每种格式");
+        
+        ButtonType exportButtonType = new ButtonType("导出", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(exportButtonType, ButtonType.CANCEL);
+        
+        javafx.scene.layout.GridPane grid = new javafx.scene.layout.GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new javafx.geometry.Insets(20));
+        
+        // 格式选择
+        javafx.scene.layout.FlowPane formatPane = new javafx.scene.layout.FlowPane(10, 5);
+        java.util.Map<Exporter, CheckBox> formatChecks = new java.util.LinkedHashMap<>();
+        for (Exporter exporter : exportService.getExporters()) {
+            CheckBox check = new CheckBox(exporter.getFormat());
+            check.setSelected(!"TXT".equals(exporter.getFormat()) && !"Markdown".equals(exporter.getFormat()));
+            formatChecks.put(exporter, check);
+            formatPane.getChildren().add(check);
+        }
+        grid.add(new Label("导出格式:"), 0, 0);
+        grid.add(formatPane, 1, 0, 2, 1);
+        
+        // 目录和文件名
+        File initialDirectory = currentFile != null && currentFile.getAbsoluteFile().getParentFile() != null
+            ? currentFile.getAbsoluteFile().getParentFile() : new File(System.getProperty("user.home"));
+        TextField directoryField = new TextField(initialDirectory.getAbsolutePath());
+        directoryField.setPrefWidth(320);
+        Button browseButton = new Button("浏览...");
+        browseButton.setOnAction(e -> {
+            javafx.stage.DirectoryChooser chooser = new javafx.stage.DirectoryChooser();
+            chooser.setTitle("选择导出目录");
+            File current = new File(directoryField.getText());
+            if (current.isDirectory()) {
+                chooser.setInitialDirectory(current);
+            }
+            File selected = chooser.showDialog(getStage());
+            if (selected != null) {
+                directoryField.setText(selected.getAbsolutePath());
+            }
+        });
+        grid.add(new Label("导出目录:"), 0, 1);
+        grid.add(directoryField, 1, 1);
+        grid.add(browseButton, 2, 1);
+        
+        TextField nameField = new TextField(currentFile != null
+            ? currentFile.getName().replaceFirst("[.][^.]+$", "") : "export");
+        grid.add(new Label("文件名:"), 0, 2);
+        grid.add(nameField, 1, 2);
+        grid.add(new Label("（扩展名按格式自动添加）"), 2, 2);
+        
+        dialog.getDialogPane().setContent(grid);
+        dialog.setResultConverter(button -> button == exportButtonType);
+        
+        if (!dialog.showAndWait().orElse(false)) {
+            return;
+        }
+        
+        java.util.List<Exporter> exporters = new java.util.ArrayList<>();
+        java.util.List<File> files = new java.util.ArrayList<>();
+        File directory = new File(directoryField.getText().trim());
+        String baseName = nameField.getText().trim();
+        for (java.util.Map.Entry<Exporter, CheckBox> entry : formatChecks.entrySet()) {
+            if (entry.getValue().isSelected()) {
+                exporters.add(entry.getKey());
+                files.add(new File(directory, baseName + "." + entry.getKey().getExtension()));
+            }
+        }
+        if (exporters.isEmpty()) {
+            showInfo("提示", "请至少选择一种导出格式");
+            return;
+        }
+        if (!directory.isDirectory()) {
+            showError("导出失败", "导出目录不存在：" + directory.getAbsolutePath());
+            return;
+        }
+        if (baseName.isEmpty()) {
+            showInfo("提示", "请输入文件名");
+            return;
         }
+        for (File file : files) {
+            if (file.exists() && isFileLocked(file)) {
+                showError("文件被锁定", "文件已被其他程序占用，请关闭后重试：" + file.getName());
+                return;
+            }
+        }
+        
+        csvService.setLineEnding(settings.getLineEndingString());
+        // 导出线程只读取快照，导出期间继续编辑不会影响正在写出的内容
+        Exporter.Context context = new Exporter.Context(csvData.snapshot(), exportSettings,
+            highlightManager.snapshot(), settings.isFirstRowAsHeader());
+        int totalRows = context.getData().getRows();
+        
+        javafx.concurrent.Task<Boolean> task = new javafx.concurrent.Task<>() {
+            @Override
+            protected Boolean call() throws Exception {
+                return exportService.exportAll(exporters, context, files, (done, total, rowsPerSecond) -> {
+                    updateProgress(done, total);
+                    updateMessage(String.format("%,d / %,d 行（%.0f%%），%,.0f 行/秒",
+                        done, total, total > 0 ? done * 100.0 / total : 100.0, rowsPerSecond));
+                }, this::isCancelled);
+            }
+        };
+        
+        Dialog<Void> progressDialog = totalRows >= 10000 ? createExportProgressDialog(task, totalRows) : null;
+        
+        long startTime = System.nanoTime();
+        task.setOnSucceeded(event -> {
+            if (progressDialog != null) {
+                progressDialog.close();
+            }
+            if (!task.getValue()) {
+                updateStatus("导出已取消");
+                return;
+            }
+            StringBuilder names = new StringBuilder();
+            for (File file : files) {
+                names.append(file.getName()).append("\n");
+            }
+            updateStatus(String.format("已导出 %d 种格式（用时 %.2f 秒）", files.size(),
+                (System.nanoTime() - startTime) / 1e9));
+            showInfo("导出成功", "文件已保存到 " + directory.getAbsolutePath() + "：\n" + names);
+        });
+        
+        task.setOnCancelled(event -> {
+            if (progressDialog != null) {
+                progressDialog.close();
+            }
+            updateStatus("导出已取消，未写完的文件已删除");
+        });
+        
+        task.setOnFailed(event -> {
+            if (progressDialog != null) {
+                progressDialog.close();
+            }
+            Throwable exception = task.getException();
+            showError("导出失败", "导出时发生错误：" + exception.getMessage());
+        });
+        
+        exportService.getExecutor().execute(task);
+        if (progressDialog != null) {
+            progressDialog.show();
+        }
+    }
+    
+    /**
+     * 创建导出进度对话框，点击取消或关闭对话框时取消导出
+     */
+    private Dialog<Void> createExportProgressDialog(javafx.concurrent.Task<Boolean> task, int totalRows) {
+        Dialog<Void> progressDialog = new Dialog<>();
+        progressDialog.setTitle("导出中");
+        progressDialog.setHeaderText("正在导出 " + totalRows + " 行数据，请稍候...");
+        
+        javafx.scene.control.ProgressBar progressBar = new javafx.scene.control.ProgressBar();
+        progressBar.setPrefWidth(360);
+        progressBar.progressProperty().bind(task.progressProperty());
+        Label messageLabel = new Label("准备导出...");
+        task.messageProperty().addListener((obs, oldValue, newValue) -> messageLabel.setText(newValue));
+        
+        javafx.scene.layout.VBox vbox = new javafx.scene.layout.VBox(10);
+        vbox.setPadding(new javafx.geometry.Insets(20));
+        vbox.setAlignment(javafx.geometry.Pos.CENTER);
+        vbox.getChildren().addAll(progressBar, messageLabel);
+        
+        progressDialog.getDialogPane().setContent(vbox);
+        progressDialog.getDialogPane().getButtonTypes().setAll(
+            new ButtonType("取消导出", ButtonBar.ButtonData.CANCEL_CLOSE));
+        progressDialog.setOnHidden(event -> {
+            if (task.isRunning()) {
+                task.cancel();
+            }
+        });
+        return progressDialog;
     }
     
     /**
@@ -4723,266 +5968,6 @@ public class MainController {
         });
     }
     
-    /**
-     * 导出到TXT文件
-     */
-    private void exportToTXT(File file) throws Exception {
-        try {
-            java.io.FileWriter writer = new java.io.FileWriter(file, java.nio.charset.StandardCharsets.UTF_8);
-            
-            // 写入数据，使用制表符分隔
-            for (int row = 0; row < csvData.getRows(); row++) {
-                for (int col = 0; col < csvData.getColumns(); col++) {
-                    String value = csvData.getCellValue(row, col);
-                    writer.write(value != null ? value : "");
-                    if (col < csvData.getColumns() - 1) {
-                        writer.write("\t"); // 使用制表符分隔
-                    }
-                }
-                writer.write(System.lineSeparator());
-            }
-            
-            writer.close();
-            javafx.application.Platform.runLater(() -> updateStatus("已导出为TXT: " + file.getName()));
-        } catch (Exception e) {
-            throw new Exception("导出TXT失败: " + e.getMessage(), e);
-        }
-    }
-    
-    /**
-     * 导出到HTML文件
-     */
-    private void exportToHTML(File file) throws Exception {
-        try {
-            java.io.FileWriter writer = new java.io.FileWriter(file, java.nio.charset.StandardCharsets.UTF_8);
-            
-            // 写入HTML头部
-            writer.write("<!DOCTYPE html>\n");
-            writer.write("<html>\n");
-            writer.write("<head>\n");
-            writer.write("    <meta charset=\"UTF-8\">\n");
-            writer.write("    <title>CSV导出</title>\n");
-            writer.write("    <style>\n");
-            writer.write("        table { border-collapse: collapse; width: 100%; }\n");
-            writer.write("        th, td { border: 1px solid #ddd; padding: 8px; text-align: left; }\n");
-            writer.write("        th { background-color: #4CAF50; color: white; }\n");
-            writer.write("        tr:nth-child(even) { background-color: #f2f2f2; }\n");
-            writer.write("    </style>\n");
-            writer.write("</head>\n");
-            writer.write("<body>\n");
-            writer.write("    <h2>CSV数据导出</h2>\n");
-            writer.write("    <table>\n");
-            
-            // 写入表头（如果需要）
-            if (settings.isFirstRowAsHeader() && csvData.getRows() > 0) {
-                writer.write("        <tr>\n");
-                for (int col = 0; col < csvData.getColumns(); col++) {
-                    String value = csvData.getCellValue(0, col);
-                    writer.write("            <th>" + escapeHtml(value) + "</th>\n");
-                }
-                writer.write("        </tr>\n");
-                
-                // 从第二行开始写数据
-                for (int row = 1; row < csvData.getRows(); row++) {
-                    writer.write("        <tr>\n");
-                    for (int col = 0; col < csvData.getColumns(); col++) {
-                        String value = csvData.getCellValue(row, col);
-                        String style = "";
-                        
-                        // 应用高亮颜色
-                        javafx.scene.paint.Color color = highlightManager.getFinalHighlightColor(row, col);
-                        if (color != null) {
-                            style = String.format(" style=\"background-color: rgb(%d, %d, %d);\"",
-                                (int)(color.getRed() * 255),
-                                (int)(color.getGreen() * 255),
-                                (int)(color.getBlue() * 255));
-                        }
-                        
-                        writer.write("            <td" + style + ">" + escapeHtml(value) + "</td>\n");
-                    }
-                    writer.write("        </tr>\n");
-                }
-            } else {
-                // 写入所有数据
-                for (int row = 0; row < csvData.getRows(); row++) {
-                    writer.write("        <tr>\n");
-                    for (int col = 0; col < csvData.getColumns(); col++) {
-                        String value = csvData.getCellValue(row, col);
-                        String style = "";
-                        
-                        // 应用高亮颜色
-                        javafx.scene.paint.Color color = highlightManager.getFinalHighlightColor(row, col);
-                        if (color != null) {
-                            style = String.format(" style=\"background-color: rgb(%d, %d, %d);\"",
-                                (int)(color.getRed() * 255),
-                                (int)(color.getGreen() * 255),
-                                (int)(color.getBlue() * 255));
-                        }
-                        
-                        writer.write("            <td" + style + ">" + escapeHtml(value) + "</td>\n");
-                    }
-                    writer.write("        </tr>\n");
-                }
-            }
-            
-            writer.write("    </table>\n");
-            writer.write("</body>\n");
-            writer.write("</html>\n");
-            
-            writer.close();
-            javafx.application.Platform.runLater(() -> updateStatus("已导出为HTML: " + file.getName()));
-        } catch (Exception e) {
-            throw new Exception("导出HTML失败: " + e.getMessage(), e);
-        }
-    }
-    
-    /**
-     * 导出到Markdown文件
-     */
-    private void exportToMarkdown(File file) throws Exception {
-        try {
-            java.io.FileWriter writer = new java.io.FileWriter(file, java.nio.charset.StandardCharsets.UTF_8);
-            
-            // 写入Markdown表格
-            // 计算每列的最大宽度
-            int[] columnWidths = new int[csvData.getColumns()];
-            for (int col = 0; col < csvData.getColumns(); col++) {
-                columnWidths[col] = ("列 " + (col + 1)).length();
-                for (int row = 0; row < csvData.getRows(); row++) {
-                    String value = csvData.getCellValue(row, col);
-                    if (value != null) {
-                        // 中文字符按2个字符宽度计算
-                        int width = getStringDisplayWidth(value);
-                        columnWidths[col] = Math.max(columnWidths[col], width);
-                    }
-                }
-                // 最小宽度为3
-                columnWidths[col] = Math.max(columnWidths[col], 3);
-            }
-            
-            // 写入表头（如果需要）
-            if (settings.isFirstRowAsHeader() && csvData.getRows() > 0) {
-                writer.write("|");
-                for (int col = 0; col < csvData.getColumns(); col++) {
-                    String value = csvData.getCellValue(0, col);
-                    String paddedValue = padString(value != null ? value : "", columnWidths[col]);
-                    writer.write(" " + paddedValue + " |");
-                }
-                writer.write("\n");
-                
-                // 写入分隔行
-                writer.write("|");
-                for (int col = 0; col < csvData.getColumns(); col++) {
-                    writer.write(" " + "-".repeat(columnWidths[col]) + " |");
-                }
-                writer.write("\n");
-                
-                // 写入数据（从第二行开始）
-                for (int row = 1; row < csvData.getRows(); row++) {
-                    writer.write("|");
-                    for (int col = 0; col < csvData.getColumns(); col++) {
-                        String value = csvData.getCellValue(row, col);
-                        String paddedValue = padString(value != null ? value : "", columnWidths[col]);
-                        writer.write(" " + paddedValue + " |");
-                    }
-                    writer.write("\n");
-                }
-            } else {
-                // 写入默认表头
-                writer.write("|");
-                for (int col = 0; col < csvData.getColumns(); col++) {
-                    String header = "列 " + (col + 1);
-                    String paddedValue = padString(header, columnWidths[col]);
-                    writer.write(" " + paddedValue + " |");
-                }
-                writer.write("\n");
-                
-                // 写入分隔行
-                writer.write("|");
-                for (int col = 0; col < csvData.getColumns(); col++) {
-                    writer.write(" " + "-".repeat(columnWidths[col]) + " |");
-                }
-                writer.write("\n");
-                
-                // 写入所有数据
-                for (int row = 0; row < csvData.getRows(); row++) {
-                    writer.write("|");
-                    for (int col = 0; col < csvData.getColumns(); col++) {
-                        String value = csvData.getCellValue(row, col);
-                        String paddedValue = padString(value != null ? value : "", columnWidths[col]);
-                        writer.write(" " + paddedValue + " |");
-                    }
-                    writer.write("\n");
-                }
-            }
-            
-            writer.close();
-            javafx.application.Platform.runLater(() -> updateStatus("已导出为Markdown: " + file.getName()));
-        } catch (Exception e) {
-            throw new Exception("导出Markdown失败: " + e.getMessage(), e);
-        }
-    }
-    
-    /**
-     * 计算字符串显示宽度（中文字符算2个宽度）
-     */
-    private int getStringDisplayWidth(String str) {
-        int width = 0;
-        for (char c : str.toCharArray()) {
-            if (c >= 0x4E00 && c <= 0x9FFF) { // 中文字符范围
-                width += 2;
-            } else {
-                width += 1;
-            }
-        }
-        return width;
-    }
-    
-    /**
-     * 填充字符串到指定宽度
-     */
-    private String padString(String str, int width) {
-        int currentWidth = getStringDisplayWidth(str);
-        if (currentWidth >= width) {
-            return str;
-        }
-        return str + " ".repeat(width - currentWidth);
-    }
-    
-    /**
-     * HTML转义
-     */
-    private String escapeHtml(String text) {
-        if (text == null || text.isEmpty()) {
-            return "";
-        }
-        return text.replace("&", "&amp;")
-                   .replace("<", "&lt;")
-                   .replace(">", "&gt;")
-                   .replace("\"", "&quot;")
-                   .replace("'", "&#39;");
-    }
-    
-    /**
-     * 导出到Excel文件
-     */
-    private void exportToExcel(File file) throws Exception {
-        hbnu.project.ergoucsveditior.service.ExcelExportService excelService = 
-            new hbnu.project.ergoucsveditior.service.ExcelExportService();
-        excelService.exportToExcel(csvData, file, exportSettings, highlightManager);
-        javafx.application.Platform.runLater(() -> updateStatus("已导出为Excel: " + file.getName()));
-    }
-    
-    /**
-     * 导出到PDF文件
-     */
-    private void exportToPDF(File file) throws Exception {
-        hbnu.project.ergoucsveditior.service.PDFExportService pdfService = 
-            new hbnu.project.ergoucsveditior.service.PDFExportService();
-        pdfService.exportToPDF(csvData, file, exportSettings, highlightManager);
-        javafx.application.Platform.runLater(() -> updateStatus("已导出为PDF: " + file.getName()));
-    }
-    
     /**
      * 应用表格样式（边框、网格线颜色等）
      */
@@ -5118,7 +6103,7 @@ public class MainController {
         
         // 计算表格的总宽度和总高度
         double totalWidth = 0;
-        for (TableColumn<ObservableList<CSVCell>, ?> column : tableView.getColumns()) {
+        for (TableColumn<CSVRow, ?> column : tableView.getColumns()) {
             totalWidth += column.getWidth();
         }
         
@@ -5148,7 +6133,7 @@ public class MainController {
      */
     private void applyTableZoom(double zoomLevel) {
         // 对所有列应用缩放
-        for (TableColumn<ObservableList<CSVCell>, ?> column : tableView.getColumns()) {
+        for (TableColumn<CSVRow, ?> column : tableView.getColumns()) {
             double baseWidth = getColumnBaseWidth(column);
             column.setPrefWidth(baseWidth * zoomLevel);
         }
@@ -5170,7 +6155,7 @@ public class MainController {
     /**
      * 获取列的基础宽度（未缩放的宽度）
      */
-    private double getColumnBaseWidth(TableColumn<ObservableList<CSVCell>, ?> column) {
+    private double getColumnBaseWidth(TableColumn<CSVRow, ?> column) {
         // 从列的userData中获取基础宽度，如果没有则使用当前宽度
         Object userData = column.getUserData();
         if (userData instanceof Double) {
@@ -5187,7 +6172,7 @@ public class MainController {
      * 设置列宽调整功能（拖拽列边缘）
      * 在创建列时调用此方法
      */
-    private void setupColumnResizing(TableColumn<ObservableList<CSVCell>, ?> column) {
+    private void setupColumnResizing(TableColumn<CSVRow, ?> column) {
         // JavaFX的TableColumn已经内置了拖拽调整列宽的功能
         // 我们只需要添加最大/最小宽度限制
         
@@ -5234,7 +6219,7 @@ public class MainController {
      * 设置行拖动功能
      * 允许用户通过拖动行来重新排列行的顺序
      */
-    private void setupRowDragAndDrop(TableRow<ObservableList<CSVCell>> row) {
+    private void setupRowDragAndDrop(TableRow<CSVRow> row) {
         // 拖动开始
         row.setOnDragDetected(event -> {
             if (!row.isEmpty()) {
@@ -5295,22 +6280,13 @@ public class MainController {
                     // 保存当前状态到历史记录
                     saveHistory();
                     
-                    // 获取被拖动的行数据
-                    ObservableList<CSVCell> draggedRow = csvData.getData().get(draggedIndex);
-                    
-                    // 从原位置移除
-                    csvData.getData().remove(draggedIndex);
-                    
-                    // 插入到新位置
                     // 如果目标位置在源位置之后，需要调整索引
                     int insertIndex = dropIndex;
                     if (draggedIndex < dropIndex) {
                         insertIndex = dropIndex - 1;
                     }
-                    csvData.getData().add(insertIndex, draggedRow);
-                    
-                    // 同时移动高亮信息
-                    highlightManager.moveRow(draggedIndex, insertIndex);
+                    // 移动行数据（高亮信息通过数据监听器同步移动）
+                    csvData.moveRow(draggedIndex, insertIndex);
                     
                     // 刷新表格
                     tableView.refresh();
@@ -1,23 +1,41 @@
 package hbnu.project.ergoucsveditior.manager;
 
 import hbnu.project.ergoucsveditior.rule.AutoMarkRule;
+import hbnu.project.ergoucsveditior.rule.CompiledRule;
 import hbnu.project.ergoucsveditior.model.CSVData;
+import hbnu.project.ergoucsveditior.model.CSVDataListener;
+import hbnu.project.ergoucsveditior.model.CellStore;
+import hbnu.project.ergoucsveditior.model.SparseCellMap;
 
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
 
 /**
  * 自动标记管理器
  * 负责应用和验证自动标记规则
+ * 标记结果与单元格高亮共用稀疏单元格映射，插入、删除、移动行列时跟随数据移动
+ * 大表格的规则计算可以在后台线程中按行分块并行执行，完成后再一次性发布结果
+ * 规则应用之后，单元格修改、插入行列等变化只重新计算受影响的单元格，不再全表扫描
  */
-public class AutoMarkManager {
+public class AutoMarkManager implements CSVDataListener {
+    private static final int CHUNK_ROWS = 8192;       // 每个并行任务处理的行数
+    private static final int CANCEL_CHECK_ROWS = 256; // 每处理多少行检查一次是否取消
+    
     private List<AutoMarkRule> rules;
-    private Map<String, String> autoMarkColors; // key: "row,col", value: color
+    private SparseCellMap<String> autoMarkColors; // value: color
+    private int dataVersion; // 数据每变化一次加一，用于判断后台计算结果是否过期
+    private List<CompiledRule> compiledRules; // 增量计算使用的已编译规则，规则变化时置空
+    private boolean active; // 规则是否已应用，已应用时数据变化会增量更新标记
+    private CSVData data;
+    private Runnable onFullReevaluation; // 需要整体重新计算时的回调，未设置时同步重新计算
     
     public AutoMarkManager() {
         this.rules = new ArrayList<>();
-        this.autoMarkColors = new HashMap<>();
+        this.autoMarkColors = new SparseCellMap<>();
     }
     
     /**
@@ -25,6 +43,7 @@ public class AutoMarkManager {
      */
     public void addRule(AutoMarkRule rule) {
         rules.add(rule);
+        compiledRules = null;
     }
     
     /**
@@ -32,6 +51,7 @@ public class AutoMarkManager {
      */
     public void removeRule(AutoMarkRule rule) {
         rules.remove(rule);
+        compiledRules = null;
     }
     
     /**
@@ -46,331 +66,371 @@ public class AutoMarkManager {
      */
     public void clearRules() {
         rules.clear();
-        autoMarkColors.clear();
+        compiledRules = null;
+        clearAutoMarks();
     }
     
     /**
-     * 应用所有规则到CSV数据
+     * 关联CSV数据
+     * 监听数据的变化，使标记跟随行列移动，并在规则已应用时增量更新受影响的单元格
      */
-    public void applyRules(CSVData csvData) {
-        autoMarkColors.clear();
-        
-        for (AutoMarkRule rule : rules) {
-            if (!rule.isEnabled()) {
-                continue;
-            }
-            
-            applyRule(rule, csvData);
+    public void attach(CSVData csvData) {
+        if (data != null) {
+            data.removeDataListener(this);
+        }
+        data = csvData;
+        if (data != null) {
+            data.addDataListener(this);
         }
     }
     
     /**
-     * 应用单个规则
+     * 设置需要整体重新计算标记时的回调（如整个存储被替换），通常在后台重新应用规则
      */
-    private void applyRule(AutoMarkRule rule, CSVData csvData) {
-        for (int row = 0; row < csvData.getRows(); row++) {
-            for (int col = 0; col < csvData.getColumns(); col++) {
-                // 检查应用范围
-                if (!isInScope(rule, col)) {
-                    continue;
-                }
-                
-                String value = csvData.getCellValue(row, col);
-                if (matchesRule(rule, value)) {
-                    String key = row + "," + col;
-                    autoMarkColors.put(key, rule.getColor());
-                }
-            }
-        }
+    public void setOnFullReevaluation(Runnable onFullReevaluation) {
+        this.onFullReevaluation = onFullReevaluation;
     }
     
     /**
-     * 检查列是否在规则应用范围内
+     * 应用所有规则到CSV数据
+     * 规则先编译成不可变的判断条件，每个单元格只读取一次，
+     * 从后往前检查规则，第一个匹配的即为最终颜色（与依次应用时后面的规则覆盖前面的规则结果相同）
      */
-    private boolean isInScope(AutoMarkRule rule, int col) {
-        switch (rule.getScope()) {
-            case ALL_COLUMNS:
-                return true;
-            case SPECIFIED_COLUMNS:
-                if (rule.getSpecifiedColumns() == null) {
-                    return false;
-                }
-                for (int specCol : rule.getSpecifiedColumns()) {
-                    if (specCol == col) {
-                        return true;
-                    }
-                }
-                return false;
-            case SELECTED_COLUMN:
-                // 这个需要从外部传入选中列
-                return true;
-            default:
-                return false;
-        }
+    public void applyRules(CSVData csvData) {
+        publish(evaluate(csvData, compileRules(), ForkJoinPool.commonPool(), null, null));
     }
     
     /**
-     * 检查值是否匹配规则
+     * 按行分块并行计算自动标记，不修改当前的标记结果，可在后台线程调用
+     * 每块写入自己的稀疏映射（行号相对于块的起点），全部完成后按块的顺序合并，合并过程不需要加锁
+     * 
+     * @param csvData CSV数据（计算期间不应修改）
+     * @param compiled 编译后的规则
+     * @param pool 执行计算任务的线程池
+     * @param progress 每完成一块回调一次，参数为已完成的行数，可以为 null
+     * @param cancelled 返回 true 时尽快停止，可以为 null
+     * @return 计算结果，取消时返回 null
      */
-    public boolean matchesRule(AutoMarkRule rule, String value) {
-        if (rule == null) {
-            return false;
+    public SparseCellMap<String> evaluate(CSVData csvData, List<CompiledRule> compiled, ForkJoinPool pool,
+                                          IntConsumer progress, BooleanSupplier cancelled) {
+        SparseCellMap<String> result = new SparseCellMap<>();
+        int rows = csvData.getRows();
+        if (compiled.isEmpty() || rows == 0) {
+            return result;
         }
         
-        switch (rule.getType()) {
-            case NUMBER_GREATER:
-                return checkNumberGreater(value, rule.getParameter());
-            case NUMBER_LESS:
-                return checkNumberLess(value, rule.getParameter());
-            case NUMBER_EQUAL:
-                return checkNumberEqual(value, rule.getParameter());
-            case NUMBER_PRIME:
-                return isPrime(value);
-            case STRING_CONTAINS:
-                return checkStringContains(value, rule.getParameter());
-            case STRING_REGEX:
-                return checkRegex(value, rule.getParameter());
-            case FORMAT_EMAIL:
-                return !isEmail(value);
-            case FORMAT_PHONE:
-                return !isPhone(value);
-            case FORMAT_URL:
-                return !isURL(value);
-            case FORMAT_ID_CARD:
-                return !isIDCard(value);
-            case EMPTY_NULL:
-                return isEmpty(value);
-            case EMPTY_WHITESPACE:
-                return isWhitespaceOnly(value);
-            case EMPTY_ZERO_LENGTH:
-                return isZeroLength(value);
-            default:
-                return false;
+        AtomicInteger rowsDone = new AtomicInteger();
+        List<ForkJoinTask<SparseCellMap<String>>> chunks = new ArrayList<>();
+        for (int from = 0; from < rows; from += CHUNK_ROWS) {
+            int start = from;
+            int end = Math.min(rows, from + CHUNK_ROWS);
+            chunks.add(pool.submit(() -> {
+                SparseCellMap<String> marks = evaluateChunk(csvData, compiled, start, end, cancelled);
+                int done = rowsDone.addAndGet(end - start);
+                if (progress != null) {
+                    progress.accept(done);
+                }
+                return marks;
+            }));
+        }
+        
+        for (int i = 0; i < chunks.size(); i++) {
+            SparseCellMap<String> marks = chunks.get(i).join();
+            if (marks == null) {
+                chunks.forEach(chunk -> chunk.cancel(false));
+                return null;
+            }
+            result.putRows(marks, i * CHUNK_ROWS);
         }
+        return result;
     }
     
     /**
-     * 获取单元格的自动标记颜色
+     * 计算 [from, to) 行的自动标记
+     * @return 行号相对于 from 的结果，取消时返回 null
      */
-    public String getAutoMarkColor(int row, int col) {
-        return autoMarkColors.get(row + "," + col);
+    private static SparseCellMap<String> evaluateChunk(CSVData csvData, List<CompiledRule> compiled,
+                                                       int from, int to, BooleanSupplier cancelled) {
+        SparseCellMap<String> marks = new SparseCellMap<>();
+        int columns = csvData.getColumns();
+        for (int row = from; row < to; row++) {
+            if (cancelled != null && (row - from) % CANCEL_CHECK_ROWS == 0 && cancelled.getAsBoolean()) {
+                return null;
+            }
+            for (int col = 0; col < columns; col++) {
+                String color = evaluate(compiled, col, csvData.getCellValue(row, col));
+                if (color != null) {
+                    marks.put(row - from, col, color);
+                }
+            }
+        }
+        return marks;
     }
     
     /**
-     * 清除所有自动标记
+     * 发布计算结果，替换当前的全部自动标记
      */
-    public void clearAutoMarks() {
-        autoMarkColors.clear();
+    public void publish(SparseCellMap<String> marks) {
+        if (marks != null) {
+            autoMarkColors = marks;
+            active = true;
+        }
     }
     
+    // ========== 增量计算 ==========
+    
     /**
-     * 清除单个单元格的自动标记
+     * 重新计算单个单元格的自动标记
      */
-    public void clearCellAutoMark(int row, int col) {
-        String key = row + "," + col;
-        autoMarkColors.remove(key);
+    public void reevaluateCell(int row, int col) {
+        if (data != null && row >= 0 && row < data.getRows() && col >= 0 && col < data.getColumns()) {
+            updateCell(compiled(), row, col, data.getCellValue(row, col));
+        }
     }
     
     /**
-     * 清除整行的自动标记
+     * 重新计算 [row, row + count) 行的自动标记
      */
-    public void clearRowAutoMark(int row, int columns) {
-        for (int col = 0; col < columns; col++) {
-            String key = row + "," + col;
-            autoMarkColors.remove(key);
+    public void reevaluateRows(int row, int count) {
+        if (data == null) {
+            return;
+        }
+        List<CompiledRule> compiled = compiled();
+        int end = Math.min(data.getRows(), row + count);
+        int columns = data.getColumns();
+        for (int r = Math.max(0, row); r < end; r++) {
+            for (int col = 0; col < columns; col++) {
+                updateCell(compiled, r, col, data.getCellValue(r, col));
+            }
         }
     }
     
     /**
-     * 清除整列的自动标记
+     * 重新计算一列的自动标记
      */
-    public void clearColumnAutoMark(int col, int rows) {
+    public void reevaluateColumn(int col) {
+        if (data == null || col < 0 || col >= data.getColumns()) {
+            return;
+        }
+        List<CompiledRule> compiled = compiled();
+        int rows = data.getRows();
         for (int row = 0; row < rows; row++) {
-            String key = row + "," + col;
-            autoMarkColors.remove(key);
+            updateCell(compiled, row, col, data.getCellValue(row, col));
         }
     }
     
-    // ==================== 规则校验方法 ====================
-    
     /**
-     * 检查数字是否大于指定值
+     * 列号整体移动后，指定列范围的规则可能不再对应原来的列，
+     * 只重新计算适用规则发生变化的列
+     * @param from 第一个移动过的列（移动后的列号）
+     * @param delta 列号的变化量
      */
-    private boolean checkNumberGreater(String value, String parameter) {
-        try {
-            double num = Double.parseDouble(value);
-            double threshold = Double.parseDouble(parameter);
-            return num > threshold;
-        } catch (NumberFormatException e) {
-            return false;
+    private void reevaluateShiftedColumns(int from, int delta) {
+        if (data == null) {
+            return;
+        }
+        List<CompiledRule> compiled = compiled();
+        for (int col = from; col < data.getColumns(); col++) {
+            for (CompiledRule rule : compiled) {
+                if (rule.appliesTo(col) != rule.appliesTo(col - delta)) {
+                    reevaluateColumn(col);
+                    break;
+                }
+            }
         }
     }
     
+    private void updateCell(List<CompiledRule> compiled, int row, int col, String value) {
+        autoMarkColors.put(row, col, evaluate(compiled, col, value));
+    }
+    
     /**
-     * 检查数字是否小于指定值
+     * 缓存的已编译规则，规则不变时只编译一次
      */
-    private boolean checkNumberLess(String value, String parameter) {
-        try {
-            double num = Double.parseDouble(value);
-            double threshold = Double.parseDouble(parameter);
-            return num < threshold;
-        } catch (NumberFormatException e) {
-            return false;
+    private List<CompiledRule> compiled() {
+        if (compiledRules == null) {
+            compiledRules = compileRules();
         }
+        return compiledRules;
     }
     
     /**
-     * 检查数字是否等于指定值
+     * 数据版本，数据每变化一次加一
+     * 后台计算开始和结束时的版本不同，说明计算期间数据被修改过，结果已过期
      */
-    private boolean checkNumberEqual(String value, String parameter) {
-        try {
-            double num = Double.parseDouble(value);
-            double threshold = Double.parseDouble(parameter);
-            return Math.abs(num - threshold) < 0.0001;
-        } catch (NumberFormatException e) {
-            return false;
-        }
+    public int getDataVersion() {
+        return dataVersion;
     }
     
     /**
-     * 检查是否为质数
+     * 编译所有启用的规则
      */
-    public boolean isPrime(String value) {
-        try {
-            long num = Long.parseLong(value);
-            if (num <= 1) {
-                return false;
-            }
-            if (num <= 3) {
-                return true;
-            }
-            if (num % 2 == 0 || num % 3 == 0) {
-                return false;
-            }
-            for (long i = 5; i * i <= num; i += 6) {
-                if (num % i == 0 || num % (i + 2) == 0) {
-                    return false;
-                }
+    public List<CompiledRule> compileRules() {
+        List<CompiledRule> compiled = new ArrayList<>();
+        for (AutoMarkRule rule : rules) {
+            if (rule.isEnabled()) {
+                compiled.add(CompiledRule.compile(rule));
             }
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
         }
+        return compiled;
     }
     
     /**
-     * 检查字符串是否包含指定内容
+     * 用编译后的规则判断单元格，返回最终的标记颜色，不匹配时返回 null
      */
-    private boolean checkStringContains(String value, String parameter) {
-        if (value == null || parameter == null) {
-            return false;
+    private static String evaluate(List<CompiledRule> compiled, int col, String value) {
+        for (int i = compiled.size() - 1; i >= 0; i--) {
+            CompiledRule rule = compiled.get(i);
+            if (rule.appliesTo(col) && rule.matches(value)) {
+                return rule.getColor();
+            }
         }
-        return value.contains(parameter);
+        return null;
     }
     
     /**
-     * 检查字符串是否匹配正则表达式
+     * 检查值是否匹配规则
      */
-    private boolean checkRegex(String value, String parameter) {
-        if (value == null || parameter == null) {
-            return false;
-        }
-        try {
-            return Pattern.matches(parameter, value);
-        } catch (PatternSyntaxException e) {
+    public boolean matchesRule(AutoMarkRule rule, String value) {
+        if (rule == null) {
             return false;
         }
+        return CompiledRule.compile(rule).matches(value);
+    }
+    
+    /**
+     * 检查是否为质数
+     */
+    public boolean isPrime(String value) {
+        return CompiledRule.isPrime(value);
     }
     
     /**
      * 检查是否为有效邮箱
      */
     public boolean isEmail(String value) {
-        if (value == null || value.isEmpty()) {
-            return false;
-        }
-        String emailRegex = "^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$";
-        return Pattern.matches(emailRegex, value);
+        return CompiledRule.isEmail(value);
     }
     
     /**
      * 检查是否为有效手机号
      */
     public boolean isPhone(String value) {
-        if (value == null || value.isEmpty()) {
-            return false;
-        }
-        // 国内11位手机号
-        String chinaPhone = "^1[3-9]\\d{9}$";
-        // 国际格式 +国家码+号码
-        String internationalPhone = "^\\+\\d{1,3}\\d{10,11}$";
-        return Pattern.matches(chinaPhone, value) || Pattern.matches(internationalPhone, value);
+        return CompiledRule.isPhone(value);
     }
     
     /**
      * 检查是否为有效URL
      */
     public boolean isURL(String value) {
-        if (value == null || value.isEmpty()) {
-            return false;
-        }
-        String urlRegex = "^(http|https)://[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}(/.*)?$";
-        return Pattern.matches(urlRegex, value);
+        return CompiledRule.isURL(value);
     }
     
     /**
      * 检查是否为有效身份证号
      */
     public boolean isIDCard(String value) {
-        if (value == null || value.length() != 18) {
-            return false;
-        }
-        // 简单验证：前17位是数字，最后一位是数字或X
-        String idCardRegex = "^\\d{17}[0-9Xx]$";
-        if (!Pattern.matches(idCardRegex, value)) {
-            return false;
-        }
-        
-        // 验证校验码
-        try {
-            int[] weights = {7, 9, 10, 5, 8, 4, 2, 1, 6, 3, 7, 9, 10, 5, 8, 4, 2};
-            char[] checkCodes = {'1', '0', 'X', '9', '8', '7', '6', '5', '4', '3', '2'};
-            
-            int sum = 0;
-            for (int i = 0; i < 17; i++) {
-                sum += (value.charAt(i) - '0') * weights[i];
-            }
-            int mod = sum % 11;
-            char checkCode = checkCodes[mod];
-            
-            return Character.toUpperCase(value.charAt(17)) == checkCode;
-        } catch (Exception e) {
-            return false;
-        }
+        return CompiledRule.isIDCard(value);
     }
     
     /**
-     * 检查是否为空值
+     * 获取单元格的自动标记颜色
      */
-    private boolean isEmpty(String value) {
-        return value == null || value.isEmpty();
+    public String getAutoMarkColor(int row, int col) {
+        return autoMarkColors.get(row, col);
     }
     
     /**
-     * 检查是否仅含空白字符
+     * 清除所有自动标记
      */
-    private boolean isWhitespaceOnly(String value) {
-        if (value == null || value.isEmpty()) {
-            return false;
-        }
-        return value.trim().isEmpty();
+    public void clearAutoMarks() {
+        autoMarkColors.clear();
+        active = false;
     }
     
     /**
-     * 检查长度是否为0
+     * 清除单个单元格的自动标记
      */
-    private boolean isZeroLength(String value) {
-        return value != null && value.length() == 0;
+    public void clearCellAutoMark(int row, int col) {
+        autoMarkColors.remove(row, col);
+    }
+    
+    /**
+     * 清除整行的自动标记
+     */
+    public void clearRowAutoMark(int row, int columns) {
+        autoMarkColors.clearRow(row);
+    }
+    
+    /**
+     * 清除整列的自动标记
+     */
+    public void clearColumnAutoMark(int col, int rows) {
+        autoMarkColors.clearColumn(col);
+    }
+    
+    // ========== 数据变化时同步移动标记，并增量计算受影响的单元格 ==========
+    
+    @Override
+    public void cellChanged(int row, int column, String oldValue, String newValue) {
+        dataVersion++;
+        if (active) {
+            updateCell(compiled(), row, column, newValue);
+        }
+    }
+    
+    @Override
+    public void rowsInserted(int row, int count) {
+        dataVersion++;
+        autoMarkColors.insertRows(row, count);
+        if (active) {
+            reevaluateRows(row, count);
+        }
+    }
+    
+    @Override
+    public void rowRemoved(int row, String[] values) {
+        dataVersion++;
+        autoMarkColors.removeRows(row, 1);
+    }
+    
+    @Override
+    public void rowMoved(int from, int to) {
+        dataVersion++;
+        autoMarkColors.moveRow(from, to);
+    }
+    
+    @Override
+    public void columnInserted(int column) {
+        dataVersion++;
+        autoMarkColors.insertColumn(column);
+        if (active) {
+            // 新列为空，但“空值”类规则可能匹配
+            reevaluateColumn(column);
+            reevaluateShiftedColumns(column + 1, 1);
+        }
+    }
+    
+    @Override
+    public void columnRemoved(int column, String[] values) {
+        dataVersion++;
+        autoMarkColors.removeColumn(column);
+        if (active) {
+            reevaluateShiftedColumns(column, -1);
+        }
+    }
+    
+    @Override
+    public void storeReplaced(CellStore oldStore, CellStore newStore) {
+        dataVersion++;
+        if (active) {
+            // 整个存储被替换（清空、调整大小及其撤销/重做），原有标记的位置和值都已失效
+            autoMarkColors.clear();
+            if (onFullReevaluation != null) {
+                onFullReevaluation.run();
+            } else {
+                applyRules(data);
+            }
+        }
     }
 }
-
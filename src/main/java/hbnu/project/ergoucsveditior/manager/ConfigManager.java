@@ -68,6 +68,12 @@ public class ConfigManager {
                 Files.createDirectories(rulesDir);
             }
             
+            // 创建index子目录（大文件的记录偏移索引缓存）
+            Path indexDir = configDirPath.resolve("index");
+            if (!Files.exists(indexDir)) {
+                Files.createDirectories(indexDir);
+            }
+            
         } catch (IOException e) {
             System.err.println("无法创建配置目录: " + e.getMessage());
             // 降级到当前目录
@@ -100,6 +106,13 @@ public class ConfigManager {
         return configDirPath.resolve("rules").resolve(fileName).toFile();
     }
     
+    /**
+     * 获取index目录路径（存放大文件的记录偏移索引缓存）
+     */
+    public static Path getIndexDir() {
+        return configDirPath.resolve("index");
+    }
+    
     /**
      * 检查配置文件是否存在
      * @param fileName 配置文件名
@@ -1,23 +1,31 @@
 package hbnu.project.ergoucsveditior.manager;
 
+import hbnu.project.ergoucsveditior.model.CSVDataListener;
 import hbnu.project.ergoucsveditior.model.HighlightInfo;
+import hbnu.project.ergoucsveditior.model.IndexMap;
+import hbnu.project.ergoucsveditior.model.RangeIndex;
+import hbnu.project.ergoucsveditior.model.SparseCellMap;
 import javafx.scene.paint.Color;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * 高亮管理器
  * 管理所有单元格、行、列的高亮状态
+ * 高亮按行号、列号保存在稀疏数组中，渲染时查询不分配对象；
+ * 矩形区域高亮保存在区间索引中，无论区域多大都只占一条记录；
+ * 注册为 CSVData 的监听器后，插入、删除、移动行列时高亮会跟随数据移动
  */
-public class HighlightManager {
-    // 单元格高亮 - key: "row,col"
-    private Map<String, HighlightInfo> cellHighlights;
+public class HighlightManager implements CSVDataListener {
+    // 单元格高亮
+    private final SparseCellMap<HighlightInfo> cellHighlights;
     
-    // 行高亮 - key: row
-    private Map<Integer, HighlightInfo> rowHighlights;
+    // 行高亮 - 下标: row
+    private final IndexMap<HighlightInfo> rowHighlights;
     
-    // 列高亮 - key: col
-    private Map<Integer, HighlightInfo> columnHighlights;
+    // 列高亮 - 下标: col
+    private final IndexMap<HighlightInfo> columnHighlights;
+    
+    // 矩形区域高亮
+    private final RangeIndex<HighlightInfo> rangeHighlights;
     
     // 默认颜色配置
     private Color defaultCellHighlightColor;
@@ -35,13 +43,14 @@ public class HighlightManager {
     private ConflictStrategy conflictStrategy;
     
     // 存储冲突单元格的随机选择结果
-    private Map<String, Color> conflictResolutions;
+    private final SparseCellMap<Color> conflictResolutions;
     
     public HighlightManager() {
-        cellHighlights = new HashMap<>();
-        rowHighlights = new HashMap<>();
-        columnHighlights = new HashMap<>();
-        conflictResolutions = new HashMap<>();
+        cellHighlights = new SparseCellMap<>();
+        rowHighlights = new IndexMap<>();
+        columnHighlights = new IndexMap<>();
+        rangeHighlights = new RangeIndex<>();
+        conflictResolutions = new SparseCellMap<>();
         
         // 设置默认颜色
         defaultCellHighlightColor = Color.rgb(255, 255, 153, 0.7);      // 浅黄色
@@ -54,6 +63,29 @@ public class HighlightManager {
         conflictStrategy = ConflictStrategy.覆盖策略;
     }
     
+    private HighlightManager(HighlightManager source) {
+        cellHighlights = source.cellHighlights.copy();
+        rowHighlights = source.rowHighlights.copy();
+        columnHighlights = source.columnHighlights.copy();
+        rangeHighlights = source.rangeHighlights.copy();
+        conflictResolutions = source.conflictResolutions.copy();
+        defaultCellHighlightColor = source.defaultCellHighlightColor;
+        defaultRowHighlightColor = source.defaultRowHighlightColor;
+        defaultColumnHighlightColor = source.defaultColumnHighlightColor;
+        defaultTextHighlightColor = source.defaultTextHighlightColor;
+        defaultSearchHighlightColor = source.defaultSearchHighlightColor;
+        conflictStrategy = source.conflictStrategy;
+    }
+    
+    /**
+     * 创建当前高亮状态的独立快照，供后台线程读取（如导出）
+     * 快照不监听数据变化，之后对高亮或数据的修改不影响快照；
+     * 查询时建立的区域索引和随机冲突结果只写入快照自己的结构
+     */
+    public HighlightManager snapshot() {
+        return new HighlightManager(this);
+    }
+    
     /**
      * 设置单元格高亮
      */
@@ -65,8 +97,7 @@ public class HighlightManager {
      * 设置单元格高亮（带文本颜色）
      */
     public void setCellHighlight(int row, int col, Color backgroundColor, Color textColor) {
-        String key = row + "," + col;
-        cellHighlights.put(key, new HighlightInfo(HighlightInfo.HighlightType.CELL, backgroundColor, textColor));
+        cellHighlights.put(row, col, new HighlightInfo(HighlightInfo.HighlightType.CELL, backgroundColor, textColor));
     }
     
     /**
@@ -80,7 +111,7 @@ public class HighlightManager {
      * 设置行高亮（带文本颜色）
      */
     public void setRowHighlight(int row, Color backgroundColor, Color textColor) {
-        rowHighlights.put(row, new HighlightInfo(HighlightInfo.HighlightType.ROW, backgroundColor, textColor));
+        rowHighlights.set(row, new HighlightInfo(HighlightInfo.HighlightType.ROW, backgroundColor, textColor));
     }
     
     /**
@@ -94,15 +125,44 @@ public class HighlightManager {
      * 设置列高亮（带文本颜色）
      */
     public void setColumnHighlight(int col, Color backgroundColor, Color textColor) {
-        columnHighlights.put(col, new HighlightInfo(HighlightInfo.HighlightType.COLUMN, backgroundColor, textColor));
+        columnHighlights.set(col, new HighlightInfo(HighlightInfo.HighlightType.COLUMN, backgroundColor, textColor));
+    }
+    
+    /**
+     * 设置矩形区域高亮（包含首尾行列）
+     */
+    public void setRangeHighlight(int firstRow, int lastRow, int firstCol, int lastCol, Color color) {
+        setRangeHighlight(firstRow, lastRow, firstCol, lastCol, color, null);
+    }
+    
+    /**
+     * 设置矩形区域高亮（带文本颜色）
+     */
+    public void setRangeHighlight(int firstRow, int lastRow, int firstCol, int lastCol,
+                                  Color backgroundColor, Color textColor) {
+        rangeHighlights.add(firstRow, lastRow, firstCol, lastCol,
+            new HighlightInfo(HighlightInfo.HighlightType.RANGE, backgroundColor, textColor));
     }
     
     /**
      * 获取单元格高亮信息
      */
     public HighlightInfo getCellHighlight(int row, int col) {
-        String key = row + "," + col;
-        return cellHighlights.get(key);
+        return cellHighlights.get(row, col);
+    }
+    
+    /**
+     * 获取覆盖单元格的区域高亮信息（重叠时取最后添加的区域）
+     */
+    public HighlightInfo getRangeHighlight(int row, int col) {
+        return rangeHighlights.find(row, col);
+    }
+    
+    /**
+     * 获取所有区域高亮（按添加顺序）
+     */
+    public java.util.List<RangeIndex.Range<HighlightInfo>> getRangeHighlights() {
+        return rangeHighlights.getRanges();
     }
     
     /**
@@ -123,22 +183,29 @@ public class HighlightManager {
      * 清除单元格高亮
      */
     public void clearCellHighlight(int row, int col) {
-        String key = row + "," + col;
-        cellHighlights.remove(key);
+        cellHighlights.remove(row, col);
     }
     
     /**
      * 清除行高亮
      */
     public void clearRowHighlight(int row) {
-        rowHighlights.remove(row);
+        rowHighlights.set(row, null);
     }
     
     /**
      * 清除列高亮
      */
     public void clearColumnHighlight(int col) {
-        columnHighlights.remove(col);
+        columnHighlights.set(col, null);
+    }
+    
+    /**
+     * 清除覆盖单元格的所有区域高亮
+     * @return 清除的区域数
+     */
+    public int clearRangeHighlights(int row, int col) {
+        return rangeHighlights.removeContaining(row, col);
     }
     
     /**
@@ -146,13 +213,14 @@ public class HighlightManager {
      */
     public void clearAllHighlights() {
         cellHighlights.clear();
+        rangeHighlights.clear();
         rowHighlights.clear();
         columnHighlights.clear();
         conflictResolutions.clear();
     }
     
     /**
-     * 获取单元格的最终高亮背景颜色（优先级：单元格 > 行列冲突处理）
+     * 获取单元格的最终高亮背景颜色（优先级：单元格 > 区域 > 行列冲突处理）
      */
     public Color getFinalHighlightColor(int row, int col) {
         // 优先级1：单元格高亮
@@ -161,15 +229,21 @@ public class HighlightManager {
             return cellHighlight.getBackgroundColor();
         }
         
+        // 优先级2：区域高亮
+        HighlightInfo rangeHighlight = getRangeHighlight(row, col);
+        if (rangeHighlight != null) {
+            return rangeHighlight.getBackgroundColor();
+        }
+        
         HighlightInfo rowHighlight = getRowHighlight(row);
         HighlightInfo colHighlight = getColumnHighlight(col);
         
-        // 优先级2：处理行列高亮冲突
+        // 优先级3：处理行列高亮冲突
         if (rowHighlight != null && colHighlight != null) {
             return resolveConflict(row, col, rowHighlight, colHighlight);
         }
         
-        // 优先级3：单独的行高亮或列高亮
+        // 优先级4：单独的行高亮或列高亮
         if (rowHighlight != null) {
             return rowHighlight.getBackgroundColor();
         }
@@ -182,7 +256,7 @@ public class HighlightManager {
     }
     
     /**
-     * 获取单元格的最终文本颜色（优先级：单元格 > 行 > 列）
+     * 获取单元格的最终文本颜色（优先级：单元格 > 区域 > 行 > 列）
      */
     public Color getFinalTextColor(int row, int col) {
         // 优先级1：单元格文本高亮
@@ -191,13 +265,19 @@ public class HighlightManager {
             return cellHighlight.getTextColor();
         }
         
-        // 优先级2：行文本高亮
+        // 优先级2：区域文本高亮
+        HighlightInfo rangeHighlight = getRangeHighlight(row, col);
+        if (rangeHighlight != null && rangeHighlight.getTextColor() != null) {
+            return rangeHighlight.getTextColor();
+        }
+        
+        // 优先级3：行文本高亮
         HighlightInfo rowHighlight = getRowHighlight(row);
         if (rowHighlight != null && rowHighlight.getTextColor() != null) {
             return rowHighlight.getTextColor();
         }
         
-        // 优先级3：列文本高亮
+        // 优先级4：列文本高亮
         HighlightInfo colHighlight = getColumnHighlight(col);
         if (colHighlight != null && colHighlight.getTextColor() != null) {
             return colHighlight.getTextColor();
@@ -206,12 +286,82 @@ public class HighlightManager {
         return null;
     }
     
+    /**
+     * 计算一整行单元格的最终高亮背景颜色，结果与逐个调用 getFinalHighlightColor 相同
+     * 按优先级从低到高依次铺上行列高亮、区域高亮和单元格高亮，
+     * 只遍历与该行相交的区域和该行中有高亮的单元格，供导出时逐行使用
+     * 
+     * @param row 行索引
+     * @param colors 输出数组，长度即列数
+     */
+    public void fillRowColors(int row, Color[] colors) {
+        int columns = colors.length;
+        HighlightInfo rowHighlight = getRowHighlight(row);
+        for (int col = 0; col < columns; col++) {
+            HighlightInfo colHighlight = getColumnHighlight(col);
+            if (rowHighlight != null && colHighlight != null) {
+                colors[col] = resolveConflict(row, col, rowHighlight, colHighlight);
+            } else if (rowHighlight != null) {
+                colors[col] = rowHighlight.getBackgroundColor();
+            } else {
+                colors[col] = colHighlight != null ? colHighlight.getBackgroundColor() : null;
+            }
+        }
+        
+        rangeHighlights.forEachInRow(row, range -> {
+            Color color = range.getValue().getBackgroundColor();
+            int last = Math.min(range.getLastColumn(), columns - 1);
+            for (int col = Math.max(range.getFirstColumn(), 0); col <= last; col++) {
+                colors[col] = color;
+            }
+        });
+        
+        cellHighlights.forEachInRow(row, (r, col, info) -> {
+            if (col < columns) {
+                colors[col] = info.getBackgroundColor();
+            }
+        });
+    }
+    
+    /**
+     * 计算一整行单元格的最终文本颜色，结果与逐个调用 getFinalTextColor 相同
+     * 区域按添加顺序铺上，最后添加的区域没有文本颜色时退回行列的文本颜色
+     *
+     * @param row 行索引
+     * @param colors 输出数组，长度即列数
+     */
+    public void fillRowTextColors(int row, Color[] colors) {
+        int columns = colors.length;
+        HighlightInfo rowHighlight = getRowHighlight(row);
+        Color rowText = rowHighlight != null ? rowHighlight.getTextColor() : null;
+        for (int col = 0; col < columns; col++) {
+            colors[col] = rowText != null ? rowText : columnTextColor(col);
+        }
+
+        rangeHighlights.forEachInRow(row, range -> {
+            Color color = range.getValue().getTextColor();
+            int last = Math.min(range.getLastColumn(), columns - 1);
+            for (int col = Math.max(range.getFirstColumn(), 0); col <= last; col++) {
+                colors[col] = color != null ? color : rowText != null ? rowText : columnTextColor(col);
+            }
+        });
+
+        cellHighlights.forEachInRow(row, (r, col, info) -> {
+            if (col < columns && info.getTextColor() != null) {
+                colors[col] = info.getTextColor();
+            }
+        });
+    }
+
+    private Color columnTextColor(int col) {
+        HighlightInfo colHighlight = getColumnHighlight(col);
+        return colHighlight != null ? colHighlight.getTextColor() : null;
+    }
+
     /**
      * 解决行列高亮冲突
      */
     private Color resolveConflict(int row, int col, HighlightInfo rowHighlight, HighlightInfo colHighlight) {
-        String key = row + "," + col;
-        
         if (conflictStrategy == ConflictStrategy.覆盖策略) {
             // 覆盖策略：比较时间戳，返回较晚的颜色
             if (rowHighlight.getTimestamp() > colHighlight.getTimestamp()) {
@@ -221,13 +371,14 @@ public class HighlightManager {
             }
         } else {
             // 随机策略：首次冲突时随机选择，之后使用缓存结果
-            if (!conflictResolutions.containsKey(key)) {
+            Color selectedColor = conflictResolutions.get(row, col);
+            if (selectedColor == null) {
                 // 随机选择行色或列色
-                Color selectedColor = Math.random() < 0.5 ? 
+                selectedColor = Math.random() < 0.5 ? 
                     rowHighlight.getColor() : colHighlight.getColor();
-                conflictResolutions.put(key, selectedColor);
+                conflictResolutions.put(row, col, selectedColor);
             }
-            return conflictResolutions.get(key);
+            return selectedColor;
         }
     }
     
@@ -295,63 +446,48 @@ public class HighlightManager {
      * @param toRow 目标行索引
      */
     public void moveRow(int fromRow, int toRow) {
-        // 1. 移动行高亮
-        HighlightInfo rowHighlight = rowHighlights.remove(fromRow);
-        if (rowHighlight != null) {
-            rowHighlights.put(toRow, rowHighlight);
-        }
-        
-        // 2. 移动单元格高亮
-        Map<String, HighlightInfo> newCellHighlights = new HashMap<>();
-        for (Map.Entry<String, HighlightInfo> entry : cellHighlights.entrySet()) {
-            String key = entry.getKey();
-            String[] parts = key.split(",");
-            int row = Integer.parseInt(parts[0]);
-            int col = Integer.parseInt(parts[1]);
-            
-            // 更新行索引
-            if (row == fromRow) {
-                // 被移动的行
-                newCellHighlights.put(toRow + "," + col, entry.getValue());
-            } else if (fromRow < toRow) {
-                // 向下移动：中间的行向上移
-                if (row > fromRow && row <= toRow) {
-                    newCellHighlights.put((row - 1) + "," + col, entry.getValue());
-                } else {
-                    newCellHighlights.put(key, entry.getValue());
-                }
-            } else {
-                // 向上移动：中间的行向下移
-                if (row >= toRow && row < fromRow) {
-                    newCellHighlights.put((row + 1) + "," + col, entry.getValue());
-                } else {
-                    newCellHighlights.put(key, entry.getValue());
-                }
-            }
-        }
-        cellHighlights = newCellHighlights;
-        
-        // 3. 更新中间行的行高亮
-        if (fromRow < toRow) {
-            // 向下移动
-            for (int i = fromRow + 1; i <= toRow; i++) {
-                HighlightInfo highlight = rowHighlights.remove(i);
-                if (highlight != null) {
-                    rowHighlights.put(i - 1, highlight);
-                }
-            }
-        } else if (fromRow > toRow) {
-            // 向上移动
-            for (int i = toRow; i < fromRow; i++) {
-                HighlightInfo highlight = rowHighlights.remove(i);
-                if (highlight != null) {
-                    rowHighlights.put(i + 1, highlight);
-                }
-            }
-        }
-        
-        // 4. 清除冲突解决缓存（因为行号改变了）
-        clearConflictResolutions();
+        cellHighlights.moveRow(fromRow, toRow);
+        rangeHighlights.moveRow(fromRow, toRow);
+        rowHighlights.move(fromRow, toRow);
+        conflictResolutions.moveRow(fromRow, toRow);
+    }
+    
+    // ========== 数据结构变化时同步移动高亮 ==========
+    
+    @Override
+    public void rowsInserted(int row, int count) {
+        cellHighlights.insertRows(row, count);
+        rangeHighlights.insertRows(row, count);
+        rowHighlights.insert(row, count);
+        conflictResolutions.insertRows(row, count);
+    }
+    
+    @Override
+    public void rowRemoved(int row, String[] values) {
+        cellHighlights.removeRows(row, 1);
+        rangeHighlights.removeRows(row, 1);
+        rowHighlights.remove(row, 1);
+        conflictResolutions.removeRows(row, 1);
+    }
+    
+    @Override
+    public void rowMoved(int from, int to) {
+        moveRow(from, to);
+    }
+    
+    @Override
+    public void columnInserted(int column) {
+        cellHighlights.insertColumn(column);
+        rangeHighlights.insertColumn(column);
+        columnHighlights.insert(column, 1);
+        conflictResolutions.insertColumn(column);
+    }
+    
+    @Override
+    public void columnRemoved(int column, String[] values) {
+        cellHighlights.removeColumn(column);
+        rangeHighlights.removeColumn(column);
+        columnHighlights.remove(column, 1);
+        conflictResolutions.removeColumn(column);
     }
 }
-
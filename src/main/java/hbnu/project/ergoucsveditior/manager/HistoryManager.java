@@ -1,115 +1,512 @@
 package hbnu.project.ergoucsveditior.manager;
 
-import hbnu.project.ergoucsveditior.model.CSVCell;
 import hbnu.project.ergoucsveditior.model.CSVData;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import hbnu.project.ergoucsveditior.model.CSVDataListener;
+import hbnu.project.ergoucsveditior.model.CellStore;
 
-import java.util.Stack;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 
 /**
  * 历史记录管理器
- * 用于实现撤销功能
+ * 用于实现撤销和重做功能
+ *
+ * 不再保存整张表的快照，而是监听 CSVData 的变更事件，把每次修改记录成可逆的操作
+ * （单元格修改、行/列插入删除、行移动），撤销和重做的开销只与修改的大小有关，与表格大小无关
+ * 每次调用 saveState 开始一个新的步骤，同一步骤内的多个操作一起撤销
+ * 历史记录按估算的内存占用（字节）限制，超出时丢弃最旧的步骤
  */
-public class HistoryManager {
-    private Stack<CSVSnapshot> undoStack;
-    private int maxHistorySize;
-    
+public class HistoryManager implements CSVDataListener {
+    private static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private final Deque<Step> undoStack = new ArrayDeque<>();
+    private final Deque<Step> redoStack = new ArrayDeque<>();
+    private CSVData data;
+    private Step current;
+    private long maxBytes;
+    private long usedBytes;
+    private boolean replaying;
+    private Runnable onHistoryChanged;
+
     public HistoryManager() {
-        this(50); // 默认保存50个历史状态
+        this(DEFAULT_MAX_BYTES);
     }
-    
-    public HistoryManager(int maxHistorySize) {
-        this.maxHistorySize = maxHistorySize;
-        this.undoStack = new Stack<>();
+
+    /**
+     * @param maxBytes 历史记录的内存上限（字节）
+     */
+    public HistoryManager(long maxBytes) {
+        this.maxBytes = maxBytes;
     }
-    
+
     /**
-     * 保存当前状态
+     * 设置历史记录变化（可撤销/可重做状态可能改变）时的回调
+     */
+    public void setOnHistoryChanged(Runnable onHistoryChanged) {
+        this.onHistoryChanged = onHistoryChanged;
+    }
+
+    /**
+     * 开始记录一个新的步骤
+     * 之后对数据的修改都归入这个步骤，直到下一次调用；数据对象改变时会清空历史并改为监听新数据
      */
     public void saveState(CSVData csvData) {
-        // 如果栈满了，移除最旧的记录
-        if (undoStack.size() >= maxHistorySize) {
-            undoStack.remove(0);
+        if (csvData != data) {
+            if (data != null) {
+                data.removeDataListener(this);
+            }
+            data = csvData;
+            data.addDataListener(this);
+            clear();
+        }
+        if (current == null || !current.isEmpty()) {
+            current = new Step();
+            undoStack.push(current);
         }
-        
-        CSVSnapshot snapshot = new CSVSnapshot(csvData);
-        undoStack.push(snapshot);
     }
-    
+
     /**
-     * 撤销到上一个状态
+     * 撤销最近一个步骤
+     * @return 是否执行了撤销
      */
-    public CSVData undo() {
-        if (canUndo()) {
-            // 移除当前状态
-            undoStack.pop();
-            
-            // 返回上一个状态
-            if (!undoStack.isEmpty()) {
-                CSVSnapshot snapshot = undoStack.peek();
-                return snapshot.restore();
-            }
+    public boolean undo() {
+        Step step = popNonEmpty(undoStack);
+        if (step == null) {
+            return false;
         }
-        return null;
+        replaying = true;
+        try {
+            step.undo(data);
+        } finally {
+            replaying = false;
+        }
+        redoStack.push(step);
+        current = null;
+        notifyChanged();
+        return true;
     }
-    
+
+    /**
+     * 重做最近撤销的步骤
+     * @return 是否执行了重做
+     */
+    public boolean redo() {
+        Step step = redoStack.poll();
+        if (step == null) {
+            return false;
+        }
+        replaying = true;
+        try {
+            step.redo(data);
+        } finally {
+            replaying = false;
+        }
+        undoStack.push(step);
+        current = null;
+        notifyChanged();
+        return true;
+    }
+
     /**
      * 是否可以撤销
      */
     public boolean canUndo() {
-        return undoStack.size() > 1; // 至少要有两个状态才能撤销
+        for (Step step : undoStack) {
+            if (!step.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
     }
-    
+
+    /**
+     * 是否可以重做
+     */
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
     /**
      * 清空历史记录
      */
     public void clear() {
         undoStack.clear();
+        redoStack.clear();
+        current = null;
+        usedBytes = 0;
+        notifyChanged();
     }
-    
+
     /**
-     * 获取历史记录数量
+     * 设置历史记录的内存上限（字节）
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    /**
+     * 获取历史记录数量（可撤销的步骤数）
      */
     public int getHistorySize() {
-        return undoStack.size();
+        int count = 0;
+        for (Step step : undoStack) {
+            if (!step.isEmpty()) {
+                count++;
+            }
+        }
+        return count;
     }
-    
+
     /**
-     * CSV数据快照
+     * 获取历史记录估算占用的内存（字节）
      */
-    private static class CSVSnapshot {
-        private final ObservableList<ObservableList<CSVCell>> data;
-        
-        public CSVSnapshot(CSVData csvData) {
-            
-            // 深拷贝数据
-            this.data = FXCollections.observableArrayList();
-            for (ObservableList<CSVCell> row : csvData.getData()) {
-                ObservableList<CSVCell> newRow = FXCollections.observableArrayList();
-                for (CSVCell cell : row) {
-                    newRow.add(new CSVCell(cell.getValue()));
-                }
-                this.data.add(newRow);
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    // ========== 数据变更事件 ==========
+
+    @Override
+    public void cellChanged(int row, int column, String oldValue, String newValue) {
+        record(new CellChange(row, column, oldValue, newValue));
+    }
+
+    @Override
+    public void rowsInserted(int row, int count) {
+        record(new RowsInserted(row, count));
+    }
+
+    @Override
+    public void rowRemoved(int row, String[] values) {
+        record(new RowRemoved(row, values));
+    }
+
+    @Override
+    public void rowMoved(int from, int to) {
+        record(new RowMoved(from, to));
+    }
+
+    @Override
+    public void columnInserted(int column) {
+        record(new ColumnInserted(column));
+    }
+
+    @Override
+    public void columnRemoved(int column, String[] values) {
+        record(new ColumnRemoved(column, values));
+    }
+
+    @Override
+    public void storeReplaced(CellStore oldStore, CellStore newStore) {
+        record(new StoreReplaced(oldStore, newStore));
+    }
+
+    private void record(Change change) {
+        if (replaying) {
+            return;
+        }
+        boolean wasUndoable = canUndo();
+        boolean hadRedo = !redoStack.isEmpty();
+        // 新的修改使重做记录失效，同时释放它们占用的内存预算
+        for (Step step : redoStack) {
+            usedBytes -= step.bytes;
+        }
+        redoStack.clear();
+        if (current == null) {
+            current = new Step();
+            undoStack.push(current);
+        }
+        current.add(change);
+        usedBytes += change.bytes();
+        trim();
+        if (!wasUndoable || hadRedo) {
+            notifyChanged();
+        }
+    }
+
+    /**
+     * 从最旧的步骤开始丢弃，直到总内存不超过上限（当前步骤总是保留）
+     */
+    private void trim() {
+        while (usedBytes > maxBytes && undoStack.size() > 1) {
+            usedBytes -= undoStack.removeLast().bytes;
+        }
+    }
+
+    private Step popNonEmpty(Deque<Step> stack) {
+        while (!stack.isEmpty()) {
+            Step step = stack.pop();
+            if (!step.isEmpty()) {
+                return step;
             }
         }
-        
-        public CSVData restore() {
-            CSVData csvData = new CSVData();
-            
-            // 深拷贝恢复数据
-            ObservableList<ObservableList<CSVCell>> restoredData = FXCollections.observableArrayList();
-            for (ObservableList<CSVCell> row : this.data) {
-                ObservableList<CSVCell> newRow = FXCollections.observableArrayList();
-                for (CSVCell cell : row) {
-                    newRow.add(new CSVCell(cell.getValue()));
+        return null;
+    }
+
+    private void notifyChanged() {
+        if (onHistoryChanged != null) {
+            onHistoryChanged.run();
+        }
+    }
+
+    private static long bytesOf(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    private static long bytesOf(String[] values) {
+        long bytes = 16;
+        if (values != null) {
+            for (String value : values) {
+                bytes += 8 + bytesOf(value);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 一个撤销步骤，包含若干按顺序发生的操作
+     */
+    private static final class Step {
+        private final List<Change> changes = new ArrayList<>();
+        private long bytes;
+
+        void add(Change change) {
+            changes.add(change);
+            bytes += change.bytes();
+        }
+
+        boolean isEmpty() {
+            return changes.isEmpty();
+        }
+
+        void undo(CSVData data) {
+            for (int i = changes.size() - 1; i >= 0; i--) {
+                changes.get(i).undo(data);
+            }
+        }
+
+        void redo(CSVData data) {
+            for (Change change : changes) {
+                change.redo(data);
+            }
+        }
+    }
+
+    /**
+     * 可逆的数据操作
+     */
+    private interface Change {
+        void undo(CSVData data);
+
+        void redo(CSVData data);
+
+        /**
+         * 估算占用的内存
+         */
+        long bytes();
+    }
+
+    private static final class CellChange implements Change {
+        private final int row;
+        private final int column;
+        private final String oldValue;
+        private final String newValue;
+
+        CellChange(int row, int column, String oldValue, String newValue) {
+            this.row = row;
+            this.column = column;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        @Override
+        public void undo(CSVData data) {
+            data.setCellValue(row, column, oldValue);
+        }
+
+        @Override
+        public void redo(CSVData data) {
+            data.setCellValue(row, column, newValue);
+        }
+
+        @Override
+        public long bytes() {
+            return 32 + bytesOf(oldValue) + bytesOf(newValue);
+        }
+    }
+
+    private static final class RowsInserted implements Change {
+        private final int row;
+        private final int count;
+        private String[][] values; // 撤销时保存被移除行的值，用于重做
+
+        RowsInserted(int row, int count) {
+            this.row = row;
+            this.count = count;
+        }
+
+        @Override
+        public void undo(CSVData data) {
+            values = new String[count][];
+            for (int i = count - 1; i >= 0; i--) {
+                values[i] = data.getRowValues(row + i);
+                data.removeRow(row + i);
+            }
+        }
+
+        @Override
+        public void redo(CSVData data) {
+            for (int i = 0; i < count; i++) {
+                data.insertRow(row + i);
+                for (int col = 0; col < values[i].length; col++) {
+                    data.setCellValue(row + i, col, values[i][col]);
                 }
-                restoredData.add(newRow);
             }
-            
-            csvData.setData(restoredData);
-            return csvData;
+            values = null;
+        }
+
+        @Override
+        public long bytes() {
+            return 24;
+        }
+    }
+
+    private static final class RowRemoved implements Change {
+        private final int row;
+        private final String[] values;
+
+        RowRemoved(int row, String[] values) {
+            this.row = row;
+            this.values = values;
+        }
+
+        @Override
+        public void undo(CSVData data) {
+            data.insertRow(row);
+            for (int col = 0; col < values.length; col++) {
+                data.setCellValue(row, col, values[col]);
+            }
+        }
+
+        @Override
+        public void redo(CSVData data) {
+            data.removeRow(row);
+        }
+
+        @Override
+        public long bytes() {
+            return 24 + bytesOf(values);
         }
     }
-}
 
+    private static final class RowMoved implements Change {
+        private final int from;
+        private final int to;
+
+        RowMoved(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void undo(CSVData data) {
+            data.moveRow(to, from);
+        }
+
+        @Override
+        public void redo(CSVData data) {
+            data.moveRow(from, to);
+        }
+
+        @Override
+        public long bytes() {
+            return 24;
+        }
+    }
+
+    private static final class ColumnInserted implements Change {
+        private final int column;
+        private String[] values; // 撤销时保存被移除列的值，用于重做
+
+        ColumnInserted(int column) {
+            this.column = column;
+        }
+
+        @Override
+        public void undo(CSVData data) {
+            values = data.getColumnValues(column);
+            data.removeColumn(column);
+        }
+
+        @Override
+        public void redo(CSVData data) {
+            data.insertColumn(column);
+            for (int row = 0; row < values.length; row++) {
+                data.setCellValue(row, column, values[row]);
+            }
+            values = null;
+        }
+
+        @Override
+        public long bytes() {
+            return 24;
+        }
+    }
+
+    private static final class ColumnRemoved implements Change {
+        private final int column;
+        private final String[] values;
+
+        ColumnRemoved(int column, String[] values) {
+            this.column = column;
+            this.values = values;
+        }
+
+        @Override
+        public void undo(CSVData data) {
+            data.insertColumn(column);
+            for (int row = 0; row < values.length; row++) {
+                data.setCellValue(row, column, values[row]);
+            }
+        }
+
+        @Override
+        public void redo(CSVData data) {
+            data.removeColumn(column);
+        }
+
+        @Override
+        public long bytes() {
+            return 24 + bytesOf(values);
+        }
+    }
+
+    private static final class StoreReplaced implements Change {
+        private final CellStore oldStore;
+        private final CellStore newStore;
+
+        StoreReplaced(CellStore oldStore, CellStore newStore) {
+            this.oldStore = oldStore;
+            this.newStore = newStore;
+        }
+
+        @Override
+        public void undo(CSVData data) {
+            data.replaceStore(oldStore);
+        }
+
+        @Override
+        public void redo(CSVData data) {
+            data.replaceStore(newStore);
+        }
+
+        @Override
+        public long bytes() {
+            // 整个存储被替换时只能保留旧存储本身
+            return 32 + oldStore.estimateMemoryBytes();
+        }
+    }
+}
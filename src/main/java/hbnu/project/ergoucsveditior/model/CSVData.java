@@ -1,210 +1,463 @@
 package hbnu.project.ergoucsveditior.model;
 
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * CSV数据模型
  * 管理整个表格的数据结构
+ * 数据保存在 CellStore 中（默认为列式存储，大文件可使用内存映射存储），
+ * TableView 通过 getData() 得到的是按需生成的行视图
  */
 public class CSVData {
-    private ObservableList<ObservableList<CSVCell>> data;
-    private int rows;
-    private int columns;
-    
+    private CellStore store;
+    private final RowList rowList;
+    private final List<CSVDataListener> listeners = new ArrayList<>();
+
     /**
      * 创建空的CSV数据
      */
     public CSVData() {
-        this.data = FXCollections.observableArrayList();
-        this.rows = 0;
-        this.columns = 0;
+        this.store = new ColumnarCellStore();
+        this.rowList = new RowList();
     }
-    
+
     /**
      * 创建指定大小的CSV数据
      * @param rows 行数
      * @param columns 列数
      */
     public CSVData(int rows, int columns) {
-        this.data = FXCollections.observableArrayList();
-        this.rows = rows;
-        this.columns = columns;
-        initializeData(rows, columns);
+        this.store = new ColumnarCellStore(rows, columns);
+        this.rowList = new RowList();
     }
     
     /**
-     * 初始化数据表格
+     * 使用指定的存储创建CSV数据
+     * @param store 单元格存储
      */
-    private void initializeData(int rows, int columns) {
-        data.clear();
-        for (int i = 0; i < rows; i++) {
-            ObservableList<CSVCell> row = FXCollections.observableArrayList();
-            for (int j = 0; j < columns; j++) {
-                row.add(new CSVCell());
-            }
-            data.add(row);
-        }
+    public CSVData(CellStore store) {
+        this.store = store;
+        this.rowList = new RowList();
     }
-    
+
+    /**
+     * 添加数据变更监听器
+     */
+    public void addDataListener(CSVDataListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 移除数据变更监听器
+     */
+    public void removeDataListener(CSVDataListener listener) {
+        listeners.remove(listener);
+    }
+
+    private boolean isValid(int row, int column) {
+        return row >= 0 && row < store.getRowCount() && column >= 0 && column < store.getColumnCount();
+    }
+
     /**
      * 获取指定位置的单元格
+     * 单元格对象按需创建，修改其值会写回数据
      */
     public CSVCell getCell(int row, int column) {
-        if (row >= 0 && row < rows && column >= 0 && column < columns) {
-            return data.get(row).get(column);
+        if (isValid(row, column)) {
+            return rowList.get(row).getCell(column);
         }
         return null;
     }
-    
+
     /**
      * 设置指定位置的单元格值
      */
     public void setCellValue(int row, int column, String value) {
-        CSVCell cell = getCell(row, column);
-        if (cell != null) {
-            cell.setValue(value);
+        if (isValid(row, column)) {
+            if (listeners.isEmpty()) {
+                store.set(row, column, value);
+                return;
+            }
+            String oldValue = store.get(row, column);
+            store.set(row, column, value);
+            String newValue = value != null ? value : "";
+            if (!oldValue.equals(newValue)) {
+                for (CSVDataListener listener : listeners) {
+                    listener.cellChanged(row, column, oldValue, newValue);
+                }
+            }
         }
     }
-    
+
     /**
      * 获取指定位置的单元格值
      */
     public String getCellValue(int row, int column) {
-        CSVCell cell = getCell(row, column);
-        return cell != null ? cell.getValue() : "";
+        return isValid(row, column) ? store.get(row, column) : "";
     }
-    
+
+    /**
+     * 获取指定位置的单元格文本长度（不创建字符串）
+     */
+    public int getCellLength(int row, int column) {
+        return isValid(row, column) ? store.length(row, column) : 0;
+    }
+
+    /**
+     * 在末尾追加一行数据，列数不足时自动扩展并以空值填充
+     */
+    public void appendRow(String[] values) {
+        int index = store.getRowCount();
+        ensureColumns(values.length);
+        store.appendRow(values);
+        rowList.fireAdded(index, index + 1);
+        fireRowsInserted(index, 1);
+    }
+
+    /**
+     * 在末尾批量追加多行数据，只触发一次列表变更通知
+     */
+    public void appendRows(List<String[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int index = store.getRowCount();
+        for (String[] values : rows) {
+            ensureColumns(values.length);
+            store.appendRow(values);
+        }
+        rowList.fireAdded(index, index + rows.size());
+        fireRowsInserted(index, rows.size());
+    }
+
     /**
      * 添加新行
      */
     public void addRow() {
-        ObservableList<CSVCell> row = FXCollections.observableArrayList();
-        for (int i = 0; i < columns; i++) {
-            row.add(new CSVCell());
-        }
-        data.add(row);
-        rows++;
+        insertRow(store.getRowCount());
     }
-    
+
     /**
      * 在指定位置插入新行
      */
     public void insertRow(int index) {
-        if (index < 0 || index > rows) {
-            addRow();
-            return;
-        }
-        ObservableList<CSVCell> row = FXCollections.observableArrayList();
-        for (int i = 0; i < columns; i++) {
-            row.add(new CSVCell());
+        if (index < 0 || index > store.getRowCount()) {
+            index = store.getRowCount();
         }
-        data.add(index, row);
-        rows++;
+        store.insertRows(index, 1);
+        rowList.fireAdded(index, index + 1);
+        fireRowsInserted(index, 1);
     }
-    
+
     /**
      * 添加新列
      */
     public void addColumn() {
-        for (ObservableList<CSVCell> row : data) {
-            row.add(new CSVCell());
-        }
-        columns++;
+        insertColumn(store.getColumnCount());
     }
-    
+
     /**
      * 在指定位置插入新列
      */
     public void insertColumn(int index) {
-        if (index < 0 || index > columns) {
-            addColumn();
-            return;
+        if (index < 0 || index > store.getColumnCount()) {
+            index = store.getColumnCount();
         }
-        for (ObservableList<CSVCell> row : data) {
-            row.add(index, new CSVCell());
+        store.insertColumn(index);
+        for (CSVDataListener listener : listeners) {
+            listener.columnInserted(index);
         }
-        columns++;
     }
-    
+
     /**
      * 删除指定行
      */
     public void removeRow(int index) {
-        if (index >= 0 && index < rows) {
-            data.remove(index);
-            rows--;
+        if (index >= 0 && index < store.getRowCount()) {
+            String[] values = listeners.isEmpty() ? null : getRowValues(index);
+            store.removeRow(index);
+            rowList.fireRemoved(index);
+            for (CSVDataListener listener : listeners) {
+                listener.rowRemoved(index, values);
+            }
         }
     }
-    
+
+    /**
+     * 移动行到新位置
+     * @param fromIndex 源行索引
+     * @param toIndex 目标行索引（移动后的位置）
+     */
+    public void moveRow(int fromIndex, int toIndex) {
+        int rows = store.getRowCount();
+        if (fromIndex < 0 || fromIndex >= rows || toIndex < 0 || toIndex >= rows || fromIndex == toIndex) {
+            return;
+        }
+        store.moveRow(fromIndex, toIndex);
+        rowList.fireMoved(fromIndex, toIndex);
+        for (CSVDataListener listener : listeners) {
+            listener.rowMoved(fromIndex, toIndex);
+        }
+    }
+
     /**
      * 删除指定列
      */
     public void removeColumn(int index) {
-        if (index >= 0 && index < columns) {
-            for (ObservableList<CSVCell> row : data) {
-                row.remove(index);
+        if (index >= 0 && index < store.getColumnCount()) {
+            String[] values = listeners.isEmpty() ? null : getColumnValues(index);
+            store.removeColumn(index);
+            for (CSVDataListener listener : listeners) {
+                listener.columnRemoved(index, values);
             }
-            columns--;
         }
     }
-    
+
     /**
      * 重置数据为指定大小
      */
     public void resize(int newRows, int newColumns) {
-        this.rows = newRows;
-        this.columns = newColumns;
-        initializeData(newRows, newColumns);
+        replaceStore(new ColumnarCellStore(newRows, newColumns));
     }
-    
+
     /**
      * 清空所有数据
      */
     public void clear() {
-        data.clear();
-        rows = 0;
-        columns = 0;
+        replaceStore(new ColumnarCellStore());
     }
 
     /**
      * 清空所有数据,直接调用clear
      */
     public void clearData() {
-        data.clear();
+        clear();
     }
 
     /**
      * 复制另一个CSVData对象的数据
      */
     public void copyFrom(CSVData other) {
-        this.data.clear();
-        for (ObservableList<CSVCell> row : other.getData()) {
-            ObservableList<CSVCell> newRow = FXCollections.observableArrayList();
-            for (CSVCell cell : row) {
-                newRow.add(new CSVCell(cell.getValue()));
-            }
-            this.data.add(newRow);
+        replaceStore(other.store.copy());
+    }
+
+    /**
+     * 替换整个底层存储
+     */
+    public void replaceStore(CellStore newStore) {
+        CellStore oldStore = store;
+        store = newStore;
+        rowList.fireReset(oldStore.getRowCount());
+        for (CSVDataListener listener : listeners) {
+            listener.storeReplaced(oldStore, newStore);
         }
     }
+
+    /**
+     * 获取一行的全部值
+     */
+    public String[] getRowValues(int row) {
+        String[] values = new String[store.getColumnCount()];
+        for (int col = 0; col < values.length; col++) {
+            values[col] = store.get(row, col);
+        }
+        return values;
+    }
+
+    /**
+     * 获取一列的全部值
+     */
+    public String[] getColumnValues(int column) {
+        String[] values = new String[store.getRowCount()];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = store.get(row, column);
+        }
+        return values;
+    }
+
+    /**
+     * 追加的行比现有列多时先补齐列，保证列的增加也能通知到监听器
+     */
+    private void ensureColumns(int count) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        while (store.getColumnCount() < count) {
+            insertColumn(store.getColumnCount());
+        }
+    }
+
+    private void fireRowsInserted(int index, int count) {
+        for (CSVDataListener listener : listeners) {
+            listener.rowsInserted(index, count);
+        }
+    }
+
+    /**
+     * 创建当前数据的独立副本
+     */
+    public CSVData copy() {
+        CSVData copy = new CSVData();
+        copy.store = store.copy();
+        return copy;
+    }
+
+    /**
+     * 创建一致的快照，供后台线程读取（如后台保存），之后对当前数据的修改不影响快照
+     * 列式存储只复制单元格引用、共享文本，比 copy 快得多
+     */
+    public CSVData snapshot() {
+        CSVData snapshot = new CSVData();
+        snapshot.store = store.snapshot();
+        return snapshot;
+    }
+
+    /**
+     * 是否使用内存映射存储
+     */
+    public boolean isMapped() {
+        return !(store instanceof ColumnarCellStore);
+    }
     
-    // Getters
-    public ObservableList<ObservableList<CSVCell>> getData() {
-        return data;
+    /**
+     * 获取底层存储
+     */
+    public CellStore getStore() {
+        return store;
     }
     
+    /**
+     * 估算数据占用的堆内存（字节）
+     */
+    public long estimateMemoryBytes() {
+        return store.estimateMemoryBytes();
+    }
+
+    // Getters
+    /**
+     * 获取行视图列表，供 TableView 绑定
+     * 行对象在访问时才创建，结构变化会以列表事件的形式通知表格
+     */
+    public ObservableList<CSVRow> getData() {
+        return rowList;
+    }
+
     public int getRows() {
-        return rows;
+        return store.getRowCount();
     }
-    
+
     public int getColumns() {
-        return columns;
+        return store.getColumnCount();
     }
-    
-    public void setData(ObservableList<ObservableList<CSVCell>> data) {
-        this.data = data;
-        this.rows = data.size();
-        this.columns = data.isEmpty() ? 0 : data.get(0).size();
+
+    /**
+     * 行视图列表
+     * 本身不保存任何行对象，只把结构变化转换成 ListChangeListener 事件
+     * 没有监听者时（例如后台加载阶段）不生成事件
+     */
+    private final class RowList extends ObservableListBase<CSVRow> {
+
+        @Override
+        public CSVRow get(int index) {
+            if (index < 0 || index >= store.getRowCount()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + store.getRowCount());
+            }
+            return new CSVRow(CSVData.this, index);
+        }
+
+        @Override
+        public int size() {
+            return store.getRowCount();
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (o instanceof CSVRow) {
+                CSVRow row = (CSVRow) o;
+                if (row.getOwner() == CSVData.this && row.getIndex() < size()) {
+                    return row.getIndex();
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOf(o);
+        }
+
+        void fireAdded(int from, int to) {
+            if (!hasListeners()) {
+                return;
+            }
+            beginChange();
+            nextAdd(from, to);
+            endChange();
+        }
+
+        void fireRemoved(int index) {
+            if (!hasListeners()) {
+                return;
+            }
+            beginChange();
+            nextRemove(index, new CSVRow(CSVData.this, index));
+            endChange();
+        }
+
+        void fireMoved(int from, int to) {
+            if (!hasListeners()) {
+                return;
+            }
+            int start = Math.min(from, to);
+            int end = Math.max(from, to) + 1;
+            int[] permutation = new int[end - start];
+            for (int i = start; i < end; i++) {
+                int newIndex;
+                if (i == from) {
+                    newIndex = to;
+                } else if (from < to) {
+                    newIndex = i - 1;
+                } else {
+                    newIndex = i + 1;
+                }
+                permutation[i - start] = newIndex;
+            }
+            beginChange();
+            nextPermutation(start, end, permutation);
+            endChange();
+        }
+
+        void fireReset(int oldSize) {
+            if (!hasListeners()) {
+                return;
+            }
+            beginChange();
+            if (oldSize > 0) {
+                nextRemove(0, staleRows(oldSize));
+            }
+            if (store.getRowCount() > 0) {
+                nextAdd(0, store.getRowCount());
+            }
+            endChange();
+        }
+
+        private List<CSVRow> staleRows(int count) {
+            return new AbstractList<>() {
+                @Override
+                public CSVRow get(int index) {
+                    return new CSVRow(CSVData.this, index);
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
     }
 }
-
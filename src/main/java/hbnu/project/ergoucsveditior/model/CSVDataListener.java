@@ -0,0 +1,53 @@
+package hbnu.project.ergoucsveditior.model;
+
+/**
+ * CSV数据变更监听器
+ * CSVData 的每一次修改都会以细粒度事件通知监听者（撤销历史、增量计算等），
+ * 监听者只需覆盖关心的事件
+ */
+public interface CSVDataListener {
+
+    /**
+     * 单元格值改变（值相同时不通知）
+     */
+    default void cellChanged(int row, int column, String oldValue, String newValue) {
+    }
+
+    /**
+     * 在 row 处插入了 count 行（新行的值已经写入）
+     */
+    default void rowsInserted(int row, int count) {
+    }
+
+    /**
+     * 删除了一行
+     * @param values 被删除行的值
+     */
+    default void rowRemoved(int row, String[] values) {
+    }
+
+    /**
+     * 一行从 from 移动到 to（移动后的位置）
+     */
+    default void rowMoved(int from, int to) {
+    }
+
+    /**
+     * 在 column 处插入了一个空列
+     */
+    default void columnInserted(int column) {
+    }
+
+    /**
+     * 删除了一列
+     * @param values 被删除列的值
+     */
+    default void columnRemoved(int column, String[] values) {
+    }
+
+    /**
+     * 整个存储被替换（重置大小、清空、复制等）
+     */
+    default void storeReplaced(CellStore oldStore, CellStore newStore) {
+    }
+}
@@ -0,0 +1,65 @@
+package hbnu.project.ergoucsveditior.model;
+
+/**
+ * 表格行视图
+ * 不持有数据，只记录所属的 CSVData 和行号，由 TableView 按需创建
+ * 单元格的 Property 也在访问时才创建，不再为每个单元格常驻一个对象
+ */
+public final class CSVRow {
+    private final CSVData data;
+    private final int index;
+
+    CSVRow(CSVData data, int index) {
+        this.data = data;
+        this.index = index;
+    }
+
+    /**
+     * 行号（从0开始）
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    CSVData getOwner() {
+        return data;
+    }
+
+    public int size() {
+        return data.getColumns();
+    }
+
+    public String getValue(int column) {
+        return data.getCellValue(index, column);
+    }
+
+    public void setValue(int column, String value) {
+        data.setCellValue(index, column, value);
+    }
+
+    /**
+     * 按需创建的单元格，修改其值会写回存储
+     */
+    public CSVCell getCell(int column) {
+        CSVCell cell = new CSVCell(getValue(column));
+        cell.valueProperty().addListener((obs, oldValue, newValue) -> setValue(column, newValue));
+        return cell;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CSVRow)) {
+            return false;
+        }
+        CSVRow other = (CSVRow) obj;
+        return data == other.data && index == other.index;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(data) + index;
+    }
+}
@@ -0,0 +1,73 @@
+package hbnu.project.ergoucsveditior.model;
+
+/**
+ * 单元格存储接口
+ * CSVData 的全部数据读写都经过这里，便于替换不同的存储方式：
+ *   ColumnarCellStore - 全部数据常驻内存的列式存储
+ *   MappedCellStore   - 内存映射文件 + 编辑覆盖层，用于超过堆大小的文件
+ */
+public interface CellStore {
+
+    int getRowCount();
+
+    int getColumnCount();
+
+    String get(int row, int column);
+
+    /**
+     * 单元格文本长度
+     */
+    default int length(int row, int column) {
+        return get(row, column).length();
+    }
+
+    void set(int row, int column, String value);
+
+    /**
+     * 在末尾追加一行，列数不足时自动扩展
+     */
+    default void appendRow(String[] values) {
+        while (getColumnCount() < values.length) {
+            insertColumn(getColumnCount());
+        }
+        int row = getRowCount();
+        insertRows(row, 1);
+        for (int col = 0; col < values.length; col++) {
+            set(row, col, values[col]);
+        }
+    }
+
+    /**
+     * 在指定位置插入若干空行
+     */
+    void insertRows(int index, int count);
+
+    void removeRow(int index);
+
+    /**
+     * 把一行移动到新位置，中间的行依次顺移
+     */
+    void moveRow(int from, int to);
+
+    void insertColumn(int index);
+
+    void removeColumn(int index);
+
+    /**
+     * 创建独立副本，副本的修改不影响原存储
+     */
+    CellStore copy();
+
+    /**
+     * 创建一致的快照，可交给其他线程读取，之后对原存储的修改不影响快照
+     * 默认等同于 copy，能共享不可变数据的存储可以实现得更便宜
+     */
+    default CellStore snapshot() {
+        return copy();
+    }
+
+    /**
+     * 估算当前占用的堆内存（字节）
+     */
+    long estimateMemoryBytes();
+}
@@ -0,0 +1,324 @@
+package hbnu.project.ergoucsveditior.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 增量维护的列汇总（计数、求和、平方和、最值、空值数、文本长度）
+ * 作为 CSVData 的监听器，单元格修改时 O(1) 更新对应的列，插入或删除行时按该行的值更新，
+ * 不需要重新扫描整列；中位数、唯一值等顺序统计仍由 StatisticsService 按需计算
+ *
+ * 每列在第一次用到时扫描一遍建立（可以在后台线程调用 scan，再在 FX 线程 install），
+ * 没有建立的列忽略修改事件
+ * 最值同时记录出现的次数，删除或覆盖的只是其中一个时仍然有效；
+ * 只有最后一个最小值或最大值被删除时最值才无法推出，此时只有最值过期，其余汇总照常可用，
+ * 最值由调用方在后台重新扫描该列后更新
+ */
+public class ColumnAggregates implements CSVDataListener {
+
+    /**
+     * 一列的汇总
+     * 数值的和与平方和都以该列第一个数值为偏移量累计，减小大数值相减时的精度损失
+     */
+    public static final class Column {
+        private int rows;
+        private int emptyCount;
+        private int numericCount;
+        private double shift;
+        private double shiftedSum;        // Σ(x - shift)
+        private double shiftedSumSquares; // Σ(x - shift)²
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private int minCount;             // 等于最小值的单元格数
+        private int maxCount;             // 等于最大值的单元格数
+        private boolean extremaStale;
+        private long totalLength;
+
+        private void add(String value) {
+            rows++;
+            if (ColumnStatistics.isBlank(value)) {
+                emptyCount++;
+                return;
+            }
+            totalLength += value.length();
+            double number = ColumnStatistics.parseNumber(value);
+            if (Double.isNaN(number)) {
+                return;
+            }
+            if (numericCount == 0) {
+                shift = number;
+            }
+            numericCount++;
+            double d = number - shift;
+            shiftedSum += d;
+            shiftedSumSquares += d * d;
+            if (extremaStale) {
+                return;
+            }
+            if (number < min) {
+                min = number;
+                minCount = 1;
+            } else if (number == min) {
+                minCount++;
+            }
+            if (number > max) {
+                max = number;
+                maxCount = 1;
+            } else if (number == max) {
+                maxCount++;
+            }
+        }
+
+        private void remove(String value) {
+            rows--;
+            if (ColumnStatistics.isBlank(value)) {
+                emptyCount--;
+                return;
+            }
+            totalLength -= value.length();
+            double number = ColumnStatistics.parseNumber(value);
+            if (Double.isNaN(number)) {
+                return;
+            }
+            numericCount--;
+            if (numericCount == 0) {
+                shiftedSum = 0;
+                shiftedSumSquares = 0;
+                min = Double.POSITIVE_INFINITY;
+                max = Double.NEGATIVE_INFINITY;
+                minCount = 0;
+                maxCount = 0;
+                extremaStale = false;
+                return;
+            }
+            double d = number - shift;
+            shiftedSum -= d;
+            shiftedSumSquares -= d * d;
+            if (extremaStale) {
+                return;
+            }
+            if (number <= min && --minCount == 0) {
+                extremaStale = true;
+            }
+            if (number >= max && --maxCount == 0) {
+                extremaStale = true;
+            }
+        }
+
+        /**
+         * 行数（包括空单元格）
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        public int getEmptyCount() {
+            return emptyCount;
+        }
+
+        public int getNonEmptyCount() {
+            return rows - emptyCount;
+        }
+
+        public int getNumericCount() {
+            return numericCount;
+        }
+
+        public double getSum() {
+            return shiftedSum + shift * numericCount;
+        }
+
+        public double getMean() {
+            return numericCount > 0 ? shift + shiftedSum / numericCount : 0.0;
+        }
+
+        /**
+         * 总体方差
+         */
+        public double getVariance() {
+            if (numericCount == 0) {
+                return 0.0;
+            }
+            double meanShifted = shiftedSum / numericCount;
+            return Math.max(0.0, shiftedSumSquares / numericCount - meanShifted * meanShifted);
+        }
+
+        public double getMin() {
+            return numericCount > 0 ? min : 0.0;
+        }
+
+        public double getMax() {
+            return numericCount > 0 ? max : 0.0;
+        }
+
+        /**
+         * 最小值和最大值是否有效（最后一个最小值或最大值被删除后需要重新扫描）
+         */
+        public boolean isExtremaValid() {
+            return !extremaStale;
+        }
+
+        public double getAverageLength() {
+            int nonEmpty = getNonEmptyCount();
+            return nonEmpty > 0 ? (double) totalLength / nonEmpty : 0.0;
+        }
+    }
+
+    private final CSVData data;
+    private final List<Column> columns = new ArrayList<>(); // 没有建立的列为 null
+    private long modCount; // 每次修改加一，用于判断后台扫描期间数据是否变化
+    private Runnable onChanged;
+
+    public ColumnAggregates(CSVData data) {
+        this.data = data;
+        for (int i = 0; i < data.getColumns(); i++) {
+            columns.add(null);
+        }
+    }
+
+    /**
+     * 停止监听数据变化
+     */
+    public void close() {
+        data.removeDataListener(this);
+    }
+
+    /**
+     * 已建立的列发生变化时回调
+     */
+    public void setOnChanged(Runnable onChanged) {
+        this.onChanged = onChanged;
+    }
+
+    /**
+     * 列的汇总，没有建立时返回 null（需要 scan 后 install）
+     * 最值可能已过期（isExtremaValid 为 false），此时其余汇总仍然有效，最值需要重新 scan 后 install
+     */
+    public Column get(int column) {
+        if (column < 0 || column >= columns.size()) {
+            return null;
+        }
+        return columns.get(column);
+    }
+
+    /**
+     * 当前的修改计数，scan 之前取得，install 时传回
+     */
+    public long getModCount() {
+        return modCount;
+    }
+
+    /**
+     * 扫描一列建立汇总，不修改当前状态，可以在后台线程调用
+     * 后台线程不能读取正在编辑的数据，应传入与 getModCount 同时取得的快照；在修改数据的线程中可以直接传入数据
+     * @param snapshot 数据快照（CSVData.snapshot），或在修改数据的线程中扫描时的数据本身
+     * @return 汇总，取消时返回 null
+     */
+    public static Column scan(CSVData snapshot, int column, BooleanSupplier cancelled) {
+        Column aggregate = new Column();
+        int rows = snapshot.getRows();
+        for (int row = 0; row < rows; row++) {
+            if ((row & 4095) == 0 && cancelled != null && cancelled.getAsBoolean()) {
+                return null;
+            }
+            aggregate.add(snapshot.getCellValue(row, column));
+        }
+        return aggregate;
+    }
+
+    /**
+     * 安装扫描结果
+     * @param expectedModCount 扫描之前的修改计数
+     * @return 扫描期间数据没有变化时返回 true，否则需要重新扫描
+     */
+    public boolean install(int column, Column aggregate, long expectedModCount) {
+        if (modCount != expectedModCount || column >= columns.size()) {
+            return false;
+        }
+        columns.set(column, aggregate);
+        notifyChanged();
+        return true;
+    }
+
+    private void notifyChanged() {
+        if (onChanged != null) {
+            onChanged.run();
+        }
+    }
+
+    // ========== 数据变化时增量更新 ==========
+
+    @Override
+    public void cellChanged(int row, int column, String oldValue, String newValue) {
+        modCount++;
+        Column aggregate = columns.get(column);
+        if (aggregate != null) {
+            aggregate.remove(oldValue);
+            aggregate.add(newValue);
+            notifyChanged();
+        }
+    }
+
+    @Override
+    public void rowsInserted(int row, int count) {
+        modCount++;
+        boolean changed = false;
+        for (int col = 0; col < columns.size(); col++) {
+            Column aggregate = columns.get(col);
+            if (aggregate != null) {
+                for (int r = row; r < row + count; r++) {
+                    aggregate.add(data.getCellValue(r, col));
+                }
+                changed = true;
+            }
+        }
+        if (changed) {
+            notifyChanged();
+        }
+    }
+
+    @Override
+    public void rowRemoved(int row, String[] values) {
+        modCount++;
+        boolean changed = false;
+        for (int col = 0; col < columns.size(); col++) {
+            Column aggregate = columns.get(col);
+            if (aggregate != null) {
+                aggregate.remove(col < values.length ? values[col] : null);
+                changed = true;
+            }
+        }
+        if (changed) {
+            notifyChanged();
+        }
+    }
+
+    @Override
+    public void columnInserted(int column) {
+        modCount++;
+        // 新列全部为空
+        Column aggregate = new Column();
+        aggregate.rows = data.getRows();
+        aggregate.emptyCount = aggregate.rows;
+        columns.add(column, aggregate);
+        notifyChanged();
+    }
+
+    @Override
+    public void columnRemoved(int column, String[] values) {
+        modCount++;
+        columns.remove(column);
+        notifyChanged();
+    }
+
+    @Override
+    public void storeReplaced(CellStore oldStore, CellStore newStore) {
+        modCount++;
+        columns.clear();
+        for (int i = 0; i < data.getColumns(); i++) {
+            columns.add(null);
+        }
+        notifyChanged();
+    }
+}
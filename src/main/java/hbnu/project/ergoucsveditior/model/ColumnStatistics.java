@@ -0,0 +1,562 @@
+package hbnu.project.ergoucsveditior.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 列统计结果
+ * 由 Accumulator 逐个单元格累计得到，计算完成后不可变
+ *
+ * 近似模式下分位数、唯一值数量和高频值来自固定大小的草图（t-digest、HyperLogLog、Space-Saving），
+ * 内存与行数无关，结果附带误差范围
+ */
+public class ColumnStatistics {
+    private static final double DIGEST_COMPRESSION = 200; // t-digest 压缩参数，中位数排名误差约 0.8%
+    private static final int DISTINCT_PRECISION = 14;     // HyperLogLog 16K 个寄存器，相对误差约 0.8%
+    private static final int FREQUENT_CAPACITY = 1000;    // Space-Saving 跟踪的值数
+    private static final int FREQUENT_SHOWN = 10;         // 报告中列出的高频值数
+
+    private final int column;
+    private final boolean approximate;
+    private final int totalRows;
+    private final int emptyCount;
+    private final int numericCount;
+    private final double sum;
+    private final double mean;
+    private final double variance; // 总体方差
+    private final double min;
+    private final double max;
+    private final double q1;
+    private final double median;
+    private final double q3;
+    private final long totalLength;
+    private final String longest;
+    private final int shortestLength;
+    private final long uniqueCount;
+    private final double uniqueError;      // 唯一值数量的相对标准误差，精确模式为 0
+    private final double[] quartileErrors; // Q1、中位数、Q3 的排名误差（占数值个数的比例），精确模式为 0
+    private final List<SpaceSaving.Entry> frequentValues;
+
+    private ColumnStatistics(Accumulator acc, double q1, double median, double q3) {
+        this.column = acc.column;
+        this.approximate = acc.approximate;
+        this.totalRows = acc.totalRows;
+        this.emptyCount = acc.emptyCount;
+        this.numericCount = acc.numericCount;
+        this.sum = acc.sum;
+        this.mean = acc.mean;
+        this.variance = acc.numericCount > 0 ? acc.m2 / acc.numericCount : 0.0;
+        this.min = acc.min;
+        this.max = acc.max;
+        this.q1 = q1;
+        this.median = median;
+        this.q3 = q3;
+        this.totalLength = acc.totalLength;
+        this.longest = acc.longest;
+        this.shortestLength = acc.shortestLength;
+        if (approximate) {
+            this.uniqueCount = acc.distinct.estimate();
+            this.uniqueError = acc.distinct.relativeError();
+            this.quartileErrors = new double[]{
+                acc.digest.rankError(0.25), acc.digest.rankError(0.5), acc.digest.rankError(0.75)};
+            this.frequentValues = Collections.unmodifiableList(acc.frequent.top(FREQUENT_SHOWN));
+        } else {
+            this.uniqueCount = acc.unique.size();
+            this.uniqueError = 0;
+            this.quartileErrors = new double[3];
+            this.frequentValues = Collections.emptyList();
+        }
+    }
+
+    /**
+     * 是否为近似统计
+     */
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public int getTotalRows() {
+        return totalRows;
+    }
+
+    public int getEmptyCount() {
+        return emptyCount;
+    }
+
+    public int getNonEmptyCount() {
+        return totalRows - emptyCount;
+    }
+
+    public int getNumericCount() {
+        return numericCount;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getVariance() {
+        return variance;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(variance);
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getQ1() {
+        return q1;
+    }
+
+    public double getMedian() {
+        return median;
+    }
+
+    public double getQ3() {
+        return q3;
+    }
+
+    /**
+     * 非空单元格的平均长度
+     */
+    public double getAverageLength() {
+        int nonEmpty = getNonEmptyCount();
+        return nonEmpty > 0 ? (double) totalLength / nonEmpty : 0.0;
+    }
+
+    /**
+     * 最长的非空文本，没有非空文本时为空字符串
+     */
+    public String getLongest() {
+        return longest;
+    }
+
+    public int getShortestLength() {
+        return shortestLength;
+    }
+
+    /**
+     * 不同的非空值数量（近似模式下为估计值）
+     */
+    public long getUniqueCount() {
+        return uniqueCount;
+    }
+
+    /**
+     * 唯一值数量的相对标准误差，精确统计时为 0
+     */
+    public double getUniqueError() {
+        return uniqueError;
+    }
+
+    /**
+     * 四分位数的排名误差（占数值个数的比例），精确统计时为 0
+     * @param quartile 1 = Q1，2 = 中位数，3 = Q3
+     */
+    public double getQuartileRankError(int quartile) {
+        return quartileErrors[quartile - 1];
+    }
+
+    /**
+     * 出现次数最多的值（仅近似模式），每个值的真实次数在 [count - error, count] 之间
+     */
+    public List<SpaceSaving.Entry> getFrequentValues() {
+        return frequentValues;
+    }
+
+    /**
+     * 高频值草图跟踪的值数：出现次数超过 非空行数 / 该值 的值一定会被列出
+     */
+    public int getFrequentCapacity() {
+        return FREQUENT_CAPACITY;
+    }
+
+    /**
+     * 是否为空单元格：null 或只有空白（与 trim() 的判断相同，但不创建新字符串）
+     */
+    public static boolean isBlank(String value) {
+        if (value == null) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把单元格解析为数值（忽略首尾空白），不是数值或为 NaN 时返回 NaN
+     * 明显不是数字的文本在调用 Double.parseDouble 之前就排除，避免为每个文本单元格抛出异常
+     */
+    public static double parseNumber(String value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return Double.NaN;
+        }
+        char c = value.charAt(start);
+        if ((c == '+' || c == '-') && start + 1 < end) {
+            c = value.charAt(start + 1);
+        }
+        if (!((c >= '0' && c <= '9') || c == '.' || c == 'I' || c == 'N')) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(start == 0 && end == value.length() ? value : value.substring(start, end));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * 单遍统计累加器
+     * 每个单元格只访问一次：
+     *   均值和方差使用 Welford 算法在线更新，数值精度不受先求和再相减的影响
+     *   数值写入 double 数组，结束时用快速选择求四分位数，不需要整体排序
+     *   唯一值按 64 位哈希记录在基本类型的哈希集合中，不保留字符串
+     * 近似模式下数值和唯一值改为写入草图，另外用 Space-Saving 统计高频值，内存固定
+     * 不是线程安全的，并行计算时每个线程使用自己的累加器，最后用 merge 按行的顺序合并
+     */
+    public static final class Accumulator {
+        private final int column;
+        private final boolean approximate;
+        private int totalRows;
+        private int emptyCount;
+        private int numericCount;
+        private double sum;
+        private double mean;
+        private double m2; // 与均值之差的平方和
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private long totalLength;
+        private String longest = "";
+        private int shortestLength = Integer.MAX_VALUE;
+        // 精确模式
+        private double[] values;
+        private LongHashSet unique;
+        private int selectedUpTo; // 求分位数时 values[0, selectedUpTo) 都不大于右侧的元素，最后一个已在排序后的位置
+        // 近似模式
+        private TDigest digest;
+        private HyperLogLog distinct;
+        private SpaceSaving frequent;
+
+        public Accumulator(int column) {
+            this(column, false);
+        }
+
+        /**
+         * @param approximate 是否使用草图做近似统计
+         */
+        public Accumulator(int column, boolean approximate) {
+            this.column = column;
+            this.approximate = approximate;
+            if (approximate) {
+                digest = new TDigest(DIGEST_COMPRESSION);
+                distinct = new HyperLogLog(DISTINCT_PRECISION);
+                frequent = new SpaceSaving(FREQUENT_CAPACITY);
+            } else {
+                values = new double[1024];
+                unique = new LongHashSet();
+            }
+        }
+
+        /**
+         * 累计一个单元格
+         */
+        public void accept(String value) {
+            totalRows++;
+            if (isBlank(value)) {
+                emptyCount++;
+                return;
+            }
+
+            int length = value.length();
+            totalLength += length;
+            if (length > longest.length()) {
+                longest = value;
+            }
+            if (length < shortestLength) {
+                shortestLength = length;
+            }
+            if (approximate) {
+                distinct.add(hash(value));
+                frequent.add(value);
+            } else {
+                unique.add(hash(value));
+            }
+
+            double number = parseNumber(value);
+            if (!Double.isNaN(number)) {
+                acceptNumber(number);
+            }
+        }
+
+        private void acceptNumber(double number) {
+            numericCount++;
+            sum += number;
+            double delta = number - mean;
+            mean += delta / numericCount;
+            m2 += delta * (number - mean);
+            if (number < min) {
+                min = number;
+            }
+            if (number > max) {
+                max = number;
+            }
+            if (approximate) {
+                digest.add(number);
+                return;
+            }
+            if (numericCount > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[numericCount - 1] = number;
+        }
+
+        /**
+         * 合并另一个累加器（同一列的另一部分行）
+         * 方差按 Chan 等人的并行公式合并
+         */
+        public void merge(Accumulator other) {
+            if (other.approximate != approximate) {
+                throw new IllegalArgumentException("精确统计和近似统计不能合并");
+            }
+            totalRows += other.totalRows;
+            emptyCount += other.emptyCount;
+            totalLength += other.totalLength;
+            if (other.longest.length() > longest.length()) {
+                longest = other.longest;
+            }
+            shortestLength = Math.min(shortestLength, other.shortestLength);
+            if (approximate) {
+                distinct.merge(other.distinct);
+                frequent.merge(other.frequent);
+            } else {
+                unique.addAll(other.unique);
+            }
+
+            if (other.numericCount == 0) {
+                return;
+            }
+            int count = numericCount + other.numericCount;
+            double delta = other.mean - mean;
+            mean += delta * other.numericCount / count;
+            m2 += other.m2 + delta * delta * ((double) numericCount * other.numericCount / count);
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            if (approximate) {
+                digest.merge(other.digest);
+                numericCount = count;
+                return;
+            }
+            if (count > values.length) {
+                values = Arrays.copyOf(values, Math.max(count, values.length * 2));
+            }
+            System.arraycopy(other.values, 0, values, numericCount, other.numericCount);
+            numericCount = count;
+        }
+
+        /**
+         * 计算四分位数并生成结果，之后累加器不应再使用
+         */
+        public ColumnStatistics finish() {
+            if (shortestLength == Integer.MAX_VALUE) {
+                shortestLength = 0;
+            }
+            if (numericCount == 0) {
+                min = 0.0;
+                max = 0.0;
+                return new ColumnStatistics(this, 0.0, 0.0, 0.0);
+            }
+            if (approximate) {
+                return new ColumnStatistics(this, digest.quantile(0.25), digest.quantile(0.5), digest.quantile(0.75));
+            }
+            // 依次选出所需的顺序统计量，每次只在上一次的右侧继续
+            double[] a = values;
+            int n = numericCount;
+            double q1 = percentile(a, n, 25);
+            double median = percentile(a, n, 50);
+            double q3 = percentile(a, n, 75);
+            return new ColumnStatistics(this, q1, median, q3);
+        }
+
+        /**
+         * 线性插值的百分位数，与排序后按 (n - 1) * p 取值的结果相同
+         * 必须按百分位从小到大调用
+         */
+        private double percentile(double[] a, int n, double percentile) {
+            double index = percentile / 100.0 * (n - 1);
+            int lower = (int) Math.floor(index);
+            int upper = (int) Math.ceil(index);
+            double lowerValue = orderStatistic(a, n, lower);
+            if (lower == upper) {
+                return lowerValue;
+            }
+            double upperValue = orderStatistic(a, n, upper);
+            double weight = index - lower;
+            return lowerValue * (1 - weight) + upperValue * weight;
+        }
+
+        /**
+         * 第 k 小的值（从 0 开始）
+         */
+        private double orderStatistic(double[] a, int n, int k) {
+            if (k < selectedUpTo) {
+                return a[k];
+            }
+            select(a, selectedUpTo, n - 1, k);
+            selectedUpTo = k + 1;
+            return a[k];
+        }
+
+        /**
+         * 快速选择：重排 a[left..right]，使 a[k] 为该范围内第 k 小的值，左侧都不大于它，右侧都不小于它
+         */
+        private static void select(double[] a, int left, int right, int k) {
+            while (right > left) {
+                // 三数取中作为枢轴，避免有序输入退化
+                int middle = (left + right) >>> 1;
+                if (a[middle] < a[left]) {
+                    swap(a, middle, left);
+                }
+                if (a[right] < a[left]) {
+                    swap(a, right, left);
+                }
+                if (a[right] < a[middle]) {
+                    swap(a, right, middle);
+                }
+                double pivot = a[middle];
+                int i = left;
+                int j = right;
+                while (i <= j) {
+                    while (a[i] < pivot) {
+                        i++;
+                    }
+                    while (a[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(a, i, j);
+                        i++;
+                        j--;
+                    }
+                }
+                if (k <= j) {
+                    right = j;
+                } else if (k >= i) {
+                    left = i;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private static void swap(double[] a, int i, int j) {
+            double t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+
+        /**
+         * 64 位字符串哈希（FNV-1a 后再混合），用于唯一值计数
+         */
+        private static long hash(String value) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                h ^= value.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    /**
+     * 开放寻址的 long 集合，0 作为空位标记（值为 0 的哈希单独记录）
+     */
+    private static final class LongHashSet {
+        private long[] table = new long[64];
+        private int size;
+        private boolean hasZero;
+
+        void add(long key) {
+            if (key == 0) {
+                if (!hasZero) {
+                    hasZero = true;
+                    size++;
+                }
+                return;
+            }
+            if ((size + 1) * 2 > table.length) {
+                long[] old = table;
+                table = new long[old.length * 2];
+                for (long k : old) {
+                    if (k != 0) {
+                        insert(k);
+                    }
+                }
+            }
+            if (insert(key)) {
+                size++;
+            }
+        }
+
+        void addAll(LongHashSet other) {
+            if (other.hasZero) {
+                add(0);
+            }
+            for (long key : other.table) {
+                if (key != 0) {
+                    add(key);
+                }
+            }
+        }
+
+        private boolean insert(long key) {
+            int mask = table.length - 1;
+            int slot = (int) (key ^ (key >>> 32)) & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+            return true;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
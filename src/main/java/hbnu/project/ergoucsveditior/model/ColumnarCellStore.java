@@ -0,0 +1,223 @@
+package hbnu.project.ergoucsveditior.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 列式单元格存储
+ * 每列一个 long[] 引用数组，文本统一存放在共享的 TextArena 中
+ * 每个单元格的固定开销为 8 字节（空单元格不占文本存储），
+ * 替代原先每格 CSVCell + SimpleStringProperty + ObservableList 槽位的结构
+ */
+public final class ColumnarCellStore implements CellStore {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private TextArena arena;
+    private final List<long[]> columns;
+    private int rowCount;
+    private int rowCapacity;
+
+    public ColumnarCellStore() {
+        this(0, 0);
+    }
+
+    public ColumnarCellStore(int rows, int columnCount) {
+        this.arena = new TextArena();
+        this.columns = new ArrayList<>(Math.max(columnCount, 4));
+        this.rowCount = rows;
+        this.rowCapacity = Math.max(rows, INITIAL_CAPACITY);
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(new long[rowCapacity]);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    @Override
+    public String get(int row, int column) {
+        return arena.load(columns.get(column)[row]);
+    }
+
+    /**
+     * 单元格文本长度（不解码字符串）
+     */
+    @Override
+    public int length(int row, int column) {
+        return arena.length(columns.get(column)[row]);
+    }
+
+    @Override
+    public void set(int row, int column, String value) {
+        long[] refs = columns.get(column);
+        arena.release(refs[row]);
+        refs[row] = arena.store(value);
+        compactIfNeeded();
+    }
+
+    /**
+     * 在末尾追加一行，列数不足时自动扩展
+     */
+    @Override
+    public void appendRow(String[] values) {
+        while (columns.size() < values.length) {
+            columns.add(new long[rowCapacity]);
+        }
+        ensureRowCapacity(rowCount + 1);
+        for (int col = 0; col < values.length; col++) {
+            columns.get(col)[rowCount] = arena.store(values[col]);
+        }
+        rowCount++;
+    }
+
+    /**
+     * 把另一个存储的全部行追加到末尾
+     * 直接接管对方的文本区，只平移引用，不重新编码文本；调用后 other 不能再使用
+     */
+    public void appendAll(ColumnarCellStore other) {
+        while (columns.size() < other.columns.size()) {
+            columns.add(new long[rowCapacity]);
+        }
+        ensureRowCapacity(rowCount + other.rowCount);
+        int chunkOffset = arena.absorb(other.arena);
+        for (int col = 0; col < other.columns.size(); col++) {
+            long[] source = other.columns.get(col);
+            long[] target = columns.get(col);
+            for (int row = 0; row < other.rowCount; row++) {
+                target[rowCount + row] = TextArena.relocate(source[row], chunkOffset);
+            }
+        }
+        rowCount += other.rowCount;
+    }
+
+    /**
+     * 在指定位置插入若干空行
+     */
+    @Override
+    public void insertRows(int index, int count) {
+        ensureRowCapacity(rowCount + count);
+        for (long[] refs : columns) {
+            System.arraycopy(refs, index, refs, index + count, rowCount - index);
+            Arrays.fill(refs, index, index + count, TextArena.EMPTY);
+        }
+        rowCount += count;
+    }
+
+    @Override
+    public void removeRow(int index) {
+        for (long[] refs : columns) {
+            arena.release(refs[index]);
+            System.arraycopy(refs, index + 1, refs, index, rowCount - index - 1);
+            refs[rowCount - 1] = TextArena.EMPTY;
+        }
+        rowCount--;
+        compactIfNeeded();
+    }
+
+    /**
+     * 把一行移动到新位置，中间的行依次顺移
+     */
+    @Override
+    public void moveRow(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        for (long[] refs : columns) {
+            long moved = refs[from];
+            if (from < to) {
+                System.arraycopy(refs, from + 1, refs, from, to - from);
+            } else {
+                System.arraycopy(refs, to, refs, to + 1, from - to);
+            }
+            refs[to] = moved;
+        }
+    }
+
+    @Override
+    public void insertColumn(int index) {
+        columns.add(index, new long[rowCapacity]);
+    }
+
+    @Override
+    public void removeColumn(int index) {
+        long[] refs = columns.remove(index);
+        for (int row = 0; row < rowCount; row++) {
+            arena.release(refs[row]);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * 深拷贝（引用数组按原样复制，文本区重新压缩写入）
+     */
+    @Override
+    public ColumnarCellStore copy() {
+        ColumnarCellStore copy = new ColumnarCellStore(rowCount, columns.size());
+        for (int col = 0; col < columns.size(); col++) {
+            long[] source = columns.get(col);
+            long[] target = copy.columns.get(col);
+            for (int row = 0; row < rowCount; row++) {
+                target[row] = copy.arena.store(arena.load(source[row]));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * 快照（只复制引用数组，文本块与当前存储共享）
+     */
+    @Override
+    public ColumnarCellStore snapshot() {
+        ColumnarCellStore snapshot = new ColumnarCellStore(0, 0);
+        snapshot.arena = arena.snapshot();
+        snapshot.rowCount = rowCount;
+        snapshot.rowCapacity = Math.max(rowCount, INITIAL_CAPACITY);
+        for (long[] refs : columns) {
+            snapshot.columns.add(Arrays.copyOf(refs, snapshot.rowCapacity));
+        }
+        return snapshot;
+    }
+
+    /**
+     * 估算当前占用的堆内存（字节）
+     */
+    @Override
+    public long estimateMemoryBytes() {
+        return (long) columns.size() * (16 + 8L * rowCapacity) + arena.getAllocatedBytes();
+    }
+
+    private void ensureRowCapacity(int required) {
+        if (required <= rowCapacity) {
+            return;
+        }
+        int newCapacity = Math.max(required, rowCapacity + (rowCapacity >> 1));
+        for (int col = 0; col < columns.size(); col++) {
+            columns.set(col, Arrays.copyOf(columns.get(col), newCapacity));
+        }
+        rowCapacity = newCapacity;
+    }
+
+    /**
+     * 垃圾文本过多时重新写入一个新的文本区
+     */
+    private void compactIfNeeded() {
+        if (!arena.needsCompaction()) {
+            return;
+        }
+        TextArena compacted = new TextArena();
+        for (long[] refs : columns) {
+            for (int row = 0; row < rowCount; row++) {
+                refs[row] = compacted.store(arena.load(refs[row]));
+            }
+        }
+        arena = compacted;
+    }
+}
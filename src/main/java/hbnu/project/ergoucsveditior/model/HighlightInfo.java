@@ -16,6 +16,7 @@ public class HighlightInfo {
         CELL,       // 单元格高亮
         ROW,        // 行高亮
         COLUMN,     // 列高亮
+        RANGE,      // 矩形区域高亮
         SEARCH      // 搜索匹配高亮
     }
     
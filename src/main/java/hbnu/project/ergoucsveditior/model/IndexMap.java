@@ -0,0 +1,118 @@
+package hbnu.project.ergoucsveditior.model;
+
+import java.util.Arrays;
+
+/**
+ * 以 int 下标为键的稀疏数组
+ * 直接按下标存取，查找不装箱、不分配对象；插入、删除、移动下标时只移动数组中的引用，
+ * 用于保存按行或按列的标记（行高亮、列高亮等）
+ */
+public class IndexMap<V> {
+    private static final Object[] EMPTY = new Object[0];
+
+    private Object[] values = EMPTY;
+    private int length; // 最大有值下标 + 1 的上界
+
+    /**
+     * 获取下标对应的值，不存在时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int index) {
+        return index >= 0 && index < length ? (V) values[index] : null;
+    }
+
+    /**
+     * 设置下标对应的值，value 为 null 表示删除
+     * @return 原来的值
+     */
+    public V set(int index, V value) {
+        if (index < 0) {
+            return null;
+        }
+        if (index >= length) {
+            if (value == null) {
+                return null;
+            }
+            ensureCapacity(index + 1);
+            length = index + 1;
+        }
+        V old = get(index);
+        values[index] = value;
+        return old;
+    }
+
+    /**
+     * 在 index 处插入 count 个空位，之后的下标整体后移
+     */
+    public void insert(int index, int count) {
+        if (index < 0 || index >= length || count <= 0) {
+            return;
+        }
+        ensureCapacity(length + count);
+        System.arraycopy(values, index, values, index + count, length - index);
+        Arrays.fill(values, index, index + count, null);
+        length += count;
+    }
+
+    /**
+     * 删除 [index, index + count) 的值，之后的下标整体前移
+     */
+    public void remove(int index, int count) {
+        if (index < 0 || index >= length || count <= 0) {
+            return;
+        }
+        int end = Math.min(length, index + count);
+        System.arraycopy(values, end, values, index, length - end);
+        Arrays.fill(values, length - (end - index), length, null);
+        length -= end - index;
+    }
+
+    /**
+     * 把 from 处的值移动到 to（移动后的位置），中间的值依次顺移
+     */
+    public void move(int from, int to) {
+        if (from == to || from < 0 || to < 0 || (from >= length && to >= length)) {
+            return;
+        }
+        ensureCapacity(Math.max(from, to) + 1);
+        length = Math.max(length, Math.max(from, to) + 1);
+        Object moved = values[from];
+        if (from < to) {
+            System.arraycopy(values, from + 1, values, from, to - from);
+        } else {
+            System.arraycopy(values, to, values, to + 1, from - to);
+        }
+        values[to] = moved;
+    }
+
+    /**
+     * 下标上界（大于所有有值的下标）
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 创建独立副本（值对象本身共享）
+     */
+    public IndexMap<V> copy() {
+        IndexMap<V> copy = new IndexMap<>();
+        copy.values = length > 0 ? Arrays.copyOf(values, length) : EMPTY;
+        copy.length = length;
+        return copy;
+    }
+
+    /**
+     * 清空所有值
+     */
+    public void clear() {
+        values = EMPTY;
+        length = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, Math.max(16, values.length + (values.length >> 1))));
+        }
+    }
+}
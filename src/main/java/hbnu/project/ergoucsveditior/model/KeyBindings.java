@@ -23,6 +23,7 @@ public class KeyBindings {
     public static final String ACTION_SAVE = "save";
     public static final String ACTION_SAVE_AS = "saveAs";
     public static final String ACTION_UNDO = "undo";
+    public static final String ACTION_REDO = "redo";
     public static final String ACTION_ADD_ROW = "addRow";
     public static final String ACTION_ADD_COLUMN = "addColumn";
     public static final String ACTION_DELETE_ROW = "deleteRow";
@@ -55,6 +56,7 @@ public class KeyBindings {
         bindings.put(ACTION_SAVE, new KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN));
         bindings.put(ACTION_SAVE_AS, new KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN));
         bindings.put(ACTION_UNDO, new KeyCodeCombination(KeyCode.Z, KeyCombination.CONTROL_DOWN));
+        bindings.put(ACTION_REDO, new KeyCodeCombination(KeyCode.Y, KeyCombination.CONTROL_DOWN));
         bindings.put(ACTION_CELL_NEWLINE, new KeyCodeCombination(KeyCode.ENTER, KeyCombination.CONTROL_DOWN));
         bindings.put(ACTION_SEARCH, new KeyCodeCombination(KeyCode.F, KeyCombination.CONTROL_DOWN));
         bindings.put(ACTION_HIGHLIGHT, new KeyCodeCombination(KeyCode.M, KeyCombination.CONTROL_DOWN));
@@ -161,6 +163,7 @@ public class KeyBindings {
             case ACTION_SAVE: return "保存";
             case ACTION_SAVE_AS: return "另存为";
             case ACTION_UNDO: return "撤销";
+            case ACTION_REDO: return "重做";
             case ACTION_ADD_ROW: return "添加行";
             case ACTION_ADD_COLUMN: return "添加列";
             case ACTION_DELETE_ROW: return "删除行";
@@ -190,6 +193,7 @@ public class KeyBindings {
             ACTION_SAVE,
             ACTION_SAVE_AS,
             ACTION_UNDO,
+            ACTION_REDO,
             ACTION_ADD_ROW,
             ACTION_ADD_COLUMN,
             ACTION_DELETE_ROW,
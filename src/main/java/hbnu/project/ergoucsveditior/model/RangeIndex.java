@@ -0,0 +1,317 @@
+package hbnu.project.ergoucsveditior.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 矩形区域索引
+ * 每个区域覆盖 [firstRow, lastRow] × [firstColumn, lastColumn]，重叠时后添加的区域优先
+ *
+ * 查询使用按起始行排序的隐式区间树（每个节点记录子树中最大的结束行），
+ * 查找一个单元格所在的区域只需 O(log n + k)，n 为区域数，k 为覆盖该行的区域数，与区域包含的单元格数无关
+ * 区域变化后索引标记为失效，下次查询时重新构建
+ */
+public class RangeIndex<V> {
+
+    /**
+     * 一个矩形区域
+     */
+    public static final class Range<V> {
+        private int firstRow;
+        private int lastRow;
+        private int firstColumn;
+        private int lastColumn;
+        private final V value;
+        private final long sequence;
+
+        private Range(int firstRow, int lastRow, int firstColumn, int lastColumn, V value, long sequence) {
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.firstColumn = firstColumn;
+            this.lastColumn = lastColumn;
+            this.value = value;
+            this.sequence = sequence;
+        }
+
+        public int getFirstRow() {
+            return firstRow;
+        }
+
+        public int getLastRow() {
+            return lastRow;
+        }
+
+        public int getFirstColumn() {
+            return firstColumn;
+        }
+
+        public int getLastColumn() {
+            return lastColumn;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public boolean contains(int row, int column) {
+            return row >= firstRow && row <= lastRow && column >= firstColumn && column <= lastColumn;
+        }
+    }
+
+    private final List<Range<V>> ranges = new ArrayList<>(); // 按添加顺序
+    private long nextSequence;
+    private Range<V>[] sorted;
+    private int[] maxLastRow;
+
+    /**
+     * 添加一个区域，行列范围会自动规整为从小到大
+     */
+    public Range<V> add(int firstRow, int lastRow, int firstColumn, int lastColumn, V value) {
+        Range<V> range = new Range<>(Math.min(firstRow, lastRow), Math.max(firstRow, lastRow),
+                Math.min(firstColumn, lastColumn), Math.max(firstColumn, lastColumn), value, nextSequence++);
+        ranges.add(range);
+        sorted = null;
+        return range;
+    }
+
+    /**
+     * 删除一个区域
+     */
+    public boolean remove(Range<V> range) {
+        if (ranges.remove(range)) {
+            sorted = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 删除所有包含该单元格的区域
+     * @return 删除的区域数
+     */
+    public int removeContaining(int row, int column) {
+        int before = ranges.size();
+        ranges.removeIf(range -> range.contains(row, column));
+        if (ranges.size() != before) {
+            sorted = null;
+        }
+        return before - ranges.size();
+    }
+
+    /**
+     * 获取包含该单元格的最新区域的值，不存在时返回 null
+     */
+    public V find(int row, int column) {
+        Range<V> range = findRange(row, column);
+        return range != null ? range.value : null;
+    }
+
+    /**
+     * 获取包含该单元格的最新区域
+     */
+    public Range<V> findRange(int row, int column) {
+        if (ranges.isEmpty()) {
+            return null;
+        }
+        ensureIndex();
+        return find(0, sorted.length, row, column, null);
+    }
+
+    /**
+     * 按添加顺序遍历与某一行相交的区域（后遍历的区域优先级更高）
+     */
+    public void forEachInRow(int row, java.util.function.Consumer<Range<V>> visitor) {
+        if (ranges.isEmpty()) {
+            return;
+        }
+        ensureIndex();
+        List<Range<V>> hits = new ArrayList<>();
+        stab(0, sorted.length, row, hits);
+        hits.sort(Comparator.comparingLong(range -> range.sequence));
+        hits.forEach(visitor);
+    }
+
+    /**
+     * 所有区域（按添加顺序）
+     */
+    public List<Range<V>> getRanges() {
+        return Collections.unmodifiableList(ranges);
+    }
+
+    public int size() {
+        return ranges.size();
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    public void clear() {
+        ranges.clear();
+        sorted = null;
+    }
+
+    /**
+     * 创建独立副本（区域的值对象本身共享）
+     */
+    public RangeIndex<V> copy() {
+        RangeIndex<V> copy = new RangeIndex<>();
+        for (Range<V> range : ranges) {
+            copy.ranges.add(new Range<>(range.firstRow, range.lastRow, range.firstColumn, range.lastColumn,
+                    range.value, range.sequence));
+        }
+        copy.nextSequence = nextSequence;
+        return copy;
+    }
+
+    // ========== 行列变化时调整区域 ==========
+
+    /**
+     * 在 row 处插入 count 行：之后的区域下移，跨越插入位置的区域变大
+     */
+    public void insertRows(int row, int count) {
+        for (Range<V> range : ranges) {
+            if (range.firstRow >= row) {
+                range.firstRow += count;
+                range.lastRow += count;
+            } else if (range.lastRow >= row) {
+                range.lastRow += count;
+            }
+        }
+        sorted = null;
+    }
+
+    /**
+     * 删除 [row, row + count) 的行：区域随之收缩，完全被删除的区域移除
+     */
+    public void removeRows(int row, int count) {
+        int end = row + count - 1;
+        ranges.removeIf(range -> {
+            int first = range.firstRow < row ? range.firstRow : range.firstRow > end ? range.firstRow - count : row;
+            int last = range.lastRow < row ? range.lastRow : range.lastRow > end ? range.lastRow - count : row - 1;
+            range.firstRow = first;
+            range.lastRow = last;
+            return last < first;
+        });
+        sorted = null;
+    }
+
+    /**
+     * 把一行移动到新位置（移动后的位置）
+     * 只覆盖这一行的区域跟随移动，其他区域按“先删除再插入”调整
+     */
+    public void moveRow(int from, int to) {
+        List<Range<V>> single = new ArrayList<>();
+        for (Range<V> range : ranges) {
+            if (range.firstRow == from && range.lastRow == from) {
+                single.add(range);
+            }
+        }
+        ranges.removeAll(single);
+        removeRows(from, 1);
+        insertRows(to, 1);
+        for (Range<V> range : single) {
+            range.firstRow = to;
+            range.lastRow = to;
+        }
+        ranges.addAll(single);
+        ranges.sort(Comparator.comparingLong(range -> range.sequence));
+        sorted = null;
+    }
+
+    /**
+     * 在 column 处插入一列
+     */
+    public void insertColumn(int column) {
+        for (Range<V> range : ranges) {
+            if (range.firstColumn >= column) {
+                range.firstColumn++;
+                range.lastColumn++;
+            } else if (range.lastColumn >= column) {
+                range.lastColumn++;
+            }
+        }
+    }
+
+    /**
+     * 删除一列
+     */
+    public void removeColumn(int column) {
+        ranges.removeIf(range -> {
+            if (range.firstColumn > column) {
+                range.firstColumn--;
+            }
+            if (range.lastColumn >= column) {
+                range.lastColumn--;
+            }
+            return range.lastColumn < range.firstColumn;
+        });
+        sorted = null;
+    }
+
+    // ========== 区间树 ==========
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void ensureIndex() {
+        if (sorted != null) {
+            return;
+        }
+        sorted = ranges.toArray(new Range[0]);
+        java.util.Arrays.sort(sorted, Comparator.comparingInt(range -> range.firstRow));
+        maxLastRow = new int[sorted.length];
+        build(0, sorted.length);
+    }
+
+    /**
+     * 以 [lo, hi) 的中点为子树根，记录子树中最大的结束行
+     */
+    private int build(int lo, int hi) {
+        if (lo >= hi) {
+            return Integer.MIN_VALUE;
+        }
+        int mid = (lo + hi) >>> 1;
+        int max = Math.max(sorted[mid].lastRow, Math.max(build(lo, mid), build(mid + 1, hi)));
+        maxLastRow[mid] = max;
+        return max;
+    }
+
+    private Range<V> find(int lo, int hi, int row, int column, Range<V> best) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (maxLastRow[mid] < row) {
+                return best;
+            }
+            best = find(lo, mid, row, column, best);
+            Range<V> range = sorted[mid];
+            if (range.firstRow > row) {
+                // 右子树的起始行更大，不可能包含该行
+                return best;
+            }
+            if (range.contains(row, column) && (best == null || range.sequence > best.sequence)) {
+                best = range;
+            }
+            lo = mid + 1;
+        }
+        return best;
+    }
+
+    private void stab(int lo, int hi, int row, List<Range<V>> hits) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (maxLastRow[mid] < row) {
+                return;
+            }
+            stab(lo, mid, row, hits);
+            Range<V> range = sorted[mid];
+            if (range.firstRow > row) {
+                return;
+            }
+            if (range.lastRow >= row) {
+                hits.add(range);
+            }
+            lo = mid + 1;
+        }
+    }
+}
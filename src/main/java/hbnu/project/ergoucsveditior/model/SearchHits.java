@@ -0,0 +1,203 @@
+package hbnu.project.ergoucsveditior.model;
+
+import java.util.Arrays;
+
+/**
+ * 搜索结果索引
+ * 命中的单元格按 (行, 列) 顺序保存在基本类型数组中，同时维护一个开放寻址的哈希表：
+ *   渲染单元格时判断是否命中 - 哈希查找 O(1)，不装箱、不分配对象
+ *   查找下一个/上一个命中 - 在有序数组中二分查找 O(log n)
+ * 每个命中单元格内的匹配区间在搜索时预先计算，渲染时不再重新匹配
+ * 多个搜索词时同时记录每个搜索词命中的单元格数，用于找出没有命中的搜索词
+ */
+public class SearchHits {
+    private static final int[] EMPTY = new int[0];
+
+    private long[] keys = new long[16]; // (行 << 32) | 列，按添加顺序即行列顺序
+    private int[] matchStart = new int[17]; // 第 i 个命中的匹配区间在 matches 中的起点
+    private int[] matches = new int[32]; // 匹配区间 [start, end) 依次存放
+    private int size;
+    private int matchLength;
+    private int[] table = EMPTY; // 值为命中序号 + 1，0 表示空位
+    private int[] termCounts = EMPTY; // 每个搜索词命中的单元格数
+
+    /**
+     * 添加一个命中的单元格，必须按行列顺序添加
+     * @param ranges 单元格内的匹配区间，依次为 start、end，可以为空（整格高亮时传 0 和文本长度）
+     */
+    public void add(int row, int column, int[] ranges, int rangeLength) {
+        add(row, column, ranges, 0, rangeLength);
+    }
+
+    private void add(int row, int column, int[] ranges, int offset, int rangeLength) {
+        long key = key(row, column);
+        if (size > 0 && key <= keys[size - 1]) {
+            throw new IllegalArgumentException("搜索结果必须按行列顺序添加: " + row + ", " + column);
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            matchStart = Arrays.copyOf(matchStart, size * 2 + 1);
+        }
+        if (matchLength + rangeLength > matches.length) {
+            matches = Arrays.copyOf(matches, Math.max(matches.length * 2, matchLength + rangeLength));
+        }
+        System.arraycopy(ranges, offset, matches, matchLength, rangeLength);
+        matchLength += rangeLength;
+        keys[size] = key;
+        size++;
+        matchStart[size] = matchLength;
+
+        if (size * 2 > table.length) {
+            rehash(Math.max(64, table.length * 2));
+        } else {
+            insert(size - 1);
+        }
+    }
+
+    /**
+     * 追加另一组结果，other 中的单元格必须都排在当前结果之后
+     */
+    public void addAll(SearchHits other) {
+        int matchOffset = 0;
+        for (int i = 0; i < other.size; i++) {
+            int end = other.matchStart[i + 1];
+            add(other.getRow(i), other.getColumn(i), other.matches, matchOffset, end - matchOffset);
+            matchOffset = end;
+        }
+        addTermCounts(other.termCounts);
+    }
+
+    /**
+     * 累加每个搜索词命中的单元格数
+     */
+    public void addTermCounts(int[] counts) {
+        if (counts.length > termCounts.length) {
+            termCounts = Arrays.copyOf(termCounts, counts.length);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            termCounts[i] += counts[i];
+        }
+    }
+
+    /**
+     * 第 term 个搜索词命中的单元格数
+     */
+    public int getTermCount(int term) {
+        return term < termCounts.length ? termCounts[term] : 0;
+    }
+
+    /**
+     * 命中的单元格数
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 单元格在结果中的序号，未命中时返回 -1
+     */
+    public int indexOf(int row, int column) {
+        if (size == 0) {
+            return -1;
+        }
+        long key = key(row, column);
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (keys[index] == key) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int row, int column) {
+        return indexOf(row, column) >= 0;
+    }
+
+    public int getRow(int index) {
+        return (int) (keys[index] >>> 32);
+    }
+
+    public int getColumn(int index) {
+        return (int) keys[index];
+    }
+
+    /**
+     * 第 index 个命中单元格内的匹配区间数
+     */
+    public int getMatchCount(int index) {
+        return (matchStart[index + 1] - matchStart[index]) / 2;
+    }
+
+    /**
+     * 第 index 个命中单元格内第 match 个匹配区间的起点
+     */
+    public int getMatchStart(int index, int match) {
+        return matches[matchStart[index] + match * 2];
+    }
+
+    /**
+     * 第 index 个命中单元格内第 match 个匹配区间的终点（不含）
+     */
+    public int getMatchEnd(int index, int match) {
+        return matches[matchStart[index] + match * 2 + 1];
+    }
+
+    /**
+     * 位于 (row, column) 之后的第一个命中，到末尾时从头开始
+     */
+    public int nextIndex(int row, int column) {
+        if (size == 0) {
+            return -1;
+        }
+        int i = search(key(row, column));
+        int next = i >= 0 ? i + 1 : -i - 1;
+        return next < size ? next : 0;
+    }
+
+    /**
+     * 位于 (row, column) 之前的最后一个命中，到开头时从末尾开始
+     */
+    public int previousIndex(int row, int column) {
+        if (size == 0) {
+            return -1;
+        }
+        int i = search(key(row, column));
+        int previous = (i >= 0 ? i : -i - 1) - 1;
+        return previous >= 0 ? previous : size - 1;
+    }
+
+    private int search(long key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private static long key(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            insert(i);
+        }
+    }
+
+    private void insert(int index) {
+        int mask = table.length - 1;
+        int slot = hash(keys[index]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+}
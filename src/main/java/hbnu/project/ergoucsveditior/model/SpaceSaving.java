@@ -0,0 +1,198 @@
+package hbnu.project.ergoucsveditior.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving 高频值草图
+ * 最多跟踪 capacity 个值；已满时新值替换计数最小的值，并继承它的计数作为误差上限。
+ * 任何出现次数超过 总数 / capacity 的值一定在跟踪之中，
+ * 每个值的真实次数在 [count - error, count] 之间
+ * 计数最小的值用小顶堆维护，每次更新 O(log capacity)
+ */
+public class SpaceSaving {
+
+    /**
+     * 一个高频值及其计数
+     */
+    public static final class Entry {
+        private final String value;
+        private final long count;
+        private final long error;
+
+        Entry(String value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * 估计的出现次数（不小于真实次数）
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * 计数可能多出的次数上限
+         */
+        public long getError() {
+            return error;
+        }
+    }
+
+    /**
+     * 跟踪中的值，heapIndex 随堆调整更新，哈希表不需要跟着修改
+     */
+    private static final class Node {
+        String value;
+        long count;
+        long error;
+        int heapIndex;
+    }
+
+    private final int capacity;
+    private final Node[] heap; // 按计数组成的小顶堆
+    private final Map<String, Node> nodes = new HashMap<>();
+    private int size;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.heap = new Node[capacity];
+    }
+
+    public void add(String value) {
+        add(value, 1, 0);
+    }
+
+    private void add(String value, long count, long error) {
+        total += count;
+        Node node = nodes.get(value);
+        if (node != null) {
+            node.count += count;
+            node.error += error;
+            siftDown(node.heapIndex);
+            return;
+        }
+        if (size < capacity) {
+            node = new Node();
+            node.value = value;
+            node.count = count;
+            node.error = error;
+            node.heapIndex = size;
+            heap[size] = node;
+            nodes.put(value, node);
+            siftUp(size++);
+            return;
+        }
+        // 替换计数最小的值，新值继承它的计数
+        node = heap[0];
+        nodes.remove(node.value);
+        long minimum = node.count;
+        node.value = value;
+        node.count = minimum + count;
+        node.error = minimum + error;
+        nodes.put(value, node);
+        siftDown(0);
+    }
+
+    /**
+     * 合并另一个草图（Agarwal 等人的可合并摘要）
+     * 一方没有跟踪的值按该方的最小计数计入（该方未满时为 0），再保留计数最大的 capacity 个值
+     */
+    public void merge(SpaceSaving other) {
+        long thisMinimum = size == capacity ? heap[0].count : 0;
+        long otherMinimum = other.size == other.capacity ? other.heap[0].count : 0;
+        Map<String, long[]> combined = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            combined.put(heap[i].value, new long[]{heap[i].count + otherMinimum, heap[i].error + otherMinimum});
+        }
+        for (int i = 0; i < other.size; i++) {
+            Node node = other.heap[i];
+            long[] entry = combined.get(node.value);
+            if (entry != null) {
+                entry[0] += node.count - otherMinimum;
+                entry[1] += node.error - otherMinimum;
+            } else {
+                combined.put(node.value, new long[]{node.count + thisMinimum, node.error + thisMinimum});
+            }
+        }
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(combined.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+        long mergedTotal = total + other.total;
+        nodes.clear();
+        size = 0;
+        for (int i = 0; i < Math.min(capacity, entries.size()); i++) {
+            long[] entry = entries.get(i).getValue();
+            add(entries.get(i).getKey(), entry[0], entry[1]);
+        }
+        total = mergedTotal;
+    }
+
+    /**
+     * 计数最大的 n 个值，按计数从大到小排列
+     */
+    public List<Entry> top(int n) {
+        List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Entry(heap[i].value, heap[i].count, heap[i].error));
+        }
+        entries.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.value.compareTo(b.value));
+        return new ArrayList<>(entries.subList(0, Math.min(n, entries.size())));
+    }
+
+    /**
+     * 添加过的值的总次数
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // ========== 小顶堆 ==========
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent].count <= heap[i].count) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = i * 2 + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && heap[left + 1].count < heap[left].count ? left + 1 : left;
+            if (heap[i].count <= heap[smallest].count) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Node node = heap[i];
+        heap[i] = heap[j];
+        heap[j] = node;
+        heap[i].heapIndex = i;
+        heap[j].heapIndex = j;
+    }
+}
@@ -0,0 +1,303 @@
+package hbnu.project.ergoucsveditior.model;
+
+import java.util.Arrays;
+
+/**
+ * 以 (行, 列) 为键的稀疏单元格映射
+ * 每行一个按列号排序的稀疏数组，行本身放在 IndexMap 中：
+ *   查找 - 按行下标直接定位，再在该行内二分查找列号，不创建任何对象
+ *   插入/删除/移动行 - 只移动行数组中的引用，不重建映射
+ *   插入/删除列 - 在每个有值的行内原地调整列号
+ * 供单元格高亮和自动标记共用
+ */
+public class SparseCellMap<V> {
+    private final IndexMap<Row> rows = new IndexMap<>();
+    private int size;
+
+    /**
+     * 遍历单元格的回调
+     */
+    @FunctionalInterface
+    public interface CellVisitor<V> {
+        void visit(int row, int column, V value);
+    }
+
+    /**
+     * 获取单元格的值，不存在时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int row, int column) {
+        Row r = rows.get(row);
+        if (r == null) {
+            return null;
+        }
+        int i = r.find(column);
+        return i >= 0 ? (V) r.values[i] : null;
+    }
+
+    /**
+     * 设置单元格的值，value 为 null 表示删除
+     * @return 原来的值
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int row, int column, V value) {
+        if (value == null) {
+            return remove(row, column);
+        }
+        if (row < 0) {
+            return null;
+        }
+        Row r = rows.get(row);
+        if (r == null) {
+            r = new Row();
+            rows.set(row, r);
+        }
+        int i = r.find(column);
+        if (i >= 0) {
+            V old = (V) r.values[i];
+            r.values[i] = value;
+            return old;
+        }
+        r.insert(-i - 1, column, value);
+        size++;
+        return null;
+    }
+
+    /**
+     * 删除单元格的值
+     * @return 原来的值
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int row, int column) {
+        Row r = rows.get(row);
+        if (r == null) {
+            return null;
+        }
+        int i = r.find(column);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) r.values[i];
+        r.delete(i);
+        size--;
+        if (r.count == 0) {
+            rows.set(row, null);
+        }
+        return old;
+    }
+
+    /**
+     * 删除一整行的值（行号不变）
+     */
+    public void clearRow(int row) {
+        Row r = rows.set(row, null);
+        if (r != null) {
+            size -= r.count;
+        }
+    }
+
+    /**
+     * 删除一整列的值（列号不变）
+     */
+    public void clearColumn(int column) {
+        for (int row = 0; row < rows.length(); row++) {
+            Row r = rows.get(row);
+            if (r != null) {
+                int i = r.find(column);
+                if (i >= 0) {
+                    r.delete(i);
+                    size--;
+                    if (r.count == 0) {
+                        rows.set(row, null);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 把另一个映射的全部行移入本映射，行号加上 rowOffset
+     * 用于合并按行分块计算的结果：目标行为空时直接移入整行，不逐个复制单元格
+     * 合并后 other 不应再使用
+     */
+    @SuppressWarnings("unchecked")
+    public void putRows(SparseCellMap<? extends V> other, int rowOffset) {
+        for (int row = 0; row < other.rows.length(); row++) {
+            Row r = other.rows.get(row);
+            if (r == null) {
+                continue;
+            }
+            int target = row + rowOffset;
+            if (rows.get(target) == null) {
+                rows.set(target, r);
+                size += r.count;
+            } else {
+                for (int i = 0; i < r.count; i++) {
+                    put(target, r.columns[i], (V) r.values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在 row 处插入 count 个空行，之后的行号后移
+     */
+    public void insertRows(int row, int count) {
+        rows.insert(row, count);
+    }
+
+    /**
+     * 删除 [row, row + count) 的行，之后的行号前移
+     */
+    public void removeRows(int row, int count) {
+        int end = Math.min(rows.length(), row + count);
+        for (int i = Math.max(0, row); i < end; i++) {
+            Row r = rows.get(i);
+            if (r != null) {
+                size -= r.count;
+            }
+        }
+        rows.remove(row, count);
+    }
+
+    /**
+     * 把一行移动到新位置（移动后的位置），中间的行依次顺移
+     */
+    public void moveRow(int from, int to) {
+        rows.move(from, to);
+    }
+
+    /**
+     * 在 column 处插入一个空列，之后的列号后移
+     */
+    public void insertColumn(int column) {
+        for (int row = 0; row < rows.length(); row++) {
+            Row r = rows.get(row);
+            if (r != null) {
+                r.shiftColumns(column, 1);
+            }
+        }
+    }
+
+    /**
+     * 删除一列，之后的列号前移
+     */
+    public void removeColumn(int column) {
+        clearColumn(column);
+        for (int row = 0; row < rows.length(); row++) {
+            Row r = rows.get(row);
+            if (r != null) {
+                r.shiftColumns(column + 1, -1);
+            }
+        }
+    }
+
+    /**
+     * 按行、列顺序遍历所有单元格
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(CellVisitor<? super V> visitor) {
+        for (int row = 0; row < rows.length(); row++) {
+            Row r = rows.get(row);
+            if (r != null) {
+                for (int i = 0; i < r.count; i++) {
+                    visitor.visit(row, r.columns[i], (V) r.values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按列顺序遍历一行中的单元格
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachInRow(int row, CellVisitor<? super V> visitor) {
+        Row r = rows.get(row);
+        if (r != null) {
+            for (int i = 0; i < r.count; i++) {
+                visitor.visit(row, r.columns[i], (V) r.values[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 创建独立副本（值对象本身共享）
+     */
+    public SparseCellMap<V> copy() {
+        SparseCellMap<V> copy = new SparseCellMap<>();
+        for (int row = 0; row < rows.length(); row++) {
+            Row r = rows.get(row);
+            if (r != null) {
+                copy.rows.set(row, r.copy());
+            }
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * 清空所有值
+     */
+    public void clear() {
+        rows.clear();
+        size = 0;
+    }
+
+    /**
+     * 一行中有值的单元格，列号有序
+     */
+    private static final class Row {
+        int[] columns = new int[2];
+        Object[] values = new Object[2];
+        int count;
+
+        int find(int column) {
+            return Arrays.binarySearch(columns, 0, count, column);
+        }
+
+        Row copy() {
+            Row copy = new Row();
+            copy.columns = Arrays.copyOf(columns, Math.max(count, 2));
+            copy.values = Arrays.copyOf(values, Math.max(count, 2));
+            copy.count = count;
+            return copy;
+        }
+
+        void insert(int index, int column, Object value) {
+            if (count == columns.length) {
+                columns = Arrays.copyOf(columns, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            System.arraycopy(columns, index, columns, index + 1, count - index);
+            System.arraycopy(values, index, values, index + 1, count - index);
+            columns[index] = column;
+            values[index] = value;
+            count++;
+        }
+
+        void delete(int index) {
+            System.arraycopy(columns, index + 1, columns, index, count - index - 1);
+            System.arraycopy(values, index + 1, values, index, count - index - 1);
+            count--;
+            values[count] = null;
+        }
+
+        /**
+         * 列号不小于 from 的单元格列号加上 delta
+         */
+        void shiftColumns(int from, int delta) {
+            int i = find(from);
+            for (i = i >= 0 ? i : -i - 1; i < count; i++) {
+                columns[i] += delta;
+            }
+        }
+    }
+}
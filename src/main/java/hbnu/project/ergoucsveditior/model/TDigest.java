@@ -0,0 +1,263 @@
+package hbnu.project.ergoucsveditior.model;
+
+import java.util.Arrays;
+
+/**
+ * t-digest 分位数草图（合并式实现）
+ * 把数值聚成有限个质心（均值 + 权重），靠近两端的质心小、中间的质心大，
+ * 因此极端分位数更准确；内存只与压缩参数有关，与数值个数无关
+ *
+ * 新数值先放入缓冲区，缓冲区满时排序后与已有质心归并，按 k1 尺度函数
+ * k(q) = δ / 2π · asin(2q - 1) 贪心合并：每个质心覆盖的 k 跨度不超过 1
+ * 两个草图可以合并，用于按块并行计算
+ */
+public class TDigest {
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int centroids;
+    private double[] spareMeans;   // 重新聚合时写入的另一组数组，与 means/weights 交替使用
+    private double[] spareWeights;
+    private double[] bufferMeans;
+    private double[] bufferWeights;
+    private int buffered;
+    private boolean unitWeights = true; // 缓冲区中的权重是否都为 1（此时只需排序均值）
+    private double totalWeight; // 包括缓冲区
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param compression 压缩参数 δ，越大越准确，质心数约为 δ 的一到两倍
+     */
+    public TDigest(double compression) {
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression * 2) + 10;
+        means = new double[capacity];
+        weights = new double[capacity];
+        spareMeans = new double[capacity];
+        spareWeights = new double[capacity];
+        bufferMeans = new double[capacity * 5];
+        bufferWeights = new double[capacity * 5];
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    private void add(double value, double weight) {
+        if (buffered == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[buffered] = value;
+        bufferWeights[buffered] = weight;
+        if (weight != 1) {
+            unitWeights = false;
+        }
+        buffered++;
+        totalWeight += weight;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * 合并另一个草图
+     */
+    public void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        // 质心均值不是真实的最值，两端插值需要原始数据的最小值和最大值
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public double size() {
+        return totalWeight;
+    }
+
+    /**
+     * 估计第 q 分位数（0 ≤ q ≤ 1），没有数据时返回 NaN
+     */
+    public double quantile(double q) {
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return means[0];
+        }
+        double index = q * totalWeight;
+        // 第一个质心的左半部分：在最小值和质心均值之间插值
+        double firstHalf = weights[0] / 2;
+        if (index < firstHalf) {
+            return min + (means[0] - min) * index / firstHalf;
+        }
+        // 相邻质心中心之间线性插值
+        double cumulative = firstHalf; // 当前质心中心处的累计权重
+        for (int i = 0; i < centroids - 1; i++) {
+            double gap = (weights[i] + weights[i + 1]) / 2;
+            if (index < cumulative + gap) {
+                double t = (index - cumulative) / gap;
+                return means[i] + (means[i + 1] - means[i]) * t;
+            }
+            cumulative += gap;
+        }
+        // 最后一个质心的右半部分
+        double lastHalf = weights[centroids - 1] / 2;
+        double t = (index - cumulative) / lastHalf;
+        return means[centroids - 1] + (max - means[centroids - 1]) * Math.min(1, t);
+    }
+
+    /**
+     * 第 q 分位数的排名误差估计（占总数的比例）
+     * k1 尺度下，分位数 q 附近的质心最多覆盖 2π·√(q(1-q)) / δ 的排名范围，插值误差约为其一半
+     */
+    public double rankError(double q) {
+        return Math.PI * Math.sqrt(q * (1 - q)) / compression;
+    }
+
+    /**
+     * 把缓冲区排序后与已有质心（已按均值有序）归并，按尺度函数重新聚合
+     * 每生成一个质心只计算一次权重上限，逐个元素比较时不需要再求反三角函数
+     */
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        if (unitWeights) {
+            Arrays.sort(bufferMeans, 0, buffered);
+        } else {
+            sort(bufferMeans, bufferWeights, 0, buffered - 1);
+        }
+        double[] oldMeans = means;
+        double[] oldWeights = weights;
+        int oldCount = centroids;
+        means = spareMeans;
+        weights = spareWeights;
+        spareMeans = oldMeans;
+        spareWeights = oldWeights;
+
+        int out = 0;
+        int i = 0; // 已有质心的下标
+        int j = 0; // 缓冲区的下标
+        double currentMean = 0;
+        double currentWeight = 0;
+        double weightBefore = 0; // 当前质心之前的累计权重
+        double weightLimit = 0;  // 当前质心之前的累计权重加上它能达到的最大累计权重
+        while (i < oldCount || j < buffered) {
+            double mean;
+            double weight;
+            if (j >= buffered || (i < oldCount && oldMeans[i] <= bufferMeans[j])) {
+                mean = oldMeans[i];
+                weight = oldWeights[i++];
+            } else {
+                mean = bufferMeans[j];
+                weight = unitWeights ? 1 : bufferWeights[j];
+                j++;
+            }
+            if (currentWeight > 0 && weightBefore + currentWeight + weight <= weightLimit) {
+                currentWeight += weight;
+                currentMean += (mean - currentMean) * weight / currentWeight;
+                continue;
+            }
+            if (currentWeight > 0) {
+                out = emit(out, currentMean, currentWeight);
+                weightBefore += currentWeight;
+            }
+            currentMean = mean;
+            currentWeight = weight;
+            weightLimit = totalWeight * nextQuantileLimit(weightBefore / totalWeight);
+        }
+        centroids = emit(out, currentMean, currentWeight);
+        buffered = 0;
+        unitWeights = true;
+    }
+
+    /**
+     * 从分位数 q 开始的质心最多能延伸到的分位数：k(limit) = k(q) + 1
+     */
+    private double nextQuantileLimit(double q) {
+        double k = Math.asin(2 * Math.max(0, Math.min(1, q)) - 1) + 2 * Math.PI / compression;
+        return k >= Math.PI / 2 ? 1 : (Math.sin(k) + 1) / 2;
+    }
+
+    private int emit(int index, double mean, double weight) {
+        if (index == means.length) {
+            means = Arrays.copyOf(means, index * 2);
+            weights = Arrays.copyOf(weights, index * 2);
+            spareMeans = new double[index * 2];
+            spareWeights = new double[index * 2];
+        }
+        means[index] = mean;
+        weights[index] = weight;
+        return index + 1;
+    }
+
+    /**
+     * 按均值对两个平行数组排序（三数取中快速排序，小区间插入排序）
+     */
+    private static void sort(double[] keys, double[] values, int left, int right) {
+        while (right - left > 16) {
+            int middle = (left + right) >>> 1;
+            if (keys[middle] < keys[left]) {
+                swap(keys, values, middle, left);
+            }
+            if (keys[right] < keys[left]) {
+                swap(keys, values, right, left);
+            }
+            if (keys[right] < keys[middle]) {
+                swap(keys, values, right, middle);
+            }
+            double pivot = keys[middle];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // 先递归较短的一侧，控制栈深度
+            if (j - left < right - i) {
+                sort(keys, values, left, j);
+                left = i;
+            } else {
+                sort(keys, values, i, right);
+                right = j;
+            }
+        }
+        for (int i = left + 1; i <= right; i++) {
+            double key = keys[i];
+            double value = values[i];
+            int j = i - 1;
+            while (j >= left && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    private static void swap(double[] keys, double[] values, int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
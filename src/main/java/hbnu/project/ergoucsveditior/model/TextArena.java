@@ -0,0 +1,243 @@
+package hbnu.project.ergoucsveditior.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 文本存储区
+ * 把所有单元格文本顺序追加到共享的字节块中，单元格只保存一个 long 引用
+ * 纯 Latin-1 文本按单字节存储，其余文本按 UTF-16BE 双字节存储
+ *
+ * 引用格式（long）：
+ *   bit 63      - UTF-16 标志
+ *   bit 62..24  - 块内地址（高位为块序号，低 20 位为块内偏移）
+ *   bit 23..0   - 字节长度，等于 LONG_LENGTH 时真实长度写在数据前 4 个字节
+ * 引用值 0 表示空字符串，不占用任何存储
+ */
+public final class TextArena {
+    /** 空字符串引用 */
+    public static final long EMPTY = 0L;
+
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;           // 每块 1MB
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final long UTF16_FLAG = 1L << 63;
+    private static final int LENGTH_BITS = 24;
+    private static final int LONG_LENGTH = (1 << LENGTH_BITS) - 1;   // 长文本标记
+    private static final long ADDRESS_MASK = (1L << 39) - 1;
+
+    private byte[][] chunks;
+    private int chunkCount;
+    private int position;       // 当前块的写入位置
+    private long usedBytes;     // 已写入的字节总数
+    private long garbageBytes;  // 已被覆盖、不再被引用的字节数
+
+    public TextArena() {
+        this.chunks = new byte[4][];
+        this.chunkCount = 0;
+        this.position = CHUNK_SIZE; // 首次写入时分配新块
+    }
+
+    /**
+     * 存储文本并返回引用
+     */
+    public long store(String value) {
+        if (value == null || value.isEmpty()) {
+            return EMPTY;
+        }
+
+        int length = value.length();
+        boolean latin1 = isLatin1(value);
+        int byteLength = latin1 ? length : length * 2;
+        boolean longValue = byteLength >= LONG_LENGTH;
+        int required = longValue ? byteLength + 4 : byteLength;
+
+        byte[] chunk;
+        int chunkIndex;
+        int offset;
+        if (required > CHUNK_SIZE) {
+            // 超大文本独占一个块，块内偏移固定为 0
+            chunkIndex = addChunk(new byte[required]);
+            chunk = chunks[chunkIndex];
+            offset = 0;
+            position = CHUNK_SIZE; // 下一次写入开启新块
+        } else {
+            if (position + required > CHUNK_SIZE) {
+                addChunk(new byte[CHUNK_SIZE]);
+                position = 0;
+            }
+            chunkIndex = chunkCount - 1;
+            chunk = chunks[chunkIndex];
+            offset = position;
+            position += required;
+        }
+
+        int cursor = offset;
+        if (longValue) {
+            chunk[cursor++] = (byte) (byteLength >>> 24);
+            chunk[cursor++] = (byte) (byteLength >>> 16);
+            chunk[cursor++] = (byte) (byteLength >>> 8);
+            chunk[cursor++] = (byte) byteLength;
+        }
+        if (latin1) {
+            for (int i = 0; i < length; i++) {
+                chunk[cursor++] = (byte) value.charAt(i);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                chunk[cursor++] = (byte) (c >>> 8);
+                chunk[cursor++] = (byte) c;
+            }
+        }
+        usedBytes += required;
+
+        long address = ((long) chunkIndex << CHUNK_BITS) | offset;
+        long ref = (address << LENGTH_BITS) | (longValue ? LONG_LENGTH : byteLength);
+        return latin1 ? ref : ref | UTF16_FLAG;
+    }
+
+    /**
+     * 根据引用读取文本
+     */
+    public String load(long ref) {
+        if (ref == EMPTY) {
+            return "";
+        }
+        long address = (ref >>> LENGTH_BITS) & ADDRESS_MASK;
+        byte[] chunk = chunks[(int) (address >>> CHUNK_BITS)];
+        int offset = (int) (address & CHUNK_MASK);
+        int byteLength = (int) (ref & LONG_LENGTH);
+        if (byteLength == LONG_LENGTH) {
+            byteLength = readLongLength(chunk, offset);
+            offset += 4;
+        }
+        return (ref & UTF16_FLAG) != 0
+                ? new String(chunk, offset, byteLength, StandardCharsets.UTF_16BE)
+                : new String(chunk, offset, byteLength, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 引用对应文本的字符数（不解码）
+     */
+    public int length(long ref) {
+        int bytes = byteLength(ref);
+        return (ref & UTF16_FLAG) != 0 ? bytes / 2 : bytes;
+    }
+
+    /**
+     * 标记引用对应的存储已不再使用
+     */
+    public void release(long ref) {
+        if (ref != EMPTY) {
+            int bytes = byteLength(ref);
+            garbageBytes += (ref & LONG_LENGTH) == LONG_LENGTH ? bytes + 4 : bytes;
+        }
+    }
+
+    /**
+     * 是否值得压缩（垃圾字节超过一半且达到一定规模）
+     */
+    public boolean needsCompaction() {
+        return garbageBytes > CHUNK_SIZE && garbageBytes * 2 > usedBytes;
+    }
+
+    /**
+     * 接管另一个文本区的全部块（不复制文本），返回其引用需要增加的块序号偏移，配合 relocate 使用
+     * 两边未写满的最后一块会被截短，之后的写入从新块开始；被接管的文本区不能再使用
+     */
+    public int absorb(TextArena other) {
+        trimLastChunk();
+        other.trimLastChunk();
+        int chunkOffset = chunkCount;
+        for (int i = 0; i < other.chunkCount; i++) {
+            addChunk(other.chunks[i]);
+        }
+        usedBytes += other.usedBytes;
+        garbageBytes += other.garbageBytes;
+        return chunkOffset;
+    }
+
+    /**
+     * 共享已写入文本块的快照（不复制文本），快照中的引用与当前文本区相同
+     * 已写入的字节不会再被修改：新的写入只追加在写入位置之后或新块中，压缩会换用新的文本区，
+     * 所以快照可以交给其他线程读取；向快照写入时从新块开始，也不会影响当前文本区
+     */
+    public TextArena snapshot() {
+        TextArena snapshot = new TextArena();
+        snapshot.chunks = Arrays.copyOf(chunks, Math.max(chunkCount, 4));
+        snapshot.chunkCount = chunkCount;
+        snapshot.usedBytes = usedBytes;
+        snapshot.garbageBytes = garbageBytes;
+        return snapshot;
+    }
+
+    /**
+     * 把被接管文本区中的引用转换为当前文本区中的引用
+     */
+    public static long relocate(long ref, int chunkOffset) {
+        return ref == EMPTY ? EMPTY : ref + ((long) chunkOffset << (CHUNK_BITS + LENGTH_BITS));
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getGarbageBytes() {
+        return garbageBytes;
+    }
+
+    /**
+     * 已分配的字节数（包括未写满的块）
+     */
+    public long getAllocatedBytes() {
+        long total = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            total += chunks[i].length;
+        }
+        return total;
+    }
+
+    private int byteLength(long ref) {
+        if (ref == EMPTY) {
+            return 0;
+        }
+        int byteLength = (int) (ref & LONG_LENGTH);
+        if (byteLength == LONG_LENGTH) {
+            long address = (ref >>> LENGTH_BITS) & ADDRESS_MASK;
+            byteLength = readLongLength(chunks[(int) (address >>> CHUNK_BITS)], (int) (address & CHUNK_MASK));
+        }
+        return byteLength;
+    }
+
+    private void trimLastChunk() {
+        if (chunkCount > 0 && position < CHUNK_SIZE && chunks[chunkCount - 1].length == CHUNK_SIZE) {
+            chunks[chunkCount - 1] = Arrays.copyOf(chunks[chunkCount - 1], position);
+        }
+        position = CHUNK_SIZE;
+    }
+
+    private int readLongLength(byte[] chunk, int offset) {
+        return ((chunk[offset] & 0xFF) << 24)
+                | ((chunk[offset + 1] & 0xFF) << 16)
+                | ((chunk[offset + 2] & 0xFF) << 8)
+                | (chunk[offset + 3] & 0xFF);
+    }
+
+    private int addChunk(byte[] chunk) {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        chunks[chunkCount] = chunk;
+        return chunkCount++;
+    }
+
+    private static boolean isLatin1(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
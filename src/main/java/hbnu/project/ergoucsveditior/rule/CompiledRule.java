@@ -0,0 +1,248 @@
+package hbnu.project.ergoucsveditior.rule;
+
+import java.util.BitSet;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 编译后的自动标记规则
+ * 由 AutoMarkRule 一次性生成的不可变判断条件：数值阈值预先解析，正则表达式预先编译，
+ * 应用范围转换为列位图，逐个单元格判断时不再做任何解析或编译
+ */
+public final class CompiledRule {
+    private static final Pattern EMAIL = Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
+    // 国内11位手机号
+    private static final Pattern CHINA_PHONE = Pattern.compile("^1[3-9]\\d{9}$");
+    // 国际格式 +国家码+号码
+    private static final Pattern INTERNATIONAL_PHONE = Pattern.compile("^\\+\\d{1,3}\\d{10,11}$");
+    private static final Pattern URL = Pattern.compile("^(http|https)://[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}(/.*)?$");
+    private static final Pattern ID_CARD = Pattern.compile("^\\d{17}[0-9Xx]$");
+    private static final int[] ID_CARD_WEIGHTS = {7, 9, 10, 5, 8, 4, 2, 1, 6, 3, 7, 9, 10, 5, 8, 4, 2};
+    private static final char[] ID_CARD_CHECK_CODES = {'1', '0', 'X', '9', '8', '7', '6', '5', '4', '3', '2'};
+
+    private final AutoMarkRule source;
+    private final String color;
+    private final BitSet columns; // null 表示所有列
+    private final Predicate<String> predicate;
+
+    private CompiledRule(AutoMarkRule source, BitSet columns, Predicate<String> predicate) {
+        this.source = source;
+        this.color = source.getColor();
+        this.columns = columns;
+        this.predicate = predicate;
+    }
+
+    /**
+     * 编译规则
+     */
+    public static CompiledRule compile(AutoMarkRule rule) {
+        return new CompiledRule(rule, compileScope(rule), compilePredicate(rule));
+    }
+
+    /**
+     * 列是否在规则应用范围内
+     */
+    public boolean appliesTo(int column) {
+        return columns == null || columns.get(column);
+    }
+
+    /**
+     * 值是否匹配规则
+     */
+    public boolean matches(String value) {
+        return predicate.test(value);
+    }
+
+    public AutoMarkRule getSource() {
+        return source;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    private static BitSet compileScope(AutoMarkRule rule) {
+        if (rule.getScope() != AutoMarkRule.ApplyScope.SPECIFIED_COLUMNS) {
+            // 选中列模式需要从外部传入选中列，这里与所有列相同
+            return null;
+        }
+        BitSet columns = new BitSet();
+        if (rule.getSpecifiedColumns() != null) {
+            for (int column : rule.getSpecifiedColumns()) {
+                if (column >= 0) {
+                    columns.set(column);
+                }
+            }
+        }
+        return columns;
+    }
+
+    private static Predicate<String> compilePredicate(AutoMarkRule rule) {
+        String parameter = rule.getParameter();
+        switch (rule.getType()) {
+            case NUMBER_GREATER: {
+                double threshold = parseThreshold(parameter);
+                return Double.isNaN(threshold) ? value -> false : value -> parseNumber(value) > threshold;
+            }
+            case NUMBER_LESS: {
+                double threshold = parseThreshold(parameter);
+                return Double.isNaN(threshold) ? value -> false : value -> parseNumber(value) < threshold;
+            }
+            case NUMBER_EQUAL: {
+                double threshold = parseThreshold(parameter);
+                return Double.isNaN(threshold) ? value -> false : value -> Math.abs(parseNumber(value) - threshold) < 0.0001;
+            }
+            case NUMBER_PRIME:
+                return CompiledRule::isPrime;
+            case STRING_CONTAINS:
+                return parameter == null ? value -> false : value -> value != null && value.contains(parameter);
+            case STRING_REGEX: {
+                if (parameter == null) {
+                    return value -> false;
+                }
+                Pattern pattern;
+                try {
+                    pattern = Pattern.compile(parameter);
+                } catch (PatternSyntaxException e) {
+                    return value -> false;
+                }
+                return value -> value != null && pattern.matcher(value).matches();
+            }
+            case FORMAT_EMAIL:
+                return value -> !isEmail(value);
+            case FORMAT_PHONE:
+                return value -> !isPhone(value);
+            case FORMAT_URL:
+                return value -> !isURL(value);
+            case FORMAT_ID_CARD:
+                return value -> !isIDCard(value);
+            case EMPTY_NULL:
+                return value -> value == null || value.isEmpty();
+            case EMPTY_WHITESPACE:
+                return value -> value != null && !value.isEmpty() && value.trim().isEmpty();
+            case EMPTY_ZERO_LENGTH:
+                return value -> value != null && value.length() == 0;
+            default:
+                return value -> false;
+        }
+    }
+
+    /**
+     * 解析阈值，无法解析时返回 NaN（与 NaN 比较恒为假，和原来解析失败返回 false 一致）
+     */
+    private static double parseThreshold(String parameter) {
+        if (parameter == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(parameter);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * 解析单元格数值，无法解析时返回 NaN
+     * 先检查首个非空白字符，明显不是数字的文本不再抛出异常
+     */
+    private static double parseNumber(String value) {
+        if (value == null || !mayBeNumber(value)) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static boolean mayBeNumber(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c > ' ') {
+                return (c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.' || c == 'N' || c == 'I';
+            }
+        }
+        return false;
+    }
+
+    // ==================== 格式校验 ====================
+
+    /**
+     * 检查是否为质数
+     */
+    public static boolean isPrime(String value) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        char first = value.charAt(0);
+        if (!(first >= '0' && first <= '9') && first != '+' && first != '-') {
+            return false;
+        }
+        long num;
+        try {
+            num = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (num <= 1) {
+            return false;
+        }
+        if (num <= 3) {
+            return true;
+        }
+        if (num % 2 == 0 || num % 3 == 0) {
+            return false;
+        }
+        for (long i = 5; i * i <= num; i += 6) {
+            if (num % i == 0 || num % (i + 2) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 检查是否为有效邮箱
+     */
+    public static boolean isEmail(String value) {
+        return value != null && !value.isEmpty() && EMAIL.matcher(value).matches();
+    }
+
+    /**
+     * 检查是否为有效手机号
+     */
+    public static boolean isPhone(String value) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        return CHINA_PHONE.matcher(value).matches() || INTERNATIONAL_PHONE.matcher(value).matches();
+    }
+
+    /**
+     * 检查是否为有效URL
+     */
+    public static boolean isURL(String value) {
+        return value != null && !value.isEmpty() && URL.matcher(value).matches();
+    }
+
+    /**
+     * 检查是否为有效身份证号
+     */
+    public static boolean isIDCard(String value) {
+        if (value == null || value.length() != 18) {
+            return false;
+        }
+        // 简单验证：前17位是数字，最后一位是数字或X
+        if (!ID_CARD.matcher(value).matches()) {
+            return false;
+        }
+        // 验证校验码
+        int sum = 0;
+        for (int i = 0; i < 17; i++) {
+            sum += (value.charAt(i) - '0') * ID_CARD_WEIGHTS[i];
+        }
+        return Character.toUpperCase(value.charAt(17)) == ID_CARD_CHECK_CODES[sum % 11];
+    }
+}
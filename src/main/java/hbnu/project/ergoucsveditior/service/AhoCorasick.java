@@ -0,0 +1,216 @@
+package hbnu.project.ergoucsveditior.service;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick 多模式匹配自动机
+ * 由一组搜索词一次性构建，之后每段文本只需从头到尾扫描一遍即可找出所有搜索词的所有出现位置，
+ * 耗时与文本长度和匹配数有关，与搜索词的数量无关
+ *
+ * 忽略大小写时，搜索词和文本的每个字符都先做大小写折叠（与 equalsIgnoreCase 的比较方式一致），
+ * 折叠不改变长度，匹配位置可以直接对应原文
+ * 构建完成后不可变，可以在多个线程中同时使用
+ */
+public final class AhoCorasick {
+
+    /**
+     * 匹配回调
+     */
+    @FunctionalInterface
+    public interface MatchVisitor {
+        /**
+         * @param term 搜索词的序号
+         * @param start 匹配起点
+         * @param end 匹配终点（不含）
+         */
+        void visit(int term, int start, int end);
+    }
+
+    private static final int[] NO_TERMS = new int[0];
+
+    private final boolean ignoreCase;
+    private final int[] termLengths;
+    // 每个状态的转移：按字符排序，二分查找
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    private final int[] outputLink; // 沿失败链最近的有输出的状态，0 表示没有
+    private final int[][] outputs;  // 在该状态结束的搜索词
+
+    private AhoCorasick(boolean ignoreCase, int[] termLengths, char[][] labels, int[][] targets,
+                        int[] fail, int[] outputLink, int[][] outputs) {
+        this.ignoreCase = ignoreCase;
+        this.termLengths = termLengths;
+        this.labels = labels;
+        this.targets = targets;
+        this.fail = fail;
+        this.outputLink = outputLink;
+        this.outputs = outputs;
+    }
+
+    /**
+     * 构建自动机
+     * @param terms 搜索词，空字符串会被忽略
+     * @param ignoreCase 是否忽略大小写
+     */
+    public static AhoCorasick build(List<String> terms, boolean ignoreCase) {
+        Builder builder = new Builder();
+        int[] termLengths = new int[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            String term = terms.get(t);
+            termLengths[t] = term.length();
+            if (term.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < term.length(); i++) {
+                state = builder.child(state, ignoreCase ? fold(term.charAt(i)) : term.charAt(i));
+            }
+            builder.addOutput(state, t);
+        }
+        return builder.finish(ignoreCase, termLengths);
+    }
+
+    /**
+     * 搜索词数量
+     */
+    public int getTermCount() {
+        return termLengths.length;
+    }
+
+    /**
+     * 扫描文本，按匹配终点的顺序回调每一处匹配
+     * @return 是否有任何匹配
+     */
+    public boolean match(String text, MatchVisitor visitor) {
+        boolean found = false;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = ignoreCase ? fold(text.charAt(i)) : text.charAt(i);
+            int next;
+            while ((next = transition(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next < 0 ? 0 : next;
+            for (int s = outputs[state].length > 0 ? state : outputLink[state]; s != 0; s = outputLink[s]) {
+                for (int term : outputs[s]) {
+                    visitor.visit(term, i + 1 - termLengths[term], i + 1);
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    private int transition(int state, char c) {
+        int i = Arrays.binarySearch(labels[state], c);
+        return i >= 0 ? targets[state][i] : -1;
+    }
+
+    /**
+     * 大小写折叠，与 equalsIgnoreCase 的比较方式一致
+     */
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * 构建过程中可变的字典树
+     */
+    private static final class Builder {
+        private char[][] labels = new char[16][];
+        private int[][] targets = new int[16][];
+        private int[][] outputs = new int[16][];
+        private int[] sizes = new int[16]; // 每个状态的转移数
+        private int states = 1;
+
+        Builder() {
+            init(0);
+        }
+
+        private void init(int state) {
+            labels[state] = new char[0];
+            targets[state] = new int[0];
+            outputs[state] = NO_TERMS;
+        }
+
+        int child(int state, char c) {
+            int i = Arrays.binarySearch(labels[state], 0, sizes[state], c);
+            if (i >= 0) {
+                return targets[state][i];
+            }
+            if (states == labels.length) {
+                int capacity = states * 2;
+                labels = Arrays.copyOf(labels, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                outputs = Arrays.copyOf(outputs, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+            }
+            int created = states++;
+            init(created);
+
+            int insert = -i - 1;
+            int size = sizes[state];
+            if (size == labels[state].length) {
+                labels[state] = Arrays.copyOf(labels[state], Math.max(2, size * 2));
+                targets[state] = Arrays.copyOf(targets[state], Math.max(2, size * 2));
+            }
+            System.arraycopy(labels[state], insert, labels[state], insert + 1, size - insert);
+            System.arraycopy(targets[state], insert, targets[state], insert + 1, size - insert);
+            labels[state][insert] = c;
+            targets[state][insert] = created;
+            sizes[state]++;
+            return created;
+        }
+
+        void addOutput(int state, int term) {
+            int[] terms = outputs[state];
+            terms = Arrays.copyOf(terms, terms.length + 1);
+            terms[terms.length - 1] = term;
+            outputs[state] = terms;
+        }
+
+        /**
+         * 按广度优先顺序计算失败链接和输出链接
+         */
+        AhoCorasick finish(boolean ignoreCase, int[] termLengths) {
+            char[][] finalLabels = new char[states][];
+            int[][] finalTargets = new int[states][];
+            for (int s = 0; s < states; s++) {
+                finalLabels[s] = Arrays.copyOf(labels[s], sizes[s]);
+                finalTargets[s] = Arrays.copyOf(targets[s], sizes[s]);
+            }
+            int[][] finalOutputs = Arrays.copyOf(outputs, states);
+            int[] fail = new int[states];
+            int[] outputLink = new int[states];
+
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int target : finalTargets[0]) {
+                queue.add(target);
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                for (int i = 0; i < finalLabels[state].length; i++) {
+                    char c = finalLabels[state][i];
+                    int child = finalTargets[state][i];
+                    int f = fail[state];
+                    int next;
+                    while ((next = find(finalLabels, finalTargets, f, c)) < 0 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[child] = next >= 0 && next != child ? next : 0;
+                    outputLink[child] = finalOutputs[fail[child]].length > 0 ? fail[child] : outputLink[fail[child]];
+                    queue.add(child);
+                }
+            }
+            return new AhoCorasick(ignoreCase, termLengths, finalLabels, finalTargets, fail, outputLink, finalOutputs);
+        }
+
+        private static int find(char[][] labels, int[][] targets, int state, char c) {
+            int i = Arrays.binarySearch(labels[state], c);
+            return i >= 0 ? targets[state][i] : -1;
+        }
+    }
+}
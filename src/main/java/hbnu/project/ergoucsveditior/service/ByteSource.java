@@ -0,0 +1,39 @@
+package hbnu.project.ergoucsveditior.service;
+
+import java.io.File;
+
+/**
+ * 只读的文件字节源，CSV 解析器通过它按 long 地址读取字节
+ *   MappedFile  - 内存映射，线程安全，用于按需解码的内存映射打开方式
+ *   ChannelFile - 通过 FileChannel 按块读入堆内缓冲区，用于把数据全部读入内存的加载方式，读完即可关闭
+ */
+abstract class ByteSource {
+
+    abstract File getFile();
+
+    abstract long size();
+
+    abstract byte get(long position);
+
+    /**
+     * 批量读取到数组中
+     */
+    abstract void get(long position, byte[] target, int offset, int length);
+
+    /**
+     * 供另一个线程使用的读取器，线程安全的实现直接返回自身
+     */
+    ByteSource reader() {
+        return this;
+    }
+
+    /**
+     * 数据起始位置（跳过 UTF-8 BOM）
+     */
+    long dataStart() {
+        if (size() >= 3 && get(0) == (byte) 0xEF && get(1) == (byte) 0xBB && get(2) == (byte) 0xBF) {
+            return 3;
+        }
+        return 0;
+    }
+}
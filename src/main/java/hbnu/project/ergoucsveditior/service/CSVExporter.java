@@ -0,0 +1,51 @@
+package hbnu.project.ergoucsveditior.service;
+
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CSV导出
+ * 转义模式和换行符与保存文件时相同（取自 CSVService）
+ */
+public class CSVExporter implements Exporter {
+    private final CSVService csvService;
+
+    public CSVExporter(CSVService csvService) {
+        this.csvService = csvService;
+    }
+
+    @Override
+    public String getFormat() {
+        return "CSV";
+    }
+
+    @Override
+    public String getExtension() {
+        return "csv";
+    }
+
+    @Override
+    public String getDescription() {
+        return "CSV文件";
+    }
+
+    @Override
+    public RowWriter open(Context context, OutputStream output) throws Exception {
+        CSVPrinter printer = new CSVPrinter(new OutputStreamWriter(output, StandardCharsets.UTF_8),
+            csvService.createWriteFormat());
+        return new RowWriter() {
+            @Override
+            public void writeRow(int row, String[] values) throws Exception {
+                printer.printRecord((Object[]) values);
+            }
+
+            @Override
+            public void finish() throws Exception {
+                printer.flush();
+            }
+        };
+    }
+}
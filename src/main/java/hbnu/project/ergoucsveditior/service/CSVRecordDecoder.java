@@ -0,0 +1,353 @@
+package hbnu.project.ergoucsveditior.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 字节级 CSV 记录解析器
+ * 直接在 UTF-8 字节上查找记录边界并解码字段，规则与 getCSVFormat 生成的格式一致：
+ *   重复引号 - RFC4180，字段内 "" 表示一个引号
+ *   反斜杠转义 - 在此基础上 \ 转义下一个字符（\n \r \t \b \f 以及分隔符、引号、反斜杠）
+ * 分隔符、引号、换行都是 ASCII，不会出现在 UTF-8 多字节字符内部，因此可以按字节扫描
+ * 非线程安全，每个线程使用自己的实例
+ */
+final class CSVRecordDecoder {
+    private static final byte QUOTE = '"';
+    private static final byte ESCAPE = '\\';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    // 解析状态；前 BOUNDARY_STATES 个是并行切分点上可能出现的状态
+    static final int RECORD_START = 0;
+    static final int FIELD_START = 1;
+    static final int UNQUOTED = 2;
+    static final int QUOTED = 3;
+    static final int QUOTE_IN_QUOTED = 4;
+    static final int BOUNDARY_STATES = 5;
+    private static final int ESCAPED = 5;            // 反斜杠之后（引号外）
+    private static final int ESCAPED_IN_QUOTED = 6;  // 反斜杠之后（引号内）
+    private static final int AFTER_CR = 7;           // CR 之后，可能紧跟 LF
+
+    private final byte delimiter;
+    private final boolean backslashEscape;
+
+    // 最近一次 skipRecord 的结果
+    private long contentEnd;
+    private int fieldCount;
+
+    // 字段解码缓冲区
+    private byte[] buffer = new byte[256];
+    private int length;
+
+    CSVRecordDecoder(char delimiter, boolean backslashEscape) {
+        if (delimiter > 0x7F) {
+            throw new IllegalArgumentException("仅支持 ASCII 分隔符: " + delimiter);
+        }
+        this.delimiter = (byte) delimiter;
+        this.backslashEscape = backslashEscape;
+    }
+
+    /**
+     * 从记录起始位置扫描一条记录
+     * @return 下一条记录的起始位置；记录内容结束位置和字段数可通过 getContentEnd/getFieldCount 获取
+     */
+    long skipRecord(ByteSource file, long position) {
+        return skipRecord(file, position, file.size());
+    }
+
+    /**
+     * 在 [position, limit) 范围内扫描一条记录
+     */
+    long skipRecord(ByteSource file, long position, long limit) {
+        int state = FIELD_START;
+        int fields = 1;
+        long pos = position;
+        while (pos < limit) {
+            byte b = file.get(pos);
+            if (backslashEscape && b == ESCAPE && state != QUOTE_IN_QUOTED) {
+                // 跳过被转义的字符
+                pos += 2;
+                if (state == FIELD_START) {
+                    state = UNQUOTED;
+                }
+                continue;
+            }
+            switch (state) {
+                case QUOTED:
+                    if (b == QUOTE) {
+                        state = QUOTE_IN_QUOTED;
+                    }
+                    pos++;
+                    continue;
+                case QUOTE_IN_QUOTED:
+                    if (b == QUOTE) {
+                        state = QUOTED;
+                        pos++;
+                        continue;
+                    }
+                    break;
+                case FIELD_START:
+                    if (b == QUOTE) {
+                        state = QUOTED;
+                        pos++;
+                        continue;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (b == delimiter) {
+                fields++;
+                state = FIELD_START;
+            } else if (b == LF) {
+                return finishRecord(pos, pos + 1, fields);
+            } else if (b == CR) {
+                long next = pos + 1 < limit && file.get(pos + 1) == LF ? pos + 2 : pos + 1;
+                return finishRecord(pos, next, fields);
+            } else {
+                state = UNQUOTED;
+            }
+            pos++;
+        }
+        return finishRecord(Math.min(pos, limit), Math.min(pos, limit), fields);
+    }
+
+    /**
+     * 计算 [from, to) 范围在各个起始状态下的结束状态
+     * 并行切分时每块先算出这张映射，之后从文件开头顺序串联即可得到每个切分点的真实状态，
+     * 不需要任何线程顺序扫描整个文件
+     * 调用方需保证 from 前一个字节不是反斜杠或 CR，这样起始状态只可能是前 BOUNDARY_STATES 种
+     *
+     * @return 下标为起始状态，值为结束状态
+     */
+    int[] scanTransitions(ByteSource file, long from, long to) {
+        int[] lanes = new int[BOUNDARY_STATES];
+        int[] laneOf = new int[BOUNDARY_STATES];
+        for (int i = 0; i < BOUNDARY_STATES; i++) {
+            lanes[i] = i;
+            laneOf[i] = i;
+        }
+        int laneCount = BOUNDARY_STATES;
+        byte[] block = new byte[64 * 1024];
+        long pos = from;
+        while (pos < to) {
+            int n = (int) Math.min(block.length, to - pos);
+            file.get(pos, block, 0, n);
+            for (int i = 0; i < n; i++) {
+                byte b = block[i];
+                for (int lane = 0; lane < laneCount; lane++) {
+                    lanes[lane] = step(lanes[lane], b);
+                }
+            }
+            pos += n;
+            // 状态相同的通道之后的走向也相同，合并以减少计算
+            if (laneCount > 1) {
+                laneCount = mergeLanes(lanes, laneOf, laneCount);
+            }
+        }
+        int[] transitions = new int[BOUNDARY_STATES];
+        for (int i = 0; i < BOUNDARY_STATES; i++) {
+            transitions[i] = lanes[laneOf[i]];
+        }
+        return transitions;
+    }
+
+    /**
+     * 从给定状态出发查找第一条记录的起点
+     * @return 记录起点；在 limit 之前没有新记录开始时返回 -1
+     */
+    long findRecordStart(ByteSource file, long from, long limit, int state) {
+        long pos = from;
+        while (pos < limit) {
+            if (state == RECORD_START) {
+                return pos;
+            }
+            byte b = file.get(pos);
+            if (state == AFTER_CR) {
+                // CRLF 作为一个换行符，单独的 CR 后面直接是下一条记录
+                if (b == LF) {
+                    pos++;
+                }
+                state = RECORD_START;
+                continue;
+            }
+            state = step(state, b);
+            pos++;
+        }
+        return -1;
+    }
+
+    long getContentEnd() {
+        return contentEnd;
+    }
+
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * 解码 [start, end) 范围内的一条记录（不含换行符）
+     */
+    String[] decode(ByteSource file, long start, long end) {
+        List<String> values = new ArrayList<>();
+        long pos = start;
+        while (true) {
+            length = 0;
+            if (pos < end && file.get(pos) == QUOTE) {
+                pos++;
+                // 引号包围的字段
+                while (pos < end) {
+                    byte b = file.get(pos);
+                    if (backslashEscape && b == ESCAPE && pos + 1 < end) {
+                        appendEscaped(file.get(pos + 1));
+                        pos += 2;
+                    } else if (b == QUOTE) {
+                        if (pos + 1 < end && file.get(pos + 1) == QUOTE) {
+                            append(QUOTE);
+                            pos += 2;
+                        } else {
+                            pos++;
+                            break;
+                        }
+                    } else {
+                        append(b);
+                        pos++;
+                    }
+                }
+                // 结束引号与分隔符之间的内容按原样保留
+                while (pos < end && file.get(pos) != delimiter) {
+                    append(file.get(pos++));
+                }
+            } else {
+                while (pos < end) {
+                    byte b = file.get(pos);
+                    if (b == delimiter) {
+                        break;
+                    }
+                    if (backslashEscape && b == ESCAPE && pos + 1 < end) {
+                        appendEscaped(file.get(pos + 1));
+                        pos += 2;
+                    } else {
+                        append(b);
+                        pos++;
+                    }
+                }
+            }
+            values.add(new String(buffer, 0, length, StandardCharsets.UTF_8));
+            if (pos < end && file.get(pos) == delimiter) {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return values.toArray(new String[0]);
+    }
+
+    /**
+     * 单字节状态转移，规则与 skipRecord 一致
+     */
+    private int step(int state, byte b) {
+        switch (state) {
+            case ESCAPED:
+                return UNQUOTED;
+            case ESCAPED_IN_QUOTED:
+                return QUOTED;
+            case AFTER_CR:
+                if (b == LF) {
+                    return RECORD_START;
+                }
+                state = RECORD_START;
+                break;
+            default:
+                break;
+        }
+        if (backslashEscape && b == ESCAPE && state != QUOTE_IN_QUOTED) {
+            return state == QUOTED ? ESCAPED_IN_QUOTED : ESCAPED;
+        }
+        switch (state) {
+            case QUOTED:
+                return b == QUOTE ? QUOTE_IN_QUOTED : QUOTED;
+            case QUOTE_IN_QUOTED:
+                if (b == QUOTE) {
+                    return QUOTED;
+                }
+                break;
+            case RECORD_START:
+            case FIELD_START:
+                if (b == QUOTE) {
+                    return QUOTED;
+                }
+                break;
+            default:
+                break;
+        }
+        if (b == delimiter) {
+            return FIELD_START;
+        } else if (b == LF) {
+            return RECORD_START;
+        } else if (b == CR) {
+            return AFTER_CR;
+        }
+        return UNQUOTED;
+    }
+
+    private static int mergeLanes(int[] lanes, int[] laneOf, int laneCount) {
+        int[] remap = new int[laneCount];
+        int count = 0;
+        for (int lane = 0; lane < laneCount; lane++) {
+            int target = -1;
+            for (int k = 0; k < count; k++) {
+                if (lanes[k] == lanes[lane]) {
+                    target = k;
+                    break;
+                }
+            }
+            if (target < 0) {
+                lanes[count] = lanes[lane];
+                target = count++;
+            }
+            remap[lane] = target;
+        }
+        for (int i = 0; i < laneOf.length; i++) {
+            laneOf[i] = remap[laneOf[i]];
+        }
+        return count;
+    }
+
+    private long finishRecord(long end, long next, int fields) {
+        this.contentEnd = end;
+        this.fieldCount = fields;
+        return next;
+    }
+
+    /**
+     * 与 Commons CSV 的 Lexer.readEscape 保持一致
+     */
+    private void appendEscaped(byte b) {
+        switch (b) {
+            case 'r' -> append(CR);
+            case 'n' -> append(LF);
+            case 't' -> append((byte) '\t');
+            case 'b' -> append((byte) '\b');
+            case 'f' -> append((byte) '\f');
+            case CR, LF, '\t', '\b', '\f', QUOTE, ESCAPE -> append(b);
+            default -> {
+                if (b == delimiter) {
+                    append(b);
+                } else {
+                    append(ESCAPE);
+                    append(b);
+                }
+            }
+        }
+    }
+
+    private void append(byte b) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, length * 2);
+        }
+        buffer[length++] = b;
+    }
+}
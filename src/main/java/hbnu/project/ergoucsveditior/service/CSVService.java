@@ -1,18 +1,20 @@
 package hbnu.project.ergoucsveditior.service;
 
-import hbnu.project.ergoucsveditior.model.CSVCell;
 import hbnu.project.ergoucsveditior.model.CSVData;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import hbnu.project.ergoucsveditior.model.ColumnarCellStore;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * CSV文件服务
@@ -21,10 +23,27 @@ import java.util.List;
  */
 public class CSVService {
     
+    private static final long PARALLEL_LOAD_THRESHOLD = 16L << 20; // 超过16MB的文件使用并行加载
+    private static final int DELIMITER_SAMPLE_BYTES = 64 * 1024;
+    private static final int SAVE_BUFFER_SIZE = 1 << 20;  // 保存时的输出缓冲区大小
+    private static final int SAVE_PROGRESS_ROWS = 4096;   // 每写这么多行报告一次保存进度
+    
     private String lineEnding = "\n"; // 默认使用LF
     private boolean autoDetectDelimiter = true; // 自动检测分隔符
     private String escapeMode = "重复引号"; // 转义模式：重复引号 或 反斜杠转义
     
+    /**
+     * 保存进度回调（在保存线程中调用）
+     */
+    public interface SaveProgressListener {
+        /**
+         * @param rowsDone 已写入的行数
+         * @param totalRows 总行数
+         * @param bytesWritten 已写入文件的字节数
+         */
+        void onProgress(int rowsDone, int totalRows, long bytesWritten);
+    }
+    
     /**
      * 设置换行符类型
      */
@@ -51,6 +70,14 @@ public class CSVService {
      * 根据文件扩展名或分析文件内容来确定分隔符
      */
     private char detectDelimiter(File file) throws IOException {
+        return detectDelimiter(file, null);
+    }
+    
+    /**
+     * 检测文件的分隔符
+     * @param source 已打开的文件，不为空时直接从中取样，不再重新打开文件
+     */
+    private char detectDelimiter(File file, ByteSource source) throws IOException {
         String fileName = file.getName().toLowerCase();
         
         // 根据文件扩展名判断
@@ -60,7 +87,7 @@ public class CSVService {
             return '|'; // 管道符分隔
         } else if (fileName.endsWith(".csv")) {
             // 对于CSV文件，读取前几行分析
-            return analyzeDelimiter(file);
+            return analyzeDelimiter(source != null ? openSample(source) : new FileInputStream(file));
         }
         
         // 默认返回逗号
@@ -71,12 +98,12 @@ public class CSVService {
      * 分析文件内容确定分隔符
      * 读取前几行，统计不同分隔符出现的频率
      */
-    private char analyzeDelimiter(File file) throws IOException {
+    private char analyzeDelimiter(InputStream input) throws IOException {
         char[] possibleDelimiters = {',', '\t', ';', '|'};
         int[] counts = new int[possibleDelimiters.length];
         
         try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                new InputStreamReader(input, StandardCharsets.UTF_8))) {
             
             // 读取前5行进行分析
             int linesToAnalyze = 5;
@@ -104,6 +131,15 @@ public class CSVService {
         return possibleDelimiters[maxIndex];
     }
     
+    /**
+     * 取文件开头的一段作为分隔符分析样本
+     */
+    private static InputStream openSample(ByteSource source) {
+        byte[] sample = new byte[(int) Math.min(source.size(), DELIMITER_SAMPLE_BYTES)];
+        source.get(0, sample, 0, sample.length);
+        return new ByteArrayInputStream(sample);
+    }
+    
     /**
      * 根据转义模式获取CSV格式
      */
@@ -129,14 +165,19 @@ public class CSVService {
      * 使用 Apache Commons CSV 进行安全的 CSV 解析
      * 自动检测并处理 LF/CRLF 换行符
      * 支持自动检测分隔符和自定义转义模式
+     * 大文件在多核机器上改用并行分块解析
      * 
      * @param file 文件对象
      * @return CSV数据对象
      * @throws IOException 读取文件异常
      */
     public CSVData loadFromFile(File file) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        if (file.length() >= PARALLEL_LOAD_THRESHOLD && pool.getParallelism() > 1) {
+            return loadParallel(file, pool);
+        }
+        
         CSVData csvData = new CSVData();
-        ObservableList<ObservableList<CSVCell>> data = FXCollections.observableArrayList();
         
         // 检测分隔符
         char delimiter = autoDetectDelimiter ? detectDelimiter(file) : ',';
@@ -149,46 +190,83 @@ public class CSVService {
                 new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
              CSVParser csvParser = format.parse(reader)) {
             
-            int maxColumns = 0;
-            
             // 使用 Apache Commons CSV 解析每一行
+            // 直接写入列式存储，列数不足的行由存储自动以空值填充
             for (CSVRecord csvRecord : csvParser) {
-                ObservableList<CSVCell> row = FXCollections.observableArrayList();
-                
-                // 遍历当前行的所有列
-                for (int i = 0; i < csvRecord.size(); i++) {
-                    String value = csvRecord.get(i);
-                    // 保留单元格内的换行符
-                    row.add(new CSVCell(value != null ? value : ""));
-                }
-                
-                data.add(row);
-                maxColumns = Math.max(maxColumns, row.size());
+                // 保留单元格内的换行符
+                csvData.appendRow(csvRecord.values());
             }
-            
-            // 确保所有行的列数相同（填充空单元格）
-            for (ObservableList<CSVCell> row : data) {
-                while (row.size() < maxColumns) {
-                    row.add(new CSVCell(""));
-                }
-            }
-            
-            csvData.setData(data);
         }
         
         return csvData;
     }
     
     /**
-     * 保存CSV数据到文件
-     * 使用 Apache Commons CSV 进行安全的 CSV 生成
-     * 使用设置的换行符类型 (LF/CRLF)
-     * 
-     * @param csvData CSV数据对象
+     * 并行加载CSV文件
+     * 文件按字节切块，在 ForkJoin 线程池中并行解析，再按顺序拼接成一个列式存储
+     * 数据全部复制进列式存储，所以不做内存映射，而是按块读入堆内缓冲区，加载完立即关闭文件
+     */
+    private CSVData loadParallel(File file, ForkJoinPool pool) throws IOException {
+        try (ChannelFile source = new ChannelFile(file)) {
+            char delimiter = autoDetectDelimiter ? detectDelimiter(file, source) : ',';
+            ColumnarCellStore store;
+            try {
+                store = ParallelCSVLoader.load(source, delimiter, "反斜杠转义".equals(escapeMode), pool);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return new CSVData(store);
+        }
+    }
+    
+    /**
+     * 以流式方式打开CSV文件
+     * 只检测分隔符，不解析数据，由调用方在后台线程中分批读取，读取结束后关闭读取器
+     *
      * @param file 文件对象
-     * @throws IOException 写入文件异常
+     * @return 流式读取器
+     * @throws IOException 读取文件异常
      */
-    public void saveToFile(CSVData csvData, File file) throws IOException {
+    public CSVStreamReader openStream(File file) throws IOException {
+        ChannelFile source = new ChannelFile(file);
+        try {
+            char delimiter = autoDetectDelimiter ? detectDelimiter(file, source) : ',';
+            return new CSVStreamReader(source, delimiter, "反斜杠转义".equals(escapeMode));
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 以内存映射方式打开CSV文件
+     * 只扫描一遍文件建立稀疏的记录索引，单元格在显示时才按需解码，
+     * 适合超过可用堆内存的大文件；编辑保存在内存覆盖层中，原文件保持不变
+     * 索引会缓存到配置目录，文件未改变时再次打开直接使用缓存，无需重新扫描
+     *
+     * @param file 文件对象
+     * @return CSV数据对象
+     * @throws IOException 读取文件异常
+     */
+    public CSVData openMapped(File file) throws IOException {
+        MappedFile mapped = new MappedFile(file);
+        boolean backslashEscape = "反斜杠转义".equals(escapeMode);
+        
+        RecordIndexCache.Entry cached = RecordIndexCache.load(mapped, backslashEscape);
+        if (cached != null && (autoDetectDelimiter || cached.delimiter == ',')) {
+            return new CSVData(MappedCellStore.create(mapped, cached.index, cached.delimiter, backslashEscape));
+        }
+        
+        char delimiter = autoDetectDelimiter ? detectDelimiter(file, mapped) : ',';
+        MappedCellStore store = MappedCellStore.open(mapped, delimiter, backslashEscape);
+        RecordIndexCache.save(mapped, delimiter, backslashEscape, store.getIndex());
+        return new CSVData(store);
+    }
+    
+    /**
+     * 按当前的转义模式和换行符创建写出 CSV 的格式
+     */
+    public CSVFormat createWriteFormat() {
         // 获取CSV格式（使用逗号分隔符和转义模式）
         CSVFormat.Builder builder = CSVFormat.RFC4180.builder()
                 .setDelimiter(',');
@@ -209,30 +287,85 @@ public class CSVService {
             builder.setRecordSeparator("\n");
         }
         
-        CSVFormat format = builder.build();
-        
-        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
-             CSVPrinter csvPrinter = new CSVPrinter(writer, format)) {
-            
-            ObservableList<ObservableList<CSVCell>> data = csvData.getData();
-            
-            // 遍历每一行
-            for (ObservableList<CSVCell> row : data) {
-                List<String> values = new ArrayList<>();
+        return builder.build();
+    }
+    
+    /**
+     * 保存CSV数据到文件
+     * 使用 Apache Commons CSV 进行安全的 CSV 生成
+     * 使用设置的换行符类型 (LF/CRLF)
+     * 
+     * @param csvData CSV数据对象
+     * @param file 文件对象
+     * @throws IOException 写入文件异常
+     */
+    public void saveToFile(CSVData csvData, File file) throws IOException {
+        saveToFile(csvData, file, null);
+    }
+    
+    /**
+     * 保存CSV数据到文件，可在后台线程调用
+     * 先写入同一目录下的临时文件并刷新到磁盘（fsync），再原子替换目标文件：
+     * 写入中途崩溃或失败时目标文件保持原样，不会留下写了一半的文件
+     * 内存映射打开的数据仍在读取源文件：其他系统上替换后映射继续读取原来的内容；
+     * Windows 不允许替换仍被映射的文件，保存回源文件时在写入之前就抛出异常（见 ExportService.replacesMappedSource）
+     * 
+     * @param csvData CSV数据对象（保存期间不应修改，后台保存时传入快照）
+     * @param file 文件对象
+     * @param progress 进度回调（在调用线程中），可以为 null
+     * @return 写入的字节数
+     * @throws IOException 写入文件异常，或目标文件无法替换
+     */
+    public long saveToFile(CSVData csvData, File file, SaveProgressListener progress) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        ExportService.checkReplaceable(csvData, target);
+        CSVFormat format = createWriteFormat();
+        Path temp = ExportService.partFile(target);
+        boolean completed = false;
+        try {
+            long bytesWritten;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 Writer writer = new OutputStreamWriter(
+                     new BufferedOutputStream(Channels.newOutputStream(channel), SAVE_BUFFER_SIZE), StandardCharsets.UTF_8);
+                 CSVPrinter csvPrinter = new CSVPrinter(writer, format)) {
+                
+                int rows = csvData.getRows();
+                int columns = csvData.getColumns();
+                String[] values = new String[columns];
                 
-                // 收集当前行的所有值
-                for (CSVCell cell : row) {
-                    String value = cell.getValue();
-                    // 保留单元格内的换行符
-                    values.add(value != null ? value : "");
+                // 遍历每一行
+                for (int row = 0; row < rows; row++) {
+                    // 收集当前行的所有值（保留单元格内的换行符）
+                    for (int col = 0; col < columns; col++) {
+                        values[col] = csvData.getCellValue(row, col);
+                    }
+                    
+                    // 使用 CSVPrinter 自动处理转义和引号
+                    csvPrinter.printRecord((Object[]) values);
+                    
+                    // 已写入的字节数不含缓冲区中的部分，只用于显示
+                    if (progress != null && (row + 1) % SAVE_PROGRESS_ROWS == 0) {
+                        progress.onProgress(row + 1, rows, channel.position());
+                    }
                 }
                 
-                // 使用 CSVPrinter 自动处理转义和引号
-                csvPrinter.printRecord(values);
+                // 刷新缓冲区并强制写入磁盘，之后才能替换目标文件
+                csvPrinter.flush();
+                channel.force(true);
+                bytesWritten = channel.position();
+                if (progress != null) {
+                    progress.onProgress(rows, rows, bytesWritten);
+                }
             }
             
-            // 刷新缓冲区确保所有数据都写入
-            csvPrinter.flush();
+            ExportService.replace(temp, target);
+            completed = true;
+            return bytesWritten;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(temp);
+            }
         }
     }
 }
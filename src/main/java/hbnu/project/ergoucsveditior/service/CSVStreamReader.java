@@ -0,0 +1,65 @@
+package hbnu.project.ergoucsveditior.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式CSV读取器
+ * 按批次顺序读取记录，并报告已读取的字节数，供渐进式打开使用
+ * 非线程安全，只能由一个后台线程使用；读取结束或取消后应调用 close 释放文件
+ */
+public class CSVStreamReader implements Closeable {
+    private final ChannelFile file;
+    private final CSVRecordDecoder decoder;
+    private long position;
+
+    CSVStreamReader(ChannelFile file, char delimiter, boolean backslashEscape) {
+        this.file = file;
+        this.decoder = new CSVRecordDecoder(delimiter, backslashEscape);
+        this.position = file.dataStart();
+    }
+
+    /**
+     * 读取下一批记录
+     * @param maxRows 本批最多读取的行数
+     * @return 读取到的记录，已读完时为空列表
+     */
+    public List<String[]> readBatch(int maxRows) {
+        List<String[]> rows = new ArrayList<>(Math.min(maxRows, 1024));
+        long size = file.size();
+        while (rows.size() < maxRows && position < size) {
+            long next = decoder.skipRecord(file, position);
+            rows.add(decoder.decode(file, position, decoder.getContentEnd()));
+            position = next;
+        }
+        return rows;
+    }
+
+    /**
+     * 是否还有未读取的记录
+     */
+    public boolean hasMore() {
+        return position < file.size();
+    }
+
+    /**
+     * 已读取的字节数
+     */
+    public long getBytesRead() {
+        return position;
+    }
+
+    /**
+     * 文件总字节数
+     */
+    public long getTotalBytes() {
+        return file.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,118 @@
+package hbnu.project.ergoucsveditior.service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 按块读入堆内缓冲区的只读文件
+ * 用于把数据全部解析进内存的加载方式：不建立内存映射，关闭后文件立即不再被占用，
+ * 之后可以直接覆盖保存（Windows 不允许替换仍被映射的文件，而映射要等垃圾回收才会释放）
+ * 每个实例只有一个读取窗口，非线程安全；多个线程并行读取时各自通过 reader() 取得读取器，
+ * 读取器共用同一个通道（按位置读取是线程安全的），只有最初打开的实例负责关闭通道
+ */
+final class ChannelFile extends ByteSource implements Closeable {
+    private static final int WINDOW_SIZE = 1 << 20;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long size;
+    private final boolean owner;
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private long windowStart;
+    private int windowLength;
+
+    ChannelFile(File file) throws IOException {
+        this(file, FileChannel.open(file.toPath(), StandardOpenOption.READ), true);
+    }
+
+    private ChannelFile(File file, FileChannel channel, boolean owner) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.owner = owner;
+        try {
+            this.size = channel.size();
+        } catch (IOException e) {
+            if (owner) {
+                channel.close();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    long size() {
+        return size;
+    }
+
+    @Override
+    ByteSource reader() {
+        try {
+            return new ChannelFile(file, channel, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    byte get(long position) {
+        long offset = position - windowStart;
+        if (offset < 0 || offset >= windowLength) {
+            fill(position);
+            offset = 0;
+        }
+        return window[(int) offset];
+    }
+
+    @Override
+    void get(long position, byte[] target, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(target, offset, length);
+        read(buffer, position);
+        if (buffer.hasRemaining()) {
+            throw new IndexOutOfBoundsException("读取位置超出文件末尾: " + (position + length));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (owner) {
+            channel.close();
+        }
+    }
+
+    /**
+     * 从指定位置开始重新填充读取窗口（解析基本是顺序向前的）
+     */
+    private void fill(long position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("读取位置超出文件范围: " + position);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(window);
+        read(buffer, position);
+        windowStart = position;
+        windowLength = buffer.position();
+    }
+
+    private void read(ByteBuffer buffer, long position) {
+        try {
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    break;
+                }
+                position += n;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,125 +1,274 @@
 package hbnu.project.ergoucsveditior.service;
 
-import hbnu.project.ergoucsveditior.model.CSVData;
 import hbnu.project.ergoucsveditior.settings.ExportSettings;
-import hbnu.project.ergoucsveditior.manager.HighlightManager;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.FillPatternType;
 import org.apache.poi.ss.usermodel.HorizontalAlignment;
 import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.*;
 
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Excel导出服务
  * 使用Apache POI实现
+ *
+ * 流式模式使用 SXSSFWorkbook：内存中只保留最近的若干行，更早的行写入压缩的临时文件，
+ * 导出百万行也只占用固定内存
+ * 高亮样式按（背景色, 文本色）缓存，相同颜色组合共用一个样式，不会超过 Excel 的样式数量上限
+ * 列宽按抽样的行估算，不调用逐行测量字体的 autoSizeColumn
  */
-public class ExcelExportService {
-    
+public class ExcelExportService implements Exporter {
+    private static final int ROW_WINDOW = 500;        // 流式模式在内存中保留的行数
+    private static final int WIDTH_SAMPLE_ROWS = 2000; // 估算列宽时抽样的行数
+    private static final int MIN_COLUMN_CHARS = 6;
+    private static final int MAX_COLUMN_CHARS = 100;
+    private static final int NO_COLOR = -1;
+
+    @Override
+    public String getFormat() {
+        return "Excel";
+    }
+
+    @Override
+    public String getExtension() {
+        return "xlsx";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Excel文件";
+    }
+
+    @Override
+    public boolean usesHighlights(Context context) {
+        return context.getExportSettings().isExcelApplyHighlight() && context.hasHighlights();
+    }
+
+    @Override
+    public RowWriter open(Context context, OutputStream output) {
+        ExportSettings settings = context.getExportSettings();
+        Workbook workbook;
+        if (settings.isExcelStreaming()) {
+            SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(ROW_WINDOW);
+            streamingWorkbook.setCompressTempFiles(true);
+            workbook = streamingWorkbook;
+        } else {
+            workbook = new XSSFWorkbook();
+        }
+        try {
+            return new SheetWriter(workbook, context, output);
+        } catch (RuntimeException e) {
+            release(workbook);
+            throw e;
+        }
+    }
+
     /**
-     * 导出CSV数据到Excel文件
-     * 
-     * @param csvData CSV数据
-     * @param file 目标文件
-     * @param settings 导出设置
-     * @param highlightManager 高亮管理器
-     * @throws Exception 导出异常
+     * 关闭工作簿并删除流式写入产生的临时文件
      */
-    public void exportToExcel(CSVData csvData, File file, ExportSettings settings, 
-                              HighlightManager highlightManager) throws Exception {
-        
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        XSSFSheet sheet = workbook.createSheet(settings.getExcelSheetName());
-        
-        int startRow = 0;
-        
-        // 创建标题样式
-        XSSFCellStyle headerStyle = workbook.createCellStyle();
-        XSSFFont headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short)11);
-        headerStyle.setFont(headerFont);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        
-        // 创建通用单元格样式（确保中文正确显示）
-        XSSFCellStyle cellStyle = workbook.createCellStyle();
-        XSSFFont cellFont = workbook.createFont();
-        cellFont.setFontName("宋体"); // 使用宋体支持中文
-        cellFont.setFontHeightInPoints((short)10);
-        cellStyle.setFont(cellFont);
-        cellStyle.setWrapText(true); // 自动换行
-        
-        // 如果包含标题行
-        if (settings.isExcelIncludeHeader()) {
-            XSSFRow headerRow = sheet.createRow(startRow++);
-            for (int col = 0; col < csvData.getColumns(); col++) {
-                XSSFCell cell = headerRow.createCell(col);
-                cell.setCellValue("列 " + (col + 1));
-                cell.setCellStyle(headerStyle);
+    private static void release(Workbook workbook) {
+        if (workbook instanceof SXSSFWorkbook) {
+            ((SXSSFWorkbook) workbook).dispose();
+        }
+        try {
+            workbook.close();
+        } catch (IOException e) {
+            System.err.println("关闭Excel工作簿失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 逐行写入一个工作表
+     */
+    private static final class SheetWriter implements RowWriter {
+        private final Workbook workbook;
+        private final OutputStream output;
+        private final Sheet sheet;
+        private final int columns;
+        private final int startRow;
+        private final CellStyle cellStyle;
+        private final boolean autoSize;
+        private final int[] columnChars;
+        private final int sampleStride;
+        private final Context context;
+        private final boolean applyHighlight;
+        private final javafx.scene.paint.Color[] rowColors;
+        private final javafx.scene.paint.Color[] rowTextColors;
+        private final StyleCache styles;
+
+        SheetWriter(Workbook workbook, Context context, OutputStream output) {
+            this.workbook = workbook;
+            this.output = output;
+            ExportSettings settings = context.getExportSettings();
+            sheet = workbook.createSheet(settings.getExcelSheetName());
+            columns = context.getColumns();
+
+            // 创建标题样式
+            CellStyle headerStyle = workbook.createCellStyle();
+            XSSFFont headerFont = (XSSFFont) workbook.createFont();
+            headerFont.setBold(true);
+            headerFont.setFontHeightInPoints((short)11);
+            headerStyle.setFont(headerFont);
+            headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+            headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            headerStyle.setAlignment(HorizontalAlignment.CENTER);
+            headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
+
+            // 创建通用单元格样式（确保中文正确显示）
+            cellStyle = workbook.createCellStyle();
+            XSSFFont cellFont = (XSSFFont) workbook.createFont();
+            cellFont.setFontName("宋体"); // 使用宋体支持中文
+            cellFont.setFontHeightInPoints((short)10);
+            cellStyle.setFont(cellFont);
+            cellStyle.setWrapText(true); // 自动换行
+
+            autoSize = settings.isExcelAutoSizeColumns();
+            columnChars = new int[columns];
+
+            // 如果包含标题行
+            int row = 0;
+            if (settings.isExcelIncludeHeader()) {
+                Row headerRow = sheet.createRow(row++);
+                for (int col = 0; col < columns; col++) {
+                    Cell cell = headerRow.createCell(col);
+                    String title = "列 " + (col + 1);
+                    cell.setCellValue(title);
+                    cell.setCellStyle(headerStyle);
+                    columnChars[col] = ExportService.displayWidth(title);
+                }
             }
+            startRow = row;
+
+            // 高亮颜色按行一次性计算（只遍历与该行相交的行列、区域和单元格高亮），
+            // 相同的（背景色, 文本色）组合共用一个样式
+            this.context = context;
+            applyHighlight = settings.isExcelApplyHighlight() && context.hasHighlights();
+            rowColors = new javafx.scene.paint.Color[columns];
+            rowTextColors = new javafx.scene.paint.Color[columns];
+            styles = new StyleCache(workbook, cellStyle, cellFont);
+            sampleStride = Math.max(1, context.getData().getRows() / WIDTH_SAMPLE_ROWS);
         }
-        
-        // 写入数据
-        for (int row = 0; row < csvData.getRows(); row++) {
-            XSSFRow excelRow = sheet.createRow(startRow + row);
-            for (int col = 0; col < csvData.getColumns(); col++) {
-                XSSFCell cell = excelRow.createCell(col);
-                String value = csvData.getCellValue(row, col);
+
+        @Override
+        public void writeRow(int row, String[] values) {
+            Row excelRow = sheet.createRow(startRow + row);
+            if (applyHighlight) {
+                context.fillRowColors(row, rowColors);
+                context.fillRowTextColors(row, rowTextColors);
+            }
+            boolean sampled = autoSize && row % sampleStride == 0;
+            for (int col = 0; col < columns; col++) {
+                Cell cell = excelRow.createCell(col);
+                String value = values[col];
                 cell.setCellValue(value != null ? value : "");
-                
+                if (sampled && value != null) {
+                    columnChars[col] = Math.max(columnChars[col], ExportService.displayWidth(value));
+                }
+
                 // 应用样式和高亮
-                if (settings.isExcelApplyHighlight() && highlightManager != null) {
-                    javafx.scene.paint.Color highlightColor = 
-                        highlightManager.getFinalHighlightColor(row, col);
-                    if (highlightColor != null) {
-                        XSSFCellStyle highlightStyle = workbook.createCellStyle();
-                        highlightStyle.cloneStyleFrom(cellStyle);
-                        
-                        byte[] rgb = new byte[]{
-                            (byte)(highlightColor.getRed() * 255),
-                            (byte)(highlightColor.getGreen() * 255),
-                            (byte)(highlightColor.getBlue() * 255)
-                        };
-                        XSSFColor xssfColor = new XSSFColor(rgb, null);
-                        highlightStyle.setFillForegroundColor(xssfColor);
-                        highlightStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-                        cell.setCellStyle(highlightStyle);
-                    } else {
-                        cell.setCellStyle(cellStyle);
-                    }
+                if (applyHighlight && (rowColors[col] != null || rowTextColors[col] != null)) {
+                    cell.setCellStyle(styles.get(rowColors[col], rowTextColors[col]));
                 } else {
                     cell.setCellStyle(cellStyle);
                 }
             }
         }
-        
-        // 自动调整列宽
-        if (settings.isExcelAutoSizeColumns()) {
-            for (int col = 0; col < csvData.getColumns(); col++) {
-                sheet.autoSizeColumn(col);
-                // 为中文字符调整宽度（POI的autoSizeColumn对中文支持不好）
-                int currentWidth = sheet.getColumnWidth(col);
-                sheet.setColumnWidth(col, (int)(currentWidth * 1.2)); // 增加20%宽度
+
+        @Override
+        public void finish() throws Exception {
+            // 调整列宽：列宽单位是默认字体一个字符宽度的 1/256
+            for (int col = 0; col < columns; col++) {
+                if (autoSize) {
+                    int chars = Math.max(MIN_COLUMN_CHARS, Math.min(MAX_COLUMN_CHARS, columnChars[col] + 2));
+                    sheet.setColumnWidth(col, chars * 256);
+                } else {
+                    sheet.setColumnWidth(col, 4000); // 默认宽度
+                }
             }
-        } else {
-            // 设置默认列宽
-            for (int col = 0; col < csvData.getColumns(); col++) {
-                sheet.setColumnWidth(col, 4000); // 默认宽度
+            try {
+                workbook.write(output);
+            } finally {
+                release(workbook);
             }
         }
-        
-        // 写入文件
-        try (FileOutputStream outputStream = new FileOutputStream(file)) {
-            workbook.write(outputStream);
+
+        @Override
+        public void abort() {
+            release(workbook);
         }
-        
-        workbook.close();
     }
-}
 
+    /**
+     * 高亮样式缓存
+     * 颜色按导出到 Excel 的 8 位 RGB 取值作为键，显示上无法区分的颜色也共用一个样式；
+     * 文本颜色的字体同样按颜色缓存
+     */
+    private static final class StyleCache {
+        private final Workbook workbook;
+        private final CellStyle baseStyle;
+        private final XSSFFont baseFont;
+        private final Map<Long, CellStyle> styles = new HashMap<>();
+        private final Map<Integer, XSSFFont> fonts = new HashMap<>();
+
+        StyleCache(Workbook workbook, CellStyle baseStyle, XSSFFont baseFont) {
+            this.workbook = workbook;
+            this.baseStyle = baseStyle;
+            this.baseFont = baseFont;
+        }
+
+        CellStyle get(javafx.scene.paint.Color background, javafx.scene.paint.Color text) {
+            int backgroundRgb = toRgb(background);
+            int textRgb = toRgb(text);
+            long key = ((long) backgroundRgb << 32) | (textRgb & 0xFFFFFFFFL);
+            CellStyle style = styles.get(key);
+            if (style == null) {
+                XSSFCellStyle created = (XSSFCellStyle) workbook.createCellStyle();
+                created.cloneStyleFrom(baseStyle);
+                if (backgroundRgb != NO_COLOR) {
+                    created.setFillForegroundColor(new XSSFColor(toBytes(backgroundRgb), null));
+                    created.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+                }
+                if (textRgb != NO_COLOR) {
+                    created.setFont(getFont(textRgb));
+                }
+                style = created;
+                styles.put(key, style);
+            }
+            return style;
+        }
+
+        private XSSFFont getFont(int rgb) {
+            return fonts.computeIfAbsent(rgb, color -> {
+                XSSFFont font = (XSSFFont) workbook.createFont();
+                font.setFontName(baseFont.getFontName());
+                font.setFontHeightInPoints(baseFont.getFontHeightInPoints());
+                font.setColor(new XSSFColor(toBytes(color), null));
+                return font;
+            });
+        }
+
+        private static int toRgb(javafx.scene.paint.Color color) {
+            if (color == null) {
+                return NO_COLOR;
+            }
+            return ((int) Math.round(color.getRed() * 255) << 16)
+                | ((int) Math.round(color.getGreen() * 255) << 8)
+                | (int) Math.round(color.getBlue() * 255);
+        }
+
+        private static byte[] toBytes(int rgb) {
+            return new byte[]{(byte) (rgb >> 16), (byte) (rgb >> 8), (byte) rgb};
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package hbnu.project.ergoucsveditior.service;
+
+import hbnu.project.ergoucsveditior.model.CSVData;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 导出服务
+ * 管理已注册的导出格式，并用同一个游标按行读取 CSVData 交给导出器：
+ * 每行的值写入复用的数组，输出经过 1MB 缓冲写入文件通道
+ *
+ * 导出先写入目标目录下的临时文件，完成后替换目标文件；取消或失败时删除临时文件，
+ * 已有的目标文件不会被写了一半的内容覆盖
+ * 导出任务在服务自带的后台线程池中执行
+ * 多种格式可以共用一次读取同时导出（exportAll），每种格式一个写入线程
+ */
+public class ExportService {
+    private static final int BUFFER_SIZE = 1 << 20;  // 输出缓冲区大小
+    private static final int PROGRESS_ROWS = 4096;   // 每写这么多行报告一次进度并检查是否取消
+    private static final int EXPORT_THREADS = 2;
+    private static final int BATCH_ROWS = 512;       // 多格式导出时每次放入队列的行数
+    private static final int QUEUE_BATCHES = 8;      // 每种格式的队列最多缓存的块数
+    // Windows 不允许替换仍被内存映射的文件，而映射要等垃圾回收才会释放，无法主动解除
+    private static final boolean MAPPED_FILES_LOCKED =
+        System.getProperty("os.name", "").startsWith("Windows");
+
+    /**
+     * 导出进度回调（在导出线程中调用）
+     */
+    public interface ProgressListener {
+        /**
+         * @param rowsDone 已写入的行数
+         * @param totalRows 总行数
+         * @param rowsPerSecond 到目前为止的平均速度
+         */
+        void onProgress(int rowsDone, int totalRows, double rowsPerSecond);
+    }
+
+    private final Map<String, Exporter> exporters = new LinkedHashMap<>();
+    private ExecutorService executor;
+
+    /**
+     * 注册导出格式，同名格式会被替换
+     */
+    public void register(Exporter exporter) {
+        exporters.put(exporter.getFormat(), exporter);
+    }
+
+    /**
+     * 按格式名称查找导出器，没有注册时返回 null
+     */
+    public Exporter getExporter(String format) {
+        return exporters.get(format);
+    }
+
+    /**
+     * 所有已注册的导出器（按注册顺序）
+     */
+    public List<Exporter> getExporters() {
+        return new ArrayList<>(exporters.values());
+    }
+
+    /**
+     * 执行导出任务的线程池，第一次使用时创建，线程为守护线程
+     */
+    public synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(EXPORT_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "export-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * 停止线程池，正在执行的导出会收到中断
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * 导出到文件，可在后台线程调用
+     * @param exporter 导出格式
+     * @param context 导出参数
+     * @param file 目标文件
+     * @param progress 进度回调，可以为 null
+     * @param cancelled 返回 true 时停止导出并删除未写完的文件，可以为 null
+     * @return 是否完成（被取消时返回 false）
+     */
+    public boolean export(Exporter exporter, Exporter.Context context, File file,
+                          ProgressListener progress, BooleanSupplier cancelled) throws Exception {
+        Path target = file.toPath().toAbsolutePath();
+        checkReplaceable(context.getData(), target);
+        Path temp = partFile(target);
+        boolean completed = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)) {
+                Exporter.RowWriter writer = exporter.open(context, output);
+                boolean finished = false;
+                try {
+                    if (!writeRows(context.getData(), writer, progress, cancelled)) {
+                        return false;
+                    }
+                    writer.finish();
+                    finished = true;
+                } finally {
+                    if (!finished) {
+                        writer.abort();
+                    }
+                }
+            }
+            replace(temp, target);
+            completed = true;
+            return true;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * 一次读取、同时导出多种格式，可在后台线程调用
+     * 当前线程按行读取数据（需要时顺带计算每行的高亮颜色），按块放入每种格式的有界队列，
+     * 每种格式在自己的线程中写入；总用时接近最慢的那种格式单独导出的用时
+     * 任何一种格式失败或被取消时，所有格式未写完的文件都会删除
+     *
+     * @param exporters 导出格式
+     * @param context 导出参数
+     * @param files 与导出格式一一对应的目标文件
+     * @param progress 进度回调（按读取的行数），可以为 null
+     * @param cancelled 返回 true 时停止导出，可以为 null
+     * @return 是否全部完成（被取消时返回 false）
+     */
+    public boolean exportAll(List<Exporter> exporters, Exporter.Context context, List<File> files,
+                             ProgressListener progress, BooleanSupplier cancelled) throws Exception {
+        for (File file : files) {
+            checkReplaceable(context.getData(), file.toPath().toAbsolutePath());
+        }
+        List<FanOutSink> sinks = new ArrayList<>();
+        boolean completed = false;
+        try {
+            boolean highlights = false;
+            for (int i = 0; i < exporters.size(); i++) {
+                FanOutSink sink = new FanOutSink(exporters.get(i), context.copy(), files.get(i));
+                sinks.add(sink);
+                sink.open();
+                highlights |= exporters.get(i).usesHighlights(context);
+            }
+            for (FanOutSink sink : sinks) {
+                sink.thread.start();
+            }
+
+            boolean fed = feed(context, highlights, sinks, progress, cancelled);
+            // 提前结束时先记下已经失败的格式，再中断仍在等待的写入线程
+            FanOutSink failed = firstFailed(sinks);
+            for (FanOutSink sink : sinks) {
+                if (!fed) {
+                    sink.thread.interrupt();
+                }
+                sink.thread.join();
+            }
+            if (fed) {
+                failed = firstFailed(sinks);
+            }
+            if (failed != null) {
+                throw new Exception(failed.exporter.getFormat() + " 导出失败: " + failed.failure.getMessage(),
+                    failed.failure);
+            }
+            if (!fed) {
+                return false;
+            }
+            for (FanOutSink sink : sinks) {
+                replace(sink.temp, sink.target);
+            }
+            completed = true;
+            return true;
+        } finally {
+            if (!completed) {
+                for (FanOutSink sink : sinks) {
+                    sink.discard();
+                }
+            }
+        }
+    }
+
+    private static FanOutSink firstFailed(List<FanOutSink> sinks) {
+        for (FanOutSink sink : sinks) {
+            if (sink.failure != null) {
+                return sink;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取线程：按块读取所有行，放入每个写入线程的队列，最后放入结束标记
+     * @return 是否读完（被取消或有写入线程失败时返回 false）
+     */
+    private static boolean feed(Exporter.Context context, boolean highlights, List<FanOutSink> sinks,
+                                ProgressListener progress, BooleanSupplier cancelled) throws InterruptedException {
+        CSVData data = context.getData();
+        int rows = data.getRows();
+        int columns = data.getColumns();
+        long startTime = System.nanoTime();
+        for (int from = 0; from < rows; from += BATCH_ROWS) {
+            if (cancelled != null && cancelled.getAsBoolean() || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            int count = Math.min(BATCH_ROWS, rows - from);
+            RowBatch batch = new RowBatch(from, count, highlights);
+            for (int i = 0; i < count; i++) {
+                String[] values = new String[columns];
+                for (int col = 0; col < columns; col++) {
+                    values[col] = data.getCellValue(from + i, col);
+                }
+                batch.values[i] = values;
+                if (highlights) {
+                    // 颜色只计算一次，各种格式共用；HighlightManager 也只在读取线程中访问
+                    batch.colors[i] = new javafx.scene.paint.Color[columns];
+                    batch.textColors[i] = new javafx.scene.paint.Color[columns];
+                    context.fillRowColors(from + i, batch.colors[i]);
+                    context.fillRowTextColors(from + i, batch.textColors[i]);
+                }
+            }
+            for (FanOutSink sink : sinks) {
+                if (!sink.put(batch, cancelled)) {
+                    return false;
+                }
+            }
+            if (progress != null && (from / BATCH_ROWS) % (PROGRESS_ROWS / BATCH_ROWS) == 0) {
+                progress.onProgress(from + count, rows, rowsPerSecond(from + count, startTime));
+            }
+        }
+        for (FanOutSink sink : sinks) {
+            if (!sink.put(RowBatch.END, cancelled)) {
+                return false;
+            }
+        }
+        if (progress != null) {
+            progress.onProgress(rows, rows, rowsPerSecond(rows, startTime));
+        }
+        return true;
+    }
+
+    /**
+     * 一块连续的行，各个写入线程只读共享
+     */
+    private static final class RowBatch {
+        static final RowBatch END = new RowBatch(0, 0, false); // 结束标记
+
+        final int firstRow;
+        final String[][] values;
+        final javafx.scene.paint.Color[][] colors;
+        final javafx.scene.paint.Color[][] textColors;
+
+        RowBatch(int firstRow, int count, boolean highlights) {
+            this.firstRow = firstRow;
+            this.values = new String[count][];
+            this.colors = highlights ? new javafx.scene.paint.Color[count][] : null;
+            this.textColors = highlights ? new javafx.scene.paint.Color[count][] : null;
+        }
+    }
+
+    /**
+     * 一种格式的写入线程、有界队列和临时文件
+     */
+    private static final class FanOutSink implements Runnable {
+        final Exporter exporter;
+        final Exporter.Context context;
+        final Path target;
+        final Path temp;
+        final BlockingQueue<RowBatch> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        final Thread thread;
+        FileChannel channel;
+        OutputStream output;
+        Exporter.RowWriter writer;
+        volatile Throwable failure;
+        volatile boolean stopped; // 写入线程已经退出（完成或失败）
+
+        FanOutSink(Exporter exporter, Exporter.Context context, File file) throws IOException {
+            this.exporter = exporter;
+            this.context = context;
+            this.target = file.toPath().toAbsolutePath();
+            this.temp = partFile(target);
+            this.thread = new Thread(this, "export-" + exporter.getFormat());
+            this.thread.setDaemon(true);
+        }
+
+        void open() throws Exception {
+            channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            output = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            writer = exporter.open(context, output);
+        }
+
+        /**
+         * 放入一块，队列满时等待写入线程；写入线程已退出或导出被取消时返回 false
+         */
+        boolean put(RowBatch batch, BooleanSupplier cancelled) throws InterruptedException {
+            while (!queue.offer(batch, 50, TimeUnit.MILLISECONDS)) {
+                if (stopped || cancelled != null && cancelled.getAsBoolean()) {
+                    return false;
+                }
+            }
+            return !stopped || batch == RowBatch.END;
+        }
+
+        @Override
+        public void run() {
+            boolean finished = false;
+            try {
+                while (true) {
+                    RowBatch batch = queue.poll(50, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (batch == RowBatch.END) {
+                        writer.finish();
+                        output.close();
+                        channel.close();
+                        finished = true;
+                        return;
+                    }
+                    for (int i = 0; i < batch.values.length; i++) {
+                        int row = batch.firstRow + i;
+                        if (batch.colors != null) {
+                            context.preset(row, batch.colors[i], batch.textColors[i]);
+                        }
+                        writer.writeRow(row, batch.values[i]);
+                    }
+                }
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                if (!finished) {
+                    writer.abort();
+                }
+                stopped = true;
+            }
+        }
+
+        /**
+         * 等待写入线程退出，关闭文件并删除临时文件
+         */
+        void discard() {
+            if (thread.isAlive()) {
+                thread.interrupt();
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else if (writer != null && !stopped) {
+                writer.abort(); // 线程没有启动
+            }
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                System.err.println("删除临时导出文件失败: " + temp + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 游标：按行号顺序读取所有行交给写入器
+     * @return 是否写完（被取消时返回 false）
+     */
+    private static boolean writeRows(CSVData data, Exporter.RowWriter writer,
+                                     ProgressListener progress, BooleanSupplier cancelled) throws Exception {
+        int rows = data.getRows();
+        String[] values = new String[data.getColumns()];
+        long startTime = System.nanoTime();
+        for (int row = 0; row < rows; row++) {
+            if (row % PROGRESS_ROWS == 0) {
+                if (cancelled != null && cancelled.getAsBoolean() || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                if (progress != null && row > 0) {
+                    progress.onProgress(row, rows, rowsPerSecond(row, startTime));
+                }
+            }
+            for (int col = 0; col < values.length; col++) {
+                values[col] = data.getCellValue(row, col);
+            }
+            writer.writeRow(row, values);
+        }
+        if (progress != null) {
+            progress.onProgress(rows, rows, rowsPerSecond(rows, startTime));
+        }
+        return true;
+    }
+
+    private static double rowsPerSecond(int rows, long startTime) {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return seconds > 0 ? rows / seconds : 0;
+    }
+
+    /**
+     * 创建写入过程中使用的临时文件，与目标文件在同一目录
+     * 文件名带随机部分，不会覆盖用户已有的同名文件，同时保存和导出同一目标时也不会共用；
+     * 调用者在失败或取消时负责删除
+     */
+    static Path partFile(Path target) throws IOException {
+        return Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+    }
+
+    /**
+     * 写入 target 是否要替换 data 仍在内存映射读取的源文件，而当前系统不允许这样替换
+     * 只有 Windows 如此；其他系统替换后映射继续读取原来的文件内容
+     */
+    public static boolean replacesMappedSource(CSVData data, File target) {
+        if (!MAPPED_FILES_LOCKED || !(data.getStore() instanceof MappedCellStore store) || !target.exists()) {
+            return false;
+        }
+        try {
+            return Files.isSameFile(store.getFile().toPath(), target.toPath());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 在写入之前确认目标文件可以被替换，否则写完整个临时文件后才会在替换时失败
+     */
+    static void checkReplaceable(CSVData data, Path target) throws IOException {
+        if (replacesMappedSource(data, target.toFile())) {
+            throw new IOException("文件 " + target.getFileName()
+                + " 正以内存映射方式打开，Windows 不允许覆盖仍被映射的文件，请保存或导出到其他文件");
+        }
+    }
+
+    /**
+     * 用临时文件替换目标文件，文件系统支持时原子替换
+     */
+    static void replace(Path temp, Path target) throws IOException {
+        // 临时文件只有所有者可读写，覆盖已有文件时沿用原来的权限
+        if (Files.exists(target)) {
+            try {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+            } catch (UnsupportedOperationException e) {
+                // 非 POSIX 文件系统
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 估算文本的显示宽度（字符数），中日韩文字和全角字符按两个字符计算，多行文本取最长的一行
+     */
+    static int displayWidth(String text) {
+        int widest = 0;
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                widest = Math.max(widest, width);
+                width = 0;
+            } else if (c >= 0x1100 && (c <= 0x115F || (c >= 0x2E80 && c <= 0xA4CF)
+                    || (c >= 0xAC00 && c <= 0xD7A3) || (c >= 0xF900 && c <= 0xFAFF)
+                    || (c >= 0xFE30 && c <= 0xFE4F) || (c >= 0xFF00 && c <= 0xFF60)
+                    || (c >= 0xFFE0 && c <= 0xFFE6))) {
+                width += 2;
+            } else if (!Character.isLowSurrogate(c) && c != '\r') {
+                width++;
+            }
+        }
+        return Math.max(widest, width);
+    }
+}
@@ -0,0 +1,171 @@
+package hbnu.project.ergoucsveditior.service;
+
+import hbnu.project.ergoucsveditior.manager.HighlightManager;
+import hbnu.project.ergoucsveditior.model.CSVData;
+import hbnu.project.ergoucsveditior.settings.ExportSettings;
+
+import java.io.OutputStream;
+
+/**
+ * 导出格式扩展接口
+ * 导出器本身不保存状态，每次导出调用 open 得到一个 RowWriter；
+ * ExportService 按行号顺序逐行交给 RowWriter，写完后调用 finish，取消或失败时调用 abort
+ * 新的格式实现这个接口并注册到 ExportService 即可出现在导出流程中
+ */
+public interface Exporter {
+
+    /**
+     * 格式名称，如 "CSV"、"Excel"
+     */
+    String getFormat();
+
+    /**
+     * 文件扩展名（不带点）
+     */
+    String getExtension();
+
+    /**
+     * 文件选择器中显示的类型说明
+     */
+    String getDescription();
+
+    /**
+     * 本格式是否使用高亮颜色，多格式同时导出时据此决定是否预先计算颜色
+     */
+    default boolean usesHighlights(Context context) {
+        return false;
+    }
+
+    /**
+     * 开始一次导出
+     * @param context 导出参数
+     * @param output 输出流（已带缓冲），由 ExportService 负责关闭，RowWriter 不应关闭它
+     */
+    RowWriter open(Context context, OutputStream output) throws Exception;
+
+    /**
+     * 一次导出的逐行写入器
+     */
+    interface RowWriter {
+
+        /**
+         * 写入一行
+         * @param row 行号
+         * @param values 该行的值，数组在行之间复用，不能保存引用
+         */
+        void writeRow(int row, String[] values) throws Exception;
+
+        /**
+         * 所有行写完后写入结尾并刷新到输出流
+         */
+        void finish() throws Exception;
+
+        /**
+         * 取消或失败时释放资源，不需要写出完整的文件
+         */
+        default void abort() {
+        }
+    }
+
+    /**
+     * 导出参数
+     * 导出器通过 fillRowColors / fillRowTextColors 读取高亮颜色，不直接访问 HighlightManager：
+     * 多格式同时导出时颜色由读取线程计算一次，再随行一起交给各个写入线程
+     */
+    final class Context {
+        private final CSVData data;
+        private final ExportSettings exportSettings;
+        private final HighlightManager highlightManager;
+        private final boolean firstRowAsHeader;
+        private boolean fanOut; // 多格式同时导出，数据由读取线程统一读取
+        private int presetRow = -1; // 预先计算了颜色的行
+        private javafx.scene.paint.Color[] presetColors;
+        private javafx.scene.paint.Color[] presetTextColors;
+
+        public Context(CSVData data, ExportSettings exportSettings, HighlightManager highlightManager,
+                       boolean firstRowAsHeader) {
+            this.data = data;
+            this.exportSettings = exportSettings;
+            this.highlightManager = highlightManager;
+            this.firstRowAsHeader = firstRowAsHeader;
+        }
+
+        /**
+         * 参数相同、预设颜色独立的副本，供多格式同时导出的一个写入线程使用
+         */
+        Context copy() {
+            Context copy = new Context(data, exportSettings, highlightManager, firstRowAsHeader);
+            copy.fanOut = true;
+            return copy;
+        }
+
+        /**
+         * 设置下一次写入的行已经计算好的颜色
+         */
+        void preset(int row, javafx.scene.paint.Color[] colors, javafx.scene.paint.Color[] textColors) {
+            presetRow = row;
+            presetColors = colors;
+            presetTextColors = textColors;
+        }
+
+        public CSVData getData() {
+            return data;
+        }
+
+        /**
+         * 是否为多格式同时导出：此时所有行由读取线程读取一遍后交给各个写入器，
+         * 导出器不应在 open 中自己再遍历一遍数据
+         */
+        public boolean isFanOut() {
+            return fanOut;
+        }
+
+        public int getColumns() {
+            return data.getColumns();
+        }
+
+        public ExportSettings getExportSettings() {
+            return exportSettings;
+        }
+
+        /**
+         * 是否有高亮信息可用
+         */
+        public boolean hasHighlights() {
+            return highlightManager != null;
+        }
+
+        /**
+         * 一行单元格的最终高亮背景颜色，没有高亮的单元格为 null
+         */
+        public void fillRowColors(int row, javafx.scene.paint.Color[] colors) {
+            if (row == presetRow && presetColors != null) {
+                System.arraycopy(presetColors, 0, colors, 0, colors.length);
+            } else if (highlightManager != null) {
+                highlightManager.fillRowColors(row, colors);
+            } else {
+                java.util.Arrays.fill(colors, null);
+            }
+        }
+
+        /**
+         * 一行单元格的最终文本颜色，没有设置的单元格为 null
+         */
+        public void fillRowTextColors(int row, javafx.scene.paint.Color[] colors) {
+            if (row == presetRow && presetTextColors != null) {
+                System.arraycopy(presetTextColors, 0, colors, 0, colors.length);
+            } else if (highlightManager != null) {
+                highlightManager.fillRowTextColors(row, colors);
+            } else {
+                java.util.Arrays.fill(colors, null);
+            }
+        }
+
+        /**
+         * 第一行是否作为表头（HTML、Markdown 使用）
+         */
+        public boolean isFirstRowAsHeader() {
+            return firstRowAsHeader;
+        }
+    }
+}
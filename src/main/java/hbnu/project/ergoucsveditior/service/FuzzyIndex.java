@@ -0,0 +1,493 @@
+package hbnu.project.ergoucsveditior.service;
+
+import hbnu.project.ergoucsveditior.model.CSVData;
+import hbnu.project.ergoucsveditior.model.CSVDataListener;
+import hbnu.project.ergoucsveditior.model.CellStore;
+import hbnu.project.ergoucsveditior.model.SearchHits;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 容错搜索索引
+ * 按编辑距离（Damerau-Levenshtein，相邻字符交换算一次编辑）查找与搜索词相近的单元格值
+ *
+ * 每列的不同值先汇总成字典（值 -> 出现的行），再在不同值上建立 BK 树：
+ * 查询只需要和树中少量节点计算编辑距离，得到匹配的值后按字典展开成单元格，
+ * 不需要逐个单元格比较。字典和 BK 树在第一次搜索某列时建立并缓存，
+ * 该列的单元格被修改后丢弃，下次搜索时重新建立
+ *
+ * 搜索在后台线程进行，只读取界面线程取得的数据快照；索引本身只监听修改，
+ * 用版本号判断快照建立的字典能否缓存
+ */
+public class FuzzyIndex implements CSVDataListener {
+
+    /**
+     * 一个匹配的单元格值
+     */
+    public static final class Match {
+        private final String value;
+        private final int column;
+        private final int distance;
+        private final int cells;
+
+        Match(String value, int column, int distance, int cells) {
+            this.value = value;
+            this.column = column;
+            this.distance = distance;
+            this.cells = cells;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        /**
+         * 该值出现的单元格数
+         */
+        public int getCells() {
+            return cells;
+        }
+    }
+
+    /**
+     * 搜索结果：命中的单元格，以及按编辑距离排序的匹配值
+     */
+    public static final class Result {
+        private final SearchHits hits;
+        private final List<Match> matches;
+
+        Result(SearchHits hits, List<Match> matches) {
+            this.hits = hits;
+            this.matches = matches;
+        }
+
+        public SearchHits getHits() {
+            return hits;
+        }
+
+        /**
+         * 匹配的值，编辑距离小的在前
+         */
+        public List<Match> getMatches() {
+            return matches;
+        }
+    }
+
+    private final CSVData data;
+    private final Map<Long, ColumnDictionary> dictionaries = new HashMap<>(); // (列, 是否忽略大小写) -> 字典
+    private int version; // 数据每变化一次加一，建立期间数据变化的字典不缓存
+
+    public FuzzyIndex(CSVData data) {
+        this.data = data;
+    }
+
+    /**
+     * 停止监听数据变化，索引不再使用时调用
+     */
+    public void close() {
+        data.removeDataListener(this);
+    }
+
+    /**
+     * 当前数据版本，与数据快照在同一线程（修改数据的线程）中取得，搜索时一起传入
+     */
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     * 查找与任一搜索词编辑距离不超过 maxDistance 的单元格，可在后台线程调用
+     * 尚未缓存的列在线程池中并行建立字典；快照之后数据已变化时不使用也不缓存字典
+     * @param snapshot 数据快照（CSVData.snapshot），之后对数据的修改不影响它
+     * @param snapshotVersion 取快照时的 getVersion()
+     * @param terms 搜索词
+     * @param ignoreCase 是否忽略大小写
+     * @param pool 建立字典的线程池
+     * @param cancelled 返回 true 时尽快停止，可以为 null
+     * @return 搜索结果，取消时返回 null
+     */
+    public Result search(CSVData snapshot, int snapshotVersion, List<String> terms, int maxDistance,
+                         boolean ignoreCase, ForkJoinPool pool, BooleanSupplier cancelled) {
+        List<String> keys = new ArrayList<>();
+        for (String term : terms) {
+            keys.add(ignoreCase ? SearchService.foldCase(term) : term);
+        }
+
+        List<Match> matches = new ArrayList<>();
+        long[] cells = new long[16];
+        int cellCount = 0;
+        int[] termCounts = new int[terms.size()];
+        int columns = snapshot.getColumns();
+        List<ForkJoinTask<ColumnDictionary>> builds = new ArrayList<>();
+        for (int col = 0; col < columns; col++) {
+            int column = col;
+            builds.add(pool.submit(() -> dictionary(snapshot, snapshotVersion, column, ignoreCase, cancelled)));
+        }
+        for (int col = 0; col < columns; col++) {
+            ColumnDictionary dictionary = builds.get(col).join();
+            if (dictionary == null || (cancelled != null && cancelled.getAsBoolean())) {
+                builds.forEach(task -> task.cancel(false));
+                return null;
+            }
+            for (int t = 0; t < keys.size(); t++) {
+                int column = col;
+                int[] found = new int[1];
+                List<long[]> expanded = new ArrayList<>();
+                dictionary.tree.query(keys.get(t), maxDistance, (entry, distance) -> {
+                    int[] rows = dictionary.rows[entry];
+                    matches.add(new Match(snapshot.getCellValue(rows[0], column), column, distance, rows.length));
+                    long[] keysOfRows = new long[rows.length];
+                    for (int i = 0; i < rows.length; i++) {
+                        keysOfRows[i] = ((long) rows[i] << 32) | column;
+                    }
+                    expanded.add(keysOfRows);
+                    found[0] += rows.length;
+                });
+                termCounts[t] += found[0];
+                for (long[] rows : expanded) {
+                    if (cellCount + rows.length > cells.length) {
+                        cells = Arrays.copyOf(cells, Math.max(cells.length * 2, cellCount + rows.length));
+                    }
+                    System.arraycopy(rows, 0, cells, cellCount, rows.length);
+                    cellCount += rows.length;
+                }
+            }
+        }
+
+        // 按行列顺序排列，同一单元格匹配多个搜索词时只保留一次
+        Arrays.sort(cells, 0, cellCount);
+        SearchHits hits = new SearchHits();
+        int[] range = new int[2];
+        long last = -1;
+        for (int i = 0; i < cellCount; i++) {
+            if (cells[i] == last) {
+                continue;
+            }
+            last = cells[i];
+            int row = (int) (last >>> 32);
+            int col = (int) last;
+            String value = snapshot.getCellValue(row, col);
+            range[1] = value != null ? value.length() : 0;
+            hits.add(row, col, range, 2);
+        }
+        hits.addTermCounts(termCounts);
+
+        matches.sort((a, b) -> a.distance != b.distance ? Integer.compare(a.distance, b.distance)
+            : a.cells != b.cells ? Integer.compare(b.cells, a.cells) : a.value.compareTo(b.value));
+        return new Result(hits, matches);
+    }
+
+    private ColumnDictionary dictionary(CSVData snapshot, int snapshotVersion, int column, boolean ignoreCase,
+                                        BooleanSupplier cancelled) {
+        long key = ((long) column << 1) | (ignoreCase ? 1 : 0);
+        synchronized (this) {
+            // 缓存的字典对应当前数据，快照之后数据变化过时行号可能对不上快照
+            ColumnDictionary cached = version == snapshotVersion ? dictionaries.get(key) : null;
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ColumnDictionary dictionary = ColumnDictionary.build(snapshot, column, ignoreCase, cancelled);
+        if (dictionary != null) {
+            synchronized (this) {
+                if (version == snapshotVersion) {
+                    dictionaries.put(key, dictionary);
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    // ========== 数据变化时丢弃受影响的字典 ==========
+
+    @Override
+    public synchronized void cellChanged(int row, int column, String oldValue, String newValue) {
+        version++;
+        dictionaries.remove((long) column << 1);
+        dictionaries.remove(((long) column << 1) | 1);
+    }
+
+    @Override
+    public synchronized void rowsInserted(int row, int count) {
+        invalidate();
+    }
+
+    @Override
+    public synchronized void rowRemoved(int row, String[] values) {
+        invalidate();
+    }
+
+    @Override
+    public synchronized void rowMoved(int from, int to) {
+        invalidate();
+    }
+
+    @Override
+    public synchronized void columnInserted(int column) {
+        invalidate();
+    }
+
+    @Override
+    public synchronized void columnRemoved(int column, String[] values) {
+        invalidate();
+    }
+
+    @Override
+    public synchronized void storeReplaced(CellStore oldStore, CellStore newStore) {
+        invalidate();
+    }
+
+    private void invalidate() {
+        version++;
+        dictionaries.clear();
+    }
+
+    // ========== 编辑距离 ==========
+
+    /**
+     * Damerau-Levenshtein 距离：插入、删除、替换、相邻字符交换各算一次编辑
+     * 使用不受限的版本（交换后的字符之间仍可以编辑），它满足三角不等式，BK 树的剪枝才成立
+     * 计算用的数组在多次调用之间复用，每个线程使用各自的实例
+     */
+    private static final class EditDistance {
+        private int[] matrix = new int[256];
+        private char[] alphabet = new char[16];
+        private int[] lastRow = new int[16];
+        private int[] letterOfB = new int[16]; // b 的每个字符在 alphabet 中的位置，不在 a 中时为 -1
+
+        int compute(String a, String b) {
+            if (a.equals(b)) {
+                return 0;
+            }
+            int n = a.length();
+            int m = b.length();
+            if (n == 0) {
+                return m;
+            }
+            if (m == 0) {
+                return n;
+            }
+            // a 中出现的字符（排序去重），lastRow[k] 为字符 alphabet[k] 在 a 中最近一次出现的行
+            if (alphabet.length < n) {
+                alphabet = new char[n];
+                lastRow = new int[n];
+            }
+            a.getChars(0, n, alphabet, 0);
+            Arrays.sort(alphabet, 0, n);
+            int letters = 0;
+            for (int i = 0; i < n; i++) {
+                if (i == 0 || alphabet[i] != alphabet[i - 1]) {
+                    alphabet[letters++] = alphabet[i];
+                }
+            }
+            Arrays.fill(lastRow, 0, letters, 0);
+            if (letterOfB.length < m) {
+                letterOfB = new int[Math.max(m, letterOfB.length * 2)];
+            }
+            for (int j = 0; j < m; j++) {
+                letterOfB[j] = Arrays.binarySearch(alphabet, 0, letters, b.charAt(j));
+            }
+
+            // (n + 2) x (m + 2) 的矩阵按行存放，d(i, j) = matrix[i * width + j]
+            int width = m + 2;
+            int cells = (n + 2) * width;
+            if (matrix.length < cells) {
+                matrix = new int[Math.max(cells, matrix.length * 2)];
+            }
+            int[] d = matrix;
+            int infinity = n + m;
+            d[0] = infinity;
+            for (int i = 0; i <= n; i++) {
+                d[(i + 1) * width] = infinity;
+                d[(i + 1) * width + 1] = i;
+            }
+            for (int j = 0; j <= m; j++) {
+                d[j + 1] = infinity;
+                d[width + j + 1] = j;
+            }
+            for (int i = 1; i <= n; i++) {
+                char ca = a.charAt(i - 1);
+                int lastColumn = 0; // 本行中最近一次字符相等的列
+                int row = i * width;
+                int next = row + width;
+                for (int j = 1; j <= m; j++) {
+                    char cb = b.charAt(j - 1);
+                    int k = letterOfB[j - 1];
+                    int i1 = k >= 0 ? lastRow[k] : 0;
+                    int j1 = lastColumn;
+                    int cost = 1;
+                    if (ca == cb) {
+                        cost = 0;
+                        lastColumn = j;
+                    }
+                    int value = Math.min(d[row + j] + cost, Math.min(d[next + j] + 1, d[row + j + 1] + 1));
+                    d[next + j + 1] = Math.min(value, d[i1 * width + j1] + (i - i1 - 1) + 1 + (j - j1 - 1));
+                }
+                lastRow[Arrays.binarySearch(alphabet, 0, letters, ca)] = i;
+            }
+            return d[(n + 1) * width + m + 1];
+        }
+    }
+
+    /**
+     * 一列的不同值字典和 BK 树
+     */
+    private static final class ColumnDictionary {
+        final int[][] rows; // 第 i 个不同值出现的行
+        final BKTree tree;
+
+        private ColumnDictionary(int[][] rows, BKTree tree) {
+            this.rows = rows;
+            this.tree = tree;
+        }
+
+        static ColumnDictionary build(CSVData data, int column, boolean ignoreCase, BooleanSupplier cancelled) {
+            Map<String, int[]> index = new HashMap<>(); // 值 -> {序号, 行数}
+            List<String> values = new ArrayList<>();
+            List<int[]> rowLists = new ArrayList<>();
+            int rows = data.getRows();
+            for (int row = 0; row < rows; row++) {
+                if ((row & 4095) == 0 && cancelled != null && cancelled.getAsBoolean()) {
+                    return null;
+                }
+                String value = data.getCellValue(row, column);
+                if (value == null || value.isEmpty()) {
+                    continue;
+                }
+                String key = ignoreCase ? SearchService.foldCase(value) : value;
+                int[] entry = index.get(key);
+                if (entry == null) {
+                    entry = new int[]{values.size(), 0};
+                    index.put(key, entry);
+                    values.add(key);
+                    rowLists.add(new int[1]);
+                }
+                int[] list = rowLists.get(entry[0]);
+                if (entry[1] == list.length) {
+                    list = Arrays.copyOf(list, list.length * 2);
+                    rowLists.set(entry[0], list);
+                }
+                list[entry[1]++] = row;
+            }
+
+            int[][] rowsOfValue = new int[values.size()][];
+            BKTree tree = new BKTree(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                if ((i & 1023) == 0 && cancelled != null && cancelled.getAsBoolean()) {
+                    return null;
+                }
+                rowsOfValue[i] = Arrays.copyOf(rowLists.get(i), index.get(values.get(i))[1]);
+                tree.add(values.get(i));
+            }
+            return new ColumnDictionary(rowsOfValue, tree);
+        }
+    }
+
+    /**
+     * BK 树：按编辑距离组织的度量树
+     * 节点的每个子树中，所有值到该节点的距离相同；查询距离为 k 时，
+     * 根据三角不等式只需进入距离在 [d - k, d + k] 内的子树
+     * 节点序号就是添加顺序，与字典中不同值的序号一致
+     */
+    private static final class BKTree {
+        interface Visitor {
+            void visit(int entry, int distance);
+        }
+
+        private final String[] words;
+        private final int[][] childDistances;
+        private final int[][] children;
+        private final int[] childCounts;
+        private final EditDistance buildDistance = new EditDistance();
+        private int size;
+
+        BKTree(int capacity) {
+            words = new String[capacity];
+            childDistances = new int[capacity][];
+            children = new int[capacity][];
+            childCounts = new int[capacity];
+        }
+
+        void add(String word) {
+            int entry = size++;
+            words[entry] = word;
+            if (entry == 0) {
+                return;
+            }
+            int node = 0;
+            while (true) {
+                int d = buildDistance.compute(word, words[node]);
+                int child = child(node, d);
+                if (child < 0) {
+                    addChild(node, d, entry);
+                    return;
+                }
+                node = child;
+            }
+        }
+
+        void query(String term, int maxDistance, Visitor visitor) {
+            if (size == 0) {
+                return;
+            }
+            EditDistance editDistance = new EditDistance();
+            int[] stack = new int[64];
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                int d = editDistance.compute(term, words[node]);
+                if (d <= maxDistance) {
+                    visitor.visit(node, d);
+                }
+                for (int i = 0; i < childCounts[node]; i++) {
+                    int childDistance = childDistances[node][i];
+                    if (childDistance >= d - maxDistance && childDistance <= d + maxDistance) {
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, top * 2);
+                        }
+                        stack[top++] = children[node][i];
+                    }
+                }
+            }
+        }
+
+        private int child(int node, int distance) {
+            for (int i = 0; i < childCounts[node]; i++) {
+                if (childDistances[node][i] == distance) {
+                    return children[node][i];
+                }
+            }
+            return -1;
+        }
+
+        private void addChild(int node, int distance, int child) {
+            int count = childCounts[node];
+            if (children[node] == null) {
+                children[node] = new int[2];
+                childDistances[node] = new int[2];
+            } else if (count == children[node].length) {
+                children[node] = Arrays.copyOf(children[node], count * 2);
+                childDistances[node] = Arrays.copyOf(childDistances[node], count * 2);
+            }
+            children[node][count] = child;
+            childDistances[node][count] = distance;
+            childCounts[node]++;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package hbnu.project.ergoucsveditior.service;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTML导出
+ * 第一行作为表头时写成 th，其余单元格带上高亮背景色
+ */
+public class HTMLExporter implements Exporter {
+
+    @Override
+    public String getFormat() {
+        return "HTML";
+    }
+
+    @Override
+    public String getExtension() {
+        return "html";
+    }
+
+    @Override
+    public String getDescription() {
+        return "HTML文件";
+    }
+
+    @Override
+    public boolean usesHighlights(Context context) {
+        return context.hasHighlights();
+    }
+
+    @Override
+    public RowWriter open(Context context, OutputStream output) throws Exception {
+        Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        boolean applyHighlight = context.hasHighlights();
+        boolean headerRow = context.isFirstRowAsHeader();
+        javafx.scene.paint.Color[] rowColors = new javafx.scene.paint.Color[context.getColumns()];
+
+        // 写入HTML头部
+        writer.write("<!DOCTYPE html>\n");
+        writer.write("<html>\n");
+        writer.write("<head>\n");
+        writer.write("    <meta charset=\"UTF-8\">\n");
+        writer.write("    <title>CSV导出</title>\n");
+        writer.write("    <style>\n");
+        writer.write("        table { border-collapse: collapse; width: 100%; }\n");
+        writer.write("        th, td { border: 1px solid #ddd; padding: 8px; text-align: left; }\n");
+        writer.write("        th { background-color: #4CAF50; color: white; }\n");
+        writer.write("        tr:nth-child(even) { background-color: #f2f2f2; }\n");
+        writer.write("    </style>\n");
+        writer.write("</head>\n");
+        writer.write("<body>\n");
+        writer.write("    <h2>CSV数据导出</h2>\n");
+        writer.write("    <table>\n");
+
+        return new RowWriter() {
+            @Override
+            public void writeRow(int row, String[] values) throws Exception {
+                writer.write("        <tr>\n");
+                if (row == 0 && headerRow) {
+                    for (String value : values) {
+                        writer.write("            <th>" + escapeHtml(value) + "</th>\n");
+                    }
+                } else {
+                    // 高亮颜色按行一次性计算
+                    if (applyHighlight) {
+                        context.fillRowColors(row, rowColors);
+                    }
+                    for (int col = 0; col < values.length; col++) {
+                        String style = "";
+                        javafx.scene.paint.Color color = applyHighlight ? rowColors[col] : null;
+                        if (color != null) {
+                            style = String.format(" style=\"background-color: rgb(%d, %d, %d);\"",
+                                (int)(color.getRed() * 255),
+                                (int)(color.getGreen() * 255),
+                                (int)(color.getBlue() * 255));
+                        }
+                        writer.write("            <td" + style + ">" + escapeHtml(values[col]) + "</td>\n");
+                    }
+                }
+                writer.write("        </tr>\n");
+            }
+
+            @Override
+            public void finish() throws Exception {
+                writer.write("    </table>\n");
+                writer.write("</body>\n");
+                writer.write("</html>\n");
+                writer.flush();
+            }
+        };
+    }
+
+    /**
+     * HTML转义
+     */
+    static String escapeHtml(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        return text.replace("&", "&amp;")
+                   .replace("<", "&lt;")
+                   .replace(">", "&gt;")
+                   .replace("\"", "&quot;")
+                   .replace("'", "&#39;");
+    }
+}
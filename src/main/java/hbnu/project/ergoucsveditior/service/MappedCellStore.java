@@ -0,0 +1,345 @@
+package hbnu.project.ergoucsveditior.service;
+
+import hbnu.project.ergoucsveditior.model.CellStore;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 内存映射单元格存储
+ * 原文件通过 FileChannel.map 只读映射，只建立稀疏的记录偏移索引，
+ * TableView 访问到哪一行才解码哪一行（带有限大小的行缓存）
+ *
+ * 所有修改都写入内存中的覆盖层，原文件不会被改动：
+ *   行映射 - 片段表（piece table），逻辑行号 -> 行ID；行ID小于原文件记录数时对应原文件中的记录
+ *   列映射 - 逻辑列号 -> 列ID；列ID小于原文件列数时对应原文件中的列
+ *   单元格 - 行ID -> (列ID -> 新值)
+ * 因此常驻内存只与可见窗口、行缓存和编辑量有关，与文件大小无关
+ */
+public final class MappedCellStore implements CellStore {
+    private static final int CACHE_ROWS = 4096;
+
+    private final MappedFile file;
+    private final RecordIndex index;
+    private final char delimiter;
+    private final boolean backslashEscape;
+    private final CSVRecordDecoder decoder;
+    private final Map<Integer, String[]> rowCache;
+
+    // 顺序访问时避免重复从检查点扫描
+    private int cursorRecord = -1;
+    private long cursorNext;
+
+    // 行片段表：每个片段是一段连续的行ID
+    private int[] segmentStart;
+    private int[] segmentLength;
+    private int[] segmentEnd;       // 逻辑行号的前缀和（不含）
+    private int segmentCount;
+    private boolean segmentEndDirty;
+    private int rowCount;
+    private int nextRowId;
+
+    // 列映射
+    private int[] columnIds;
+    private int columnCount;
+    private int nextColumnId;
+
+    // 编辑覆盖层
+    private final Map<Integer, Map<Integer, String>> edits;
+
+    private MappedCellStore(MappedFile file, RecordIndex index, char delimiter, boolean backslashEscape) {
+        this.file = file;
+        this.index = index;
+        this.delimiter = delimiter;
+        this.backslashEscape = backslashEscape;
+        this.decoder = new CSVRecordDecoder(delimiter, backslashEscape);
+        this.rowCache = new LinkedHashMap<>(CACHE_ROWS * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+                return size() > CACHE_ROWS;
+            }
+        };
+        this.edits = new HashMap<>();
+    }
+
+    /**
+     * 扫描已映射的文件建立记录索引
+     * @param file 已映射的CSV文件（UTF-8）
+     * @param delimiter 分隔符
+     * @param backslashEscape 是否使用反斜杠转义
+     */
+    static MappedCellStore open(MappedFile file, char delimiter, boolean backslashEscape) {
+        CSVRecordDecoder decoder = new CSVRecordDecoder(delimiter, backslashEscape);
+        RecordIndex index = RecordIndex.build(file, decoder, file.dataStart());
+        return create(file, index, delimiter, backslashEscape);
+    }
+
+    static MappedCellStore create(MappedFile file, RecordIndex index, char delimiter, boolean backslashEscape) {
+        MappedCellStore store = new MappedCellStore(file, index, delimiter, backslashEscape);
+        int records = index.getRecordCount();
+        store.segmentStart = new int[]{0};
+        store.segmentLength = new int[]{records};
+        store.segmentEnd = new int[]{records};
+        store.segmentCount = records > 0 ? 1 : 0;
+        store.rowCount = records;
+        store.nextRowId = records;
+
+        int columns = index.getMaxFieldCount();
+        store.columnIds = new int[Math.max(columns, 4)];
+        for (int i = 0; i < columns; i++) {
+            store.columnIds[i] = i;
+        }
+        store.columnCount = columns;
+        store.nextColumnId = columns;
+        return store;
+    }
+
+    public File getFile() {
+        return file.getFile();
+    }
+
+    RecordIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public synchronized int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public synchronized int getColumnCount() {
+        return columnCount;
+    }
+
+    @Override
+    public synchronized String get(int row, int column) {
+        int rowId = rowId(row);
+        int columnId = columnIds[column];
+        Map<Integer, String> rowEdits = edits.get(rowId);
+        if (rowEdits != null) {
+            String edited = rowEdits.get(columnId);
+            if (edited != null) {
+                return edited;
+            }
+        }
+        if (rowId < index.getRecordCount()) {
+            String[] values = loadRecord(rowId);
+            if (columnId < values.length) {
+                return values[columnId];
+            }
+        }
+        return "";
+    }
+
+    @Override
+    public synchronized void set(int row, int column, String value) {
+        edits.computeIfAbsent(rowId(row), k -> new HashMap<>())
+                .put(columnIds[column], value != null ? value : "");
+    }
+
+    @Override
+    public synchronized void insertRows(int row, int count) {
+        int segment = splitAt(row);
+        insertSegment(segment, nextRowId, count);
+        nextRowId += count;
+        rowCount += count;
+    }
+
+    @Override
+    public synchronized void removeRow(int row) {
+        int rowId = rowId(row);
+        int segment = splitAt(row);
+        splitAt(row + 1);
+        removeSegment(segment);
+        rowCount--;
+        edits.remove(rowId);
+    }
+
+    @Override
+    public synchronized void moveRow(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        int rowId = rowId(from);
+        removeSegment(splitAtAndIsolate(from));
+        rowCount--;
+        insertSegment(splitAt(to), rowId, 1);
+        rowCount++;
+    }
+
+    @Override
+    public synchronized void insertColumn(int column) {
+        if (columnCount == columnIds.length) {
+            columnIds = Arrays.copyOf(columnIds, columnCount * 2);
+        }
+        System.arraycopy(columnIds, column, columnIds, column + 1, columnCount - column);
+        columnIds[column] = nextColumnId++;
+        columnCount++;
+    }
+
+    @Override
+    public synchronized void removeColumn(int column) {
+        int columnId = columnIds[column];
+        System.arraycopy(columnIds, column + 1, columnIds, column, columnCount - column - 1);
+        columnCount--;
+        for (Map<Integer, String> rowEdits : edits.values()) {
+            rowEdits.remove(columnId);
+        }
+    }
+
+    /**
+     * 副本共享只读的映射文件和索引，只复制覆盖层
+     */
+    @Override
+    public synchronized MappedCellStore copy() {
+        MappedCellStore copy = new MappedCellStore(file, index, delimiter, backslashEscape);
+        copy.segmentStart = Arrays.copyOf(segmentStart, Math.max(segmentCount, 1));
+        copy.segmentLength = Arrays.copyOf(segmentLength, Math.max(segmentCount, 1));
+        copy.segmentEnd = Arrays.copyOf(segmentEnd, Math.max(segmentCount, 1));
+        copy.segmentCount = segmentCount;
+        copy.segmentEndDirty = segmentEndDirty;
+        copy.rowCount = rowCount;
+        copy.nextRowId = nextRowId;
+        copy.columnIds = Arrays.copyOf(columnIds, columnIds.length);
+        copy.columnCount = columnCount;
+        copy.nextColumnId = nextColumnId;
+        for (Map.Entry<Integer, Map<Integer, String>> entry : edits.entrySet()) {
+            copy.edits.put(entry.getKey(), new HashMap<>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    @Override
+    public synchronized long estimateMemoryBytes() {
+        long bytes = index.estimateMemoryBytes();
+        bytes += 12L * segmentStart.length + 4L * columnIds.length;
+        for (Map<Integer, String> rowEdits : edits.values()) {
+            bytes += 64;
+            for (String value : rowEdits.values()) {
+                bytes += 64 + value.length();
+            }
+        }
+        for (String[] values : rowCache.values()) {
+            bytes += 16 + 4L * values.length;
+            for (String value : values) {
+                bytes += 40 + value.length();
+            }
+        }
+        return bytes;
+    }
+
+    // ==================== 记录读取 ====================
+
+    private String[] loadRecord(int record) {
+        String[] cached = rowCache.get(record);
+        if (cached != null) {
+            return cached;
+        }
+        long start;
+        if (cursorRecord >= 0 && record == cursorRecord + 1) {
+            start = cursorNext;
+        } else {
+            start = index.checkpoint(record);
+            int skip = record & (RecordIndex.STRIDE - 1);
+            for (int i = 0; i < skip; i++) {
+                start = decoder.skipRecord(file, start);
+            }
+        }
+        long next = decoder.skipRecord(file, start);
+        String[] values = decoder.decode(file, start, decoder.getContentEnd());
+        cursorRecord = record;
+        cursorNext = next;
+        rowCache.put(record, values);
+        return values;
+    }
+
+    // ==================== 行片段表 ====================
+
+    private int rowId(int row) {
+        int segment = findSegment(row);
+        int segmentFirstRow = segment == 0 ? 0 : segmentEnd[segment - 1];
+        return segmentStart[segment] + (row - segmentFirstRow);
+    }
+
+    /**
+     * 查找包含逻辑行的片段
+     */
+    private int findSegment(int row) {
+        updateSegmentEnds();
+        int low = 0;
+        int high = segmentCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segmentEnd[mid] <= row) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 保证逻辑行 row 是某个片段的起点，返回该片段的位置（row == 行数时返回片段数）
+     */
+    private int splitAt(int row) {
+        if (row >= rowCount) {
+            return segmentCount;
+        }
+        int segment = findSegment(row);
+        int segmentFirstRow = segment == 0 ? 0 : segmentEnd[segment - 1];
+        int offset = row - segmentFirstRow;
+        if (offset == 0) {
+            return segment;
+        }
+        int start = segmentStart[segment];
+        int length = segmentLength[segment];
+        segmentLength[segment] = offset;
+        insertSegment(segment + 1, start + offset, length - offset);
+        return segment + 1;
+    }
+
+    private int splitAtAndIsolate(int row) {
+        int segment = splitAt(row);
+        splitAt(row + 1);
+        return segment;
+    }
+
+    private void insertSegment(int position, int start, int length) {
+        if (segmentCount == segmentStart.length) {
+            int capacity = Math.max(4, segmentCount * 2);
+            segmentStart = Arrays.copyOf(segmentStart, capacity);
+            segmentLength = Arrays.copyOf(segmentLength, capacity);
+            segmentEnd = Arrays.copyOf(segmentEnd, capacity);
+        }
+        System.arraycopy(segmentStart, position, segmentStart, position + 1, segmentCount - position);
+        System.arraycopy(segmentLength, position, segmentLength, position + 1, segmentCount - position);
+        segmentStart[position] = start;
+        segmentLength[position] = length;
+        segmentCount++;
+        segmentEndDirty = true;
+    }
+
+    private void removeSegment(int position) {
+        System.arraycopy(segmentStart, position + 1, segmentStart, position, segmentCount - position - 1);
+        System.arraycopy(segmentLength, position + 1, segmentLength, position, segmentCount - position - 1);
+        segmentCount--;
+        segmentEndDirty = true;
+    }
+
+    private void updateSegmentEnds() {
+        if (!segmentEndDirty) {
+            return;
+        }
+        int end = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            end += segmentLength[i];
+            segmentEnd[i] = end;
+        }
+        segmentEndDirty = false;
+    }
+}
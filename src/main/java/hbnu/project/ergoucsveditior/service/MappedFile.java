@@ -0,0 +1,67 @@
+package hbnu.project.ergoucsveditior.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 只读内存映射文件
+ * 单个 MappedByteBuffer 最大 2GB，这里按 1GB 分段映射，对外提供 long 地址的字节读取
+ * 页面由操作系统按需调入/换出，不占用 Java 堆
+ */
+final class MappedFile extends ByteSource {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final File file;
+    private final long size;
+    private final MappedByteBuffer[] segments;
+
+    MappedFile(File file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.size = channel.size();
+            int count = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+            this.segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long position = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(SEGMENT_SIZE, size - position));
+            }
+        }
+    }
+
+    @Override
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    long size() {
+        return size;
+    }
+
+    @Override
+    byte get(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    /**
+     * 批量读取到数组中，可跨越分段
+     */
+    @Override
+    void get(long position, byte[] target, int offset, int length) {
+        while (length > 0) {
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+            int inSegment = (int) (position & SEGMENT_MASK);
+            int n = Math.min(length, segment.limit() - inSegment);
+            segment.get(inSegment, target, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+}
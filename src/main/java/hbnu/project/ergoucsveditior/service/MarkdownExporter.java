@@ -0,0 +1,205 @@
+package hbnu.project.ergoucsveditior.service;
+
+import hbnu.project.ergoucsveditior.model.CSVData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Markdown表格导出
+ * 每列按最宽的值对齐，必须在写第一行之前知道所有列宽：
+ * 单独导出时打开时先扫描一遍所有单元格计算列宽（只计算宽度，不保存值）；
+ * 多格式同时导出时数据只由读取线程读取一遍，这里把收到的行暂存到临时文件并顺带计算列宽，
+ * 写完后再从临时文件按列宽写出
+ */
+public class MarkdownExporter implements Exporter {
+    private static final int SPOOL_BUFFER_SIZE = 1 << 16;
+
+    @Override
+    public String getFormat() {
+        return "Markdown";
+    }
+
+    @Override
+    public String getExtension() {
+        return "md";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Markdown文件";
+    }
+
+    @Override
+    public RowWriter open(Context context, OutputStream output) throws Exception {
+        Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        int columns = context.getColumns();
+        boolean headerRow = context.isFirstRowAsHeader();
+
+        // 计算每列的最大宽度（中文字符按2个字符宽度计算），最小宽度为3
+        int[] columnWidths = new int[columns];
+        for (int col = 0; col < columns; col++) {
+            columnWidths[col] = Math.max(3, ExportService.displayWidth("列 " + (col + 1)));
+        }
+        if (context.isFanOut()) {
+            return new SpoolingWriter(writer, columnWidths, headerRow);
+        }
+
+        CSVData data = context.getData();
+        for (int row = 0; row < data.getRows(); row++) {
+            for (int col = 0; col < columns; col++) {
+                String value = data.getCellValue(row, col);
+                if (value != null) {
+                    columnWidths[col] = Math.max(columnWidths[col], ExportService.displayWidth(value));
+                }
+            }
+        }
+        if (!headerRow) {
+            writeDefaultHeader(writer, columnWidths);
+        }
+
+        return new RowWriter() {
+            @Override
+            public void writeRow(int row, String[] values) throws Exception {
+                writeLine(writer, values, columnWidths);
+                if (row == 0 && headerRow) {
+                    writeSeparator(writer, columnWidths);
+                }
+            }
+
+            @Override
+            public void finish() throws Exception {
+                writer.flush();
+            }
+        };
+    }
+
+    /**
+     * 多格式同时导出时使用：逐行暂存到临时文件并更新列宽，finish 时按最终列宽写出
+     * 暂存格式为每个单元格一个长度（-1 表示 null）加 UTF-8 字节
+     */
+    private static final class SpoolingWriter implements RowWriter {
+        private final Writer writer;
+        private final int[] columnWidths;
+        private final boolean headerRow;
+        private final Path spool;
+        private final DataOutputStream out;
+        private int rows;
+
+        SpoolingWriter(Writer writer, int[] columnWidths, boolean headerRow) throws IOException {
+            this.writer = writer;
+            this.columnWidths = columnWidths;
+            this.headerRow = headerRow;
+            this.spool = Files.createTempFile("markdown-export", ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spool), SPOOL_BUFFER_SIZE));
+        }
+
+        @Override
+        public void writeRow(int row, String[] values) throws Exception {
+            for (int col = 0; col < columnWidths.length; col++) {
+                String value = col < values.length ? values[col] : null;
+                if (value == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                columnWidths[col] = Math.max(columnWidths[col], ExportService.displayWidth(value));
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            rows++;
+        }
+
+        @Override
+        public void finish() throws Exception {
+            try {
+                out.close();
+                if (!headerRow) {
+                    writeDefaultHeader(writer, columnWidths);
+                }
+                String[] values = new String[columnWidths.length];
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(spool), SPOOL_BUFFER_SIZE))) {
+                    for (int row = 0; row < rows; row++) {
+                        for (int col = 0; col < values.length; col++) {
+                            int length = in.readInt();
+                            if (length < 0) {
+                                values[col] = null;
+                            } else {
+                                byte[] bytes = new byte[length];
+                                in.readFully(bytes);
+                                values[col] = new String(bytes, StandardCharsets.UTF_8);
+                            }
+                        }
+                        writeLine(writer, values, columnWidths);
+                        if (row == 0 && headerRow) {
+                            writeSeparator(writer, columnWidths);
+                        }
+                    }
+                }
+                writer.flush();
+            } finally {
+                Files.deleteIfExists(spool);
+            }
+        }
+
+        @Override
+        public void abort() {
+            try {
+                out.close();
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                System.err.println("删除Markdown导出临时文件失败: " + spool + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 不使用第一行作为表头时写入默认表头
+     */
+    private static void writeDefaultHeader(Writer writer, int[] columnWidths) throws Exception {
+        String[] header = new String[columnWidths.length];
+        for (int col = 0; col < columnWidths.length; col++) {
+            header[col] = "列 " + (col + 1);
+        }
+        writeLine(writer, header, columnWidths);
+        writeSeparator(writer, columnWidths);
+    }
+
+    private static void writeLine(Writer writer, String[] values, int[] columnWidths) throws Exception {
+        writer.write("|");
+        for (int col = 0; col < columnWidths.length; col++) {
+            String value = col < values.length && values[col] != null ? values[col] : "";
+            writer.write(" " + padString(value, columnWidths[col]) + " |");
+        }
+        writer.write("\n");
+    }
+
+    private static void writeSeparator(Writer writer, int[] columnWidths) throws Exception {
+        writer.write("|");
+        for (int width : columnWidths) {
+            writer.write(" " + "-".repeat(width) + " |");
+        }
+        writer.write("\n");
+    }
+
+    /**
+     * 填充字符串到指定宽度
+     */
+    private static String padString(String str, int width) {
+        int currentWidth = ExportService.displayWidth(str);
+        if (currentWidth >= width) {
+            return str;
+        }
+        return str + " ".repeat(width - currentWidth);
+    }
+}
@@ -5,32 +5,49 @@ import com.itextpdf.text.pdf.BaseFont;
 import com.itextpdf.text.pdf.PdfPCell;
 import com.itextpdf.text.pdf.PdfPTable;
 import com.itextpdf.text.pdf.PdfWriter;
-import hbnu.project.ergoucsveditior.model.CSVData;
 import hbnu.project.ergoucsveditior.settings.ExportSettings;
-import hbnu.project.ergoucsveditior.manager.HighlightManager;
 
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * PDF导出服务
  * 使用iText实现
+ *
+ * 增量模式下表格标记为未完成，每加入一块行就交给文档排版，
+ * 排满的页面立即写入文件并释放已输出的行，内存占用与总行数无关；标题行在每页重复
  */
-public class PDFExportService {
+public class PDFExportService implements Exporter {
+    private static final int CHUNK_ROWS = 200; // 增量模式每次交给文档排版的行数
     
-    /**
-     * 导出CSV数据到PDF文件
-     * 
-     * @param csvData CSV数据
-     * @param file 目标文件
-     * @param settings 导出设置
-     * @param highlightManager 高亮管理器
-     * @throws Exception 导出异常
-     */
-    public void exportToPDF(CSVData csvData, File file, ExportSettings settings,
-                           HighlightManager highlightManager) throws Exception {
-        
+    private static volatile BaseFont chineseFont; // 中文字体在进程内只创建一次
+    
+    @Override
+    public String getFormat() {
+        return "PDF";
+    }
+    
+    @Override
+    public String getExtension() {
+        return "pdf";
+    }
+    
+    @Override
+    public String getDescription() {
+        return "PDF文件";
+    }
+    
+    @Override
+    public boolean usesHighlights(Context context) {
+        return context.getExportSettings().isPdfApplyHighlight() && context.hasHighlights();
+    }
+    
+    @Override
+    public RowWriter open(Context context, OutputStream output) throws Exception {
+        ExportSettings settings = context.getExportSettings();
         Document document = new Document();
         
         // 设置页面大小和方向
@@ -40,69 +57,139 @@ public class PDFExportService {
         }
         document.setPageSize(pageSize);
         
-        PdfWriter.getInstance(document, new FileOutputStream(file));
+        PdfWriter writer = PdfWriter.getInstance(document, output);
+        writer.setCloseStream(false); // 输出流由导出服务关闭
         document.open();
+        return new TableWriter(document, context);
+    }
+    
+    /**
+     * 逐行向文档中的表格加入单元格
+     */
+    private static final class TableWriter implements RowWriter {
+        private final Document document;
+        private final PdfPTable table;
+        private final boolean incremental;
+        private final Font cellFont;
+        private final Context context;
+        private final boolean applyHighlight;
+        private final javafx.scene.paint.Color[] rowColors;
+        private final Map<javafx.scene.paint.Color, BaseColor> pdfColors = new HashMap<>();
         
-        // 设置中文字体（使用iTextAsian提供的中文字体）
-        BaseFont bfChinese = BaseFont.createFont("STSong-Light", "UniGB-UCS2-H", BaseFont.NOT_EMBEDDED);
-        
-        // 添加标题（使用中文字体）
-        Font titleFont = new Font(bfChinese, 16, Font.BOLD);
-        Paragraph title = new Paragraph(settings.getPdfTitle(), titleFont);
-        title.setAlignment(Element.ALIGN_CENTER);
-        document.add(title);
-        document.add(new Paragraph("\n"));
-        
-        // 创建表格
-        PdfPTable table = new PdfPTable(csvData.getColumns());
-        table.setWidthPercentage(100);
-        table.setSpacingBefore(10f);
-        table.setSpacingAfter(10f);
-        
-        // 设置字体（使用中文字体）
-        Font cellFont = new Font(bfChinese, settings.getPdfFontSize(), Font.NORMAL);
-        Font headerFont = new Font(bfChinese, settings.getPdfFontSize(), Font.BOLD);
-        
-        // 添加标题行
-        if (settings.isPdfIncludeHeader()) {
-            for (int col = 0; col < csvData.getColumns(); col++) {
-                PdfPCell headerCell = new PdfPCell(new Phrase("列 " + (col + 1), headerFont));
-                headerCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-                headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                headerCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-                headerCell.setPadding(5);
-                table.addCell(headerCell);
+        TableWriter(Document document, Context context) throws Exception {
+            this.document = document;
+            ExportSettings settings = context.getExportSettings();
+            int columns = context.getColumns();
+            
+            // 设置中文字体（使用iTextAsian提供的中文字体）
+            BaseFont bfChinese = getChineseFont();
+            
+            // 添加标题（使用中文字体）
+            Font titleFont = new Font(bfChinese, 16, Font.BOLD);
+            Paragraph title = new Paragraph(settings.getPdfTitle(), titleFont);
+            title.setAlignment(Element.ALIGN_CENTER);
+            document.add(title);
+            document.add(new Paragraph("\n"));
+            
+            incremental = settings.isPdfIncremental();
+            
+            // 创建表格
+            table = new PdfPTable(columns);
+            table.setWidthPercentage(100);
+            table.setSpacingBefore(10f);
+            table.setSpacingAfter(10f);
+            if (incremental) {
+                table.setComplete(false);
             }
+            
+            // 设置字体（使用中文字体）
+            cellFont = new Font(bfChinese, settings.getPdfFontSize(), Font.NORMAL);
+            Font headerFont = new Font(bfChinese, settings.getPdfFontSize(), Font.BOLD);
+            
+            // 添加标题行，分页时在每页顶部重复
+            if (settings.isPdfIncludeHeader()) {
+                for (int col = 0; col < columns; col++) {
+                    PdfPCell headerCell = new PdfPCell(new Phrase("列 " + (col + 1), headerFont));
+                    headerCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
+                    headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
+                    headerCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+                    headerCell.setPadding(5);
+                    table.addCell(headerCell);
+                }
+                table.setHeaderRows(1);
+            }
+            
+            // 高亮颜色按行一次性计算，只遍历与该行相交的行列、区域和单元格高亮，相同颜色共用一个 BaseColor
+            this.context = context;
+            applyHighlight = settings.isPdfApplyHighlight() && context.hasHighlights();
+            rowColors = new javafx.scene.paint.Color[columns];
         }
         
-        // 添加数据
-        for (int row = 0; row < csvData.getRows(); row++) {
-            for (int col = 0; col < csvData.getColumns(); col++) {
-                String value = csvData.getCellValue(row, col);
+        @Override
+        public void writeRow(int row, String[] values) throws Exception {
+            if (applyHighlight) {
+                context.fillRowColors(row, rowColors);
+            }
+            for (int col = 0; col < values.length; col++) {
+                String value = values[col];
                 PdfPCell cell = new PdfPCell(new Phrase(value != null ? value : "", cellFont));
                 cell.setPadding(3);
                 cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
                 
                 // 应用高亮
-                if (settings.isPdfApplyHighlight() && highlightManager != null) {
-                    javafx.scene.paint.Color highlightColor = 
-                        highlightManager.getFinalHighlightColor(row, col);
-                    if (highlightColor != null) {
-                        BaseColor pdfColor = new BaseColor(
-                            (int)(highlightColor.getRed() * 255),
-                            (int)(highlightColor.getGreen() * 255),
-                            (int)(highlightColor.getBlue() * 255)
-                        );
-                        cell.setBackgroundColor(pdfColor);
-                    }
+                javafx.scene.paint.Color highlightColor = applyHighlight ? rowColors[col] : null;
+                if (highlightColor != null) {
+                    cell.setBackgroundColor(pdfColors.computeIfAbsent(highlightColor, color -> new BaseColor(
+                        (int)(color.getRed() * 255),
+                        (int)(color.getGreen() * 255),
+                        (int)(color.getBlue() * 255)
+                    )));
                 }
                 
                 table.addCell(cell);
             }
+            
+            // 增量模式：排版已加入的行，写完的页面立即输出，表格只保留未排完的行
+            if (incremental && (row + 1) % CHUNK_ROWS == 0) {
+                document.add(table);
+            }
+        }
+        
+        @Override
+        public void finish() throws Exception {
+            if (incremental) {
+                table.setComplete(true);
+            }
+            document.add(table);
+            document.close();
         }
         
-        document.add(table);
-        document.close();
+        @Override
+        public void abort() {
+            // 关闭文档释放 PdfWriter 的缓冲，写了一半的内容随临时文件一起删除
+            try {
+                document.close();
+            } catch (RuntimeException e) {
+                // 还没有任何页面等情况下关闭会抛出异常，忽略
+            }
+        }
+    }
+    
+    /**
+     * 中文字体，第一次使用时创建，之后的导出共用
+     */
+    private static BaseFont getChineseFont() throws DocumentException, IOException {
+        BaseFont font = chineseFont;
+        if (font == null) {
+            synchronized (PDFExportService.class) {
+                font = chineseFont;
+                if (font == null) {
+                    font = BaseFont.createFont("STSong-Light", "UniGB-UCS2-H", BaseFont.NOT_EMBEDDED);
+                    chineseFont = font;
+                }
+            }
+        }
+        return font;
     }
     
     /**
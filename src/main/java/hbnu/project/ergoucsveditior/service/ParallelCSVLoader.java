@@ -0,0 +1,114 @@
+package hbnu.project.ergoucsveditior.service;
+
+import hbnu.project.ergoucsveditior.model.ColumnarCellStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 并行分块 CSV 加载器
+ * 1. 把文件按字节平均切成若干块，切分点前一个字节不能是反斜杠或 CR，保证不会切断转义序列和 CRLF
+ * 2. 并行扫描每一块，得到"块起点状态 -> 块终点状态"的映射（引号感知，兼容两种转义模式）
+ * 3. 从文件开头顺序串联这些映射，得到每个切分点上真实的解析状态
+ * 4. 并行解析：每块只负责起点落在本块内的记录，写入各自的列式存储
+ * 5. 按顺序拼接各块的存储（直接接管文本区，不重新编码文本）
+ */
+final class ParallelCSVLoader {
+    private static final long MIN_CHUNK_SIZE = 8L << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private ParallelCSVLoader() {
+    }
+
+    /**
+     * 并行解析整个文件
+     * @param file CSV文件，每个解析任务通过 reader() 取得自己的读取器
+     * @param delimiter 分隔符
+     * @param backslashEscape 是否使用反斜杠转义
+     * @param pool 执行解析任务的线程池
+     */
+    static ColumnarCellStore load(ByteSource file, char delimiter, boolean backslashEscape, ForkJoinPool pool) {
+        long[] splits = split(file, file.dataStart(), pool.getParallelism());
+        int chunkCount = splits.length - 1;
+
+        // 第一遍：并行计算每块的状态映射（最后一块的结束状态用不到）
+        List<ForkJoinTask<int[]>> scans = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount - 1; i++) {
+            long from = splits[i];
+            long to = splits[i + 1];
+            scans.add(pool.submit(() -> new CSVRecordDecoder(delimiter, backslashEscape)
+                    .scanTransitions(file.reader(), from, to)));
+        }
+
+        // 顺序串联得到每块起点的状态，状态确定后立即提交该块的解析任务
+        List<ForkJoinTask<ColumnarCellStore>> parses = new ArrayList<>(chunkCount);
+        int state = CSVRecordDecoder.RECORD_START;
+        for (int i = 0; i < chunkCount; i++) {
+            if (i > 0) {
+                state = scans.get(i - 1).join()[state];
+            }
+            long from = splits[i];
+            long to = splits[i + 1];
+            int startState = state;
+            parses.add(pool.submit(() -> parseChunk(file.reader(), from, to, startState, delimiter, backslashEscape)));
+        }
+
+        // 按顺序拼接
+        ColumnarCellStore result = parses.get(0).join();
+        for (int i = 1; i < chunkCount; i++) {
+            result.appendAll(parses.get(i).join());
+        }
+        return result;
+    }
+
+    /**
+     * 计算切分点
+     */
+    static long[] split(ByteSource file, long dataStart, int parallelism) {
+        long size = file.size();
+        long length = size - dataStart;
+        int count = (int) Math.max(1, Math.min((long) parallelism * CHUNKS_PER_THREAD, length / MIN_CHUNK_SIZE));
+
+        long[] splits = new long[count + 1];
+        int n = 0;
+        splits[n++] = dataStart;
+        for (int i = 1; i < count; i++) {
+            long pos = dataStart + length * i / count;
+            while (pos < size && isUnsafeSplit(file, pos)) {
+                pos++;
+            }
+            if (pos > splits[n - 1] && pos < size) {
+                splits[n++] = pos;
+            }
+        }
+        splits[n++] = size;
+        return Arrays.copyOf(splits, n);
+    }
+
+    private static boolean isUnsafeSplit(ByteSource file, long pos) {
+        byte previous = file.get(pos - 1);
+        return previous == '\\' || previous == '\r';
+    }
+
+    /**
+     * 解析起点落在 [from, to) 内的全部记录
+     */
+    private static ColumnarCellStore parseChunk(ByteSource file, long from, long to, int state,
+                                                char delimiter, boolean backslashEscape) {
+        CSVRecordDecoder decoder = new CSVRecordDecoder(delimiter, backslashEscape);
+        ColumnarCellStore store = new ColumnarCellStore();
+        long pos = decoder.findRecordStart(file, from, to, state);
+        if (pos < 0) {
+            return store;
+        }
+        while (pos < to) {
+            long next = decoder.skipRecord(file, pos);
+            store.appendRow(decoder.decode(file, pos, decoder.getContentEnd()));
+            pos = next;
+        }
+        return store;
+    }
+}
@@ -0,0 +1,88 @@
+package hbnu.project.ergoucsveditior.service;
+
+import java.util.Arrays;
+
+/**
+ * 稀疏记录偏移索引
+ * 每 STRIDE 条记录保存一个起始字节偏移，定位某条记录时从最近的检查点向后最多扫描 STRIDE-1 条记录
+ * 索引大小约为 记录数 / 8 字节，2 亿行的文件只需约 25MB
+ */
+final class RecordIndex {
+    static final int STRIDE_BITS = 6;
+    static final int STRIDE = 1 << STRIDE_BITS;
+
+    private long[] checkpoints;
+    private int recordCount;
+    private int maxFieldCount;
+    private final long dataStart;
+
+    RecordIndex(long dataStart) {
+        this.checkpoints = new long[1024];
+        this.dataStart = dataStart;
+    }
+
+    RecordIndex(long dataStart, long[] checkpoints, int recordCount, int maxFieldCount) {
+        this.dataStart = dataStart;
+        this.checkpoints = checkpoints;
+        this.recordCount = recordCount;
+        this.maxFieldCount = maxFieldCount;
+    }
+
+    /**
+     * 扫描整个文件建立索引
+     * @param dataStart 数据起始位置（跳过 BOM）
+     */
+    static RecordIndex build(MappedFile file, CSVRecordDecoder decoder, long dataStart) {
+        RecordIndex index = new RecordIndex(dataStart);
+        long pos = dataStart;
+        long size = file.size();
+        while (pos < size) {
+            long next = decoder.skipRecord(file, pos);
+            index.add(pos, decoder.getFieldCount());
+            pos = next;
+        }
+        return index;
+    }
+
+    /**
+     * 追加一条记录
+     */
+    void add(long start, int fieldCount) {
+        if ((recordCount & (STRIDE - 1)) == 0) {
+            int slot = recordCount >>> STRIDE_BITS;
+            if (slot == checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, slot * 2);
+            }
+            checkpoints[slot] = start;
+        }
+        recordCount++;
+        maxFieldCount = Math.max(maxFieldCount, fieldCount);
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    int getMaxFieldCount() {
+        return maxFieldCount;
+    }
+
+    long getDataStart() {
+        return dataStart;
+    }
+
+    /**
+     * 记录所在检查点的起始偏移
+     */
+    long checkpoint(int record) {
+        return checkpoints[record >>> STRIDE_BITS];
+    }
+
+    long[] getCheckpoints() {
+        return Arrays.copyOf(checkpoints, (recordCount + STRIDE - 1) >>> STRIDE_BITS);
+    }
+
+    long estimateMemoryBytes() {
+        return 16 + 8L * checkpoints.length;
+    }
+}
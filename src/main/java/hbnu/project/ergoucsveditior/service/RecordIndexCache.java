@@ -0,0 +1,196 @@
+package hbnu.project.ergoucsveditior.service;
+
+import hbnu.project.ergoucsveditior.manager.ConfigManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 记录偏移索引的磁盘缓存
+ * 为大文件在配置目录的 index 子目录中保存一份旁路索引（记录偏移检查点、列数、分隔符、转义模式），
+ * 再次打开同一文件时只要文件大小、修改时间和内容指纹都一致，就直接使用缓存的索引，跳过全文件扫描
+ *
+ * 缓存按最近使用时间淘汰（使用索引文件的修改时间记录），总大小不超过 MAX_TOTAL_BYTES
+ */
+final class RecordIndexCache {
+    private static final int MAGIC = 0x45434958; // "ECIX"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".idx";
+    private static final long MIN_FILE_SIZE = 16L << 20;       // 小文件扫描很快，不值得缓存
+    private static final long MAX_TOTAL_BYTES = 256L << 20;    // 缓存目录总大小上限
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    /**
+     * 缓存的索引及其对应的分隔符
+     */
+    static final class Entry {
+        final char delimiter;
+        final RecordIndex index;
+
+        Entry(char delimiter, RecordIndex index) {
+            this.delimiter = delimiter;
+            this.index = index;
+        }
+    }
+
+    private RecordIndexCache() {
+    }
+
+    /**
+     * 读取文件的缓存索引
+     * @return 缓存有效时返回索引，否则返回 null
+     */
+    static Entry load(MappedFile file, boolean backslashEscape) {
+        if (file.size() < MIN_FILE_SIZE) {
+            return null;
+        }
+        File indexFile = indexFileOf(file.getFile());
+        if (!indexFile.exists()) {
+            return null;
+        }
+        Entry entry;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            String path = in.readUTF();
+            long size = in.readLong();
+            long modified = in.readLong();
+            long fingerprint = in.readLong();
+            char delimiter = in.readChar();
+            boolean escape = in.readBoolean();
+            if (!path.equals(file.getFile().getAbsolutePath()) || size != file.size()
+                    || modified != file.getFile().lastModified() || escape != backslashEscape
+                    || fingerprint != fingerprint(file)) {
+                return null;
+            }
+            if (in.readInt() != RecordIndex.STRIDE) {
+                return null;
+            }
+            long dataStart = in.readLong();
+            int recordCount = in.readInt();
+            int maxFieldCount = in.readInt();
+            long[] checkpoints = new long[in.readInt()];
+            for (int i = 0; i < checkpoints.length; i++) {
+                checkpoints[i] = in.readLong();
+            }
+            entry = new Entry(delimiter, new RecordIndex(dataStart, checkpoints, recordCount, maxFieldCount));
+        } catch (IOException e) {
+            System.err.println("读取索引缓存失败: " + e.getMessage());
+            return null;
+        }
+        // 记录最近使用时间，用于淘汰
+        indexFile.setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    /**
+     * 保存文件的索引，并按最近使用时间淘汰超出总大小的缓存
+     */
+    static void save(MappedFile file, char delimiter, boolean backslashEscape, RecordIndex index) {
+        if (file.size() < MIN_FILE_SIZE) {
+            return;
+        }
+        File indexFile = indexFileOf(file.getFile());
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(file.getFile().getAbsolutePath());
+            out.writeLong(file.size());
+            out.writeLong(file.getFile().lastModified());
+            out.writeLong(fingerprint(file));
+            out.writeChar(delimiter);
+            out.writeBoolean(backslashEscape);
+            out.writeInt(RecordIndex.STRIDE);
+            out.writeLong(index.getDataStart());
+            out.writeInt(index.getRecordCount());
+            out.writeInt(index.getMaxFieldCount());
+            long[] checkpoints = index.getCheckpoints();
+            out.writeInt(checkpoints.length);
+            for (long checkpoint : checkpoints) {
+                out.writeLong(checkpoint);
+            }
+        } catch (IOException e) {
+            System.err.println("保存索引缓存失败: " + e.getMessage());
+            tempFile.delete();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            evict(indexFile.toPath());
+        } catch (IOException e) {
+            System.err.println("保存索引缓存失败: " + e.getMessage());
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * 删除最久未使用的索引，直到总大小不超过上限（刚写入的索引保留）
+     */
+    private static void evict(Path keep) throws IOException {
+        List<Path> indexFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.list(ConfigManager.getIndexDir())) {
+            files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).forEach(indexFiles::add);
+        }
+        long total = 0;
+        for (Path path : indexFiles) {
+            total += path.toFile().length();
+        }
+        indexFiles.sort(Comparator.comparingLong(path -> path.toFile().lastModified()));
+        for (Path path : indexFiles) {
+            if (total <= MAX_TOTAL_BYTES) {
+                break;
+            }
+            if (!path.equals(keep)) {
+                total -= path.toFile().length();
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * 索引文件名由源文件绝对路径的摘要生成
+     */
+    private static File indexFileOf(File source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(source.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", hash[i]));
+            }
+            return ConfigManager.getIndexDir().resolve(name + SUFFIX).toFile();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 内容指纹：文件开头、中间、结尾各取一段计算 FNV-1a 哈希
+     * 只读取少量字节，可以发现大小和修改时间都没变但内容被替换的情况
+     */
+    private static long fingerprint(MappedFile file) {
+        long size = file.size();
+        long hash = 0xcbf29ce484222325L;
+        byte[] sample = new byte[(int) Math.min(SAMPLE_SIZE, size)];
+        long[] offsets = {0, Math.max(0, size / 2 - sample.length / 2), size - sample.length};
+        for (long offset : offsets) {
+            file.get(offset, sample, 0, sample.length);
+            for (byte b : sample) {
+                hash ^= b & 0xFF;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+}
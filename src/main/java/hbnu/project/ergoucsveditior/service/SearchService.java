@@ -0,0 +1,389 @@
+package hbnu.project.ergoucsveditior.service;
+
+import hbnu.project.ergoucsveditior.model.CSVData;
+import hbnu.project.ergoucsveditior.model.SearchHits;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 搜索服务
+ * 按行列顺序扫描表格，把命中的单元格和单元格内的匹配区间一起写入 SearchHits，
+ * 表格渲染和结果跳转直接使用预先计算好的结果
+ *
+ * 大表格按行分块在线程池中并行扫描，每块完成后按块的顺序交给调用方，
+ * 调用方可以边搜索边显示结果，第一块的结果不必等待整张表扫描完成
+ */
+public class SearchService {
+    private static final int CHUNK_CELLS = 32 * 1024; // 每个并行任务扫描的单元格数
+    
+    /**
+     * 编译后的搜索条件，不可变，可以在多个线程中同时使用
+     */
+    public static final class Query {
+        private final CellMatcher matcher;
+        private final List<String> terms;
+        private final boolean caseSensitive;
+        private final int maxDistance;
+        
+        private Query(CellMatcher matcher, List<String> terms, boolean caseSensitive, int maxDistance) {
+            this.matcher = matcher;
+            this.terms = terms;
+            this.caseSensitive = caseSensitive;
+            this.maxDistance = maxDistance;
+        }
+        
+        /**
+         * 搜索词（任一匹配即可），用于索引筛选候选行；正则表达式搜索返回 null
+         */
+        public List<String> getTerms() {
+            return terms;
+        }
+        
+        public boolean isCaseSensitive() {
+            return caseSensitive;
+        }
+        
+        /**
+         * 容错搜索允许的最大编辑距离，0 表示不是容错搜索
+         */
+        public int getMaxDistance() {
+            return maxDistance;
+        }
+        
+        /**
+         * 是否为容错搜索：这类查询由 FuzzyIndex 执行，不能传给 stream
+         */
+        public boolean isTolerant() {
+            return maxDistance > 0;
+        }
+    }
+
+    /**
+     * 编译搜索条件
+     * @param searchText 搜索内容，非正则模式下可以用逗号或分号分隔多个值
+     * @param caseSensitive 是否区分大小写
+     * @param fuzzy 模糊匹配（包含即可），否则要求整个单元格相等
+     * @param useRegex 是否为正则表达式
+     * @throws java.util.regex.PatternSyntaxException 正则表达式语法错误
+     */
+    public Query compile(String searchText, boolean caseSensitive, boolean fuzzy, boolean useRegex) {
+        if (useRegex) {
+            return new Query(compileRegex(searchText, caseSensitive), null, caseSensitive, 0);
+        }
+        List<String> terms = splitTerms(searchText);
+        return new Query(compileTerms(terms, caseSensitive, fuzzy), terms, caseSensitive, 0);
+    }
+
+    /**
+     * 编译容错搜索条件：单元格与任一搜索词的编辑距离不超过 maxDistance 即命中
+     * @param searchText 搜索内容，可以用逗号或分号分隔多个值
+     * @param maxDistance 最大编辑距离，至少为 1
+     */
+    public Query compileTolerant(String searchText, boolean caseSensitive, int maxDistance) {
+        if (maxDistance < 1) {
+            throw new IllegalArgumentException("最大编辑距离至少为 1: " + maxDistance);
+        }
+        return new Query(null, splitTerms(searchText), caseSensitive, maxDistance);
+    }
+
+    /**
+     * 执行容错搜索，可在后台线程调用
+     * @param snapshot 在界面线程取得的数据快照
+     * @param snapshotVersion 取快照时索引的 getVersion()
+     * @return 命中的单元格和按编辑距离排序的匹配值，取消时返回 null
+     */
+    public FuzzyIndex.Result searchTolerant(FuzzyIndex index, CSVData snapshot, int snapshotVersion, Query query,
+                                            ForkJoinPool pool, BooleanSupplier cancelled) {
+        return index.search(snapshot, snapshotVersion, query.terms, query.maxDistance, !query.caseSensitive,
+            pool, cancelled);
+    }
+
+    /**
+     * 执行搜索，返回全部结果
+     * @throws java.util.regex.PatternSyntaxException 正则表达式语法错误
+     */
+    public SearchHits search(CSVData csvData, String searchText, boolean caseSensitive,
+                             boolean fuzzy, boolean useRegex) {
+        SearchHits hits = new SearchHits();
+        stream(csvData, compile(searchText, caseSensitive, fuzzy, useRegex), null, ForkJoinPool.commonPool(),
+            hits::addAll, null);
+        return hits;
+    }
+
+    /**
+     * 分块并行搜索，按行列顺序分批交付结果
+     * 每块的结果是独立的 SearchHits，交付后不再修改，可以直接交给其他线程
+     *
+     * @param candidateRows 只扫描这些行（升序，通常来自 TrigramIndex），null 表示扫描所有行
+     * @param pool 执行扫描任务的线程池
+     * @param onHits 每块有命中时按块的顺序回调一次（在调用 stream 的线程中）
+     * @param cancelled 返回 true 时尽快停止，可以为 null
+     * @return 是否完整执行（被取消时返回 false）
+     */
+    public boolean stream(CSVData csvData, Query query, int[] candidateRows, ForkJoinPool pool,
+                          Consumer<SearchHits> onHits, BooleanSupplier cancelled) {
+        if (query.isTolerant()) {
+            throw new IllegalArgumentException("容错搜索请使用 searchTolerant");
+        }
+        int rows = candidateRows != null ? candidateRows.length : csvData.getRows();
+        int columns = csvData.getColumns();
+        if (rows == 0 || columns == 0) {
+            return true;
+        }
+        int chunkRows = Math.max(1, CHUNK_CELLS / columns);
+        
+        List<ForkJoinTask<SearchHits>> chunks = new ArrayList<>();
+        for (int from = 0; from < rows; from += chunkRows) {
+            int start = from;
+            int end = Math.min(rows, from + chunkRows);
+            chunks.add(pool.submit(() -> scan(csvData, query.matcher, candidateRows, start, end, columns, cancelled)));
+        }
+        
+        for (ForkJoinTask<SearchHits> chunk : chunks) {
+            SearchHits hits = chunk.join();
+            if (hits == null || (cancelled != null && cancelled.getAsBoolean())) {
+                chunks.forEach(task -> task.cancel(false));
+                return false;
+            }
+            if (!hits.isEmpty()) {
+                onHits.accept(hits);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 扫描 [from, to) 行（有候选行时为候选行数组中的下标范围）
+     * @return 命中结果，取消时返回 null
+     */
+    private static SearchHits scan(CSVData csvData, CellMatcher matcher, int[] candidateRows, int from, int to,
+                                   int columns, BooleanSupplier cancelled) {
+        SearchHits hits = new SearchHits();
+        MatchBuffer ranges = new MatchBuffer(matcher.termCount());
+        for (int i = from; i < to; i++) {
+            if (cancelled != null && cancelled.getAsBoolean()) {
+                return null;
+            }
+            int row = candidateRows != null ? candidateRows[i] : i;
+            for (int col = 0; col < columns; col++) {
+                String cellValue = csvData.getCellValue(row, col);
+                if (cellValue == null) {
+                    continue;
+                }
+                ranges.clear();
+                if (matcher.match(cellValue, ranges)) {
+                    hits.add(row, col, ranges.values, ranges.length);
+                }
+            }
+        }
+        hits.addTermCounts(ranges.termCells);
+        return hits;
+    }
+
+    /**
+     * 单元格匹配器：返回是否命中，并把匹配区间和命中的搜索词写入 buffer
+     */
+    private interface CellMatcher {
+        boolean match(String value, MatchBuffer buffer);
+
+        /**
+         * 需要统计命中次数的搜索词数量
+         */
+        default int termCount() {
+            return 0;
+        }
+    }
+
+    private static CellMatcher compileRegex(String searchText, boolean caseSensitive) {
+        int flags = caseSensitive ? 0 : Pattern.CASE_INSENSITIVE;
+        Pattern pattern = Pattern.compile(searchText, flags);
+        return (value, ranges) -> {
+            Matcher matcher = pattern.matcher(value);
+            boolean found = false;
+            while (matcher.find()) {
+                found = true;
+                if (matcher.end() > matcher.start()) {
+                    ranges.add(matcher.start(), matcher.end());
+                }
+            }
+            if (found && ranges.length == 0) {
+                // 只有空匹配（如 ^、$）时整格高亮
+                ranges.add(0, value.length());
+            }
+            return found;
+        };
+    }
+
+    /**
+     * 支持多个搜索值，用逗号或分号分隔
+     */
+    private static List<String> splitTerms(String searchText) {
+        List<String> terms = new ArrayList<>();
+        for (String term : searchText.split("[,;，；]")) {
+            term = term.trim();
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * 多个搜索词一次编译：模糊匹配使用 Aho-Corasick 自动机，精确匹配使用哈希表，
+     * 每个单元格只扫描一遍，与搜索词的数量无关
+     */
+    private static CellMatcher compileTerms(List<String> terms, boolean caseSensitive, boolean fuzzy) {
+        int termCount = terms.size();
+        if (!fuzzy) {
+            // 精确匹配：整格高亮
+            Map<String, int[]> exact = new HashMap<>();
+            for (int t = 0; t < termCount; t++) {
+                exact.merge(caseSensitive ? terms.get(t) : foldCase(terms.get(t)), new int[]{t}, (a, b) -> {
+                    int[] merged = Arrays.copyOf(a, a.length + 1);
+                    merged[a.length] = b[0];
+                    return merged;
+                });
+            }
+            return new CellMatcher() {
+                @Override
+                public boolean match(String value, MatchBuffer buffer) {
+                    int[] matched = exact.get(caseSensitive ? value : foldCase(value));
+                    if (matched == null) {
+                        return false;
+                    }
+                    buffer.add(0, value.length());
+                    for (int term : matched) {
+                        buffer.hitTerm(term);
+                    }
+                    return true;
+                }
+
+                @Override
+                public int termCount() {
+                    return termCount;
+                }
+            };
+        }
+
+        AhoCorasick automaton = AhoCorasick.build(terms, !caseSensitive);
+        return new CellMatcher() {
+            @Override
+            public boolean match(String value, MatchBuffer buffer) {
+                if (!automaton.match(value, buffer)) {
+                    return false;
+                }
+                buffer.normalize();
+                return true;
+            }
+
+            @Override
+            public int termCount() {
+                return termCount;
+            }
+        };
+    }
+
+    /**
+     * 逐字符大小写折叠，长度不变
+     */
+    static String foldCase(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = AhoCorasick.fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 每个扫描任务一个的可复用缓冲
+     * 记录当前单元格的匹配区间（依次存放 start、end），并统计每个搜索词命中的单元格数
+     */
+    private static final class MatchBuffer implements AhoCorasick.MatchVisitor {
+        int[] values = new int[16];
+        int length;
+        final int[] termCells;     // 每个搜索词命中的单元格数
+        private final int[] termStamp; // 搜索词最近一次命中的单元格编号，同一单元格只统计一次
+        private int cell;
+
+        MatchBuffer(int termCount) {
+            termCells = new int[termCount];
+            termStamp = new int[termCount];
+        }
+
+        @Override
+        public void visit(int term, int start, int end) {
+            add(start, end);
+            hitTerm(term);
+        }
+
+        void add(int start, int end) {
+            if (length + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[length++] = start;
+            values[length++] = end;
+        }
+
+        void hitTerm(int term) {
+            if (termStamp[term] != cell) {
+                termStamp[term] = cell;
+                termCells[term]++;
+            }
+        }
+
+        /**
+         * 开始处理下一个单元格
+         */
+        void clear() {
+            length = 0;
+            cell++;
+        }
+
+        /**
+         * 多个搜索值的区间按起点排序并合并重叠部分
+         */
+        void normalize() {
+            int count = length / 2;
+            boolean sorted = true;
+            for (int i = 1; i < count; i++) {
+                if (values[i * 2] < values[i * 2 - 2]) {
+                    sorted = false;
+                    break;
+                }
+            }
+            if (!sorted) {
+                long[] packed = new long[count];
+                for (int i = 0; i < count; i++) {
+                    packed[i] = ((long) values[i * 2] << 32) | values[i * 2 + 1];
+                }
+                Arrays.sort(packed);
+                for (int i = 0; i < count; i++) {
+                    values[i * 2] = (int) (packed[i] >>> 32);
+                    values[i * 2 + 1] = (int) packed[i];
+                }
+            }
+            int merged = 0;
+            for (int i = 0; i < count; i++) {
+                int start = values[i * 2];
+                int end = values[i * 2 + 1];
+                if (merged > 0 && start <= values[merged - 1]) {
+                    values[merged - 1] = Math.max(values[merged - 1], end);
+                } else {
+                    values[merged++] = start;
+                    values[merged++] = end;
+                }
+            }
+            length = merged;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package hbnu.project.ergoucsveditior.service;
+
+import hbnu.project.ergoucsveditior.model.CSVData;
+import hbnu.project.ergoucsveditior.model.ColumnStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * 列统计服务
+ * 每个单元格只访问一次，数值保存在基本类型数组中，不装箱、不复制、不整体排序；
+ * 行按块在线程池中并行累计，再按块的顺序合并，千万行的列也只需要几秒
+ * 近似模式使用固定大小的草图，适合内存放不下精确结果的超大列
+ *
+ * 整表概况同时统计所有列：每列一个任务，列内再按行分块，
+ * 列多时按列并行，列少行多时按块并行，都能占满线程池
+ */
+public class StatisticsService {
+    private static final int CHUNK_ROWS = 256 * 1024; // 每个并行任务累计的行数
+    private static final int CHECK_ROWS = 4096;       // 每累计这么多行检查一次是否取消
+
+    /**
+     * 计算一列的统计信息，可在后台线程调用
+     * @param csvData CSV数据（计算期间不应修改）
+     * @param column 列索引
+     * @param startRow 起始行，第一行是表头时为 1
+     * @param approximate 是否使用草图做近似统计
+     * @param pool 执行计算任务的线程池
+     * @param progress 每完成一块回调一次，参数为已完成的行数，可以为 null
+     * @param cancelled 返回 true 时尽快停止，可以为 null
+     * @return 统计结果，取消时返回 null
+     */
+    public ColumnStatistics compute(CSVData csvData, int column, int startRow, boolean approximate,
+                                    ForkJoinPool pool, IntConsumer progress, BooleanSupplier cancelled) {
+        int rows = csvData.getRows();
+        AtomicInteger rowsDone = new AtomicInteger();
+        List<ForkJoinTask<ColumnStatistics.Accumulator>> chunks = new ArrayList<>();
+        for (int from = startRow; from < rows; from += CHUNK_ROWS) {
+            int start = from;
+            int end = Math.min(rows, from + CHUNK_ROWS);
+            chunks.add(pool.submit(() -> {
+                ColumnStatistics.Accumulator accumulator =
+                    accumulate(csvData, column, start, end, approximate, cancelled);
+                int done = rowsDone.addAndGet(end - start);
+                if (progress != null) {
+                    progress.accept(done);
+                }
+                return accumulator;
+            }));
+        }
+
+        ColumnStatistics.Accumulator result = new ColumnStatistics.Accumulator(column, approximate);
+        for (ForkJoinTask<ColumnStatistics.Accumulator> chunk : chunks) {
+            ColumnStatistics.Accumulator accumulator = chunk.join();
+            if (accumulator == null) {
+                chunks.forEach(task -> task.cancel(false));
+                return null;
+            }
+            result.merge(accumulator);
+        }
+        return result.finish();
+    }
+
+    /**
+     * 并行统计所有列，每完成一列回调一次，可在后台线程调用
+     * @param csvData CSV数据（计算期间不应修改）
+     * @param startRow 起始行，第一行是表头时为 1
+     * @param approximate 是否使用草图做近似统计
+     * @param pool 执行计算任务的线程池
+     * @param onColumn 每完成一列回调一次（在线程池的线程中，按完成的顺序，不一定按列的顺序）
+     * @param cancelled 返回 true 时尽快停止，可以为 null
+     * @return 是否完整执行（被取消时返回 false）
+     */
+    public boolean profile(CSVData csvData, int startRow, boolean approximate, ForkJoinPool pool,
+                           Consumer<ColumnStatistics> onColumn, BooleanSupplier cancelled) {
+        int columns = csvData.getColumns();
+        List<ForkJoinTask<ColumnStatistics>> tasks = new ArrayList<>();
+        for (int col = 0; col < columns; col++) {
+            int column = col;
+            tasks.add(pool.submit(() -> {
+                // 在线程池内提交并等待分块任务，等待时当前线程会帮助执行其他任务
+                ColumnStatistics statistics = compute(csvData, column, startRow, approximate, pool, null, cancelled);
+                if (statistics != null) {
+                    onColumn.accept(statistics);
+                }
+                return statistics;
+            }));
+        }
+        for (ForkJoinTask<ColumnStatistics> task : tasks) {
+            if (task.join() == null) {
+                tasks.forEach(t -> t.cancel(false));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 累计 [from, to) 行
+     * @return 累加器，取消时返回 null
+     */
+    private static ColumnStatistics.Accumulator accumulate(CSVData csvData, int column, int from, int to,
+                                                           boolean approximate, BooleanSupplier cancelled) {
+        ColumnStatistics.Accumulator accumulator = new ColumnStatistics.Accumulator(column, approximate);
+        for (int row = from; row < to; row++) {
+            if ((row - from) % CHECK_ROWS == 0 && cancelled != null && cancelled.getAsBoolean()) {
+                return null;
+            }
+            accumulator.accept(csvData.getCellValue(row, column));
+        }
+        return accumulator;
+    }
+}
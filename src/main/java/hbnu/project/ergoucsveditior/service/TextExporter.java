@@ -0,0 +1,50 @@
+package hbnu.project.ergoucsveditior.service;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TXT导出，单元格之间用制表符分隔
+ */
+public class TextExporter implements Exporter {
+
+    @Override
+    public String getFormat() {
+        return "TXT";
+    }
+
+    @Override
+    public String getExtension() {
+        return "txt";
+    }
+
+    @Override
+    public String getDescription() {
+        return "文本文件";
+    }
+
+    @Override
+    public RowWriter open(Context context, OutputStream output) {
+        Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        String lineSeparator = System.lineSeparator();
+        return new RowWriter() {
+            @Override
+            public void writeRow(int row, String[] values) throws Exception {
+                for (int col = 0; col < values.length; col++) {
+                    if (col > 0) {
+                        writer.write('\t'); // 使用制表符分隔
+                    }
+                    writer.write(values[col] != null ? values[col] : "");
+                }
+                writer.write(lineSeparator);
+            }
+
+            @Override
+            public void finish() throws Exception {
+                writer.flush();
+            }
+        };
+    }
+}
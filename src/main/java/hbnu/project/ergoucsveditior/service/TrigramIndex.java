@@ -0,0 +1,574 @@
+package hbnu.project.ergoucsveditior.service;
+
+import hbnu.project.ergoucsveditior.model.CSVData;
+import hbnu.project.ergoucsveditior.model.CSVDataListener;
+import hbnu.project.ergoucsveditior.model.CellStore;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 三元组倒排索引
+ * 记录每个三元组（连续三个字符，忽略大小写）出现在哪些行中，
+ * 搜索包含/精确匹配时先求出所有三元组都出现过的候选行，只扫描这些行
+ *
+ * 索引以行为单位：每行分配一个固定的编号，插入、删除、移动行时只调整行号与编号的对应关系，
+ * 倒排表本身不需要改动；单元格修改时追加新值的三元组，并移除这一行不再包含的旧值三元组。
+ * 索引给出的候选行只会多不会少，最终结果仍由搜索条件逐个单元格确认
+ *
+ * 内存有上限：超出时丢弃最长的倒排表，对应的三元组视为“所有行都可能包含”，不再参与筛选；
+ * 丢弃后按保留下来的最长长度设定丢弃长度，之后增长超过它的倒排表随即丢弃，编辑时不需要每次重新排序
+ * 索引在后台线程从数据快照构建，构建期间数据被修改时本次构建作废；
+ * 监听器只在修改数据的线程中标记作废和增量更新，不与构建线程同时读取数据
+ */
+public class TrigramIndex implements CSVDataListener {
+    private static final int MIN_TERM_LENGTH = 3;
+    private static final int BUDGET_CHECK_ROWS = 4096; // 构建时每处理多少行检查一次内存和取消
+    private static final Postings SATURATED = new Postings();
+
+    private final CSVData data;
+    private final long maxBytes;
+
+    // 行号 -> 行编号，行编号 -> 行号（-1 表示已删除）
+    private int[] rowIds = new int[0];
+    private int rowCount;
+    private int[] idRows = new int[0];
+    private int idCount;
+
+    // 三元组 -> 倒排表（开放寻址）
+    private long[] keys = new long[0];
+    private Postings[] postings = new Postings[0];
+    private int gramCount;
+    private int saturatedCount;
+    private long postingBytes;
+    private long listBytes;                           // 未丢弃的倒排表数组占用的字节数（可回收的部分）
+    private int saturateLength = Integer.MAX_VALUE;   // 倒排表超过这个长度时直接丢弃
+
+    private volatile boolean ready;
+    private volatile boolean stale;
+
+    /**
+     * @param maxBytes 索引的内存上限（字节）
+     */
+    public TrigramIndex(CSVData data, long maxBytes) {
+        this.data = data;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 构建索引，可在后台线程调用
+     * 调用前应先通过 data.addDataListener 注册索引，并在同一线程中取得快照，
+     * 注册之后数据有任何修改都会使本次构建作废，此时应创建新的索引重新构建
+     * @param snapshot 注册索引时取得的数据快照（CSVData.snapshot），构建只读取它
+     * @param cancelled 返回 true 时停止构建，可以为 null
+     * @return 索引是否构建完成并可用
+     */
+    public boolean build(CSVData snapshot, BooleanSupplier cancelled) {
+        ready = false;
+        int rows = snapshot.getRows();
+        int columns = snapshot.getColumns();
+        rowIds = new int[Math.max(16, rows)];
+        idRows = new int[Math.max(16, rows)];
+        rowCount = rows;
+        idCount = rows;
+        for (int row = 0; row < rows; row++) {
+            rowIds[row] = row;
+            idRows[row] = row;
+        }
+        keys = new long[1024];
+        postings = new Postings[1024];
+        gramCount = 0;
+        saturatedCount = 0;
+        postingBytes = 0;
+        listBytes = 0;
+        saturateLength = Integer.MAX_VALUE;
+
+        for (int row = 0; row < rows; row++) {
+            if (row % BUDGET_CHECK_ROWS == 0) {
+                if (stale || (cancelled != null && cancelled.getAsBoolean())) {
+                    return false;
+                }
+                enforceBudget();
+            }
+            for (int col = 0; col < columns; col++) {
+                addValue(row, snapshot.getCellValue(row, col));
+            }
+        }
+        enforceBudget();
+        if (stale) {
+            return false;
+        }
+        ready = true;
+        // 设置 ready 之前的瞬间仍可能有修改只标记了 stale
+        if (stale) {
+            ready = false;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 停止监听数据变化，索引不再使用时调用
+     */
+    public void close() {
+        ready = false;
+        data.removeDataListener(this);
+    }
+
+    /**
+     * 索引是否可用（构建完成且之后没有整体替换数据）
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 求出可能包含任一搜索词的候选行
+     * @param terms 搜索词（任一匹配即可）
+     * @return 升序排列的候选行号；无法用索引筛选时（索引不可用、搜索词太短等）返回 null，表示需要扫描所有行
+     */
+    public int[] candidateRows(List<String> terms) {
+        if (!ready || terms.isEmpty()) {
+            return null;
+        }
+        int[] union = new int[0];
+        for (String term : terms) {
+            int[] ids = candidateIds(term);
+            if (ids == null) {
+                return null;
+            }
+            union = union(union, ids);
+        }
+
+        int[] rows = new int[union.length];
+        int count = 0;
+        for (int id : union) {
+            int row = idRows[id];
+            if (row >= 0) {
+                rows[count++] = row;
+            }
+        }
+        rows = Arrays.copyOf(rows, count);
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    /**
+     * 三元组数量
+     */
+    public int getTrigramCount() {
+        return gramCount;
+    }
+
+    /**
+     * 因内存上限被丢弃的三元组数量
+     */
+    public int getSaturatedCount() {
+        return saturatedCount;
+    }
+
+    /**
+     * 估算索引占用的内存（字节）
+     */
+    public long estimateMemoryBytes() {
+        return postingBytes + keys.length * 12L + (rowIds.length + idRows.length) * 4L;
+    }
+
+    // ========== 数据变化时增量更新 ==========
+
+    @Override
+    public void cellChanged(int row, int column, String oldValue, String newValue) {
+        if (!ready) {
+            stale = true;
+            return;
+        }
+        removeValue(row, oldValue);
+        addValue(row, newValue);
+        enforceBudget();
+    }
+
+    @Override
+    public void rowsInserted(int row, int count) {
+        if (!ready) {
+            stale = true;
+            return;
+        }
+        rowIds = ensureCapacity(rowIds, rowCount + count);
+        idRows = ensureCapacity(idRows, idCount + count);
+        System.arraycopy(rowIds, row, rowIds, row + count, rowCount - row);
+        for (int i = 0; i < count; i++) {
+            rowIds[row + i] = idCount;
+            idRows[idCount++] = row + i;
+        }
+        rowCount += count;
+        renumber(row + count, rowCount);
+
+        int columns = data.getColumns();
+        for (int r = row; r < row + count; r++) {
+            for (int col = 0; col < columns; col++) {
+                addValue(r, data.getCellValue(r, col));
+            }
+        }
+        enforceBudget();
+    }
+
+    @Override
+    public void rowRemoved(int row, String[] values) {
+        if (!ready) {
+            stale = true;
+            return;
+        }
+        idRows[rowIds[row]] = -1;
+        System.arraycopy(rowIds, row + 1, rowIds, row, rowCount - row - 1);
+        rowCount--;
+        renumber(row, rowCount);
+    }
+
+    @Override
+    public void rowMoved(int from, int to) {
+        if (!ready) {
+            stale = true;
+            return;
+        }
+        int id = rowIds[from];
+        if (from < to) {
+            System.arraycopy(rowIds, from + 1, rowIds, from, to - from);
+        } else {
+            System.arraycopy(rowIds, to, rowIds, to + 1, from - to);
+        }
+        rowIds[to] = id;
+        renumber(Math.min(from, to), Math.max(from, to) + 1);
+    }
+
+    @Override
+    public void columnInserted(int column) {
+        // 新列为空；索引以行为单位，列的变化不影响候选行
+        if (!ready) {
+            stale = true;
+        }
+    }
+
+    @Override
+    public void columnRemoved(int column, String[] values) {
+        if (!ready) {
+            stale = true;
+        }
+    }
+
+    @Override
+    public void storeReplaced(CellStore oldStore, CellStore newStore) {
+        // 整个存储被替换，索引失效，需要重新构建
+        ready = false;
+        stale = true;
+    }
+
+    // ========== 内部实现 ==========
+
+    private void renumber(int from, int to) {
+        for (int row = from; row < to; row++) {
+            idRows[rowIds[row]] = row;
+        }
+    }
+
+    private void addValue(int row, String value) {
+        if (value == null || value.length() < MIN_TERM_LENGTH) {
+            return;
+        }
+        int id = rowIds[row];
+        long gram = ((long) fold(value.charAt(0)) << 16) | fold(value.charAt(1));
+        for (int i = 2; i < value.length(); i++) {
+            gram = ((gram << 16) | fold(value.charAt(i))) & 0xFFFFFFFFFFFFL;
+            add(gram, id);
+        }
+    }
+
+    /**
+     * 从倒排表中移除旧值里、这一行修改后不再包含的三元组（事件发生时数据中已经是新值）
+     */
+    private void removeValue(int row, String oldValue) {
+        if (oldValue == null || oldValue.length() < MIN_TERM_LENGTH) {
+            return;
+        }
+        Set<Long> remaining = new HashSet<>();
+        int columns = data.getColumns();
+        for (int col = 0; col < columns; col++) {
+            String value = data.getCellValue(row, col);
+            if (value != null && value.length() >= MIN_TERM_LENGTH) {
+                long gram = ((long) fold(value.charAt(0)) << 16) | fold(value.charAt(1));
+                for (int i = 2; i < value.length(); i++) {
+                    gram = ((gram << 16) | fold(value.charAt(i))) & 0xFFFFFFFFFFFFL;
+                    remaining.add(gram);
+                }
+            }
+        }
+        int id = rowIds[row];
+        long gram = ((long) fold(oldValue.charAt(0)) << 16) | fold(oldValue.charAt(1));
+        for (int i = 2; i < oldValue.length(); i++) {
+            gram = ((gram << 16) | fold(oldValue.charAt(i))) & 0xFFFFFFFFFFFFL;
+            if (remaining.add(gram)) {
+                Postings list = find(gram);
+                if (list != null && list != SATURATED) {
+                    long freed = list.remove(id);
+                    postingBytes -= freed;
+                    listBytes -= freed;
+                }
+            }
+        }
+    }
+
+    private void add(long gram, int id) {
+        if (gramCount * 2 >= keys.length) {
+            rehash(Math.max(1024, keys.length * 2));
+        }
+        int slot = slot(gram);
+        Postings list = postings[slot];
+        if (list == null) {
+            list = new Postings();
+            keys[slot] = gram;
+            postings[slot] = list;
+            gramCount++;
+            postingBytes += Postings.OVERHEAD + list.ids.length * 4L;
+            listBytes += list.ids.length * 4L;
+        }
+        if (list != SATURATED) {
+            long grown = list.add(id);
+            postingBytes += grown;
+            listBytes += grown;
+            if (list.size > saturateLength) {
+                saturate(slot);
+            }
+        }
+    }
+
+    /**
+     * 丢弃一个倒排表，对应的三元组不再参与筛选
+     */
+    private void saturate(int slot) {
+        long bytes = postings[slot].ids.length * 4L;
+        postingBytes -= bytes;
+        listBytes -= bytes;
+        postings[slot] = SATURATED;
+        saturatedCount++;
+    }
+
+    /**
+     * 内存超出上限时，从最长的倒排表开始丢弃
+     * 一次降到上限的 90% 以下，并按保留下来的最长长度设定之后的丢弃长度，
+     * 编辑时很少需要再次排序；固定开销本身就超出上限时，全部丢弃之后直接返回
+     */
+    private void enforceBudget() {
+        if (estimateMemoryBytes() <= maxBytes || listBytes <= 0) {
+            return;
+        }
+        long target = maxBytes - maxBytes / 10;
+        Integer[] order = new Integer[keys.length];
+        int count = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (postings[slot] != null && postings[slot] != SATURATED) {
+                order[count++] = slot;
+            }
+        }
+        Arrays.sort(order, 0, count, (a, b) -> Integer.compare(postings[b].size, postings[a].size));
+        int dropped = 0;
+        while (dropped < count && estimateMemoryBytes() > target) {
+            saturate(order[dropped++]);
+        }
+        // 保留下来的倒排表还可以增长一半，之后再超出上限时才需要重新排序
+        int longest = dropped < count ? postings[order[dropped]].size : 0;
+        saturateLength = longest + (longest >> 1);
+    }
+
+    /**
+     * 一个搜索词的候选行编号（升序），无法筛选时返回 null
+     */
+    private int[] candidateIds(String term) {
+        if (term.length() < MIN_TERM_LENGTH || term.indexOf('\u0307') >= 0) {
+            // 太短无法拆出三元组；带组合点的字符转小写后长度会变化（如 İ），无法与索引对应
+            return null;
+        }
+        int[] result = null;
+        long gram = ((long) fold(term.charAt(0)) << 16) | fold(term.charAt(1));
+        for (int i = 2; i < term.length(); i++) {
+            gram = ((gram << 16) | fold(term.charAt(i))) & 0xFFFFFFFFFFFFL;
+            Postings list = find(gram);
+            if (list == null) {
+                // 这个三元组没有出现过
+                return new int[0];
+            }
+            if (list == SATURATED) {
+                continue;
+            }
+            int[] ids = list.sorted();
+            result = result == null ? ids : intersect(result, ids);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private Postings find(long gram) {
+        if (keys.length == 0) {
+            return null;
+        }
+        return postings[slot(gram)];
+    }
+
+    private int slot(long gram) {
+        int mask = keys.length - 1;
+        long h = gram * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (postings[slot] != null && keys[slot] != gram) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Postings[] oldPostings = postings;
+        keys = new long[capacity];
+        postings = new Postings[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldPostings[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                postings[slot] = oldPostings[i];
+            }
+        }
+    }
+
+    /**
+     * 大小写折叠，与 equalsIgnoreCase 的比较方式一致
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length + (array.length >> 1)));
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        int[] result = new int[a.length + b.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            int next;
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                next = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                next = b[j++];
+            } else {
+                next = a[i++];
+                j++;
+            }
+            result[count++] = next;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 一个三元组的倒排表：出现过的行编号
+     * 构建时行编号递增，天然有序且不重复；增量更新可能打乱顺序，查询时再排序去重
+     */
+    private static final class Postings {
+        static final long OVERHEAD = 32;
+
+        int[] ids = new int[2];
+        int size;
+        boolean sorted = true;
+
+        /**
+         * @return 新增占用的字节数
+         */
+        long add(int id) {
+            if (size > 0) {
+                int last = ids[size - 1];
+                if (last == id) {
+                    return 0;
+                }
+                if (last > id) {
+                    sorted = false;
+                }
+            }
+            long grown = 0;
+            if (size == ids.length) {
+                int capacity = size + (size >> 1) + 1;
+                grown = (capacity - size) * 4L;
+                ids = Arrays.copyOf(ids, capacity);
+            }
+            ids[size++] = id;
+            return grown;
+        }
+
+        /**
+         * 移除一个行编号（未排序时可能出现多次）
+         * @return 释放的字节数
+         */
+        long remove(int id) {
+            if (sorted) {
+                int index = Arrays.binarySearch(ids, 0, size, id);
+                if (index < 0) {
+                    return 0;
+                }
+                System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+                size--;
+            } else {
+                int count = 0;
+                for (int i = 0; i < size; i++) {
+                    if (ids[i] != id) {
+                        ids[count++] = ids[i];
+                    }
+                }
+                size = count;
+            }
+            if (ids.length > 8 && size < ids.length / 4) {
+                int capacity = Math.max(2, size * 2);
+                long freed = (ids.length - capacity) * 4L;
+                ids = Arrays.copyOf(ids, capacity);
+                return freed;
+            }
+            return 0;
+        }
+
+        int[] sorted() {
+            if (!sorted) {
+                Arrays.sort(ids, 0, size);
+                int count = 0;
+                for (int i = 0; i < size; i++) {
+                    if (count == 0 || ids[count - 1] != ids[i]) {
+                        ids[count++] = ids[i];
+                    }
+                }
+                size = count;
+                sorted = true;
+            }
+            return size == ids.length ? ids : Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -15,6 +15,7 @@ public class ExportSettings {
     private boolean excelAutoSizeColumns;
     private String excelSheetName;
     private boolean excelApplyHighlight;
+    private boolean excelStreaming; // 流式写入，只在内存中保留最近的若干行
     
     // PDF导出设置
     private String pdfPageSize; // A4, A3, Letter等
@@ -23,6 +24,7 @@ public class ExportSettings {
     private boolean pdfIncludeHeader;
     private boolean pdfApplyHighlight;
     private String pdfTitle;
+    private boolean pdfIncremental; // 表格分块加入文档，写完的页面立即输出
     
     public ExportSettings() {
         properties = new Properties();
@@ -39,6 +41,7 @@ public class ExportSettings {
         excelAutoSizeColumns = true;
         excelSheetName = "Sheet1";
         excelApplyHighlight = true;
+        excelStreaming = true;
         
         // PDF默认设置
         pdfPageSize = "A4";
@@ -47,6 +50,7 @@ public class ExportSettings {
         pdfIncludeHeader = true;
         pdfApplyHighlight = true;
         pdfTitle = "CSV数据导出";
+        pdfIncremental = true;
     }
     
     /**
@@ -63,6 +67,7 @@ public class ExportSettings {
                 excelAutoSizeColumns = Boolean.parseBoolean(properties.getProperty("excelAutoSizeColumns", String.valueOf(excelAutoSizeColumns)));
                 excelSheetName = properties.getProperty("excelSheetName", excelSheetName);
                 excelApplyHighlight = Boolean.parseBoolean(properties.getProperty("excelApplyHighlight", String.valueOf(excelApplyHighlight)));
+                excelStreaming = Boolean.parseBoolean(properties.getProperty("excelStreaming", String.valueOf(excelStreaming)));
                 
                 // 加载PDF设置
                 pdfPageSize = properties.getProperty("pdfPageSize", pdfPageSize);
@@ -71,6 +76,7 @@ public class ExportSettings {
                 pdfIncludeHeader = Boolean.parseBoolean(properties.getProperty("pdfIncludeHeader", String.valueOf(pdfIncludeHeader)));
                 pdfApplyHighlight = Boolean.parseBoolean(properties.getProperty("pdfApplyHighlight", String.valueOf(pdfApplyHighlight)));
                 pdfTitle = properties.getProperty("pdfTitle", pdfTitle);
+                pdfIncremental = Boolean.parseBoolean(properties.getProperty("pdfIncremental", String.valueOf(pdfIncremental)));
             } catch (IOException | NumberFormatException e) {
                 loadDefaults();
             }
@@ -86,6 +92,7 @@ public class ExportSettings {
         properties.setProperty("excelAutoSizeColumns", String.valueOf(excelAutoSizeColumns));
         properties.setProperty("excelSheetName", excelSheetName);
         properties.setProperty("excelApplyHighlight", String.valueOf(excelApplyHighlight));
+        properties.setProperty("excelStreaming", String.valueOf(excelStreaming));
         
         // 保存PDF设置
         properties.setProperty("pdfPageSize", pdfPageSize);
@@ -94,6 +101,7 @@ public class ExportSettings {
         properties.setProperty("pdfIncludeHeader", String.valueOf(pdfIncludeHeader));
         properties.setProperty("pdfApplyHighlight", String.valueOf(pdfApplyHighlight));
         properties.setProperty("pdfTitle", pdfTitle);
+        properties.setProperty("pdfIncremental", String.valueOf(pdfIncremental));
         
         try (FileOutputStream fos = new FileOutputStream(SETTINGS_FILE)) {
             properties.store(fos, "Export Settings");
@@ -135,6 +143,14 @@ public class ExportSettings {
         this.excelApplyHighlight = excelApplyHighlight;
     }
     
+    public boolean isExcelStreaming() {
+        return excelStreaming;
+    }
+    
+    public void setExcelStreaming(boolean excelStreaming) {
+        this.excelStreaming = excelStreaming;
+    }
+    
     public String getPdfPageSize() {
         return pdfPageSize;
     }
@@ -182,5 +198,12 @@ public class ExportSettings {
     public void setPdfTitle(String pdfTitle) {
         this.pdfTitle = pdfTitle;
     }
+    
+    public boolean isPdfIncremental() {
+        return pdfIncremental;
+    }
+    
+    public void setPdfIncremental(boolean pdfIncremental) {
+        this.pdfIncremental = pdfIncremental;
+    }
 }
-
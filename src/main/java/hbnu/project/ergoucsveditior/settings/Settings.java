@@ -12,7 +12,7 @@ public class Settings {
     
     // 设置项
     private String defaultEncoding;
-    private int maxHistorySize;
+    private int historyMemoryLimit; // MB
     private boolean autoSaveEnabled;
     private int autoSaveInterval; // 分钟
     private String lineEnding; // LF 或 CRLF
@@ -31,6 +31,9 @@ public class Settings {
     private String escapeMode;                     // 转义字符处理方式（"重复引号" 或 "反斜杠转义"）
     private boolean firstRowAsHeader;              // 首行是否为列标题
     private boolean showLineNumbers;               // 是否显示行号
+    private boolean progressiveOpen;               // 大文件渐进式打开（边加载边显示）
+    private boolean searchIndexEnabled;            // 为大表格建立搜索索引
+    private int searchIndexMemoryLimit;            // 搜索索引内存上限（MB）
     private String theme;                          // 主题（"浅色" 或 "深色"）
     private String tableBorderColor;               // 表格边框颜色
     private String tableGridColor;                 // 网格线颜色
@@ -60,7 +63,7 @@ public class Settings {
      */
     private void loadDefaults() {
         defaultEncoding = "UTF-8";
-        maxHistorySize = 50;
+        historyMemoryLimit = 64;
         autoSaveEnabled = false;
         autoSaveInterval = 5;
         lineEnding = System.lineSeparator().equals("\r\n") ? "CRLF" : "LF";
@@ -79,6 +82,9 @@ public class Settings {
         escapeMode = "重复引号";                   // 默认使用重复引号转义
         firstRowAsHeader = true;                   // 默认首行为标题
         showLineNumbers = true;                    // 默认显示行号
+        progressiveOpen = true;                    // 默认开启渐进式打开
+        searchIndexEnabled = true;                 // 默认开启搜索索引
+        searchIndexMemoryLimit = 256;              // 搜索索引默认最多占用256MB
         theme = "浅色";                            // 默认浅色主题
         tableBorderColor = "#CCCCCC";              // 默认边框颜色
         tableGridColor = "#E0E0E0";                // 默认网格线颜色
@@ -107,7 +113,7 @@ public class Settings {
                 properties.load(is);
                 
                 defaultEncoding = properties.getProperty("defaultEncoding", defaultEncoding);
-                maxHistorySize = Integer.parseInt(properties.getProperty("maxHistorySize", String.valueOf(maxHistorySize)));
+                historyMemoryLimit = Integer.parseInt(properties.getProperty("historyMemoryLimit", String.valueOf(historyMemoryLimit)));
                 autoSaveEnabled = Boolean.parseBoolean(properties.getProperty("autoSaveEnabled", String.valueOf(autoSaveEnabled)));
                 autoSaveInterval = Integer.parseInt(properties.getProperty("autoSaveInterval", String.valueOf(autoSaveInterval)));
                 lineEnding = properties.getProperty("lineEnding", lineEnding);
@@ -126,6 +132,9 @@ public class Settings {
                 escapeMode = properties.getProperty("escapeMode", escapeMode);
                 firstRowAsHeader = Boolean.parseBoolean(properties.getProperty("firstRowAsHeader", String.valueOf(firstRowAsHeader)));
                 showLineNumbers = Boolean.parseBoolean(properties.getProperty("showLineNumbers", String.valueOf(showLineNumbers)));
+                progressiveOpen = Boolean.parseBoolean(properties.getProperty("progressiveOpen", String.valueOf(progressiveOpen)));
+                searchIndexEnabled = Boolean.parseBoolean(properties.getProperty("searchIndexEnabled", String.valueOf(searchIndexEnabled)));
+                searchIndexMemoryLimit = Integer.parseInt(properties.getProperty("searchIndexMemoryLimit", String.valueOf(searchIndexMemoryLimit)));
                 theme = properties.getProperty("theme", theme);
                 tableBorderColor = properties.getProperty("tableBorderColor", tableBorderColor);
                 tableGridColor = properties.getProperty("tableGridColor", tableGridColor);
@@ -155,7 +164,7 @@ public class Settings {
      */
     public void save() {
         properties.setProperty("defaultEncoding", defaultEncoding);
-        properties.setProperty("maxHistorySize", String.valueOf(maxHistorySize));
+        properties.setProperty("historyMemoryLimit", String.valueOf(historyMemoryLimit));
         properties.setProperty("autoSaveEnabled", String.valueOf(autoSaveEnabled));
         properties.setProperty("autoSaveInterval", String.valueOf(autoSaveInterval));
         properties.setProperty("lineEnding", lineEnding);
@@ -174,6 +183,9 @@ public class Settings {
         properties.setProperty("escapeMode", escapeMode);
         properties.setProperty("firstRowAsHeader", String.valueOf(firstRowAsHeader));
         properties.setProperty("showLineNumbers", String.valueOf(showLineNumbers));
+        properties.setProperty("progressiveOpen", String.valueOf(progressiveOpen));
+        properties.setProperty("searchIndexEnabled", String.valueOf(searchIndexEnabled));
+        properties.setProperty("searchIndexMemoryLimit", String.valueOf(searchIndexMemoryLimit));
         properties.setProperty("theme", theme);
         properties.setProperty("tableBorderColor", tableBorderColor);
         properties.setProperty("tableGridColor", tableGridColor);
@@ -208,12 +220,12 @@ public class Settings {
         this.defaultEncoding = defaultEncoding;
     }
     
-    public int getMaxHistorySize() {
-        return maxHistorySize;
+    public int getHistoryMemoryLimit() {
+        return historyMemoryLimit;
     }
     
-    public void setMaxHistorySize(int maxHistorySize) {
-        this.maxHistorySize = maxHistorySize;
+    public void setHistoryMemoryLimit(int historyMemoryLimit) {
+        this.historyMemoryLimit = historyMemoryLimit;
     }
     
     public boolean isAutoSaveEnabled() {
@@ -336,6 +348,30 @@ public class Settings {
     public void setShowLineNumbers(boolean showLineNumbers) {
         this.showLineNumbers = showLineNumbers;
     }
+
+    public boolean isProgressiveOpen() {
+        return progressiveOpen;
+    }
+
+    public void setProgressiveOpen(boolean progressiveOpen) {
+        this.progressiveOpen = progressiveOpen;
+    }
+    
+    public boolean isSearchIndexEnabled() {
+        return searchIndexEnabled;
+    }
+    
+    public void setSearchIndexEnabled(boolean searchIndexEnabled) {
+        this.searchIndexEnabled = searchIndexEnabled;
+    }
+    
+    public int getSearchIndexMemoryLimit() {
+        return searchIndexMemoryLimit;
+    }
+    
+    public void setSearchIndexMemoryLimit(int searchIndexMemoryLimit) {
+        this.searchIndexMemoryLimit = searchIndexMemoryLimit;
+    }
     
     public String getTheme() {
         return theme;